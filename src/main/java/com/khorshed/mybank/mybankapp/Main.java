@@ -1,5 +1,9 @@
 package com.khorshed.mybank.mybankapp;
 
+import com.khorshed.mybank.mybankapp.database.EventLog;
+import com.khorshed.mybank.mybankapp.services.BankApiServer;
+import com.khorshed.mybank.mybankapp.services.OnlineBackup;
+import com.khorshed.mybank.mybankapp.services.StandingOrderScheduler;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -13,6 +17,7 @@ import javafx.stage.Stage;
 public class Main extends Application {
 
     private static Stage primaryStageObj;
+    private BankApiServer apiServer;
 
     @Override
     public void start(Stage primaryStage) {
@@ -34,10 +39,28 @@ public class Main extends Application {
             primaryStage.setResizable(false);
             primaryStage.show();
 
+            // Local HTTP API, if enabled with -Dmybank.api=true
+            apiServer = BankApiServer.startIfEnabled();
+
+            // Scheduled online backups, if enabled with -Dmybank.backup.intervalMinutes
+            OnlineBackup.startScheduleIfEnabled();
+
+            // Standing orders, including any occurrences missed while the application was closed
+            StandingOrderScheduler.getInstance();
+
         } catch (Exception e) {
-            System.err.println("Error starting application: " + e.getMessage());
-            e.printStackTrace();
+            EventLog.error("Error starting application", e);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (apiServer != null) {
+            apiServer.stop();
         }
+        OnlineBackup.stopSchedule();
+        StandingOrderScheduler.shutdown();
+        EventLog.shutdown();
     }
 
     /**
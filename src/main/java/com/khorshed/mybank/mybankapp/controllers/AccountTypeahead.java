@@ -0,0 +1,114 @@
+package com.khorshed.mybank.mybankapp.controllers;
+
+import com.khorshed.mybank.mybankapp.database.DatabaseHelper;
+import com.khorshed.mybank.mybankapp.database.OwnerNameIndex;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.geometry.Side;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.TextField;
+import javafx.util.Duration;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Account Typeahead
+ * Suggests accounts by owner name while the user types in an account number field
+ * Searches run on a background thread; only the latest query's result is shown.
+ */
+public class AccountTypeahead {
+
+    private static final Duration DEBOUNCE = Duration.millis(150);
+    private static final int MAX_SUGGESTIONS = 10;
+
+    // Shared by every typeahead; searches are short and run one at a time
+    private static final ExecutorService searcher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "owner-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final TextField field;
+    private final DatabaseHelper dbHelper;
+    private final ContextMenu suggestions = new ContextMenu();
+    private final PauseTransition pause = new PauseTransition(DEBOUNCE);
+
+    // Bumped on the FX thread for every query, so stale results are dropped
+    private long latestQuery;
+
+    /**
+     * Attaches a typeahead to a field
+     * @param field Account number field; a chosen suggestion replaces its text with the number
+     * @param dbHelper Helper used for the name search, from the search thread
+     */
+    public static void attach(TextField field, DatabaseHelper dbHelper) {
+        new AccountTypeahead(field, dbHelper);
+    }
+
+    private AccountTypeahead(TextField field, DatabaseHelper dbHelper) {
+        this.field = field;
+        this.dbHelper = dbHelper;
+
+        // Search only once typing pauses, not on every keystroke
+        pause.setOnFinished(event -> showSuggestions());
+        field.textProperty().addListener((observable, oldText, newText) -> pause.playFromStart());
+        field.focusedProperty().addListener((observable, wasFocused, focused) -> {
+            if (!focused) {
+                pause.stop();
+                latestQuery++;
+                suggestions.hide();
+            }
+        });
+    }
+
+    private void showSuggestions() {
+        String text = field.getText().trim();
+        long query = ++latestQuery;
+        if (!field.isFocused() || !containsLetter(text)) {
+            suggestions.hide();
+            return;
+        }
+
+        searcher.execute(() -> {
+            List<OwnerNameIndex.Match> matches = dbHelper.searchOwners(text, MAX_SUGGESTIONS);
+            Platform.runLater(() -> {
+                if (query == latestQuery && field.isFocused()) {
+                    showMatches(matches);
+                }
+            });
+        });
+    }
+
+    private void showMatches(List<OwnerNameIndex.Match> matches) {
+        if (matches.isEmpty()) {
+            suggestions.hide();
+            return;
+        }
+
+        suggestions.getItems().clear();
+        for (OwnerNameIndex.Match match : matches) {
+            MenuItem item = new MenuItem(match.toString());
+            item.setOnAction(event -> {
+                field.setText(String.valueOf(match.getAccountNumber()));
+                field.positionCaret(field.getText().length());
+            });
+            suggestions.getItems().add(item);
+        }
+
+        if (!suggestions.isShowing()) {
+            suggestions.show(field, Side.BOTTOM, 0, 0);
+        }
+    }
+
+    private static boolean containsLetter(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isLetter(text.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,220 @@
+package com.khorshed.mybank.mybankapp.controllers;
+
+import com.khorshed.mybank.mybankapp.Main;
+import com.khorshed.mybank.mybankapp.database.DatabaseHelper;
+import com.khorshed.mybank.mybankapp.database.EventLog;
+import com.khorshed.mybank.mybankapp.services.BulkAccountImporter;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.fxml.FXML;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.TextField;
+import javafx.stage.FileChooser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bulk Import Controller
+ * Handles importing many accounts from a CSV file
+ */
+public class BulkImportController {
+
+    // Only the most recent rejects are kept on screen
+    private static final int MAX_REJECTS_SHOWN = 500;
+
+    @FXML
+    private TextField filePathField;
+
+    @FXML
+    private ProgressBar progressBar;
+
+    @FXML
+    private Label progressLabel;
+
+    @FXML
+    private ListView<String> rejectList;
+
+    @FXML
+    private Label messageLabel;
+
+    @FXML
+    private Button importButton;
+
+    private File selectedFile;
+    private ObservableList<String> rejects;
+
+    /**
+     * Initializes the controller
+     */
+    @FXML
+    public void initialize() {
+        rejects = FXCollections.observableArrayList();
+        rejectList.setItems(rejects);
+    }
+
+    /**
+     * Opens a file chooser for the CSV file
+     */
+    @FXML
+    private void chooseFile() {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Choose Account CSV File");
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV Files", "*.csv", "*.txt"));
+
+        File file = chooser.showOpenDialog(filePathField.getScene().getWindow());
+        if (file != null) {
+            selectedFile = file;
+            filePathField.setText(file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Starts the import on a background thread
+     */
+    @FXML
+    private void startImport() {
+        messageLabel.setText("");
+        messageLabel.setStyle("-fx-text-fill: black;");
+
+        if (selectedFile == null) {
+            showError("Please choose a CSV file!");
+            return;
+        }
+
+        long fileSize;
+        try {
+            fileSize = Math.max(1, Files.size(selectedFile.toPath()));
+        } catch (IOException e) {
+            showError("Cannot read file: " + e.getMessage());
+            return;
+        }
+
+        rejects.clear();
+        progressBar.setProgress(ProgressBar.INDETERMINATE_PROGRESS);
+        progressLabel.setText("Importing...");
+        importButton.setDisable(true);
+
+        File file = selectedFile;
+        Thread importThread = new Thread(() -> {
+            DatabaseHelper dbHelper = new DatabaseHelper();
+            BulkAccountImporter importer = new BulkAccountImporter(dbHelper);
+            long start = System.nanoTime();
+
+            try {
+                long imported = importer.importFile(file.toPath(), new ImportListener(fileSize));
+                double seconds = (System.nanoTime() - start) / 1e9;
+
+                Platform.runLater(() -> {
+                    progressBar.setProgress(1.0);
+                    showSuccess("Import finished: " + imported + " account(s) created in " +
+                            String.format("%.1f", seconds) + " s.");
+                });
+            } catch (IOException e) {
+                Platform.runLater(() -> showError("Import failed: " + e.getMessage()));
+            } finally {
+                dbHelper.closeConnection();
+                Platform.runLater(() -> importButton.setDisable(false));
+            }
+        }, "account-import");
+        importThread.setDaemon(true);
+        importThread.start();
+    }
+
+    /**
+     * Returns to dashboard
+     */
+    @FXML
+    private void backToDashboard() {
+        try {
+            Main.changeScene("Dashboard.fxml");
+        } catch (Exception e) {
+            EventLog.error("Error returning to dashboard", e);
+        }
+    }
+
+    /**
+     * Displays error message
+     */
+    private void showError(String message) {
+        messageLabel.setText(message);
+        messageLabel.setStyle("-fx-text-fill: #d32f2f; -fx-font-weight: bold;");
+    }
+
+    /**
+     * Displays success message
+     */
+    private void showSuccess(String message) {
+        messageLabel.setText(message);
+        messageLabel.setStyle("-fx-text-fill: #2e7d32; -fx-font-weight: bold;");
+    }
+
+    /**
+     * Forwards importer callbacks to the JavaFX thread
+     *
+     * Rejects land in a ring of the last MAX_REJECTS_SHOWN entries on the
+     * worker threads, and at most one Platform.runLater is pending to copy
+     * them into the list, so a file full of bad lines costs one UI update
+     * per pulse rather than one per line.
+     */
+    private class ImportListener implements BulkAccountImporter.Listener {
+        private final long fileSize;
+        private final String[] ring = new String[MAX_REJECTS_SHOWN];
+        private final AtomicBoolean drainScheduled = new AtomicBoolean();
+        private long written;
+        private long shown;
+
+        private ImportListener(long fileSize) {
+            this.fileSize = fileSize;
+        }
+
+        @Override
+        public void onProgress(long bytesRead, long linesRead, long imported, long rejected) {
+            double progress = Math.min(1.0, (double) bytesRead / fileSize);
+            Platform.runLater(() -> {
+                progressBar.setProgress(progress);
+                progressLabel.setText("Lines: " + linesRead + " | Imported: " + imported + " | Rejected: " + rejected);
+            });
+        }
+
+        @Override
+        public void onReject(long lineNumber, String line, String reason) {
+            String entry = "Line " + lineNumber + ": " + reason + " [" + line + "]";
+            synchronized (ring) {
+                ring[(int) (written % MAX_REJECTS_SHOWN)] = entry;
+                written++;
+            }
+            if (drainScheduled.compareAndSet(false, true)) {
+                Platform.runLater(this::drain);
+            }
+        }
+
+        /**
+         * Runs on the JavaFX thread; moves new rejects from the ring into the list
+         */
+        private void drain() {
+            drainScheduled.set(false);
+
+            String[] batch;
+            synchronized (ring) {
+                long from = Math.max(shown, written - MAX_REJECTS_SHOWN);
+                batch = new String[(int) (written - from)];
+                for (int i = 0; i < batch.length; i++) {
+                    batch[i] = ring[(int) ((from + i) % MAX_REJECTS_SHOWN)];
+                }
+                shown = written;
+            }
+
+            rejects.addAll(batch);
+            if (rejects.size() > MAX_REJECTS_SHOWN) {
+                rejects.remove(0, rejects.size() - MAX_REJECTS_SHOWN);
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.khorshed.mybank.mybankapp.controllers;
+
+import com.khorshed.mybank.mybankapp.Main;
+import com.khorshed.mybank.mybankapp.database.DatabaseHelper;
+import com.khorshed.mybank.mybankapp.database.EventLog;
+import com.khorshed.mybank.mybankapp.models.PayoutLeg;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.fxml.FXML;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.stage.FileChooser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bulk Payout Controller
+ * Handles paying many accounts from one source account, e.g. payroll
+ */
+public class BulkPayoutController {
+
+    // Only the first problems are kept on screen
+    private static final int MAX_PROBLEMS_SHOWN = 500;
+
+    @FXML
+    private TextField sourceAccountField;
+
+    @FXML
+    private TextField filePathField;
+
+    @FXML
+    private Label summaryLabel;
+
+    @FXML
+    private ListView<String> problemList;
+
+    @FXML
+    private Label messageLabel;
+
+    @FXML
+    private Button payoutButton;
+
+    private DatabaseHelper dbHelper;
+    private File selectedFile;
+    private ObservableList<String> problems;
+
+    /**
+     * Initializes the controller
+     */
+    @FXML
+    public void initialize() {
+        dbHelper = new DatabaseHelper();
+        AccountTypeahead.attach(sourceAccountField, dbHelper);
+        problems = FXCollections.observableArrayList();
+        problemList.setItems(problems);
+    }
+
+    /**
+     * Opens a file chooser for the payout CSV file
+     */
+    @FXML
+    private void chooseFile() {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Choose Payout CSV File");
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV Files", "*.csv", "*.txt"));
+
+        File file = chooser.showOpenDialog(filePathField.getScene().getWindow());
+        if (file != null) {
+            selectedFile = file;
+            filePathField.setText(file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Reads the payout file and posts it on a background thread
+     */
+    @FXML
+    private void runPayout() {
+        messageLabel.setText("");
+        messageLabel.setStyle("-fx-text-fill: black;");
+
+        int sourceAccount;
+        try {
+            sourceAccount = Integer.parseInt(sourceAccountField.getText().trim());
+        } catch (NumberFormatException e) {
+            showError("Please enter a valid source account number!");
+            return;
+        }
+
+        if (!dbHelper.accountExists(sourceAccount)) {
+            showError("Source account not found!");
+            return;
+        }
+
+        if (selectedFile == null) {
+            showError("Please choose a CSV file!");
+            return;
+        }
+
+        problems.clear();
+        summaryLabel.setText("Paying out...");
+        payoutButton.setDisable(true);
+
+        File file = selectedFile;
+        Thread payoutThread = new Thread(() -> {
+            DatabaseHelper payoutHelper = new DatabaseHelper();
+            List<String> found = new ArrayList<>();
+            try {
+                List<PayoutLeg> legs = readLegs(file, found);
+                if (!found.isEmpty()) {
+                    // A file with unreadable lines is not paid at all, so no leg goes missing unnoticed
+                    int malformed = found.size();
+                    List<String> shown = new ArrayList<>(found.subList(0, Math.min(malformed, MAX_PROBLEMS_SHOWN)));
+                    Platform.runLater(() -> {
+                        summaryLabel.setText("Legs read: " + legs.size() + " | Malformed lines: " + malformed);
+                        problems.setAll(shown);
+                        showError("The file has " + malformed + " malformed line(s). Nothing was paid.");
+                    });
+                    return;
+                }
+
+                long start = System.nanoTime();
+                int paid = payoutHelper.bulkPayout(sourceAccount, legs);
+                double seconds = (System.nanoTime() - start) / 1e9;
+
+                double paidTotal = 0;
+                boolean insufficient = false;
+                for (int i = 0; i < legs.size(); i++) {
+                    PayoutLeg leg = legs.get(i);
+                    if (leg.getStatus() == PayoutLeg.Status.PAID) {
+                        paidTotal += leg.getAmount();
+                        continue;
+                    }
+                    insufficient |= leg.getStatus() == PayoutLeg.Status.INSUFFICIENT_FUNDS;
+                    if (found.size() < MAX_PROBLEMS_SHOWN) {
+                        found.add("Leg " + (i + 1) + ": A/C " + leg.getDestinationAccount() + " $" +
+                                String.format("%.2f", leg.getAmount()) + " - " + leg.getStatus());
+                    }
+                }
+
+                String summary = "Legs: " + legs.size() + " | Paid: " + Math.max(0, paid) +
+                        " | Total paid: $" + String.format("%.2f", paidTotal) +
+                        " | " + String.format("%.2f", seconds) + " s";
+                double newBalance = payoutHelper.getBalance(sourceAccount);
+                boolean underfunded = insufficient;
+                Platform.runLater(() -> {
+                    summaryLabel.setText(summary);
+                    problems.setAll(found);
+                    if (paid < 0) {
+                        showError("Payout failed. No legs were paid.");
+                    } else if (paid == 0 && underfunded) {
+                        showError("Insufficient balance for the payout total!\nCurrent Balance: $" +
+                                String.format("%.2f", newBalance));
+                    } else {
+                        showSuccess("Payout finished.\nSource's New Balance: $" +
+                                String.format("%.2f", newBalance));
+                    }
+                });
+            } catch (IOException e) {
+                Platform.runLater(() -> showError("Cannot read file: " + e.getMessage()));
+            } finally {
+                payoutHelper.closeConnection();
+                Platform.runLater(() -> payoutButton.setDisable(false));
+            }
+        }, "bulk-payout");
+        payoutThread.setDaemon(true);
+        payoutThread.start();
+    }
+
+    /**
+     * Reads destinationAccount,amount lines; a non-numeric first line is taken as a header
+     * Every other line that cannot be read is added to problems.
+     */
+    private static List<PayoutLeg> readLegs(File file, List<String> problems) throws IOException {
+        List<PayoutLeg> legs = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+
+                String[] fields = line.split(",");
+                try {
+                    if (fields.length != 2) {
+                        throw new NumberFormatException();
+                    }
+                    legs.add(new PayoutLeg(Integer.parseInt(fields[0].trim()), Double.parseDouble(fields[1].trim())));
+                } catch (NumberFormatException e) {
+                    if (lineNumber > 1) {
+                        problems.add("Line " + lineNumber + ": expected account,amount [" + line + "]");
+                    }
+                }
+            }
+        }
+        return legs;
+    }
+
+    /**
+     * Returns to dashboard
+     */
+    @FXML
+    private void backToDashboard() {
+        try {
+            Main.changeScene("Dashboard.fxml");
+        } catch (Exception e) {
+            EventLog.error("Error returning to dashboard", e);
+        }
+    }
+
+    /**
+     * Displays error message
+     */
+    private void showError(String message) {
+        messageLabel.setText(message);
+        messageLabel.setStyle("-fx-text-fill: #d32f2f; -fx-font-weight: bold;");
+    }
+
+    /**
+     * Displays success message
+     */
+    private void showSuccess(String message) {
+        messageLabel.setText(message);
+        messageLabel.setStyle("-fx-text-fill: #2e7d32; -fx-font-weight: bold;");
+    }
+}
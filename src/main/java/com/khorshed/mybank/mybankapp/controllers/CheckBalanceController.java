@@ -2,6 +2,7 @@ package com.khorshed.mybank.mybankapp.controllers;
 
 import com.khorshed.mybank.mybankapp.Main;
 import com.khorshed.mybank.mybankapp.database.DatabaseHelper;
+import com.khorshed.mybank.mybankapp.database.EventLog;
 import javafx.fxml.FXML;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
@@ -32,6 +33,7 @@ public class CheckBalanceController {
     @FXML
     public void initialize() {
         dbHelper = new DatabaseHelper();
+        AccountTypeahead.attach(accountNumberField, dbHelper);
         ownerNameLabel.setText("");
         balanceLabel.setText("");
     }
@@ -84,7 +86,7 @@ public class CheckBalanceController {
             showError("Invalid input! Please enter a valid account number.");
         } catch (Exception e) {
             showError("Error: " + e.getMessage());
-            e.printStackTrace();
+            EventLog.error("Error checking balance", e);
         }
     }
 
@@ -96,8 +98,7 @@ public class CheckBalanceController {
         try {
             Main.changeScene("Dashboard.fxml");
         } catch (Exception e) {
-            System.err.println("Error returning to dashboard: " + e.getMessage());
-            e.printStackTrace();
+            EventLog.error("Error returning to dashboard", e);
         }
     }
 
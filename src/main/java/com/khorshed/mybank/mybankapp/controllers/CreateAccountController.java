@@ -2,7 +2,9 @@ package com.khorshed.mybank.mybankapp.controllers;
 
 import com.khorshed.mybank.mybankapp.Main;
 import com.khorshed.mybank.mybankapp.database.DatabaseHelper;
+import com.khorshed.mybank.mybankapp.database.EventLog;
 import javafx.fxml.FXML;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
 
@@ -15,6 +17,9 @@ public class CreateAccountController {
     @FXML
     private TextField accountNumberField;
 
+    @FXML
+    private CheckBox autoAssignCheckBox;
+
     @FXML
     private TextField ownerNameField;
 
@@ -34,6 +39,18 @@ public class CreateAccountController {
         dbHelper = new DatabaseHelper();
     }
 
+    /**
+     * Enables or disables manual account number entry
+     */
+    @FXML
+    private void toggleAutoAssign() {
+        boolean autoAssign = autoAssignCheckBox.isSelected();
+        accountNumberField.setDisable(autoAssign);
+        if (autoAssign) {
+            accountNumberField.clear();
+        }
+    }
+
     /**
      * Creates a new account
      */
@@ -44,8 +61,10 @@ public class CreateAccountController {
         messageLabel.setStyle("-fx-text-fill: black;");
 
         try {
+            boolean autoAssign = autoAssignCheckBox.isSelected();
+
             // Validate inputs
-            if (accountNumberField.getText().trim().isEmpty()) {
+            if (!autoAssign && accountNumberField.getText().trim().isEmpty()) {
                 showError("Please enter account number!");
                 return;
             }
@@ -61,29 +80,39 @@ public class CreateAccountController {
             }
 
             // Parse values
-            int accountNumber = Integer.parseInt(accountNumberField.getText().trim());
             String ownerName = ownerNameField.getText().trim();
             double initialDeposit = Double.parseDouble(initialDepositField.getText().trim());
 
-            // Validate values
-            if (accountNumber <= 0) {
-                showError("Account number must be positive!");
-                return;
-            }
-
             if (initialDeposit < 0) {
                 showError("Initial deposit cannot be negative!");
                 return;
             }
 
-            // Check if account already exists
-            if (dbHelper.accountExists(accountNumber)) {
-                showError("Account number already exists!");
-                return;
-            }
+            int accountNumber;
+            boolean success;
 
-            // Create account
-            boolean success = dbHelper.createAccount(accountNumber, ownerName, initialDeposit);
+            if (autoAssign) {
+                // Allocated numbers never collide, so no existence check is needed
+                accountNumber = dbHelper.createAccountWithNextNumber(ownerName, initialDeposit);
+                success = accountNumber > 0;
+            } else {
+                accountNumber = Integer.parseInt(accountNumberField.getText().trim());
+
+                // Validate values
+                if (accountNumber <= 0) {
+                    showError("Account number must be positive!");
+                    return;
+                }
+
+                // Check if account already exists
+                if (dbHelper.accountExists(accountNumber)) {
+                    showError("Account number already exists!");
+                    return;
+                }
+
+                // Create account
+                success = dbHelper.createAccount(accountNumber, ownerName, initialDeposit);
+            }
 
             if (success) {
                 showSuccess("Account created successfully!\nAccount Number: " + accountNumber +
@@ -98,7 +127,7 @@ public class CreateAccountController {
             showError("Invalid input! Please enter valid numbers.");
         } catch (Exception e) {
             showError("Error: " + e.getMessage());
-            e.printStackTrace();
+            EventLog.error("Error creating account", e);
         }
     }
 
@@ -110,8 +139,7 @@ public class CreateAccountController {
         try {
             Main.changeScene("Dashboard.fxml");
         } catch (Exception e) {
-            System.err.println("Error returning to dashboard: " + e.getMessage());
-            e.printStackTrace();
+            EventLog.error("Error returning to dashboard", e);
         }
     }
 
@@ -1,8 +1,10 @@
 package com.khorshed.mybank.mybankapp.controllers;
 
 import com.khorshed.mybank.mybankapp.Main;
+import com.khorshed.mybank.mybankapp.database.EventLog;
 import javafx.fxml.FXML;
 import javafx.application.Platform;
+import javafx.scene.control.ListView;
 
 /**
  * Dashboard Controller
@@ -10,6 +12,17 @@ import javafx.application.Platform;
  */
 public class DashboardController {
 
+    @FXML
+    private ListView<String> liveFeedList;
+
+    /**
+     * Initializes the controller
+     */
+    @FXML
+    public void initialize() {
+        LiveFeed.attach(liveFeedList);
+    }
+
     /**
      * Opens Create Account page
      */
@@ -18,8 +31,7 @@ public class DashboardController {
         try {
             Main.changeScene("CreateAccount.fxml");
         } catch (Exception e) {
-            System.err.println("Error opening Create Account: " + e.getMessage());
-            e.printStackTrace();
+            EventLog.error("Error opening Create Account", e);
         }
     }
 
@@ -31,8 +43,7 @@ public class DashboardController {
         try {
             Main.changeScene("Deposit.fxml");
         } catch (Exception e) {
-            System.err.println("Error opening Deposit: " + e.getMessage());
-            e.printStackTrace();
+            EventLog.error("Error opening Deposit", e);
         }
     }
 
@@ -44,8 +55,7 @@ public class DashboardController {
         try {
             Main.changeScene("Withdraw.fxml");
         } catch (Exception e) {
-            System.err.println("Error opening Withdraw: " + e.getMessage());
-            e.printStackTrace();
+            EventLog.error("Error opening Withdraw", e);
         }
     }
 
@@ -57,8 +67,7 @@ public class DashboardController {
         try {
             Main.changeScene("Transfer.fxml");
         } catch (Exception e) {
-            System.err.println("Error opening Transfer: " + e.getMessage());
-            e.printStackTrace();
+            EventLog.error("Error opening Transfer", e);
         }
     }
 
@@ -70,8 +79,7 @@ public class DashboardController {
         try {
             Main.changeScene("CheckBalance.fxml");
         } catch (Exception e) {
-            System.err.println("Error opening Check Balance: " + e.getMessage());
-            e.printStackTrace();
+            EventLog.error("Error opening Check Balance", e);
         }
     }
 
@@ -83,8 +91,43 @@ public class DashboardController {
         try {
             Main.changeScene("TransactionHistory.fxml");
         } catch (Exception e) {
-            System.err.println("Error opening Transaction History: " + e.getMessage());
-            e.printStackTrace();
+            EventLog.error("Error opening Transaction History", e);
+        }
+    }
+
+    /**
+     * Opens Bulk Account Import page
+     */
+    @FXML
+    private void openBulkImport() {
+        try {
+            Main.changeScene("BulkImport.fxml");
+        } catch (Exception e) {
+            EventLog.error("Error opening Bulk Import", e);
+        }
+    }
+
+    /**
+     * Opens Operations page
+     */
+    @FXML
+    private void openOperations() {
+        try {
+            Main.changeScene("Operations.fxml");
+        } catch (Exception e) {
+            EventLog.error("Error opening Operations", e);
+        }
+    }
+
+    /**
+     * Opens Bulk Payout page
+     */
+    @FXML
+    private void openBulkPayout() {
+        try {
+            Main.changeScene("BulkPayout.fxml");
+        } catch (Exception e) {
+            EventLog.error("Error opening Bulk Payout", e);
         }
     }
 
@@ -2,6 +2,7 @@ package com.khorshed.mybank.mybankapp.controllers;
 
 import com.khorshed.mybank.mybankapp.Main;
 import com.khorshed.mybank.mybankapp.database.DatabaseHelper;
+import com.khorshed.mybank.mybankapp.database.EventLog;
 import javafx.fxml.FXML;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
@@ -29,6 +30,7 @@ public class DepositController {
     @FXML
     public void initialize() {
         dbHelper = new DatabaseHelper();
+        AccountTypeahead.attach(accountNumberField, dbHelper);
     }
 
     /**
@@ -92,7 +94,7 @@ public class DepositController {
             showError("Invalid input! Please enter valid numbers.");
         } catch (Exception e) {
             showError("Error: " + e.getMessage());
-            e.printStackTrace();
+            EventLog.error("Error depositing money", e);
         }
     }
 
@@ -104,8 +106,7 @@ public class DepositController {
         try {
             Main.changeScene("Dashboard.fxml");
         } catch (Exception e) {
-            System.err.println("Error returning to dashboard: " + e.getMessage());
-            e.printStackTrace();
+            EventLog.error("Error returning to dashboard", e);
         }
     }
 
@@ -0,0 +1,116 @@
+package com.khorshed.mybank.mybankapp.controllers;
+
+import com.khorshed.mybank.mybankapp.database.PostingEventBus;
+import com.khorshed.mybank.mybankapp.models.PostingEvent;
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+import javafx.scene.control.ListView;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Live Feed
+ * Shows committed postings in a list as they happen
+ *
+ * Postings land in a fixed-size ring buffer on the posting thread. At most
+ * one Platform.runLater is pending at a time; it copies whatever arrived
+ * since the last pulse into the list, so a burst of postings costs one UI
+ * update and old entries are simply overwritten.
+ */
+public class LiveFeed {
+
+    private static final int CAPACITY = 100;
+    private static final DateTimeFormatter TIME_FORMATTER =
+            DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final ObservableList<String> items;
+    private final PostingEvent[] ring = new PostingEvent[CAPACITY];
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final Consumer<PostingEvent> subscriber = this::onPosting;
+    private long written;
+    private long shown;
+
+    /**
+     * Starts feeding postings into a list view
+     * The feed unsubscribes itself when the view's window is replaced or closed
+     * @param view The list that shows the newest postings first
+     */
+    public static void attach(ListView<String> view) {
+        LiveFeed feed = new LiveFeed(view.getItems());
+        PostingEventBus.subscribe(feed.subscriber);
+
+        view.sceneProperty().addListener((observable, oldScene, scene) -> {
+            if (scene == null) {
+                PostingEventBus.unsubscribe(feed.subscriber);
+                return;
+            }
+            scene.windowProperty().addListener((windowObservable, oldWindow, window) -> {
+                if (window == null) {
+                    PostingEventBus.unsubscribe(feed.subscriber);
+                }
+            });
+        });
+    }
+
+    private LiveFeed(ObservableList<String> items) {
+        this.items = items;
+    }
+
+    /**
+     * Called on the posting thread; only stores the event
+     */
+    private void onPosting(PostingEvent event) {
+        synchronized (ring) {
+            ring[(int) (written % CAPACITY)] = event;
+            written++;
+        }
+        if (drainScheduled.compareAndSet(false, true)) {
+            Platform.runLater(this::drain);
+        }
+    }
+
+    /**
+     * Runs on the JavaFX thread; moves new events from the ring into the list
+     */
+    private void drain() {
+        drainScheduled.set(false);
+
+        PostingEvent[] batch;
+        synchronized (ring) {
+            long from = Math.max(shown, written - CAPACITY);
+            batch = new PostingEvent[(int) (written - from)];
+            for (int i = 0; i < batch.length; i++) {
+                batch[i] = ring[(int) ((from + i) % CAPACITY)];
+            }
+            shown = written;
+        }
+
+        String[] lines = new String[batch.length];
+        StringBuilder line = new StringBuilder(64);
+        for (int i = 0; i < batch.length; i++) {
+            // Newest first
+            lines[batch.length - 1 - i] = format(batch[i], line);
+        }
+
+        items.addAll(0, Arrays.asList(lines));
+        if (items.size() > CAPACITY) {
+            items.remove(CAPACITY, items.size());
+        }
+    }
+
+    private static String format(PostingEvent event, StringBuilder line) {
+        line.setLength(0);
+        TIME_FORMATTER.formatTo(Instant.ofEpochMilli(event.getTimestamp()), line);
+        line.append("  ").append(event.getType()).append("  #").append(event.getAccountNumber());
+        if (event.getCounterAccount() != 0) {
+            line.append(" -> #").append(event.getCounterAccount());
+        }
+        line.append("  $").append(String.format("%.2f", event.getAmount()));
+        return line.toString();
+    }
+}
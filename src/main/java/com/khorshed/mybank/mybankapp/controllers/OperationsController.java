@@ -0,0 +1,534 @@
+package com.khorshed.mybank.mybankapp.controllers;
+
+import com.khorshed.mybank.mybankapp.Main;
+import com.khorshed.mybank.mybankapp.database.DatabaseHelper;
+import com.khorshed.mybank.mybankapp.database.EventLog;
+import com.khorshed.mybank.mybankapp.database.OptimisticRetry;
+import com.khorshed.mybank.mybankapp.database.QueryProfiler;
+import com.khorshed.mybank.mybankapp.database.TransactionArchive;
+import com.khorshed.mybank.mybankapp.database.VelocityLimiter;
+import com.khorshed.mybank.mybankapp.models.StandingOrder;
+import com.khorshed.mybank.mybankapp.services.BalanceReconciliation;
+import com.khorshed.mybank.mybankapp.services.EndOfDayBatch;
+import com.khorshed.mybank.mybankapp.services.OnlineBackup;
+import com.khorshed.mybank.mybankapp.services.PostingFileIngester;
+import com.khorshed.mybank.mybankapp.services.StandingOrderScheduler;
+import javafx.application.Platform;
+import javafx.fxml.FXML;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.stage.FileChooser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Operations Controller
+ * Handles back-office jobs such as the end-of-day batch
+ */
+public class OperationsController {
+
+    private static final int SLOW_QUERIES_SHOWN = 20;
+    private static final int DEFAULT_RETENTION_MONTHS = 12;
+    // Only the first discrepancies or rejected lines are kept on screen
+    private static final int MAX_LINES_SHOWN = 500;
+
+    @FXML
+    private TextField runIdField;
+
+    @FXML
+    private TextField interestRateField;
+
+    @FXML
+    private TextField monthlyFeeField;
+
+    @FXML
+    private Label batchProgressLabel;
+
+    @FXML
+    private TextField archiveCutoffField;
+
+    @FXML
+    private Label archiveProgressLabel;
+
+    @FXML
+    private Button runArchiveButton;
+
+    @FXML
+    private Label reconcileProgressLabel;
+
+    @FXML
+    private ListView<String> discrepancyList;
+
+    @FXML
+    private Button runReconcileButton;
+
+    @FXML
+    private TextField postingFileField;
+
+    @FXML
+    private Label ingestProgressLabel;
+
+    @FXML
+    private ListView<String> ingestRejectList;
+
+    @FXML
+    private Button runIngestButton;
+
+    @FXML
+    private Label backupScheduleLabel;
+
+    @FXML
+    private Label backupProgressLabel;
+
+    @FXML
+    private ListView<String> backupList;
+
+    @FXML
+    private Button runBackupButton;
+
+    @FXML
+    private TextField standingOrderAccountField;
+
+    @FXML
+    private Label standingOrderStatusLabel;
+
+    @FXML
+    private ListView<String> standingOrderList;
+
+    @FXML
+    private Label slowQueryThresholdLabel;
+
+    @FXML
+    private ListView<String> slowQueryList;
+
+    @FXML
+    private Label writeConflictLabel;
+
+    @FXML
+    private Label velocityLimitLabel;
+
+    @FXML
+    private Label messageLabel;
+
+    @FXML
+    private Button runBatchButton;
+
+    private File postingFile;
+
+    // Orders behind the rows of standingOrderList, in the same order
+    private final List<StandingOrder> shownOrders = new ArrayList<>();
+
+    /**
+     * Initializes the controller
+     */
+    @FXML
+    public void initialize() {
+        runIdField.setText(LocalDate.now().toString());
+        int retentionMonths = Integer.getInteger("mybank.archive.retentionMonths", DEFAULT_RETENTION_MONTHS);
+        archiveCutoffField.setText(LocalDate.now().withDayOfMonth(1).minusMonths(retentionMonths).toString());
+        refreshBackups();
+        refreshSlowQueries();
+    }
+
+    /**
+     * Starts the end-of-day batch on a background thread
+     */
+    @FXML
+    private void runEndOfDayBatch() {
+        messageLabel.setText("");
+        messageLabel.setStyle("-fx-text-fill: black;");
+
+        String runId = runIdField.getText().trim();
+        if (runId.isEmpty()) {
+            showError("Please enter a run ID!");
+            return;
+        }
+
+        double ratePercent;
+        double monthlyFee;
+        try {
+            ratePercent = Double.parseDouble(interestRateField.getText().trim());
+            String feeText = monthlyFeeField.getText().trim();
+            monthlyFee = feeText.isEmpty() ? 0 : Double.parseDouble(feeText);
+        } catch (NumberFormatException e) {
+            showError("Please enter valid numbers for rate and fee!");
+            return;
+        }
+
+        if (ratePercent < 0 || monthlyFee < 0) {
+            showError("Rate and fee cannot be negative!");
+            return;
+        }
+
+        runBatchButton.setDisable(true);
+        batchProgressLabel.setText("Running...");
+
+        EndOfDayBatch batch = new EndOfDayBatch(runId, ratePercent / 100.0, monthlyFee);
+        Thread batchThread = new Thread(() -> {
+            try {
+                long processed = batch.run((accounts, postings, perSecond) -> Platform.runLater(() ->
+                        batchProgressLabel.setText("Accounts: " + accounts + " | Postings: " + postings +
+                                " | " + String.format("%.0f", perSecond) + " accounts/s")));
+
+                String feeNote = monthlyFee > 0 && !batch.isMonthEnd() ? " No fee charged: not a month-end date." : "";
+                Platform.runLater(() -> showSuccess("Batch " + runId + " finished: " + processed +
+                        " account(s) processed." + feeNote));
+            } catch (SQLException | IllegalStateException e) {
+                Platform.runLater(() -> showError("Batch failed: " + e.getMessage()));
+            } finally {
+                Platform.runLater(() -> runBatchButton.setDisable(false));
+            }
+        }, "end-of-day-batch");
+        batchThread.setDaemon(true);
+        batchThread.start();
+    }
+
+    /**
+     * Moves transactions older than the cutoff to the archive on a background thread
+     */
+    @FXML
+    private void runArchive() {
+        messageLabel.setText("");
+        messageLabel.setStyle("-fx-text-fill: black;");
+
+        LocalDate cutoff;
+        try {
+            cutoff = LocalDate.parse(archiveCutoffField.getText().trim());
+        } catch (DateTimeParseException e) {
+            showError("Please enter the cutoff as YYYY-MM-DD!");
+            return;
+        }
+
+        if (cutoff.isAfter(LocalDate.now())) {
+            showError("Cutoff cannot be in the future!");
+            return;
+        }
+
+        runArchiveButton.setDisable(true);
+        archiveProgressLabel.setText("Archiving...");
+
+        Thread archiveThread = new Thread(() -> {
+            long start = System.nanoTime();
+            try {
+                long archived = TransactionArchive.getInstance().archive(cutoff, (month, rows, segments) ->
+                        Platform.runLater(() -> archiveProgressLabel.setText("Month: " + month + " | Rows: " + rows +
+                                " | Segments: " + segments)));
+                double seconds = (System.nanoTime() - start) / 1e9;
+
+                Platform.runLater(() -> showSuccess("Archived " + archived + " transaction(s) dated before " +
+                        cutoff + " in " + String.format("%.1f", seconds) + " s."));
+            } catch (SQLException | IllegalStateException e) {
+                Platform.runLater(() -> showError("Archival failed: " + e.getMessage()));
+            } finally {
+                Platform.runLater(() -> runArchiveButton.setDisable(false));
+            }
+        }, "transaction-archive");
+        archiveThread.setDaemon(true);
+        archiveThread.start();
+    }
+
+    /**
+     * Checks every balance against its transactions on a background thread
+     */
+    @FXML
+    private void runReconciliation() {
+        messageLabel.setText("");
+        messageLabel.setStyle("-fx-text-fill: black;");
+
+        runReconcileButton.setDisable(true);
+        discrepancyList.getItems().clear();
+        reconcileProgressLabel.setText("Reconciling...");
+
+        BalanceReconciliation reconciliation = new BalanceReconciliation();
+        Thread reconcileThread = new Thread(() -> {
+            try {
+                long checked = reconciliation.run(new BalanceReconciliation.Listener() {
+                    @Override
+                    public void onProgress(long accounts, long rows, double perSecond) {
+                        Platform.runLater(() -> reconcileProgressLabel.setText("Accounts: " + accounts +
+                                " | New rows: " + rows + " | " + String.format("%.0f", perSecond) + " accounts/s"));
+                    }
+
+                    @Override
+                    public void onDiscrepancy(BalanceReconciliation.Discrepancy discrepancy) {
+                        String line = discrepancy.toString();
+                        Platform.runLater(() -> {
+                            if (discrepancyList.getItems().size() < MAX_LINES_SHOWN) {
+                                discrepancyList.getItems().add(line);
+                            }
+                        });
+                    }
+                });
+
+                int found = reconciliation.getDiscrepancies().size();
+                Platform.runLater(() -> {
+                    if (found == 0) {
+                        showSuccess("Reconciled " + checked + " account(s). No discrepancies.");
+                    } else {
+                        showError("Reconciled " + checked + " account(s). " + found + " discrepancy(ies) found!");
+                    }
+                });
+            } catch (SQLException | IllegalStateException e) {
+                int found = reconciliation.getDiscrepancies().size();
+                Platform.runLater(() -> showError("Reconciliation failed: " + e.getMessage() +
+                        (found > 0 ? ". " + found + " discrepancy(ies) found in the ranges that were checked." : "")));
+            } finally {
+                Platform.runLater(() -> runReconcileButton.setDisable(false));
+            }
+        }, "balance-reconciliation");
+        reconcileThread.setDaemon(true);
+        reconcileThread.start();
+    }
+
+    /**
+     * Opens a file chooser for the posting file
+     */
+    @FXML
+    private void choosePostingFile() {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Choose Posting File");
+        chooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Posting Files", "*.csv", "*.txt", "*.dat"),
+                new FileChooser.ExtensionFilter("All Files", "*.*"));
+
+        File file = chooser.showOpenDialog(postingFileField.getScene().getWindow());
+        if (file != null) {
+            postingFile = file;
+            postingFileField.setText(file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Posts the chosen file through the ingestion pipeline on a background thread
+     * A file whose earlier run failed resumes after its last committed batch
+     */
+    @FXML
+    private void runPostingFile() {
+        messageLabel.setText("");
+        messageLabel.setStyle("-fx-text-fill: black;");
+
+        if (postingFile == null) {
+            showError("Please choose a posting file!");
+            return;
+        }
+
+        runIngestButton.setDisable(true);
+        ingestRejectList.getItems().clear();
+        ingestProgressLabel.setText("Posting...");
+
+        File file = postingFile;
+        Thread ingestThread = new Thread(() -> {
+            DatabaseHelper ingestHelper = new DatabaseHelper();
+            try {
+                long posted = new PostingFileIngester(ingestHelper).ingest(file.toPath(),
+                        new PostingFileIngester.Listener() {
+                            @Override
+                            public void onProgress(PostingFileIngester.StageMetrics parser,
+                                                   PostingFileIngester.StageMetrics validator,
+                                                   PostingFileIngester.StageMetrics committer,
+                                                   long postedSoFar, long rejected) {
+                                String text = parser + "\n" + validator + "\n" + committer +
+                                        "\nPosted: " + postedSoFar + " | Rejected: " + rejected;
+                                Platform.runLater(() -> ingestProgressLabel.setText(text));
+                            }
+
+                            @Override
+                            public void onReject(long lineNumber, String line, String reason) {
+                                String text = "Line " + lineNumber + ": " + reason + " [" + line + "]";
+                                Platform.runLater(() -> {
+                                    if (ingestRejectList.getItems().size() < MAX_LINES_SHOWN) {
+                                        ingestRejectList.getItems().add(text);
+                                    }
+                                });
+                            }
+                        });
+
+                Platform.runLater(() -> showSuccess("Posting file finished: " + posted + " posting(s) made."));
+            } catch (IOException | SQLException e) {
+                Platform.runLater(() -> showError("Posting file stopped: " + e.getMessage() +
+                        "\nRun it again to resume after the last committed batch."));
+            } catch (IllegalStateException e) {
+                Platform.runLater(() -> showError(e.getMessage()));
+            } finally {
+                ingestHelper.closeConnection();
+                Platform.runLater(() -> runIngestButton.setDisable(false));
+            }
+        }, "posting-file-ingest");
+        ingestThread.setDaemon(true);
+        ingestThread.start();
+    }
+
+    /**
+     * Copies the databases into a new backup set on a background thread
+     * Postings carry on while the copy runs
+     */
+    @FXML
+    private void runBackup() {
+        messageLabel.setText("");
+        messageLabel.setStyle("-fx-text-fill: black;");
+
+        runBackupButton.setDisable(true);
+        backupProgressLabel.setText("Backing up...");
+
+        OnlineBackup backup = new OnlineBackup();
+        Thread backupThread = new Thread(() -> {
+            try {
+                Path set = backup.run((file, copied, pageCount, perSecond) -> Platform.runLater(() ->
+                        backupProgressLabel.setText(file + ": " + copied + " / " + pageCount + " pages | " +
+                                String.format("%.0f", perSecond) + " pages/s")));
+
+                Platform.runLater(() -> {
+                    showSuccess("Backup written to " + set + " (" + backup.getPagesCopied() + " pages, " +
+                            String.format("%.0f", backup.getPagesPerSecond()) + " pages/s).");
+                    refreshBackups();
+                });
+            } catch (SQLException | IOException | IllegalStateException e) {
+                Platform.runLater(() -> showError("Backup failed: " + e.getMessage()));
+            } finally {
+                Platform.runLater(() -> runBackupButton.setDisable(false));
+            }
+        }, "online-backup");
+        backupThread.setDaemon(true);
+        backupThread.start();
+    }
+
+    /**
+     * Shows the backup schedule and the completed backup sets
+     */
+    private void refreshBackups() {
+        long minutes = OnlineBackup.getScheduleMinutes();
+        backupScheduleLabel.setText(minutes > 0
+                ? "Scheduled every " + minutes + " minute(s). Backups in " + OnlineBackup.BACKUP_DIR + ":"
+                : "No backup schedule. Backups in " + OnlineBackup.BACKUP_DIR + ":");
+        backupList.getItems().clear();
+        for (Path set : OnlineBackup.listBackups()) {
+            backupList.getItems().add(set.getFileName().toString());
+        }
+    }
+
+    /**
+     * Lists the active standing orders paid from the entered account
+     */
+    @FXML
+    private void showStandingOrders() {
+        messageLabel.setText("");
+        messageLabel.setStyle("-fx-text-fill: black;");
+
+        int accountNumber;
+        try {
+            accountNumber = Integer.parseInt(standingOrderAccountField.getText().trim());
+        } catch (NumberFormatException e) {
+            showError("Please enter a valid account number!");
+            return;
+        }
+
+        StandingOrderScheduler scheduler;
+        try {
+            scheduler = StandingOrderScheduler.getInstance();
+        } catch (IllegalStateException e) {
+            showError(e.getMessage());
+            return;
+        }
+
+        shownOrders.clear();
+        shownOrders.addAll(scheduler.getOrders(accountNumber));
+        standingOrderList.getItems().clear();
+        for (StandingOrder order : shownOrders) {
+            standingOrderList.getItems().add(String.format("#%d | $%.2f to %d | %s | next %s | last: %s",
+                    order.getId(), order.getAmount(), order.getToAccount(), order.getFrequency(),
+                    order.getNextRunAt(), order.getLastStatus() == null ? "-" : order.getLastStatus()));
+        }
+        standingOrderStatusLabel.setText(shownOrders.size() + " active order(s) | Pending: " +
+                scheduler.getPendingCount() + " | Paid: " + scheduler.getExecuted() + " | Failed: " +
+                scheduler.getFailed() + " | Skipped: " + scheduler.getSkipped());
+    }
+
+    /**
+     * Cancels the selected standing order
+     */
+    @FXML
+    private void cancelStandingOrder() {
+        int index = standingOrderList.getSelectionModel().getSelectedIndex();
+        if (index < 0 || index >= shownOrders.size()) {
+            showError("Please select an order to cancel!");
+            return;
+        }
+
+        long id = shownOrders.get(index).getId();
+        if (StandingOrderScheduler.getInstance().cancel(id)) {
+            showStandingOrders();
+            showSuccess("Standing order " + id + " cancelled.");
+        } else {
+            showError("Standing order " + id + " could not be cancelled.");
+        }
+    }
+
+    /**
+     * Shows the statements with the highest maximum time and the write conflict counts
+     */
+    @FXML
+    private void refreshSlowQueries() {
+        writeConflictLabel.setText("Write conflicts: " + OptimisticRetry.getConflicts() + " changed, " +
+                OptimisticRetry.getBusy() + " busy | Retries: " + OptimisticRetry.getRetries() +
+                " | Given up: " + OptimisticRetry.getExhausted());
+        VelocityLimiter limiter = VelocityLimiter.getInstance();
+        velocityLimitLabel.setText(limiter.isEnabled()
+                ? String.format("Velocity limits: %d rule(s) | %d check(s), %d refused | p50 %.1f µs, p99 %.1f µs",
+                        limiter.getRules().size(), limiter.getEvaluations(), limiter.getDenials(),
+                        limiter.getLatencyMicros(0.50), limiter.getLatencyMicros(0.99))
+                : "Velocity limits are switched off.");
+
+        long threshold = QueryProfiler.getThresholdMillis();
+        if (threshold < 0) {
+            slowQueryThresholdLabel.setText("Query profiling is switched off.");
+            slowQueryList.getItems().clear();
+            return;
+        }
+
+        slowQueryThresholdLabel.setText("Slowest statements (logged to logs/slow-queries.log above " +
+                threshold + " ms):");
+        slowQueryList.getItems().clear();
+        for (QueryProfiler.QueryStats stats : QueryProfiler.getSlowest(SLOW_QUERIES_SHOWN)) {
+            slowQueryList.getItems().add(String.format("max %.1f ms | avg %.2f ms | %d run(s), %d slow | %s",
+                    stats.getMaxMillis(), stats.getAverageMillis(), stats.getCount(), stats.getSlowCount(),
+                    stats.getSql().replaceAll("\\s+", " ")));
+        }
+    }
+
+    /**
+     * Returns to dashboard
+     */
+    @FXML
+    private void backToDashboard() {
+        try {
+            Main.changeScene("Dashboard.fxml");
+        } catch (Exception e) {
+            EventLog.error("Error returning to dashboard", e);
+        }
+    }
+
+    /**
+     * Displays error message
+     */
+    private void showError(String message) {
+        messageLabel.setText(message);
+        messageLabel.setStyle("-fx-text-fill: #d32f2f; -fx-font-weight: bold;");
+    }
+
+    /**
+     * Displays success message
+     */
+    private void showSuccess(String message) {
+        messageLabel.setText(message);
+        messageLabel.setStyle("-fx-text-fill: #2e7d32; -fx-font-weight: bold;");
+    }
+}
@@ -2,17 +2,22 @@ package com.khorshed.mybank.mybankapp.controllers;
 
 import com.khorshed.mybank.mybankapp.Main;
 import com.khorshed.mybank.mybankapp.database.DatabaseHelper;
-import com.khorshed.mybank.mybankapp.models.Transaction;
+import com.khorshed.mybank.mybankapp.database.EventLog;
+import com.khorshed.mybank.mybankapp.models.TransactionColumns;
 import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import javafx.collections.ObservableListBase;
 import javafx.fxml.FXML;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.TableCell;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
-import javafx.scene.control.cell.PropertyValueFactory;
 
-import java.sql.ResultSet;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 
 /**
  * Transaction History Controller
@@ -23,32 +28,51 @@ public class TransactionHistoryController {
     @FXML
     private TextField accountNumberField;
 
+    @FXML
+    private ComboBox<String> rangeBox;
+
     @FXML
     private Label accountInfoLabel;
 
+    // Dates are loaded as UTC epoch millis of the stored local time text
+    private static final DateTimeFormatter DATE_FORMATTER =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneOffset.UTC);
+
+    private static final String RANGE_30_DAYS = "Last 30 days";
+    private static final String RANGE_12_MONTHS = "Last 12 months";
+    private static final String RANGE_ALL = "All time";
+
+    // Table rows are indexes into the columnar model; cells read the arrays directly
     @FXML
-    private TableView<Transaction> transactionTable;
+    private TableView<Integer> transactionTable;
 
     @FXML
-    private TableColumn<Transaction, Integer> idColumn;
+    private TableColumn<Integer, Void> idColumn;
 
     @FXML
-    private TableColumn<Transaction, String> dateColumn;
+    private TableColumn<Integer, Void> dateColumn;
 
     @FXML
-    private TableColumn<Transaction, String> typeColumn;
+    private TableColumn<Integer, Void> typeColumn;
 
     @FXML
-    private TableColumn<Transaction, Double> amountColumn;
+    private TableColumn<Integer, Void> amountColumn;
 
     @FXML
-    private TableColumn<Transaction, Integer> accountColumn;
+    private TableColumn<Integer, Void> accountColumn;
 
     @FXML
     private Label messageLabel;
 
     private DatabaseHelper dbHelper;
-    private ObservableList<Transaction> transactionList;
+    private final TransactionColumns transactions = new TransactionColumns();
+
+    /**
+     * Writes one column of a row into a buffer
+     */
+    private interface RowFormatter {
+        void format(int row, StringBuilder out);
+    }
 
     /**
      * Initializes the controller
@@ -56,30 +80,27 @@ public class TransactionHistoryController {
     @FXML
     public void initialize() {
         dbHelper = new DatabaseHelper();
-        transactionList = FXCollections.observableArrayList();
 
         // Set up table columns
-        idColumn.setCellValueFactory(new PropertyValueFactory<>("id"));
-        dateColumn.setCellValueFactory(new PropertyValueFactory<>("date"));
-        typeColumn.setCellValueFactory(new PropertyValueFactory<>("type"));
-        amountColumn.setCellValueFactory(new PropertyValueFactory<>("amount"));
-        accountColumn.setCellValueFactory(new PropertyValueFactory<>("accountNumber"));
-
-        // Format amount column to show currency
-        amountColumn.setCellFactory(column -> new javafx.scene.control.TableCell<Transaction, Double>() {
-            @Override
-            protected void updateItem(Double amount, boolean empty) {
-                super.updateItem(amount, empty);
-                if (empty || amount == null) {
-                    setText(null);
-                } else {
-                    setText(String.format("$%.2f", amount));
-                }
-            }
-        });
+        idColumn.setCellFactory(column -> new ColumnCell((row, out) -> out.append(transactions.getId(row))));
+        dateColumn.setCellFactory(column -> new ColumnCell((row, out) ->
+                DATE_FORMATTER.formatTo(Instant.ofEpochMilli(transactions.getTimestamp(row)), out)));
+        typeColumn.setCellFactory(column -> new ColumnCell(transactions::appendType));
+        amountColumn.setCellFactory(column -> new ColumnCell((row, out) ->
+                TransactionColumns.appendAmount(transactions.getAmountCents(row), out)));
+        accountColumn.setCellFactory(column -> new ColumnCell((row, out) ->
+                out.append(transactions.getAccountNumber(row))));
 
-        transactionTable.setItems(transactionList);
+        // Values live in the model, so there is nothing for the table to sort by
+        for (TableColumn<Integer, ?> column : transactionTable.getColumns()) {
+            column.setSortable(false);
+        }
+
+        transactionTable.setItems(FXCollections.observableArrayList());
         accountInfoLabel.setText("");
+
+        rangeBox.getItems().addAll(RANGE_30_DAYS, RANGE_12_MONTHS, RANGE_ALL);
+        rangeBox.setValue(RANGE_ALL);
     }
 
     /**
@@ -91,7 +112,8 @@ public class TransactionHistoryController {
         messageLabel.setText("");
         messageLabel.setStyle("-fx-text-fill: black;");
         accountInfoLabel.setText("");
-        transactionList.clear();
+        transactions.clear();
+        transactionTable.setItems(FXCollections.observableArrayList());
 
         try {
             // Validate input
@@ -124,21 +146,10 @@ public class TransactionHistoryController {
             accountInfoLabel.setStyle("-fx-text-fill: #1565c0; -fx-font-weight: bold;");
 
             // Get transaction history
-            ResultSet rs = dbHelper.getTransactionHistory(accountNumber);
-
-            if (rs != null) {
-                int count = 0;
-                while (rs.next()) {
-                    Transaction transaction = new Transaction(
-                            rs.getInt("id"),
-                            rs.getInt("accountNumber"),
-                            rs.getString("type"),
-                            rs.getDouble("amount"),
-                            rs.getString("date")
-                    );
-                    transactionList.add(transaction);
-                    count++;
-                }
+            int count = dbHelper.loadTransactionHistory(accountNumber, rangeStartMillis(), transactions);
+
+            if (count >= 0) {
+                transactionTable.setItems(new RowIndexList(count));
 
                 if (count == 0) {
                     showInfo("No transactions found for this account.");
@@ -153,8 +164,23 @@ public class TransactionHistoryController {
             showError("Invalid input! Please enter a valid account number.");
         } catch (Exception e) {
             showError("Error: " + e.getMessage());
-            e.printStackTrace();
+            EventLog.error("Error viewing transaction history", e);
+        }
+    }
+
+    /**
+     * Gets the start of the selected range, encoded like the loaded dates
+     * Shorter ranges do not need to open the transaction archive
+     */
+    private long rangeStartMillis() {
+        LocalDateTime now = LocalDateTime.now();
+        if (RANGE_30_DAYS.equals(rangeBox.getValue())) {
+            return now.minusDays(30).toEpochSecond(ZoneOffset.UTC) * 1000;
+        }
+        if (RANGE_12_MONTHS.equals(rangeBox.getValue())) {
+            return now.minusMonths(12).toEpochSecond(ZoneOffset.UTC) * 1000;
         }
+        return Long.MIN_VALUE;
     }
 
     /**
@@ -165,8 +191,7 @@ public class TransactionHistoryController {
         try {
             Main.changeScene("Dashboard.fxml");
         } catch (Exception e) {
-            System.err.println("Error returning to dashboard: " + e.getMessage());
-            e.printStackTrace();
+            EventLog.error("Error returning to dashboard", e);
         }
     }
 
@@ -185,4 +210,54 @@ public class TransactionHistoryController {
         messageLabel.setText(message);
         messageLabel.setStyle("-fx-text-fill: #2e7d32; -fx-font-weight: bold;");
     }
+
+    /**
+     * Table cell that formats its column straight from the model
+     * Each cell reuses one buffer for every row it shows
+     */
+    private class ColumnCell extends TableCell<Integer, Void> {
+        private final RowFormatter formatter;
+        private final StringBuilder buffer = new StringBuilder(32);
+
+        private ColumnCell(RowFormatter formatter) {
+            this.formatter = formatter;
+        }
+
+        @Override
+        protected void updateItem(Void item, boolean empty) {
+            super.updateItem(item, empty);
+            int row = getIndex();
+            if (empty || row < 0 || row >= transactions.size()) {
+                setText(null);
+            } else {
+                buffer.setLength(0);
+                formatter.format(row, buffer);
+                setText(buffer.toString());
+            }
+        }
+    }
+
+    /**
+     * Read-only list of the row indexes 0..size-1, stored as just its size
+     */
+    private static class RowIndexList extends ObservableListBase<Integer> {
+        private final int size;
+
+        private RowIndexList(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public Integer get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Row " + index);
+            }
+            return index;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
 }
@@ -2,16 +2,27 @@ package com.khorshed.mybank.mybankapp.controllers;
 
 import com.khorshed.mybank.mybankapp.Main;
 import com.khorshed.mybank.mybankapp.database.DatabaseHelper;
+import com.khorshed.mybank.mybankapp.database.EventLog;
+import com.khorshed.mybank.mybankapp.models.StandingOrder;
+import com.khorshed.mybank.mybankapp.services.StandingOrderScheduler;
 import javafx.fxml.FXML;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
 
+import java.time.LocalDateTime;
+
 /**
  * Transfer Controller
  * Handles fund transfer functionality
  */
 public class TransferController {
 
+    private static final String REPEAT_ONCE = "Once";
+    private static final String REPEAT_DAILY = "Daily";
+    private static final String REPEAT_WEEKLY = "Weekly";
+    private static final String REPEAT_MONTHLY = "Monthly";
+
     @FXML
     private TextField fromAccountField;
 
@@ -21,6 +32,9 @@ public class TransferController {
     @FXML
     private TextField transferAmountField;
 
+    @FXML
+    private ComboBox<String> repeatBox;
+
     @FXML
     private Label messageLabel;
 
@@ -32,6 +46,10 @@ public class TransferController {
     @FXML
     public void initialize() {
         dbHelper = new DatabaseHelper();
+        AccountTypeahead.attach(fromAccountField, dbHelper);
+        AccountTypeahead.attach(toAccountField, dbHelper);
+        repeatBox.getItems().addAll(REPEAT_ONCE, REPEAT_DAILY, REPEAT_WEEKLY, REPEAT_MONTHLY);
+        repeatBox.setValue(REPEAT_ONCE);
     }
 
     /**
@@ -110,11 +128,25 @@ public class TransferController {
                 String senderName = dbHelper.getOwnerName(fromAccount);
                 String receiverName = dbHelper.getOwnerName(toAccount);
 
+                // Today's transfer is the first occurrence; the standing order makes the later ones
+                String repeat = "";
+                StandingOrder.Frequency frequency = getFrequency();
+                if (frequency != null) {
+                    LocalDateTime nextRunAt = frequency.occurrence(LocalDateTime.now(), 1);
+                    long orderId = StandingOrderScheduler.getInstance().create(fromAccount, toAccount, amount,
+                            frequency, nextRunAt);
+                    repeat = orderId > 0
+                            ? "\nRepeats " + repeatBox.getValue().toLowerCase() + " (order " + orderId + ")"
+                            : "\nThe standing order could not be saved!";
+                }
+
                 showSuccess("Transfer successful!\nAmount: $" + String.format("%.2f", amount) +
                         "\nFrom: " + senderName + " (A/C: " + fromAccount + ")" +
-                        "\nTo: " + receiverName + " (A/C: " + toAccount + ")" +
+                        "\nTo: " + receiverName + " (A/C: " + toAccount + ")" + repeat +
                         "\n\nSender's New Balance: $" + String.format("%.2f", newSenderBalance));
                 clearFields();
+            } else if (dbHelper.getLimitDenial() != null) {
+                showError("Transfer refused!\n" + dbHelper.getLimitDenial());
             } else {
                 showError("Transfer failed. Please try again.");
             }
@@ -123,8 +155,26 @@ public class TransferController {
             showError("Invalid input! Please enter valid numbers.");
         } catch (Exception e) {
             showError("Error: " + e.getMessage());
-            e.printStackTrace();
+            EventLog.error("Error transferring money", e);
+        }
+    }
+
+    /**
+     * Gets the selected repeat frequency
+     * @return The frequency, or null for a one-off transfer
+     */
+    private StandingOrder.Frequency getFrequency() {
+        String repeat = repeatBox.getValue();
+        if (REPEAT_DAILY.equals(repeat)) {
+            return StandingOrder.Frequency.DAILY;
+        }
+        if (REPEAT_WEEKLY.equals(repeat)) {
+            return StandingOrder.Frequency.WEEKLY;
+        }
+        if (REPEAT_MONTHLY.equals(repeat)) {
+            return StandingOrder.Frequency.MONTHLY;
         }
+        return null;
     }
 
     /**
@@ -135,8 +185,7 @@ public class TransferController {
         try {
             Main.changeScene("Dashboard.fxml");
         } catch (Exception e) {
-            System.err.println("Error returning to dashboard: " + e.getMessage());
-            e.printStackTrace();
+            EventLog.error("Error returning to dashboard", e);
         }
     }
 
@@ -163,5 +212,6 @@ public class TransferController {
         fromAccountField.clear();
         toAccountField.clear();
         transferAmountField.clear();
+        repeatBox.setValue(REPEAT_ONCE);
     }
 }
@@ -2,6 +2,7 @@ package com.khorshed.mybank.mybankapp.controllers;
 
 import com.khorshed.mybank.mybankapp.Main;
 import com.khorshed.mybank.mybankapp.database.DatabaseHelper;
+import com.khorshed.mybank.mybankapp.database.EventLog;
 import javafx.fxml.FXML;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
@@ -29,6 +30,7 @@ public class WithdrawController {
     @FXML
     public void initialize() {
         dbHelper = new DatabaseHelper();
+        AccountTypeahead.attach(accountNumberField, dbHelper);
     }
 
     /**
@@ -88,6 +90,8 @@ public class WithdrawController {
                 showSuccess("Withdrawal successful!\nAmount Withdrawn: $" + String.format("%.2f", amount) +
                         "\nNew Balance: $" + String.format("%.2f", newBalance));
                 clearFields();
+            } else if (dbHelper.getLimitDenial() != null) {
+                showError("Withdrawal refused!\n" + dbHelper.getLimitDenial());
             } else {
                 showError("Withdrawal failed. Please try again.");
             }
@@ -96,7 +100,7 @@ public class WithdrawController {
             showError("Invalid input! Please enter valid numbers.");
         } catch (Exception e) {
             showError("Error: " + e.getMessage());
-            e.printStackTrace();
+            EventLog.error("Error withdrawing money", e);
         }
     }
 
@@ -108,8 +112,7 @@ public class WithdrawController {
         try {
             Main.changeScene("Dashboard.fxml");
         } catch (Exception e) {
-            System.err.println("Error returning to dashboard: " + e.getMessage());
-            e.printStackTrace();
+            EventLog.error("Error returning to dashboard", e);
         }
     }
 
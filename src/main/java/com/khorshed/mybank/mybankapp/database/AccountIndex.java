@@ -0,0 +1,85 @@
+package com.khorshed.mybank.mybankapp.database;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * AccountIndex - Compact in-memory set of live account numbers
+ * The positive int key space is split into 65536-number pages; each page is a
+ * bitmap (8 KB) allocated only when the first account in its range is added,
+ * so a million sequential accounts cost about 128 KB of heap. Accounts are
+ * never deleted, so numbers are only ever added.
+ */
+public class AccountIndex {
+
+    private static final int PAGE_BITS = 16;
+    private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+    private static final int WORDS_PER_PAGE = (1 << PAGE_BITS) / 64;
+    private static final int PAGE_COUNT = 1 << (31 - PAGE_BITS);
+
+    private final AtomicReferenceArray<AtomicLongArray> pages = new AtomicReferenceArray<>(PAGE_COUNT);
+
+    /**
+     * Checks if an account number is in the index
+     * @param accountNumber The account number to check
+     * @return true if present, false otherwise
+     */
+    public boolean contains(int accountNumber) {
+        if (accountNumber <= 0) {
+            return false;
+        }
+
+        AtomicLongArray page = pages.get(accountNumber >>> PAGE_BITS);
+        if (page == null) {
+            return false;
+        }
+
+        int bit = accountNumber & PAGE_MASK;
+        return (page.get(bit >>> 6) & (1L << bit)) != 0;
+    }
+
+    /**
+     * Adds an account number to the index
+     * @param accountNumber The account number to add
+     */
+    public void add(int accountNumber) {
+        if (accountNumber <= 0) {
+            return;
+        }
+
+        int pageIndex = accountNumber >>> PAGE_BITS;
+        AtomicLongArray page = pages.get(pageIndex);
+        if (page == null) {
+            pages.compareAndSet(pageIndex, null, new AtomicLongArray(WORDS_PER_PAGE));
+            page = pages.get(pageIndex);
+        }
+
+        int bit = accountNumber & PAGE_MASK;
+        int word = bit >>> 6;
+        long mask = 1L << bit;
+        long current;
+        do {
+            current = page.get(word);
+            if ((current & mask) != 0) {
+                return;
+            }
+        } while (!page.compareAndSet(word, current, current | mask));
+    }
+
+    /**
+     * Gets the number of accounts in the index
+     * @return The account count
+     */
+    public long size() {
+        long count = 0;
+        for (int i = 0; i < PAGE_COUNT; i++) {
+            AtomicLongArray page = pages.get(i);
+            if (page != null) {
+                for (int w = 0; w < WORDS_PER_PAGE; w++) {
+                    count += Long.bitCount(page.get(w));
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,139 @@
+package com.khorshed.mybank.mybankapp.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AccountNumberAllocator - Hands out new account numbers without collisions
+ * Numbers come from ranges leased out of the account_sequence table, so each
+ * process only touches the database once per lease. Inside a lease, numbers
+ * are taken with an atomic counter and never handed out twice.
+ */
+public class AccountNumberAllocator {
+
+    private static final String SEQUENCE_NAME = "accounts";
+    private static final int DEFAULT_LEASE_SIZE = 100;
+
+    private final AccountIndex accountIndex;
+    private final int leaseSize;
+    private volatile Lease currentLease;
+
+    /**
+     * Constructor
+     * @param accountIndex Index used to skip numbers that were entered manually
+     */
+    public AccountNumberAllocator(AccountIndex accountIndex) {
+        this(accountIndex, DEFAULT_LEASE_SIZE);
+    }
+
+    /**
+     * Constructor
+     * @param accountIndex Index used to skip numbers that were entered manually
+     * @param leaseSize How many numbers to reserve per database round trip
+     */
+    public AccountNumberAllocator(AccountIndex accountIndex, int leaseSize) {
+        this.accountIndex = accountIndex;
+        this.leaseSize = leaseSize;
+    }
+
+    /**
+     * Creates the sequence table and seeds it past the highest existing account
+     * @param connection The database connection
+     * @throws SQLException if the table cannot be created
+     */
+    public static void createSequenceTable(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS account_sequence (" +
+                    "name TEXT PRIMARY KEY, " +
+                    "nextValue INTEGER NOT NULL)");
+        }
+
+        try (PreparedStatement seed = connection.prepareStatement(
+                "INSERT OR IGNORE INTO account_sequence (name, nextValue) " +
+                        "SELECT ?, COALESCE(MAX(accountNumber), 0) + 1 FROM accounts")) {
+            seed.setString(1, SEQUENCE_NAME);
+            seed.executeUpdate();
+        }
+    }
+
+    /**
+     * Gets the next free account number
+     * @param connection Connection used if a new lease has to be taken
+     * @return The allocated account number
+     * @throws SQLException if a new lease cannot be taken
+     */
+    public int next(Connection connection) throws SQLException {
+        while (true) {
+            Lease lease = currentLease;
+            if (lease != null) {
+                int candidate = lease.cursor.getAndIncrement();
+                if (candidate < lease.end) {
+                    if (accountIndex.contains(candidate)) {
+                        continue; // Taken by a manually numbered account
+                    }
+                    return candidate;
+                }
+            }
+
+            synchronized (this) {
+                if (currentLease == lease) {
+                    currentLease = leaseRange(connection);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reserves the next range of numbers in the sequence table
+     * The UPDATE runs first so that it takes the write lock before the read
+     */
+    private Lease leaseRange(Connection connection) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        try {
+            connection.setAutoCommit(false);
+
+            try (PreparedStatement update = connection.prepareStatement(
+                    "UPDATE account_sequence SET nextValue = nextValue + ? WHERE name = ?")) {
+                update.setInt(1, leaseSize);
+                update.setString(2, SEQUENCE_NAME);
+                update.executeUpdate();
+            }
+
+            int end;
+            try (PreparedStatement select = connection.prepareStatement(
+                    "SELECT nextValue FROM account_sequence WHERE name = ?")) {
+                select.setString(1, SEQUENCE_NAME);
+                ResultSet rs = select.executeQuery();
+                if (!rs.next()) {
+                    throw new SQLException("Account sequence is missing");
+                }
+                end = rs.getInt(1);
+            }
+
+            connection.commit();
+            return new Lease(end - leaseSize, end);
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * A leased range [start, end) with its own counter
+     */
+    private static final class Lease {
+        private final AtomicInteger cursor;
+        private final int end;
+
+        private Lease(int start, int end) {
+            this.cursor = new AtomicInteger(start);
+            this.end = end;
+        }
+    }
+}
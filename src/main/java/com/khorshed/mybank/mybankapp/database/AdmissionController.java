@@ -0,0 +1,315 @@
+package com.khorshed.mybank.mybankapp.database;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AdmissionController - Limits how many postings run at once
+ *
+ * Every posting asks for a permit before it touches storage. The number of
+ * permits adapts to the commit latency observed: it grows by one per round of
+ * fast commits and shrinks by a tenth whenever a commit is slower than the
+ * target (-Dmybank.admission.targetMillis, default 10). Callers over the
+ * limit wait in a bounded queue for up to a timeout, or are turned away at
+ * once with -Dmybank.admission.policy=failfast.
+ *
+ * The limit never exceeds -Dmybank.admission.maxConcurrency, which defaults
+ * to what the storage mode can use: a single SQLite file has one writer, so
+ * more than two postings at once only fight over its lock; shards take
+ * writes in parallel; the journal groups concurrent postings into one flush.
+ *
+ * Interactive teller traffic always goes first. Bulk jobs may not take the
+ * last quarter of the permits and never start while an interactive caller is
+ * waiting, so a running batch does not push up teller latency. Batch jobs
+ * that write in chunks (end-of-day, account import, posting files) hold one
+ * bulk permit per chunk through awaitPermit; a chunk is many postings, so
+ * its duration is not fed into the limit.
+ */
+public class AdmissionController {
+
+    /**
+     * Traffic classes, in priority order
+     */
+    public enum Priority {
+        INTERACTIVE,
+        BULK
+    }
+
+    /**
+     * What to do with callers that arrive when every permit is taken
+     */
+    public enum Policy {
+        QUEUE,
+        FAIL_FAST
+    }
+
+    /**
+     * Held by an admitted posting until it finishes
+     */
+    public static class Permit {
+        private final Priority priority;
+        private final long requestedNanos;
+        private final long admittedNanos;
+        // false for whole batch chunks, whose duration says nothing about one posting
+        private boolean measured = true;
+
+        private Permit(Priority priority, long requestedNanos, long admittedNanos) {
+            this.priority = priority;
+            this.requestedNanos = requestedNanos;
+            this.admittedNanos = admittedNanos;
+        }
+    }
+
+    private static final double MIN_LIMIT = 1;
+    private static final double BULK_RESERVE = 0.25;
+    private static final int LATENCY_SAMPLES = 1024;
+    private static final long RETRY_MILLIS = 50;
+
+    private static AdmissionController instance;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition interactiveTurn = lock.newCondition();
+    private final Condition bulkTurn = lock.newCondition();
+
+    private final Policy policy;
+    private final long targetNanos;
+    private final double maxLimit;
+    private final int[] maxWaiting = {64, 256};
+    private final long[] timeoutNanos = {TimeUnit.SECONDS.toNanos(2), TimeUnit.SECONDS.toNanos(30)};
+
+    private double limit;
+    private int inFlight;
+    private final int[] waiting = new int[2];
+
+    // End-to-end latency (queue wait plus posting) of recent postings per class
+    private final long[][] latencies = new long[2][LATENCY_SAMPLES];
+    private final long[] latencyCount = new long[2];
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    /**
+     * Gets the process-wide controller
+     * @return The admission controller
+     */
+    public static synchronized AdmissionController getInstance() {
+        if (instance == null) {
+            Policy policy = "failfast".equalsIgnoreCase(System.getProperty("mybank.admission.policy"))
+                    ? Policy.FAIL_FAST : Policy.QUEUE;
+            instance = new AdmissionController(policy,
+                    Long.getLong("mybank.admission.targetMillis", 10),
+                    Integer.getInteger("mybank.admission.maxConcurrency", defaultMaxConcurrency()));
+        }
+        return instance;
+    }
+
+    private static int defaultMaxConcurrency() {
+        if (JournalEngine.isEnabled()) {
+            return 64;
+        }
+        if (ShardedStorage.isEnabled()) {
+            return ShardedStorage.getShardCount() * 2;
+        }
+        return 2;
+    }
+
+    /**
+     * Constructor
+     * @param policy What to do when no permit is free
+     * @param targetMillis Commit latency above which the limit shrinks
+     * @param maxConcurrency Upper bound for the adaptive limit
+     */
+    public AdmissionController(Policy policy, long targetMillis, int maxConcurrency) {
+        this.policy = policy;
+        this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+        this.maxLimit = Math.max(MIN_LIMIT, maxConcurrency);
+        this.limit = maxLimit;
+    }
+
+    /**
+     * Waits for a permit
+     * @param priority Traffic class of the caller
+     * @return The permit, or null if the caller was turned away or timed out
+     */
+    public Permit acquire(Priority priority) {
+        long requested = System.nanoTime();
+        int cls = priority.ordinal();
+
+        lock.lock();
+        try {
+            if (canAdmit(priority)) {
+                inFlight++;
+                return new Permit(priority, requested, requested);
+            }
+
+            if (policy == Policy.FAIL_FAST || waiting[cls] >= maxWaiting[cls]) {
+                rejected.incrementAndGet();
+                return null;
+            }
+
+            Condition turn = priority == Priority.INTERACTIVE ? interactiveTurn : bulkTurn;
+            long remaining = timeoutNanos[cls];
+            waiting[cls]++;
+            try {
+                while (!canAdmit(priority)) {
+                    if (remaining <= 0) {
+                        timedOut.incrementAndGet();
+                        return null;
+                    }
+                    remaining = turn.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } finally {
+                waiting[cls]--;
+                // Bulk callers hold back while any teller waits, so the last one leaving lets them re-check
+                if (waiting[Priority.INTERACTIVE.ordinal()] == 0 && waiting[Priority.BULK.ordinal()] > 0) {
+                    bulkTurn.signalAll();
+                }
+            }
+
+            inFlight++;
+            return new Permit(priority, requested, System.nanoTime());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits as long as it takes for a permit for one chunk of a batch job
+     * Turned-away or timed-out attempts are retried after a short pause, so
+     * a batch slows down under teller load instead of failing. The chunk's
+     * duration is not fed into the limit.
+     * @param priority Traffic class of the job, normally BULK
+     * @return The permit
+     * @throws InterruptedException if the job is interrupted while waiting
+     */
+    public Permit awaitPermit(Priority priority) throws InterruptedException {
+        while (true) {
+            Permit permit = acquire(priority);
+            if (permit != null) {
+                permit.measured = false;
+                return permit;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            Thread.sleep(RETRY_MILLIS);
+        }
+    }
+
+    /**
+     * Returns a permit and feeds its commit latency into the limit
+     * @param permit The permit from acquire
+     */
+    public void release(Permit permit) {
+        long now = System.nanoTime();
+        long serviceNanos = now - permit.admittedNanos;
+        int cls = permit.priority.ordinal();
+
+        lock.lock();
+        try {
+            inFlight--;
+
+            if (permit.measured) {
+                // Additive increase, multiplicative decrease
+                if (serviceNanos > targetNanos) {
+                    limit = Math.max(MIN_LIMIT, limit * 0.9);
+                } else {
+                    limit = Math.min(maxLimit, limit + 1.0 / limit);
+                }
+
+                latencies[cls][(int) (latencyCount[cls] % LATENCY_SAMPLES)] = now - permit.requestedNanos;
+                latencyCount[cls]++;
+            }
+
+            // The limit may have grown, so every waiter re-checks; tellers are still woken first
+            if (waiting[Priority.INTERACTIVE.ordinal()] > 0) {
+                interactiveTurn.signalAll();
+            } else if (waiting[Priority.BULK.ordinal()] > 0) {
+                bulkTurn.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Must be called with the lock held
+     */
+    private boolean canAdmit(Priority priority) {
+        if (priority == Priority.INTERACTIVE) {
+            return inFlight < (int) limit;
+        }
+        int bulkLimit = Math.max(1, (int) (limit * (1 - BULK_RESERVE)));
+        return inFlight < bulkLimit && waiting[Priority.INTERACTIVE.ordinal()] == 0;
+    }
+
+    /**
+     * Gets the current concurrency limit
+     * @return Number of postings allowed at once
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of postings currently running
+     * @return Postings in flight
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets how many callers were turned away because the queue was full or the policy is fail-fast
+     * @return The rejected count
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Gets how many queued callers gave up after their timeout
+     * @return The timed-out count
+     */
+    public long getTimedOutCount() {
+        return timedOut.get();
+    }
+
+    /**
+     * Gets the 99th percentile end-to-end latency of recent postings
+     * @param priority Traffic class
+     * @return Latency in milliseconds over the last 1024 postings, or 0 if none
+     */
+    public double getP99Millis(Priority priority) {
+        long[] samples;
+        lock.lock();
+        try {
+            int cls = priority.ordinal();
+            int count = (int) Math.min(latencyCount[cls], LATENCY_SAMPLES);
+            samples = Arrays.copyOf(latencies[cls], count);
+        } finally {
+            lock.unlock();
+        }
+        if (samples.length == 0) {
+            return 0;
+        }
+        Arrays.sort(samples);
+        return samples[(int) Math.ceil(samples.length * 0.99) - 1] / 1e6;
+    }
+}
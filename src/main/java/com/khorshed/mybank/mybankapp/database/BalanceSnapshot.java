@@ -0,0 +1,258 @@
+package com.khorshed.mybank.mybankapp.database;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * BalanceSnapshot - Compact binary image of every account balance
+ *
+ * A snapshot is either copied from the in-memory balances at a journal
+ * sequence, as JournalEngine does, or read from the SQLite projection inside
+ * one read transaction, so it is consistent with the journal sequence stored
+ * in journal_state.
+ *
+ * File layout: magic (4), format version (4), journal sequence (8),
+ * last transactions.id (8, 0 when copied from memory), created millis (8),
+ * account count (4),
+ * then per account: account number (4) and balance (8), then CRC32 (8).
+ */
+public class BalanceSnapshot {
+
+    private static final int MAGIC = 0x4D42534E; // "MBSN"
+    private static final int FORMAT_VERSION = 1;
+    private static final int SNAPSHOTS_KEPT = 2;
+
+    private final long journalSequence;
+    private final long lastTransactionId;
+    private final int[] accountNumbers;
+    private final double[] balances;
+
+    private BalanceSnapshot(long journalSequence, long lastTransactionId, int[] accountNumbers, double[] balances) {
+        this.journalSequence = journalSequence;
+        this.lastTransactionId = lastTransactionId;
+        this.accountNumbers = accountNumbers;
+        this.balances = balances;
+    }
+
+    /**
+     * Writes a snapshot of balances copied at a journal sequence
+     * @param directory Directory holding the snapshot files
+     * @param journalSequence The last journal record the balances include; must be durable
+     * @param accountNumbers The account numbers
+     * @param balances Each account's balance, by index
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path directory, long journalSequence, int[] accountNumbers, double[] balances)
+            throws IOException {
+        Files.createDirectories(directory);
+        Path temp = directory.resolve("balances.tmp");
+
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16), crc))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(journalSequence);
+            out.writeLong(0);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(accountNumbers.length);
+            for (int i = 0; i < accountNumbers.length; i++) {
+                out.writeInt(accountNumbers[i]);
+                out.writeDouble(balances[i]);
+            }
+            out.flush();
+            out.writeLong(crc.getValue());
+        }
+
+        Files.move(temp, snapshotPath(directory, journalSequence),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        deleteOlderSnapshots(directory);
+    }
+
+    /**
+     * Writes a snapshot of the projection into a directory
+     * @param connection Connection used only for this read
+     * @param directory Directory holding the snapshot files
+     * @return The journal sequence the snapshot is keyed to
+     * @throws SQLException if the projection cannot be read
+     * @throws IOException if the file cannot be written
+     */
+    public static long write(Connection connection, Path directory) throws SQLException, IOException {
+        Files.createDirectories(directory);
+        Path temp = directory.resolve("balances.tmp");
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement()) {
+            long journalSequence;
+            long lastTransactionId;
+            int count;
+
+            // All reads below see the same database state
+            try (ResultSet rs = stmt.executeQuery("SELECT " +
+                    "(SELECT lastAppliedSequence FROM journal_state WHERE id = 1), " +
+                    "(SELECT COALESCE(MAX(id), 0) FROM transactions), " +
+                    "(SELECT COUNT(*) FROM accounts)")) {
+                rs.next();
+                journalSequence = rs.getLong(1);
+                lastTransactionId = rs.getLong(2);
+                count = rs.getInt(3);
+            }
+
+            CRC32 crc = new CRC32();
+            try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16), crc));
+                 ResultSet rs = stmt.executeQuery("SELECT accountNumber, balance FROM accounts")) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(journalSequence);
+                out.writeLong(lastTransactionId);
+                out.writeLong(System.currentTimeMillis());
+                out.writeInt(count);
+
+                int written = 0;
+                while (rs.next() && written < count) {
+                    out.writeInt(rs.getInt(1));
+                    out.writeDouble(rs.getDouble(2));
+                    written++;
+                }
+                out.flush();
+                out.writeLong(crc.getValue());
+            }
+
+            connection.commit();
+
+            Files.move(temp, snapshotPath(directory, journalSequence),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            deleteOlderSnapshots(directory);
+            return journalSequence;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Loads the newest readable snapshot in a directory
+     * Corrupt files are skipped in favour of the next older one
+     * @param directory Directory holding the snapshot files
+     * @return The snapshot, or null if there is none
+     */
+    public static BalanceSnapshot loadNewest(Path directory) {
+        List<Path> files = listSnapshots(directory);
+        for (int i = files.size() - 1; i >= 0; i--) {
+            try {
+                return read(files.get(i));
+            } catch (IOException e) {
+                EventLog.warn("Skipping unreadable snapshot " + files.get(i) + ": " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the journal sequence of the newest snapshot file without reading it
+     * @param directory Directory holding the snapshot files
+     * @return The sequence, or 0 if there is no snapshot
+     */
+    public static long newestSequence(Path directory) {
+        List<Path> files = listSnapshots(directory);
+        return files.isEmpty() ? 0 : sequenceOf(files.get(files.size() - 1));
+    }
+
+    private static BalanceSnapshot read(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 1 << 16), crc))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Not a balance snapshot");
+            }
+
+            long journalSequence = in.readLong();
+            long lastTransactionId = in.readLong();
+            in.readLong(); // created millis
+            int count = in.readInt();
+
+            int[] accountNumbers = new int[count];
+            double[] balances = new double[count];
+            for (int i = 0; i < count; i++) {
+                accountNumbers[i] = in.readInt();
+                balances[i] = in.readDouble();
+            }
+
+            long expected = crc.getValue();
+            if (in.readLong() != expected) {
+                throw new IOException("Checksum mismatch");
+            }
+
+            return new BalanceSnapshot(journalSequence, lastTransactionId, accountNumbers, balances);
+        }
+    }
+
+    private static List<Path> listSnapshots(Path directory) {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "balances-*.snap")) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        } catch (IOException e) {
+            EventLog.error("Error listing snapshots: " + e.getMessage());
+        }
+        files.sort((a, b) -> Long.compare(sequenceOf(a), sequenceOf(b)));
+        return files;
+    }
+
+    private static void deleteOlderSnapshots(Path directory) throws IOException {
+        List<Path> files = listSnapshots(directory);
+        for (int i = 0; i < files.size() - SNAPSHOTS_KEPT; i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    private static Path snapshotPath(Path directory, long journalSequence) {
+        return directory.resolve(String.format("balances-%020d.snap", journalSequence));
+    }
+
+    private static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(9, name.length() - 5));
+    }
+
+    public long getJournalSequence() {
+        return journalSequence;
+    }
+
+    public long getLastTransactionId() {
+        return lastTransactionId;
+    }
+
+    public int getAccountCount() {
+        return accountNumbers.length;
+    }
+
+    public int getAccountNumber(int index) {
+        return accountNumbers[index];
+    }
+
+    public double getBalance(int index) {
+        return balances[index];
+    }
+}
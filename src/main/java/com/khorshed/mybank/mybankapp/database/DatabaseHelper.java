@@ -1,8 +1,22 @@
 package com.khorshed.mybank.mybankapp.database;
 
+import com.khorshed.mybank.mybankapp.models.Account;
+import com.khorshed.mybank.mybankapp.models.PayoutLeg;
+import com.khorshed.mybank.mybankapp.models.PostingEvent;
+import com.khorshed.mybank.mybankapp.models.TransactionColumns;
+
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
 
 /**
  * DatabaseHelper - Manages all SQLite database operations
@@ -10,9 +24,32 @@ import java.time.format.DateTimeFormatter;
  */
 public class DatabaseHelper {
 
-    private static final String DB_URL = "jdbc:sqlite:database/mybank.db";
+    static final String DB_URL = "jdbc:sqlite:database/mybank.db";
+    static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    // Shared by every helper instance; loaded once from the accounts table
+    private static final AccountIndex accountIndex = new AccountIndex();
+    private static volatile boolean accountIndexLoaded = false;
+    private static final AccountNumberAllocator accountNumberAllocator = new AccountNumberAllocator(accountIndex);
+    private static final OwnerNameIndex ownerNameIndex = new OwnerNameIndex();
+    // Accounts in the indexes, compared with the table to spot other processes' inserts
+    private static final AtomicLong indexedAccounts = new AtomicLong();
+    private static final long DEFAULT_INDEX_REFRESH_SECONDS = 30;
+    private static final HistoryCache historyCache = new HistoryCache();
+
     private Connection connection;
 
+    // Traffic class this helper's postings are admitted under
+    private AdmissionController.Priority priority = AdmissionController.Priority.INTERACTIVE;
+    // Whether this helper's postings wait out load instead of being turned away
+    private boolean waitForAdmission;
+
+    // Read connections to each shard, opened on first use in sharded mode
+    private Connection[] shardReaders;
+
+    // Why this helper's last debit was refused by a velocity limit, or null
+    private String limitDenial;
+
     /**
      * Constructor - Initializes database connection and creates tables
      */
@@ -20,15 +57,25 @@ public class DatabaseHelper {
         try {
             // Load SQLite JDBC driver
             Class.forName("org.sqlite.JDBC");
-            connection = DriverManager.getConnection(DB_URL);
+            connection = QueryProfiler.wrap(DriverManager.getConnection(DB_URL));
             createTables();
-            System.out.println("Database connected successfully!");
+            loadAccountIndex();
+            EventLog.info("Database connected successfully!");
         } catch (Exception e) {
-            System.err.println("Database connection error: " + e.getMessage());
-            e.printStackTrace();
+            EventLog.error("Database connection error", e);
         }
     }
 
+    /**
+     * Opens a new connection to the main database
+     * Used by batch jobs that need connections of their own
+     * @return A new connection owned by the caller
+     * @throws SQLException if the connection cannot be opened
+     */
+    public static Connection openConnection() throws SQLException {
+        return DriverManager.getConnection(DB_URL);
+    }
+
     /**
      * Creates database tables if they don't exist
      */
@@ -40,8 +87,10 @@ public class DatabaseHelper {
             String accountsTable = "CREATE TABLE IF NOT EXISTS accounts (" +
                     "accountNumber INTEGER PRIMARY KEY, " +
                     "ownerName TEXT NOT NULL, " +
-                    "balance REAL NOT NULL DEFAULT 0)";
+                    "balance REAL NOT NULL DEFAULT 0, " +
+                    "version INTEGER NOT NULL DEFAULT 0)";
             stmt.execute(accountsTable);
+            addVersionColumn(connection);
 
             // Create transactions table
             String transactionsTable = "CREATE TABLE IF NOT EXISTS transactions (" +
@@ -53,11 +102,138 @@ public class DatabaseHelper {
                     "FOREIGN KEY (accountNumber) REFERENCES accounts(accountNumber))";
             stmt.execute(transactionsTable);
 
-            System.out.println("Tables created successfully!");
+            // History and reconciliation read transactions one account at a time
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_account ON transactions (accountNumber)");
+
+            // Create account number sequence table
+            AccountNumberAllocator.createSequenceTable(connection);
+
+            EventLog.info("Tables created successfully!");
             stmt.close();
         } catch (SQLException e) {
-            System.err.println("Error creating tables: " + e.getMessage());
-            e.printStackTrace();
+            EventLog.error("Error creating tables", e);
+        }
+    }
+
+    /**
+     * Adds the version column to an accounts table created before it existed
+     * Every posting bumps an account's version in the same transaction that
+     * changes its balance and records its transactions.
+     * @param connection Connection to a database with an accounts table
+     * @throws SQLException if the table cannot be changed
+     */
+    static void addVersionColumn(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(accounts)")) {
+                while (rs.next()) {
+                    if ("version".equalsIgnoreCase(rs.getString("name"))) {
+                        return;
+                    }
+                }
+            }
+            stmt.execute("ALTER TABLE accounts ADD COLUMN version INTEGER NOT NULL DEFAULT 0");
+        } catch (SQLException e) {
+            // Another connection may have added it since the check
+            if (e.getMessage() == null || !e.getMessage().contains("duplicate column")) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Loads all accounts into the shared in-memory number and name indexes
+     * Only the first helper instance does the scan; later ones reuse it.
+     * Afterwards the table is re-scanned every -Dmybank.index.refreshSeconds
+     * (default 30) when it holds more accounts than the indexes, so accounts
+     * created by other processes become searchable too.
+     */
+    private void loadAccountIndex() {
+        if (accountIndexLoaded) {
+            return;
+        }
+
+        synchronized (accountIndex) {
+            if (accountIndexLoaded) {
+                return;
+            }
+
+            try {
+                indexAllAccounts(connection);
+                accountIndexLoaded = true;
+                EventLog.info("Account index loaded: " + accountIndex.size() + " account(s)");
+            } catch (SQLException e) {
+                EventLog.error("Error loading account index: " + e.getMessage());
+                return;
+            }
+
+            long interval = Long.getLong("mybank.index.refreshSeconds", DEFAULT_INDEX_REFRESH_SECONDS);
+            if (interval > 0 && !JournalEngine.isEnabled()) {
+                ScheduledExecutorService indexRefresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "account-index-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                indexRefresher.scheduleWithFixedDelay(DatabaseHelper::refreshAccountIndex,
+                        interval, interval, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    /**
+     * Adds every account in the table that the indexes do not hold yet
+     */
+    private static void indexAllAccounts(Connection connection) throws SQLException {
+        if (ShardedStorage.isEnabled()) {
+            ShardedStorage.getInstance().forEachAccount((ownerName, accountNumber) ->
+                    indexAccount(accountNumber, ownerName));
+            return;
+        }
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT accountNumber, ownerName FROM accounts")) {
+            while (rs.next()) {
+                indexAccount(rs.getInt(1), rs.getString(2));
+            }
+        }
+    }
+
+    /**
+     * Picks up accounts other processes created since the indexes were loaded
+     * Runs on the refresh thread; a count is all it costs while nothing changed
+     */
+    private static void refreshAccountIndex() {
+        try (Connection connection = openConnection()) {
+            long count;
+            if (ShardedStorage.isEnabled()) {
+                count = ShardedStorage.getInstance().countAccounts();
+            } else {
+                try (Statement stmt = connection.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM accounts")) {
+                    count = rs.next() ? rs.getLong(1) : 0;
+                }
+            }
+            if (count <= indexedAccounts.get()) {
+                return;
+            }
+
+            long before = indexedAccounts.get();
+            indexAllAccounts(connection);
+            EventLog.info("Account index refreshed: " + (indexedAccounts.get() - before) + " new account(s)");
+        } catch (SQLException | RuntimeException e) {
+            EventLog.warn("Error refreshing account index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Adds a created account to the shared in-memory indexes, once
+     */
+    private static void indexAccount(int accountNumber, String ownerName) {
+        synchronized (ownerNameIndex) {
+            if (accountIndex.contains(accountNumber)) {
+                return;
+            }
+            accountIndex.add(accountNumber);
+            ownerNameIndex.add(accountNumber, ownerName);
+            indexedAccounts.incrementAndGet();
         }
     }
 
@@ -69,42 +245,202 @@ public class DatabaseHelper {
      * @return true if successful, false otherwise
      */
     public boolean createAccount(int accountNumber, String ownerName, double initialDeposit) {
+        if (ShardedStorage.isEnabled()) {
+            boolean created = ShardedStorage.getInstance().createAccount(accountNumber, ownerName, initialDeposit);
+            if (created) {
+                indexAccount(accountNumber, ownerName);
+            }
+            return created;
+        }
+
         String sql = "INSERT INTO accounts (accountNumber, ownerName, balance) VALUES (?, ?, ?)";
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, accountNumber);
-            pstmt.setString(2, ownerName);
-            pstmt.setDouble(3, initialDeposit);
-            pstmt.executeUpdate();
+        try {
+            // The account and its first transaction become visible together
+            connection.setAutoCommit(false);
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setInt(1, accountNumber);
+                pstmt.setString(2, ownerName);
+                pstmt.setDouble(3, initialDeposit);
+                pstmt.executeUpdate();
+            }
 
             // Record initial deposit as a transaction if > 0
             if (initialDeposit > 0) {
                 recordTransaction(accountNumber, "Initial Deposit", initialDeposit);
             }
 
+            connection.commit();
+            connection.setAutoCommit(true);
+
+            indexAccount(accountNumber, ownerName);
+            if (JournalEngine.isEnabled()) {
+                JournalEngine.getInstance().accountCreated(accountNumber, ownerName, initialDeposit);
+            }
             return true;
         } catch (SQLException e) {
-            System.err.println("Error creating account: " + e.getMessage());
+            try {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            } catch (SQLException ex) {
+                EventLog.error("Rollback error: " + ex.getMessage());
+            }
+            EventLog.error("Error creating account: " + e.getMessage());
             return false;
         }
     }
 
+    /**
+     * Creates a new bank account with an automatically assigned number
+     * @param ownerName The account owner's name
+     * @param initialDeposit The initial deposit amount
+     * @return The new account number, or -1 if creation failed
+     */
+    public int createAccountWithNextNumber(String ownerName, double initialDeposit) {
+        try {
+            int accountNumber = accountNumberAllocator.next(connection);
+            return createAccount(accountNumber, ownerName, initialDeposit) ? accountNumber : -1;
+        } catch (SQLException e) {
+            EventLog.error("Error allocating account number: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Creates many accounts in a single database transaction
+     * Accounts with number 0 get one from the allocator. Rows whose number is
+     * already taken are skipped, and an "Initial Deposit" transaction is
+     * recorded for every inserted account with a positive balance.
+     * @param accounts The accounts to create; assigned numbers are written back
+     * @return One flag per account, true if it was inserted, or null if the whole batch failed
+     */
+    public boolean[] createAccountsBatch(List<Account> accounts) {
+        String accountSql = "INSERT OR IGNORE INTO accounts (accountNumber, ownerName, balance) VALUES (?, ?, ?)";
+        String transactionSql = "INSERT INTO transactions (accountNumber, type, amount, date) VALUES (?, ?, ?, ?)";
+        boolean[] inserted = new boolean[accounts.size()];
+
+        try {
+            for (Account account : accounts) {
+                if (account.getAccountNumber() == 0) {
+                    account.setAccountNumber(accountNumberAllocator.next(connection));
+                }
+            }
+
+            if (ShardedStorage.isEnabled()) {
+                boolean[] created = ShardedStorage.getInstance().createAccounts(accounts);
+                for (int i = 0; i < created.length; i++) {
+                    if (created[i]) {
+                        indexAccount(accounts.get(i).getAccountNumber(), accounts.get(i).getOwnerName());
+                    }
+                }
+                return created;
+            }
+
+            connection.setAutoCommit(false);
+
+            try (PreparedStatement pstmt = connection.prepareStatement(accountSql)) {
+                for (Account account : accounts) {
+                    pstmt.setInt(1, account.getAccountNumber());
+                    pstmt.setString(2, account.getOwnerName());
+                    pstmt.setDouble(3, account.getBalance());
+                    pstmt.addBatch();
+                }
+
+                int[] counts = pstmt.executeBatch();
+                for (int i = 0; i < counts.length; i++) {
+                    inserted[i] = counts[i] > 0;
+                }
+            }
+
+            try (PreparedStatement pstmt = connection.prepareStatement(transactionSql)) {
+                String now = LocalDateTime.now().format(DATE_FORMATTER);
+                for (int i = 0; i < inserted.length; i++) {
+                    Account account = accounts.get(i);
+                    if (inserted[i] && account.getBalance() > 0) {
+                        pstmt.setInt(1, account.getAccountNumber());
+                        pstmt.setString(2, "Initial Deposit");
+                        pstmt.setDouble(3, account.getBalance());
+                        pstmt.setString(4, now);
+                        pstmt.addBatch();
+                    }
+                }
+                pstmt.executeBatch();
+            }
+
+            connection.commit();
+            connection.setAutoCommit(true);
+
+            for (int i = 0; i < inserted.length; i++) {
+                if (inserted[i]) {
+                    Account account = accounts.get(i);
+                    indexAccount(account.getAccountNumber(), account.getOwnerName());
+                    if (JournalEngine.isEnabled()) {
+                        JournalEngine.getInstance().accountCreated(account.getAccountNumber(), account.getOwnerName(),
+                                account.getBalance());
+                    }
+                }
+            }
+            return inserted;
+        } catch (SQLException e) {
+            try {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            } catch (SQLException ex) {
+                EventLog.error("Rollback error: " + ex.getMessage());
+            }
+            EventLog.error("Error creating accounts: " + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Checks if an account exists
+     * Answered from the in-memory index; a number missing there is looked up
+     * in the database, since another process may have created the account,
+     * and added to the indexes if found.
      * @param accountNumber The account number to check
      * @return true if exists, false otherwise
      */
     public boolean accountExists(int accountNumber) {
-        String sql = "SELECT accountNumber FROM accounts WHERE accountNumber = ?";
+        if (accountIndexLoaded && accountIndex.contains(accountNumber)) {
+            return true;
+        }
+        if (accountNumber <= 0) {
+            return false;
+        }
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, accountNumber);
-            ResultSet rs = pstmt.executeQuery();
-            return rs.next();
-        } catch (SQLException e) {
-            System.err.println("Error checking account: " + e.getMessage());
+        // Owner names are NOT NULL, so a name means the row exists
+        String ownerName = getOwnerName(accountNumber);
+        if (ownerName == null) {
             return false;
         }
+        if (accountIndexLoaded) {
+            indexAccount(accountNumber, ownerName);
+        }
+        return true;
+    }
+
+    /**
+     * Checks the in-memory account index only
+     * Touches no connection, so it may be called from any thread. A false
+     * answer is not authoritative: the account may have been created by
+     * another process since the index was last refreshed.
+     * @param accountNumber The account number to check
+     * @return true if the index has the account, false otherwise
+     */
+    public static boolean isIndexedAccount(int accountNumber) {
+        return accountIndexLoaded && accountIndex.contains(accountNumber);
+    }
+
+    /**
+     * Searches accounts by owner name using the in-memory name index
+     * Touches only the shared index, so it may be called from any thread.
+     * @param query Words to look for in the owner name
+     * @param limit Maximum number of matches
+     * @return Matching accounts, empty if none
+     */
+    public List<OwnerNameIndex.Match> searchOwners(String query, int limit) {
+        return ownerNameIndex.search(query, limit);
     }
 
     /**
@@ -113,6 +449,14 @@ public class DatabaseHelper {
      * @return The balance, or -1 if account doesn't exist
      */
     public double getBalance(int accountNumber) {
+        if (JournalEngine.isEnabled()) {
+            return JournalEngine.getInstance().getBalance(accountNumber);
+        }
+
+        if (ShardedStorage.isEnabled()) {
+            return ShardedStorage.getInstance().getBalance(accountNumber);
+        }
+
         String sql = "SELECT balance FROM accounts WHERE accountNumber = ?";
 
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
@@ -123,7 +467,7 @@ public class DatabaseHelper {
                 return rs.getDouble("balance");
             }
         } catch (SQLException e) {
-            System.err.println("Error getting balance: " + e.getMessage());
+            EventLog.error("Error getting balance: " + e.getMessage());
         }
         return -1;
     }
@@ -134,6 +478,17 @@ public class DatabaseHelper {
      * @return The owner name, or null if not found
      */
     public String getOwnerName(int accountNumber) {
+        if (JournalEngine.isEnabled()) {
+            String ownerName = JournalEngine.getInstance().getOwnerName(accountNumber);
+            if (ownerName != null) {
+                return ownerName;
+            }
+        }
+
+        if (ShardedStorage.isEnabled()) {
+            return ShardedStorage.getInstance().getOwnerName(accountNumber);
+        }
+
         String sql = "SELECT ownerName FROM accounts WHERE accountNumber = ?";
 
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
@@ -144,7 +499,7 @@ public class DatabaseHelper {
                 return rs.getString("ownerName");
             }
         } catch (SQLException e) {
-            System.err.println("Error getting owner name: " + e.getMessage());
+            EventLog.error("Error getting owner name: " + e.getMessage());
         }
         return null;
     }
@@ -156,25 +511,30 @@ public class DatabaseHelper {
      * @return true if successful, false otherwise
      */
     public boolean deposit(int accountNumber, double amount) {
+        long start = System.nanoTime();
+        boolean posted = admitted(() -> postDeposit(accountNumber, amount));
+        if (posted) {
+            publishPosting("Deposit", accountNumber, 0, amount);
+        }
+        logPosting("deposit", accountNumber, 0, amount, start, posted ? "ok" : "refused");
+        return posted;
+    }
+
+    private boolean postDeposit(int accountNumber, double amount) {
         if (!accountExists(accountNumber) || amount <= 0) {
             return false;
         }
 
-        String sql = "UPDATE accounts SET balance = balance + ? WHERE accountNumber = ?";
-
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setDouble(1, amount);
-            pstmt.setInt(2, accountNumber);
-            pstmt.executeUpdate();
-
-            // Record transaction
-            recordTransaction(accountNumber, "Deposit", amount);
+        if (JournalEngine.isEnabled()) {
+            return JournalEngine.getInstance().deposit(accountNumber, amount);
+        }
 
-            return true;
-        } catch (SQLException e) {
-            System.err.println("Error depositing money: " + e.getMessage());
-            return false;
+        if (ShardedStorage.isEnabled()) {
+            return ShardedStorage.getInstance().deposit(accountNumber, amount);
         }
+
+        String sql = "UPDATE accounts SET balance = balance + ?, version = version + 1 WHERE accountNumber = ?";
+        return postSingle(sql, accountNumber, "Deposit", amount, "depositing money");
     }
 
     /**
@@ -184,28 +544,71 @@ public class DatabaseHelper {
      * @return true if successful, false otherwise
      */
     public boolean withdraw(int accountNumber, double amount) {
+        limitDenial = null;
+        long start = System.nanoTime();
+        boolean posted = admitted(() -> postWithdraw(accountNumber, amount));
+        if (posted) {
+            publishPosting("Withdraw", accountNumber, 0, amount);
+        }
+        logPosting("withdraw", accountNumber, 0, amount, start,
+                posted ? "ok" : limitDenial != null ? "limited" : "refused");
+        return posted;
+    }
+
+    private boolean postWithdraw(int accountNumber, double amount) {
         if (!accountExists(accountNumber) || amount <= 0) {
             return false;
         }
 
-        double currentBalance = getBalance(accountNumber);
-        if (currentBalance < amount) {
-            return false; // Insufficient balance
+        return withinLimits(accountNumber, VelocityLimiter.Posting.WITHDRAW, amount,
+                () -> storeWithdraw(accountNumber, amount));
+    }
+
+    private boolean storeWithdraw(int accountNumber, double amount) {
+        if (JournalEngine.isEnabled()) {
+            return JournalEngine.getInstance().withdraw(accountNumber, amount);
         }
 
-        String sql = "UPDATE accounts SET balance = balance - ? WHERE accountNumber = ?";
+        if (ShardedStorage.isEnabled()) {
+            return ShardedStorage.getInstance().withdraw(accountNumber, amount);
+        }
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setDouble(1, amount);
-            pstmt.setInt(2, accountNumber);
-            pstmt.executeUpdate();
+        try {
+            return OptimisticRetry.run(() -> postDebit(accountNumber, 0, amount));
+        } catch (SQLException e) {
+            EventLog.error("Error withdrawing money: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Changes one balance and records the transaction in one database transaction
+     * The version bump and the new history row are committed together, so a
+     * history cached under the old version can never miss the new row.
+     */
+    private boolean postSingle(String sql, int accountNumber, String type, double amount, String action) {
+        try {
+            connection.setAutoCommit(false);
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setDouble(1, amount);
+                pstmt.setInt(2, accountNumber);
+                pstmt.executeUpdate();
+            }
 
             // Record transaction
-            recordTransaction(accountNumber, "Withdraw", amount);
+            recordTransaction(accountNumber, type, amount);
 
+            connection.commit();
+            connection.setAutoCommit(true);
             return true;
         } catch (SQLException e) {
-            System.err.println("Error withdrawing money: " + e.getMessage());
+            try {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            } catch (SQLException ex) {
+                EventLog.error("Rollback error: " + ex.getMessage());
+            }
+            EventLog.error("Error " + action + ": " + e.getMessage());
             return false;
         }
     }
@@ -218,6 +621,18 @@ public class DatabaseHelper {
      * @return true if successful, false otherwise
      */
     public boolean transfer(int fromAccount, int toAccount, double amount) {
+        limitDenial = null;
+        long start = System.nanoTime();
+        boolean posted = admitted(() -> postTransfer(fromAccount, toAccount, amount));
+        if (posted) {
+            publishPosting("Transfer", fromAccount, toAccount, amount);
+        }
+        logPosting("transfer", fromAccount, toAccount, amount, start,
+                posted ? "ok" : limitDenial != null ? "limited" : "refused");
+        return posted;
+    }
+
+    private boolean postTransfer(int fromAccount, int toAccount, double amount) {
         if (!accountExists(fromAccount) || !accountExists(toAccount) || amount <= 0) {
             return false;
         }
@@ -226,49 +641,414 @@ public class DatabaseHelper {
             return false; // Cannot transfer to same account
         }
 
-        double senderBalance = getBalance(fromAccount);
-        if (senderBalance < amount) {
-            return false; // Insufficient balance
+        return withinLimits(fromAccount, VelocityLimiter.Posting.TRANSFER, amount,
+                () -> storeTransfer(fromAccount, toAccount, amount));
+    }
+
+    private boolean storeTransfer(int fromAccount, int toAccount, double amount) {
+        if (JournalEngine.isEnabled()) {
+            return JournalEngine.getInstance().transfer(fromAccount, toAccount, amount);
+        }
+
+        if (ShardedStorage.isEnabled()) {
+            return ShardedStorage.getInstance().transfer(fromAccount, toAccount, amount);
         }
 
         try {
-            // Start transaction
-            connection.setAutoCommit(false);
+            return OptimisticRetry.run(() -> postDebit(fromAccount, toAccount, amount));
+        } catch (SQLException e) {
+            EventLog.error("Error transferring money: " + e.getMessage());
+            return false;
+        }
+    }
 
-            // Deduct from sender
-            String deductSql = "UPDATE accounts SET balance = balance - ? WHERE accountNumber = ?";
+    /**
+     * Runs a debit if the account's velocity limits allow it
+     * The debit counts towards the limits from the moment it is allowed, so
+     * concurrent debits cannot both slip under a limit; if it then fails, it
+     * is taken back out.
+     * @return The debit's result, or false if a limit refused it
+     */
+    private boolean withinLimits(int accountNumber, VelocityLimiter.Posting posting, double amount,
+                                 BooleanSupplier debit) {
+        VelocityLimiter limiter = VelocityLimiter.getInstance();
+        if (!limiter.isEnabled()) {
+            return debit.getAsBoolean();
+        }
+
+        VelocityLimiter.Reservation reservation = limiter.tryAcquire(accountNumber, posting, amount);
+        if (reservation == null) {
+            VelocityLimiter.Rule rule = limiter.findBrokenRule(accountNumber, posting, amount);
+            limitDenial = "Limit reached: " + (rule != null ? rule.describe() : "try again later");
+            return false;
+        }
+
+        boolean posted = false;
+        try {
+            posted = debit.getAsBoolean();
+            return posted;
+        } finally {
+            if (!posted) {
+                limiter.cancel(reservation);
+            }
+        }
+    }
+
+    /**
+     * Records a posting in the event log
+     * Only constants and primitives are passed, so this neither allocates nor
+     * waits for the log to be written.
+     */
+    private static void logPosting(String operation, int accountNumber, int counterAccount, double amount,
+                                   long startNanos, String outcome) {
+        EventLog.posting(EventLog.Level.INFO, operation, accountNumber, counterAccount, amount,
+                System.nanoTime() - startNanos, outcome);
+    }
+
+    /**
+     * Gets why this helper's last withdrawal or transfer was refused by a velocity limit
+     * @return A message for the customer, or null if no limit refused it
+     */
+    public String getLimitDenial() {
+        return limitDenial;
+    }
+
+    /**
+     * Withdraws from or transfers out of an account if it is unchanged since its balance was checked
+     * The balance and version are read without a transaction, so other
+     * writers are never held up by the check. The debit only applies to the
+     * version that was read; if another writer changed the account in
+     * between, the transaction is rolled back and the attempt fails with a
+     * conflict for OptimisticRetry to run again. Credits add to whatever the
+     * balance is, so they need no check.
+     * @param fromAccount The account to debit
+     * @param toAccount The account to credit, or 0 for a withdrawal
+     * @param amount The amount
+     * @return true if posted, false if the balance is insufficient
+     */
+    private boolean postDebit(int fromAccount, int toAccount, double amount)
+            throws SQLException, OptimisticRetry.Conflict {
+        double balance = -1;
+        long version = -1;
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT balance, version FROM accounts WHERE accountNumber = ?")) {
+            pstmt.setInt(1, fromAccount);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                balance = rs.getDouble(1);
+                version = rs.getLong(2);
+            }
+        }
+        if (balance < amount) {
+            return false; // Insufficient balance
+        }
+
+        connection.setAutoCommit(false);
+        try {
+            // Deduct from sender, as long as nobody has posted to it since the read
+            String deductSql = "UPDATE accounts SET balance = balance - ?, version = version + 1 " +
+                    "WHERE accountNumber = ? AND version = ?";
             try (PreparedStatement pstmt = connection.prepareStatement(deductSql)) {
                 pstmt.setDouble(1, amount);
                 pstmt.setInt(2, fromAccount);
-                pstmt.executeUpdate();
+                pstmt.setLong(3, version);
+                if (pstmt.executeUpdate() == 0) {
+                    throw new OptimisticRetry.Conflict();
+                }
             }
 
-            // Add to receiver
-            String addSql = "UPDATE accounts SET balance = balance + ? WHERE accountNumber = ?";
-            try (PreparedStatement pstmt = connection.prepareStatement(addSql)) {
-                pstmt.setDouble(1, amount);
-                pstmt.setInt(2, toAccount);
-                pstmt.executeUpdate();
-            }
+            if (toAccount == 0) {
+                recordTransaction(fromAccount, "Withdraw", amount);
+            } else {
+                // Add to receiver
+                String addSql = "UPDATE accounts SET balance = balance + ?, version = version + 1 " +
+                        "WHERE accountNumber = ?";
+                try (PreparedStatement pstmt = connection.prepareStatement(addSql)) {
+                    pstmt.setDouble(1, amount);
+                    pstmt.setInt(2, toAccount);
+                    pstmt.executeUpdate();
+                }
 
-            // Record transactions
-            recordTransaction(fromAccount, "Transfer Out to " + toAccount, amount);
-            recordTransaction(toAccount, "Transfer In from " + fromAccount, amount);
+                // Record transactions
+                recordTransaction(fromAccount, "Transfer Out to " + toAccount, amount);
+                recordTransaction(toAccount, "Transfer In from " + fromAccount, amount);
+            }
 
-            // Commit transaction
             connection.commit();
+            return true;
+        } catch (SQLException | OptimisticRetry.Conflict e) {
+            connection.rollback();
+            throw e;
+        } finally {
             connection.setAutoCommit(true);
+        }
+    }
 
-            return true;
+    /**
+     * Pays many accounts from one source account
+     * Legs with an unknown account, a non-positive amount or the source as
+     * destination are marked and skipped. Each remaining leg counts against the
+     * source's velocity limits as one transfer, the way its history row is
+     * counted after a restart; legs over a limit are marked and skipped too.
+     * The source balance is checked once against the total of the remaining
+     * legs, which are then posted together and admitted as one bulk posting.
+     * @param sourceAccount The paying account
+     * @param legs The legs to pay; each leg's status is set to its outcome
+     * @return Number of legs paid, or -1 if the payout failed
+     */
+    public int bulkPayout(int sourceAccount, List<PayoutLeg> legs) {
+        if (!accountExists(sourceAccount)) {
+            return -1;
+        }
+
+        double total = 0;
+        int pending = 0;
+        for (PayoutLeg leg : legs) {
+            leg.setStatus(PayoutLeg.Status.PENDING);
+            if (!(leg.getAmount() > 0)) {
+                leg.setStatus(PayoutLeg.Status.INVALID_AMOUNT);
+            } else if (leg.getDestinationAccount() == sourceAccount) {
+                leg.setStatus(PayoutLeg.Status.SAME_ACCOUNT);
+            } else if (!accountExists(leg.getDestinationAccount())) {
+                leg.setStatus(PayoutLeg.Status.UNKNOWN_ACCOUNT);
+            } else {
+                total += leg.getAmount();
+                pending++;
+            }
+        }
+
+        List<PayoutLeg> reservedLegs = new ArrayList<>();
+        List<VelocityLimiter.Reservation> reservations = new ArrayList<>();
+        VelocityLimiter limiter = VelocityLimiter.getInstance();
+        Integer paid;
+        try {
+            if (limiter.isEnabled()) {
+                for (PayoutLeg leg : legs) {
+                    if (leg.getStatus() != PayoutLeg.Status.PENDING) {
+                        continue;
+                    }
+                    VelocityLimiter.Reservation reservation = limiter.tryAcquire(sourceAccount,
+                            VelocityLimiter.Posting.TRANSFER, leg.getAmount());
+                    if (reservation == null) {
+                        leg.setStatus(PayoutLeg.Status.LIMIT_REACHED);
+                        total -= leg.getAmount();
+                        pending--;
+                    } else {
+                        reservedLegs.add(leg);
+                        reservations.add(reservation);
+                    }
+                }
+            }
+            if (pending == 0) {
+                return 0;
+            }
+
+            double payoutTotal = total;
+            paid = admitted(AdmissionController.Priority.BULK,
+                    () -> postPayout(sourceAccount, legs, payoutTotal), null);
+            if (paid == null) {
+                for (PayoutLeg leg : legs) {
+                    if (leg.getStatus() == PayoutLeg.Status.PENDING) {
+                        leg.setStatus(PayoutLeg.Status.FAILED);
+                    }
+                }
+                return -1;
+            }
+        } finally {
+            // Only paid legs keep their place in the limit windows
+            for (int i = 0; i < reservedLegs.size(); i++) {
+                if (reservedLegs.get(i).getStatus() != PayoutLeg.Status.PAID) {
+                    limiter.cancel(reservations.get(i));
+                }
+            }
+        }
+
+        if (PostingEventBus.hasSubscribers()) {
+            for (PayoutLeg leg : legs) {
+                if (leg.getStatus() == PayoutLeg.Status.PAID) {
+                    publishPosting("Transfer", sourceAccount, leg.getDestinationAccount(), leg.getAmount());
+                }
+            }
+        }
+        return paid;
+    }
+
+    private int postPayout(int sourceAccount, List<PayoutLeg> legs, double total) {
+        if (JournalEngine.isEnabled()) {
+            return JournalEngine.getInstance().payout(sourceAccount, legs, total);
+        }
+
+        if (ShardedStorage.isEnabled()) {
+            return ShardedStorage.getInstance().payout(sourceAccount, legs, total);
+        }
+
+        List<PayoutLeg> pending = new ArrayList<>();
+        for (PayoutLeg leg : legs) {
+            if (leg.getStatus() == PayoutLeg.Status.PENDING) {
+                pending.add(leg);
+            }
+        }
+
+        try {
+            int paid = OptimisticRetry.run(() -> postPayoutLegs(sourceAccount, pending, total));
+            for (PayoutLeg leg : pending) {
+                leg.setStatus(paid > 0 ? PayoutLeg.Status.PAID : PayoutLeg.Status.INSUFFICIENT_FUNDS);
+            }
+            return paid;
         } catch (SQLException e) {
-            try {
+            EventLog.error("Error paying out: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Checks the payer's balance and applies every leg in one transaction
+     * The check reads inside the transaction, so if another writer commits
+     * before the debit SQLite reports the snapshot busy and OptimisticRetry
+     * runs the payout again.
+     * @return Number of legs paid, or 0 if the balance is insufficient
+     */
+    private int postPayoutLegs(int sourceAccount, List<PayoutLeg> pending, double total) throws SQLException {
+        connection.setAutoCommit(false);
+        try {
+            // Read inside the transaction so the check and the debit see the same balance
+            if (getBalance(sourceAccount) < total) {
                 connection.rollback();
-                connection.setAutoCommit(true);
-            } catch (SQLException ex) {
-                System.err.println("Rollback error: " + ex.getMessage());
+                return 0;
+            }
+
+            applyPayoutLegs(connection, sourceAccount, pending);
+
+            connection.commit();
+            return pending.size();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Debits the payer once and credits every leg with batched statements
+     * Runs inside the caller's transaction; it fails if any credit misses its
+     * account, so the caller rolls the whole payout back
+     * @param connection Connection with an open transaction
+     * @param sourceAccount The paying account
+     * @param legs The legs to apply
+     * @throws SQLException if a statement fails or a destination is missing
+     */
+    static void applyPayoutLegs(Connection connection, int sourceAccount, List<PayoutLeg> legs)
+            throws SQLException {
+        if (legs.isEmpty()) {
+            return;
+        }
+
+        double total = 0;
+        for (PayoutLeg leg : legs) {
+            total += leg.getAmount();
+        }
+
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "UPDATE accounts SET balance = balance - ?, version = version + 1 WHERE accountNumber = ?")) {
+            pstmt.setDouble(1, total);
+            pstmt.setInt(2, sourceAccount);
+            pstmt.executeUpdate();
+        }
+
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "UPDATE accounts SET balance = balance + ?, version = version + 1 WHERE accountNumber = ?")) {
+            for (PayoutLeg leg : legs) {
+                pstmt.setDouble(1, leg.getAmount());
+                pstmt.setInt(2, leg.getDestinationAccount());
+                pstmt.addBatch();
+            }
+            int[] counts = pstmt.executeBatch();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    throw new SQLException("Account " + legs.get(i).getDestinationAccount() + " not found");
+                }
+            }
+        }
+
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "INSERT INTO transactions (accountNumber, type, amount, date) VALUES (?, ?, ?, ?)")) {
+            String now = LocalDateTime.now().format(DATE_FORMATTER);
+            for (PayoutLeg leg : legs) {
+                pstmt.setInt(1, sourceAccount);
+                pstmt.setString(2, "Transfer Out to " + leg.getDestinationAccount());
+                pstmt.setDouble(3, leg.getAmount());
+                pstmt.setString(4, now);
+                pstmt.addBatch();
+
+                pstmt.setInt(1, leg.getDestinationAccount());
+                pstmt.setString(2, "Transfer In from " + sourceAccount);
+                pstmt.setDouble(3, leg.getAmount());
+                pstmt.setString(4, now);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    /**
+     * Sets the traffic class for this helper's postings
+     * Batch jobs use BULK so that teller postings are admitted first
+     * @param priority The traffic class
+     */
+    public void setPriority(AdmissionController.Priority priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * Makes this helper's postings wait for admission however long it takes
+     * For jobs that cannot retry a posting that was turned away under load
+     * @param wait true to wait, false to give up on the admission timeout
+     */
+    public void setWaitForAdmission(boolean wait) {
+        this.waitForAdmission = wait;
+    }
+
+    /**
+     * Runs a posting once the admission controller lets it in
+     * @return The posting's result, or false if it was not admitted
+     */
+    private boolean admitted(BooleanSupplier posting) {
+        return admitted(priority, posting::getAsBoolean, false);
+    }
+
+    /**
+     * Runs a posting under the given traffic class once it is admitted
+     * @return The posting's result, or notAdmitted if it was turned away
+     */
+    private <T> T admitted(AdmissionController.Priority priority, Supplier<T> posting, T notAdmitted) {
+        AdmissionController admission = AdmissionController.getInstance();
+        AdmissionController.Permit permit = admission.acquire(priority);
+        if (permit == null && waitForAdmission) {
+            try {
+                permit = admission.awaitPermit(priority);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-            System.err.println("Error transferring money: " + e.getMessage());
-            return false;
+        }
+        if (permit == null) {
+            EventLog.warn("Posting not admitted: too many postings in progress");
+            return notAdmitted;
+        }
+        try {
+            return posting.get();
+        } finally {
+            admission.release(permit);
+        }
+    }
+
+    /**
+     * Tells live subscribers about a committed posting
+     */
+    private static void publishPosting(String type, int accountNumber, int counterAccount, double amount) {
+        if (PostingEventBus.hasSubscribers()) {
+            PostingEventBus.publish(new PostingEvent(System.currentTimeMillis(), type, accountNumber,
+                    counterAccount, amount));
         }
     }
 
@@ -277,8 +1057,9 @@ public class DatabaseHelper {
      * @param accountNumber The account number
      * @param type The transaction type
      * @param amount The transaction amount
+     * @throws SQLException if the row cannot be written; the caller rolls back its balance change
      */
-    private void recordTransaction(int accountNumber, String type, double amount) {
+    private void recordTransaction(int accountNumber, String type, double amount) throws SQLException {
         String sql = "INSERT INTO transactions (accountNumber, type, amount, date) VALUES (?, ?, ?, ?)";
 
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
@@ -287,18 +1068,15 @@ public class DatabaseHelper {
             pstmt.setDouble(3, amount);
 
             // Get current date and time
-            LocalDateTime now = LocalDateTime.now();
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-            pstmt.setString(4, now.format(formatter));
+            pstmt.setString(4, LocalDateTime.now().format(DATE_FORMATTER));
 
             pstmt.executeUpdate();
-        } catch (SQLException e) {
-            System.err.println("Error recording transaction: " + e.getMessage());
         }
     }
 
     /**
      * Gets transaction history for an account
+     * Only the hot tier is read; archived rows are served by loadTransactionHistory
      * @param accountNumber The account number
      * @return ResultSet containing transaction history
      */
@@ -306,13 +1084,270 @@ public class DatabaseHelper {
         String sql = "SELECT * FROM transactions WHERE accountNumber = ? ORDER BY id DESC";
 
         try {
-            PreparedStatement pstmt = connection.prepareStatement(sql);
+            PreparedStatement pstmt = historyConnection(accountNumber).prepareStatement(sql);
             pstmt.setInt(1, accountNumber);
             return pstmt.executeQuery();
         } catch (SQLException e) {
-            System.err.println("Error getting transaction history: " + e.getMessage());
+            EventLog.error("Error getting transaction history: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Loads an account's full transaction history into a columnar model
+     * @param accountNumber The account number
+     * @param columns Model to append rows to, newest first
+     * @return Number of rows loaded, or -1 on error
+     */
+    public int loadTransactionHistory(int accountNumber, TransactionColumns columns) {
+        return loadTransactionHistory(accountNumber, Long.MIN_VALUE, columns);
+    }
+
+    /**
+     * Loads transaction history for an account into a columnar model
+     * Amounts are converted to cents and dates to epoch milliseconds in SQL,
+     * so no per-row objects are created while reading. Archived rows are
+     * appended after the hot ones, and the archive is only read when the
+     * range starts before its cutoff.
+     * @param accountNumber The account number
+     * @param sinceMillis Oldest date wanted, as the history dates are encoded, or Long.MIN_VALUE for all
+     * @param columns Model to append rows to, newest first
+     * @return Number of rows loaded, or -1 on error
+     */
+    public int loadTransactionHistory(int accountNumber, long sinceMillis, TransactionColumns columns) {
+        settleHotAccount(accountNumber);
+        // Read the version first: a posting in between only makes the cached rows look older than they are
+        long version = getAccountVersion(accountNumber);
+        if (version >= 0) {
+            int cached = historyCache.load(accountNumber, version, sinceMillis, columns);
+            if (cached >= 0) {
+                return cached;
+            }
+        }
+
+        TransactionColumns rows = new TransactionColumns();
+        int count = readTransactionHistory(accountNumber, sinceMillis, rows);
+        if (count < 0) {
+            return -1;
+        }
+        if (version >= 0) {
+            historyCache.put(accountNumber, version, sinceMillis, rows);
+        }
+        return columns.addAll(rows, Long.MIN_VALUE);
+    }
+
+    /**
+     * Gets the totals of an account's full transaction history
+     * Served from the history cache while the account is unchanged.
+     * @param accountNumber The account number
+     * @return The summary, or null on error
+     */
+    public HistoryCache.Summary getHistorySummary(int accountNumber) {
+        settleHotAccount(accountNumber);
+        long version = getAccountVersion(accountNumber);
+        if (version < 0) {
             return null;
         }
+        HistoryCache.Summary summary = historyCache.getSummary(accountNumber, version, Long.MIN_VALUE);
+        if (summary != null) {
+            return summary;
+        }
+
+        TransactionColumns rows = new TransactionColumns();
+        if (readTransactionHistory(accountNumber, Long.MIN_VALUE, rows) < 0) {
+            return null;
+        }
+        return historyCache.put(accountNumber, version, Long.MIN_VALUE, rows);
+    }
+
+    /**
+     * Gets an account's version, which every posting to the account increments
+     * @param accountNumber The account number
+     * @return The version, or -1 if the account doesn't exist
+     */
+    public long getAccountVersion(int accountNumber) {
+        String sql = "SELECT version FROM accounts WHERE accountNumber = ?";
+
+        try (PreparedStatement pstmt = historyConnection(accountNumber).prepareStatement(sql)) {
+            pstmt.setInt(1, accountNumber);
+            ResultSet rs = pstmt.executeQuery();
+            return rs.next() ? rs.getLong(1) : -1;
+        } catch (SQLException e) {
+            EventLog.error("Error getting account version: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Checks if anything was posted to an account since a version was read
+     * A single primary key lookup; no history is read.
+     * @param accountNumber The account number
+     * @param version A version from getAccountVersion
+     * @return true if the account changed or no longer exists, false otherwise
+     */
+    public boolean hasChangedSince(int accountNumber, long version) {
+        return getAccountVersion(accountNumber) != version;
+    }
+
+    /**
+     * Folds a hot account's slot credits into its home shard before its history is read
+     * Does nothing outside sharded mode or for ordinary accounts.
+     * @param accountNumber The account number
+     */
+    public void settleHotAccount(int accountNumber) {
+        if (!ShardedStorage.isEnabled() || !ShardedStorage.getInstance().hasSlots(accountNumber)) {
+            return;
+        }
+        try {
+            ShardedStorage.getInstance().compact(accountNumber);
+        } catch (SQLException e) {
+            EventLog.error("Error settling hot account: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the cache that serves unchanged accounts' histories
+     * @return The shared history cache
+     */
+    public static HistoryCache getHistoryCache() {
+        return historyCache;
+    }
+
+    /**
+     * Reads transaction history for an account from the hot table and the archive
+     */
+    private int readTransactionHistory(int accountNumber, long sinceMillis, TransactionColumns columns) {
+        // Dates are stored as local time text; they are read as if UTC and shown the same way
+        String sql = "SELECT id, accountNumber, type, CAST(ROUND(amount * 100) AS INTEGER), " +
+                "CAST(strftime('%s', date) AS INTEGER) * 1000 " +
+                "FROM transactions WHERE accountNumber = ? AND date >= ? AND NOT (date < ? AND id <= ?) ORDER BY id DESC";
+
+        try {
+            TransactionArchive archive = TransactionArchive.getIfPresent();
+            TransactionArchive.Summary archived = null;
+            if (archive != null && sinceMillis < archive.getArchivedBeforeMillis()) {
+                archived = archive.getSummary(accountNumber);
+            }
+
+            int count = 0;
+            try (PreparedStatement pstmt = historyConnection(accountNumber).prepareStatement(sql)) {
+                pstmt.setInt(1, accountNumber);
+                pstmt.setString(2, sinceMillis == Long.MIN_VALUE ? "" : TransactionArchive.toText(sinceMillis));
+                // Rows already in the archive are skipped if a run stopped before deleting them
+                pstmt.setString(3, archived == null ? "" : TransactionArchive.toText(archive.getArchivedBeforeMillis()));
+                pstmt.setLong(4, archived == null ? 0 : archived.getLastArchivedId());
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    columns.add(rs.getLong(1), rs.getInt(2), rs.getString(3), rs.getLong(4), rs.getLong(5));
+                    count++;
+                }
+            }
+
+            if (archived != null) {
+                count += archive.loadHistory(accountNumber, sinceMillis, columns);
+            }
+            return count;
+        } catch (SQLException | IllegalStateException e) {
+            EventLog.error("Error loading transaction history: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Loads one page of an account's history, newest first
+     * Pages are keyed by transaction id rather than offset, so a page costs the
+     * same however deep it is and new postings do not shift later pages. The
+     * archive is only read once the page reaches back to archived ids.
+     * @param accountNumber The account number
+     * @param beforeId Only rows with a smaller id are returned; Long.MAX_VALUE for the first page
+     * @param limit Maximum number of rows
+     * @param columns Model to append rows to, newest first
+     * @return Number of rows loaded, or -1 on error
+     */
+    public int loadTransactionPage(int accountNumber, long beforeId, int limit, TransactionColumns columns) {
+        String sql = "SELECT id, accountNumber, type, CAST(ROUND(amount * 100) AS INTEGER), " +
+                "CAST(strftime('%s', date) AS INTEGER) * 1000 " +
+                "FROM transactions WHERE accountNumber = ? AND id < ? AND NOT (date < ? AND id <= ?) " +
+                "ORDER BY id DESC LIMIT ?";
+
+        // Folded rows get new ids, so only the first page has to wait for a fold
+        if (beforeId == Long.MAX_VALUE) {
+            settleHotAccount(accountNumber);
+        }
+
+        try {
+            TransactionArchive archive = TransactionArchive.getIfPresent();
+            TransactionArchive.Summary archived = archive == null ? null : archive.getSummary(accountNumber);
+
+            TransactionColumns hot = new TransactionColumns();
+            try (PreparedStatement pstmt = historyConnection(accountNumber).prepareStatement(sql)) {
+                pstmt.setInt(1, accountNumber);
+                pstmt.setLong(2, beforeId);
+                pstmt.setString(3, archived == null ? "" : archive.getArchivedBeforeText());
+                pstmt.setLong(4, archived == null ? 0 : archived.getLastArchivedId());
+                pstmt.setInt(5, limit);
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    hot.add(rs.getLong(1), rs.getInt(2), rs.getString(3), rs.getLong(4), rs.getLong(5));
+                }
+            }
+
+            // Archived ids only interleave with this page if the page reaches below the newest of them
+            TransactionColumns cold = new TransactionColumns();
+            Integer[] coldOrder = new Integer[0];
+            if (archived != null && (hot.size() < limit || hot.getId(hot.size() - 1) < archived.getLastArchivedId())) {
+                archive.loadHistory(accountNumber, Long.MIN_VALUE, cold);
+                coldOrder = new Integer[cold.size()];
+                for (int i = 0; i < coldOrder.length; i++) {
+                    coldOrder[i] = i;
+                }
+                Arrays.sort(coldOrder, (a, b) -> Long.compare(cold.getId(b), cold.getId(a)));
+            }
+
+            // Merge both tiers by descending id
+            int count = 0;
+            int h = 0;
+            int c = 0;
+            while (c < coldOrder.length && cold.getId(coldOrder[c]) >= beforeId) {
+                c++;
+            }
+            StringBuilder type = new StringBuilder();
+            while (count < limit && (h < hot.size() || c < coldOrder.length)) {
+                boolean fromHot = c == coldOrder.length
+                        || (h < hot.size() && hot.getId(h) > cold.getId(coldOrder[c]));
+                TransactionColumns source = fromHot ? hot : cold;
+                int row = fromHot ? h++ : coldOrder[c++];
+                type.setLength(0);
+                source.appendType(row, type);
+                columns.add(source.getId(row), source.getAccountNumber(row), type.toString(),
+                        source.getAmountCents(row), source.getTimestamp(row));
+                count++;
+            }
+            return count;
+        } catch (SQLException | IllegalStateException e) {
+            EventLog.error("Error loading transaction page: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Gets the connection that holds an account's transactions
+     * In sharded mode this is a read connection to the account's shard
+     */
+    private Connection historyConnection(int accountNumber) throws SQLException {
+        if (!ShardedStorage.isEnabled()) {
+            return connection;
+        }
+
+        ShardedStorage storage = ShardedStorage.getInstance();
+        int shard = storage.shardOf(accountNumber);
+        if (shardReaders == null) {
+            shardReaders = new Connection[ShardedStorage.getShardCount()];
+        }
+        if (shardReaders[shard] == null) {
+            shardReaders[shard] = QueryProfiler.wrap(storage.openReadConnection(shard));
+        }
+        return shardReaders[shard];
     }
 
     /**
@@ -320,12 +1355,19 @@ public class DatabaseHelper {
      */
     public void closeConnection() {
         try {
+            if (shardReaders != null) {
+                for (Connection reader : shardReaders) {
+                    if (reader != null) {
+                        reader.close();
+                    }
+                }
+            }
             if (connection != null && !connection.isClosed()) {
                 connection.close();
-                System.out.println("Database connection closed.");
+                EventLog.info("Database connection closed.");
             }
         } catch (SQLException e) {
-            System.err.println("Error closing connection: " + e.getMessage());
+            EventLog.error("Error closing connection: " + e.getMessage());
         }
     }
 }
@@ -0,0 +1,438 @@
+package com.khorshed.mybank.mybankapp.database;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * EventLog - Asynchronous structured log
+ *
+ * Callers claim a slot in a preallocated ring and fill its fields in place;
+ * a background thread formats the published slots as key=value lines and
+ * appends them to logs/mybank.log, which is rotated by size. A posting event
+ * carries only primitives and string constants, so logging one costs the
+ * caller a few array stores and no I/O or allocation. When the writer falls
+ * a whole ring behind, new events are dropped and counted rather than making
+ * the caller wait.
+ *
+ * -Dmybank.log.level (default INFO) filters what is recorded,
+ * -Dmybank.log.consoleLevel (default WARN) what is also written to the
+ * console, -Dmybank.log.maxBytes (default 10 MB) and -Dmybank.log.files
+ * (default 5) control rotation, and -Dmybank.log.bufferSize (default 8192,
+ * rounded up to a power of two) sizes the ring.
+ */
+public final class EventLog {
+
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    private static final Level LEVEL = parseLevel(System.getProperty("mybank.log.level"), Level.INFO);
+    private static final Level CONSOLE_LEVEL = parseLevel(System.getProperty("mybank.log.consoleLevel"), Level.WARN);
+    private static final Path LOG_FILE = Paths.get("logs", "mybank.log");
+    private static final long MAX_LOG_BYTES = Long.getLong("mybank.log.maxBytes", 10L * 1024 * 1024);
+    private static final int LOG_FILES_KEPT = Math.max(1, Integer.getInteger("mybank.log.files", 5));
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    // Padded so the fields after the level line up
+    private static final String[] LEVEL_NAMES = {"DEBUG", "INFO ", "WARN ", "ERROR"};
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    private static final int CAPACITY = ringCapacity(Integer.getInteger("mybank.log.bufferSize", 8192));
+    private static final int MASK = CAPACITY - 1;
+
+    // One event per slot, spread over parallel arrays so nothing is allocated per event
+    private static final long[] timestamps = new long[CAPACITY];
+    private static final Level[] levels = new Level[CAPACITY];
+    private static final String[] operations = new String[CAPACITY];
+    private static final int[] accounts = new int[CAPACITY];
+    private static final int[] counterAccounts = new int[CAPACITY];
+    private static final double[] amounts = new double[CAPACITY];
+    private static final long[] durations = new long[CAPACITY];
+    private static final String[] outcomes = new String[CAPACITY];
+    private static final String[] messages = new String[CAPACITY];
+    private static final Throwable[] throwables = new Throwable[CAPACITY];
+    private static final String[] threadNames = new String[CAPACITY];
+
+    // Sequence a slot was last published under; the writer waits for the one it expects
+    private static final AtomicLongArray published = new AtomicLongArray(CAPACITY);
+    private static final AtomicLong claimed = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+    private static volatile long consumed;
+    private static volatile boolean running = true;
+
+    // Owned by the writer thread
+    private static long lastTimestamp = -1;
+    private static String lastTimeText;
+
+    private static final Thread writer = new Thread(EventLog::drainLoop, "event-log");
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            published.set(i, -1);
+        }
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(EventLog::shutdown, "event-log-shutdown"));
+    }
+
+    private EventLog() {
+    }
+
+    /**
+     * Checks whether events of a level are recorded
+     * @param level The level
+     * @return true if it passes -Dmybank.log.level
+     */
+    public static boolean isEnabled(Level level) {
+        return level.compareTo(LEVEL) >= 0;
+    }
+
+    /**
+     * Records one posting
+     * @param level The level
+     * @param operation What was posted, as a constant such as "withdraw"
+     * @param account The account posted to
+     * @param counterAccount The other account of a transfer, or 0
+     * @param amount The amount
+     * @param durationNanos How long the posting took
+     * @param outcome How it ended, as a constant such as "ok"
+     */
+    public static void posting(Level level, String operation, int account, int counterAccount, double amount,
+                               long durationNanos, String outcome) {
+        if (!isEnabled(level)) {
+            return;
+        }
+        long sequence = claim();
+        if (sequence < 0) {
+            return;
+        }
+        int slot = (int) (sequence & MASK);
+        fill(slot, level, operation, null, null);
+        accounts[slot] = account;
+        counterAccounts[slot] = counterAccount;
+        amounts[slot] = amount;
+        durations[slot] = durationNanos;
+        outcomes[slot] = outcome;
+        published.lazySet(slot, sequence);
+    }
+
+    public static void debug(String message) {
+        message(Level.DEBUG, message, null);
+    }
+
+    public static void info(String message) {
+        message(Level.INFO, message, null);
+    }
+
+    public static void warn(String message) {
+        message(Level.WARN, message, null);
+    }
+
+    public static void error(String message) {
+        message(Level.ERROR, message, null);
+    }
+
+    /**
+     * Records an error with its stack trace
+     * The trace goes to the log file only; the console gets the one line.
+     * @param message What failed
+     * @param error The cause
+     */
+    public static void error(String message, Throwable error) {
+        message(Level.ERROR, message, error);
+    }
+
+    /**
+     * Writes out everything already logged and stops the writer
+     * Events logged after this are dropped once the ring fills.
+     */
+    public static void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void message(Level level, String message, Throwable error) {
+        if (!isEnabled(level)) {
+            return;
+        }
+        long sequence = claim();
+        if (sequence < 0) {
+            return;
+        }
+        int slot = (int) (sequence & MASK);
+        fill(slot, level, null, message, error);
+        published.lazySet(slot, sequence);
+    }
+
+    /**
+     * Claims the next sequence
+     * @return The sequence, or -1 if the ring is full and the event is dropped
+     */
+    private static long claim() {
+        while (true) {
+            long sequence = claimed.get();
+            if (sequence - consumed >= CAPACITY) {
+                dropped.incrementAndGet();
+                return -1;
+            }
+            if (claimed.compareAndSet(sequence, sequence + 1)) {
+                return sequence;
+            }
+        }
+    }
+
+    private static void fill(int slot, Level level, String operation, String message, Throwable error) {
+        timestamps[slot] = System.currentTimeMillis();
+        levels[slot] = level;
+        operations[slot] = operation;
+        messages[slot] = message;
+        throwables[slot] = error;
+        threadNames[slot] = Thread.currentThread().getName();
+    }
+
+    private static void drainLoop() {
+        Output output = new Output();
+        StringBuilder line = new StringBuilder(256);
+        long reportedDrops = 0;
+
+        while (true) {
+            boolean stopping = !running;
+            int written = 0;
+            long sequence = consumed;
+            while (published.get((int) (sequence & MASK)) == sequence) {
+                int slot = (int) (sequence & MASK);
+                line.setLength(0);
+                format(slot, line);
+                output.write(levels[slot], line, throwables[slot]);
+                // Let go of references so the ring does not keep them alive
+                messages[slot] = null;
+                throwables[slot] = null;
+                sequence++;
+                consumed = sequence;
+                written++;
+            }
+
+            long drops = dropped.get();
+            if (drops != reportedDrops) {
+                line.setLength(0);
+                line.append(LocalDateTime.now().format(TIME_FORMATTER)).append(' ')
+                        .append(pad(Level.WARN)).append(" [event-log] msg=\"")
+                        .append(drops - reportedDrops).append(" event(s) dropped, log buffer full\"");
+                output.write(Level.WARN, line, null);
+                reportedDrops = drops;
+                written++;
+            }
+
+            if (written > 0) {
+                output.flush();
+            } else if (stopping) {
+                output.close();
+                return;
+            } else {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    private static void format(int slot, StringBuilder line) {
+        // Many events share a millisecond, so the formatted time is reused
+        if (timestamps[slot] != lastTimestamp) {
+            lastTimestamp = timestamps[slot];
+            lastTimeText = LocalDateTime.ofInstant(Instant.ofEpochMilli(lastTimestamp), ZoneId.systemDefault())
+                    .format(TIME_FORMATTER);
+        }
+        line.append(lastTimeText)
+                .append(' ').append(pad(levels[slot]))
+                .append(" [").append(threadNames[slot]).append("] ");
+
+        if (operations[slot] != null) {
+            line.append("op=").append(operations[slot])
+                    .append(" account=").append(accounts[slot]);
+            if (counterAccounts[slot] != 0) {
+                line.append(" to=").append(counterAccounts[slot]);
+            }
+            line.append(" amount=");
+            appendAmount(amounts[slot], line);
+            line
+                    .append(" durationMicros=").append(durations[slot] / 1000)
+                    .append(" outcome=").append(outcomes[slot]);
+            return;
+        }
+
+        line.append("msg=");
+        quote(messages[slot], line);
+        if (throwables[slot] != null) {
+            line.append(" error=");
+            quote(throwables[slot].toString(), line);
+        }
+    }
+
+    /**
+     * Appends an amount with two decimals, without the cost of String.format
+     */
+    private static void appendAmount(double amount, StringBuilder line) {
+        long cents = Math.round(amount * 100);
+        if (cents < 0) {
+            line.append('-');
+            cents = -cents;
+        }
+        long fraction = cents % 100;
+        line.append(cents / 100).append('.');
+        if (fraction < 10) {
+            line.append('0');
+        }
+        line.append(fraction);
+    }
+
+    private static void quote(String text, StringBuilder line) {
+        line.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c == '\n' || c == '\r') {
+                line.append(' ');
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    private static String pad(Level level) {
+        return LEVEL_NAMES[level.ordinal()];
+    }
+
+    private static Level parseLevel(String value, Level fallback) {
+        if (value == null || value.trim().isEmpty()) {
+            return fallback;
+        }
+        try {
+            return Level.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown log level '" + value + "', using " + fallback);
+            return fallback;
+        }
+    }
+
+    private static int ringCapacity(int requested) {
+        int capacity = 1024;
+        while (capacity < requested && capacity < (1 << 20)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * The writer thread's file and console output
+     * Only the writer thread touches it. I/O errors go straight to the
+     * console, since there is nowhere else to report them.
+     */
+    private static class Output {
+        private BufferedWriter file;
+        private long fileBytes;
+        private boolean fileFailed;
+
+        void write(Level level, CharSequence line, Throwable error) {
+            if (level.compareTo(CONSOLE_LEVEL) >= 0) {
+                PrintStream console = level.compareTo(Level.WARN) >= 0 ? System.err : System.out;
+                console.println(line);
+            }
+            if (fileFailed) {
+                return;
+            }
+
+            try {
+                if (file == null) {
+                    open();
+                } else if (fileBytes > MAX_LOG_BYTES) {
+                    file.close();
+                    rotate();
+                    open();
+                }
+                file.append(line);
+                file.newLine();
+                fileBytes += line.length() + 1;
+                if (error != null) {
+                    PrintWriter trace = new PrintWriter(file);
+                    error.printStackTrace(trace);
+                    trace.flush();
+                    // Stack traces are not counted exactly; the next rotation check catches up
+                    fileBytes += 512;
+                }
+            } catch (IOException e) {
+                // Keep logging to the console rather than failing on every event
+                fileFailed = true;
+                System.err.println("Error writing event log: " + e.getMessage());
+            }
+        }
+
+        void flush() {
+            if (file != null) {
+                try {
+                    file.flush();
+                } catch (IOException e) {
+                    System.err.println("Error writing event log: " + e.getMessage());
+                }
+            }
+        }
+
+        void close() {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing event log: " + e.getMessage());
+                }
+                file = null;
+            }
+        }
+
+        private void open() throws IOException {
+            Files.createDirectories(LOG_FILE.getParent());
+            fileBytes = Files.exists(LOG_FILE) ? Files.size(LOG_FILE) : 0;
+            file = Files.newBufferedWriter(LOG_FILE, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+
+        /**
+         * mybank.log becomes .1, .1 becomes .2, and so on; the oldest is dropped
+         */
+        private void rotate() throws IOException {
+            for (int i = LOG_FILES_KEPT - 1; i >= 1; i--) {
+                Path older = Paths.get(LOG_FILE + "." + i);
+                if (Files.exists(older)) {
+                    Files.move(older, Paths.get(LOG_FILE + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            if (LOG_FILES_KEPT > 1) {
+                Files.move(LOG_FILE, Paths.get(LOG_FILE + ".1"), StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.delete(LOG_FILE);
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.khorshed.mybank.mybankapp.database;
+
+import com.khorshed.mybank.mybankapp.models.Transaction;
+import com.khorshed.mybank.mybankapp.models.TransactionColumns;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * HistoryCache - Bounded in-memory cache of loaded transaction histories
+ * Each entry holds one account's rows as loaded at a given account version.
+ * Every posting bumps the version, so an entry is only served while nothing
+ * has been posted to its account since; stale entries are never matched and
+ * age out. Least recently used entries are evicted once the estimated size
+ * passes -Dmybank.historyCache.maxBytes (32 MB by default).
+ */
+public class HistoryCache {
+
+    private static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    // Per row: id, amount, date (8 bytes each), account, counter (4 each), type code (2)
+    private static final int ROW_BYTES = 34;
+    private static final int ENTRY_BYTES = 256;
+
+    /**
+     * Totals of the rows held by one cache entry
+     */
+    public static class Summary {
+        private final long version;
+        private final int transactionCount;
+        private final long creditCents;
+        private final long debitCents;
+
+        Summary(long version, int transactionCount, long creditCents, long debitCents) {
+            this.version = version;
+            this.transactionCount = transactionCount;
+            this.creditCents = creditCents;
+            this.debitCents = debitCents;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public int getTransactionCount() {
+            return transactionCount;
+        }
+
+        public long getCreditCents() {
+            return creditCents;
+        }
+
+        public long getDebitCents() {
+            return debitCents;
+        }
+    }
+
+    private static class Entry {
+        private final long version;
+        private final long sinceMillis;
+        private final TransactionColumns rows;
+        private final Summary summary;
+        private final long bytes;
+
+        private Entry(long version, long sinceMillis, TransactionColumns rows) {
+            this.version = version;
+            this.sinceMillis = sinceMillis;
+            this.rows = rows;
+            this.summary = summarize(version, rows);
+            this.bytes = ENTRY_BYTES + (long) rows.size() * ROW_BYTES;
+        }
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+
+    public HistoryCache() {
+        this(Long.getLong("mybank.historyCache.maxBytes", DEFAULT_MAX_BYTES));
+    }
+
+    /**
+     * @param maxBytes Estimated memory the cached rows may use; 0 disables the cache
+     */
+    public HistoryCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Appends an account's cached rows if they are still current
+     * @param accountNumber The account number
+     * @param version The account's current version
+     * @param sinceMillis Oldest date wanted, or Long.MIN_VALUE for all
+     * @param columns Model to append rows to, newest first
+     * @return Number of rows appended, or -1 if the cache cannot serve the request
+     */
+    public int load(int accountNumber, long version, long sinceMillis, TransactionColumns columns) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(accountNumber);
+            if (entry == null || entry.version != version || entry.sinceMillis > sinceMillis) {
+                misses++;
+                return -1;
+            }
+            hits++;
+        }
+        // Entries are never changed once stored, so they are copied outside the lock
+        return columns.addAll(entry.rows, sinceMillis);
+    }
+
+    /**
+     * Gets the totals of an account's cached rows if they are still current
+     * @param accountNumber The account number
+     * @param version The account's current version
+     * @param sinceMillis Oldest date the totals must cover
+     * @return The summary, or null if the cache cannot serve it
+     */
+    public synchronized Summary getSummary(int accountNumber, long version, long sinceMillis) {
+        Entry entry = entries.get(accountNumber);
+        if (entry == null || entry.version != version || entry.sinceMillis != sinceMillis) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.summary;
+    }
+
+    /**
+     * Stores an account's rows as loaded at a version
+     * An entry for a newer version or a wider range is kept instead.
+     * @param accountNumber The account number
+     * @param version The version read before the rows were loaded
+     * @param sinceMillis Oldest date the rows cover, or Long.MIN_VALUE for all
+     * @param rows The loaded rows; the cache keeps them, so the caller must not change them
+     * @return The stored entry's summary
+     */
+    public synchronized Summary put(int accountNumber, long version, long sinceMillis, TransactionColumns rows) {
+        Entry entry = new Entry(version, sinceMillis, rows);
+        Entry current = entries.get(accountNumber);
+        if (current != null && (current.version > version
+                || (current.version == version && current.sinceMillis <= sinceMillis))) {
+            return entry.summary;
+        }
+
+        if (entry.bytes > maxBytes) {
+            // Too large to keep without pushing out everything else
+            if (current != null) {
+                entries.remove(accountNumber);
+                bytes -= current.bytes;
+            }
+            return entry.summary;
+        }
+
+        if (current != null) {
+            bytes -= current.bytes;
+        }
+        entries.put(accountNumber, entry);
+        bytes += entry.bytes;
+
+        Iterator<Map.Entry<Integer, Entry>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Entry evicted = eldest.next().getValue();
+            eldest.remove();
+            bytes -= evicted.bytes;
+        }
+        return entry.summary;
+    }
+
+    /**
+     * Drops every entry
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private static Summary summarize(long version, TransactionColumns rows) {
+        // Signs are looked up once per type label rather than once per row
+        int[] signs = new int[16];
+        Arrays.fill(signs, 2);
+        long credits = 0;
+        long debits = 0;
+        for (int row = 0; row < rows.size(); row++) {
+            int code = rows.getTypeCode(row);
+            if (code >= signs.length) {
+                int from = signs.length;
+                signs = Arrays.copyOf(signs, Math.max(code + 1, from * 2));
+                Arrays.fill(signs, from, signs.length, 2);
+            }
+            if (signs[code] == 2) {
+                signs[code] = Transaction.signOf(rows.getTypeLabel(row));
+            }
+            if (signs[code] > 0) {
+                credits += rows.getAmountCents(row);
+            } else if (signs[code] < 0) {
+                debits += rows.getAmountCents(row);
+            }
+        }
+        return new Summary(version, rows.size(), credits, debits);
+    }
+}
@@ -0,0 +1,439 @@
+package com.khorshed.mybank.mybankapp.database;
+
+import com.khorshed.mybank.mybankapp.models.PayoutLeg;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JournalEngine - Event-sourced posting mode
+ *
+ * Enabled with -Dmybank.journal=true. Postings are validated against balances
+ * held in memory, appended to the PostingJournal and acknowledged once the
+ * group flusher has forced them to disk (or straight away with
+ * -Dmybank.journal.sync=false). The accounts and transactions tables become a
+ * projection that JournalProjector brings up to date in the background.
+ *
+ * Every few minutes (-Dmybank.snapshot.intervalSeconds, default 300) a
+ * BalanceSnapshot is copied from the in-memory balances. On restart the newest
+ * snapshot is loaded and only the journal records after it are replayed into
+ * memory, so recovery time depends on the journal tail, not on history.
+ */
+public class JournalEngine {
+
+    private static final Path JOURNAL_DIR = Paths.get("database", "journal");
+    private static final Path SNAPSHOT_DIR = Paths.get("database", "snapshots");
+    private static final long DEFAULT_SNAPSHOT_INTERVAL_SECONDS = 300;
+    private static final int INITIAL_ACCOUNT_CAPACITY = 1 << 16;
+
+    private static JournalEngine instance;
+
+    private final PostingJournal journal;
+    private final JournalProjector projector;
+    // Balances live off-heap so that large customer bases add nothing for the GC to trace
+    private final OffHeapAccountTable balances = new OffHeapAccountTable(INITIAL_ACCOUNT_CAPACITY);
+    private final boolean syncCommit;
+    private final ScheduledExecutorService snapshotScheduler;
+
+    // Recovery metrics from the last startup
+    private long recoveryMillis;
+    private long recoverySnapshotSequence;
+    private long recoveryReplayedRecords;
+
+    /**
+     * Checks if the journal posting mode is switched on
+     * @return true if postings go through the journal
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean("mybank.journal");
+    }
+
+    /**
+     * Gets the process-wide engine, recovering it on first use
+     * @return The journal engine
+     * @throws IllegalStateException if the journal cannot be opened
+     */
+    public static synchronized JournalEngine getInstance() {
+        if (instance == null) {
+            try {
+                instance = new JournalEngine();
+                Runtime.getRuntime().addShutdownHook(new Thread(instance::shutdown, "journal-shutdown"));
+            } catch (IOException | SQLException e) {
+                throw new IllegalStateException("Cannot start journal: " + e.getMessage(), e);
+            }
+        }
+        return instance;
+    }
+
+    private JournalEngine() throws IOException, SQLException {
+        syncCommit = !"false".equalsIgnoreCase(System.getProperty("mybank.journal.sync"));
+        journal = new PostingJournal(JOURNAL_DIR);
+
+        Connection connection = DriverManager.getConnection(DatabaseHelper.DB_URL);
+        try (Statement stmt = connection.createStatement()) {
+            // Lets snapshot reads run alongside the projector's writes
+            stmt.execute("PRAGMA journal_mode=WAL");
+        }
+        projector = new JournalProjector(connection, journal);
+
+        recover(connection);
+        projector.start();
+
+        long interval = Long.getLong("mybank.snapshot.intervalSeconds", DEFAULT_SNAPSHOT_INTERVAL_SECONDS);
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "balance-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotScheduler.scheduleWithFixedDelay(this::writeSnapshot, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Rebuilds the in-memory balances from the newest snapshot and the journal tail
+     * Falls back to the SQLite projection when no usable snapshot exists
+     */
+    private void recover(Connection connection) throws SQLException {
+        long start = System.nanoTime();
+        BalanceSnapshot snapshot = BalanceSnapshot.loadNewest(SNAPSHOT_DIR);
+
+        long replayFrom;
+        if (snapshot != null && snapshot.getJournalSequence() + 1 >= journal.getFirstAvailableSequence()) {
+            for (int i = 0; i < snapshot.getAccountCount(); i++) {
+                balances.put(snapshot.getAccountNumber(i), snapshot.getBalance(i));
+            }
+            recoverySnapshotSequence = snapshot.getJournalSequence();
+            replayFrom = snapshot.getJournalSequence() + 1;
+        } else {
+            projector.catchUp();
+            loadAccounts(connection);
+            recoverySnapshotSequence = 0;
+            replayFrom = journal.getLastSequence() + 1;
+        }
+
+        long lastSequence = journal.getLastSequence();
+        journal.read(replayFrom, lastSequence, this::replay);
+        recoveryReplayedRecords = Math.max(0, lastSequence - replayFrom + 1);
+
+        // An account committed to SQLite just before a crash may be missing its open record
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM accounts")) {
+            if (rs.next() && rs.getInt(1) != balances.size()) {
+                loadAccounts(connection);
+            }
+        }
+
+        recoveryMillis = (System.nanoTime() - start) / 1_000_000;
+        EventLog.info("Journal recovered to sequence " + lastSequence + " in " + recoveryMillis +
+                " ms (snapshot " + recoverySnapshotSequence + ", replayed " + recoveryReplayedRecords + ")");
+    }
+
+    /**
+     * Applies one journal record to the in-memory balances during recovery
+     */
+    private void replay(long sequence, long timestamp, int type, int account, int counterAccount, double amount) {
+        switch (type) {
+            case PostingJournal.TYPE_OPEN:
+                balances.putIfAbsent(account, null, amount);
+                break;
+            case PostingJournal.TYPE_DEPOSIT:
+                balances.add(account, amount);
+                break;
+            case PostingJournal.TYPE_WITHDRAW:
+                balances.add(account, -amount);
+                break;
+            case PostingJournal.TYPE_TRANSFER:
+                balances.add(account, -amount);
+                balances.add(counterAccount, amount);
+                break;
+            default:
+                EventLog.warn("Unknown journal record type " + type + " at " + sequence);
+        }
+    }
+
+    /**
+     * Adds every projected account the in-memory table does not hold yet
+     */
+    private void loadAccounts(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT accountNumber, ownerName, balance FROM accounts")) {
+            while (rs.next()) {
+                balances.putIfAbsent(rs.getInt(1), rs.getString(2), rs.getDouble(3));
+            }
+        }
+    }
+
+    /**
+     * Writes a snapshot of the in-memory balances and drops journal segments nobody needs
+     * Runs on the snapshot thread. Postings wait only while the table is
+     * copied, not while the file is written.
+     */
+    private void writeSnapshot() {
+        long start = System.nanoTime();
+        long sequence;
+        int[] accountNumbers;
+        double[] amounts;
+        synchronized (this) {
+            // With postings held off the walk is a point-in-time image at sequence
+            sequence = journal.getLastSequence();
+            accountNumbers = new int[balances.size()];
+            amounts = new double[accountNumbers.length];
+            OffHeapAccountTable.Cursor cursor = balances.cursor();
+            for (int i = 0; i < accountNumbers.length && cursor.next(); i++) {
+                accountNumbers[i] = cursor.getAccountNumber();
+                amounts[i] = cursor.getBalance();
+            }
+        }
+        long copyMillis = (System.nanoTime() - start) / 1_000_000;
+
+        try {
+            // A snapshot must never be ahead of what a crash would leave in the journal
+            journal.awaitDurable(sequence);
+            BalanceSnapshot.write(SNAPSHOT_DIR, sequence, accountNumbers, amounts);
+            EventLog.info("Balance snapshot written at sequence " + sequence + " in " +
+                    (System.nanoTime() - start) / 1_000_000 + " ms (postings held " + copyMillis + " ms)");
+            releaseSegments();
+        } catch (IOException e) {
+            EventLog.error("Error writing balance snapshot: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Segments are kept until both the projection and the newest snapshot are past them
+     */
+    private void releaseSegments() {
+        long needed = Math.min(projector.getLastAppliedSequence(), BalanceSnapshot.newestSequence(SNAPSHOT_DIR));
+        journal.deleteSegmentsThrough(needed);
+    }
+
+    /**
+     * Registers an account created directly in SQLite
+     * @param accountNumber The new account number
+     * @param ownerName The account owner's name
+     * @param balance Its opening balance
+     */
+    public void accountCreated(int accountNumber, String ownerName, double balance) {
+        synchronized (this) {
+            if (!balances.putIfAbsent(accountNumber, ownerName, balance)) {
+                return;
+            }
+            append(PostingJournal.TYPE_OPEN, accountNumber, 0, balance);
+        }
+    }
+
+    /**
+     * Gets the current balance of an account
+     * @param accountNumber The account number
+     * @return The balance, or -1 if account doesn't exist
+     */
+    public double getBalance(int accountNumber) {
+        double balance = balances.getBalance(accountNumber);
+        return Double.isNaN(balance) ? -1 : balance;
+    }
+
+    /**
+     * Gets an account owner's name if the engine knows it
+     * Accounts recovered from a snapshot carry no name
+     * @param accountNumber The account number
+     * @return The name, or null if not held in memory
+     */
+    public String getOwnerName(int accountNumber) {
+        return balances.getOwnerName(accountNumber);
+    }
+
+    /**
+     * Deposits money into an account
+     * @return true if successful, false otherwise
+     */
+    public boolean deposit(int accountNumber, double amount) {
+        long sequence;
+        synchronized (this) {
+            double balance = balances.getBalance(accountNumber);
+            if (Double.isNaN(balance)) {
+                return false;
+            }
+            sequence = append(PostingJournal.TYPE_DEPOSIT, accountNumber, 0, amount);
+            if (sequence < 0) {
+                return false;
+            }
+            balances.put(accountNumber, balance + amount);
+        }
+        return awaitDurable(sequence);
+    }
+
+    /**
+     * Withdraws money from an account
+     * @return true if successful, false otherwise
+     */
+    public boolean withdraw(int accountNumber, double amount) {
+        long sequence;
+        synchronized (this) {
+            double balance = balances.getBalance(accountNumber);
+            if (Double.isNaN(balance) || balance < amount) {
+                return false;
+            }
+            sequence = append(PostingJournal.TYPE_WITHDRAW, accountNumber, 0, amount);
+            if (sequence < 0) {
+                return false;
+            }
+            balances.put(accountNumber, balance - amount);
+        }
+        return awaitDurable(sequence);
+    }
+
+    /**
+     * Transfers money between two accounts
+     * @return true if successful, false otherwise
+     */
+    public boolean transfer(int fromAccount, int toAccount, double amount) {
+        long sequence;
+        synchronized (this) {
+            double senderBalance = balances.getBalance(fromAccount);
+            double receiverBalance = balances.getBalance(toAccount);
+            if (Double.isNaN(senderBalance) || Double.isNaN(receiverBalance) || senderBalance < amount) {
+                return false;
+            }
+            sequence = append(PostingJournal.TYPE_TRANSFER, fromAccount, toAccount, amount);
+            if (sequence < 0) {
+                return false;
+            }
+            balances.put(fromAccount, senderBalance - amount);
+            balances.put(toAccount, receiverBalance + amount);
+        }
+        return awaitDurable(sequence);
+    }
+
+    /**
+     * Pays every pending leg from one account
+     * The source balance is checked once against the total; each leg is
+     * journalled as a transfer and the whole payout waits for one flush
+     * @param fromAccount The paying account
+     * @param legs The legs; pending legs are marked PAID or INSUFFICIENT_FUNDS
+     * @param total Sum of the pending legs' amounts
+     * @return Number of legs paid, or -1 if the journal could not be written
+     */
+    public int payout(int fromAccount, List<PayoutLeg> legs, double total) {
+        long sequence = 0;
+        int paid = 0;
+        synchronized (this) {
+            double senderBalance = balances.getBalance(fromAccount);
+            if (Double.isNaN(senderBalance) || senderBalance < total) {
+                for (PayoutLeg leg : legs) {
+                    if (leg.getStatus() == PayoutLeg.Status.PENDING) {
+                        leg.setStatus(PayoutLeg.Status.INSUFFICIENT_FUNDS);
+                    }
+                }
+                return 0;
+            }
+
+            for (PayoutLeg leg : legs) {
+                if (leg.getStatus() != PayoutLeg.Status.PENDING) {
+                    continue;
+                }
+                int toAccount = leg.getDestinationAccount();
+                double receiverBalance = balances.getBalance(toAccount);
+                if (Double.isNaN(receiverBalance)) {
+                    leg.setStatus(PayoutLeg.Status.UNKNOWN_ACCOUNT);
+                    continue;
+                }
+                long appended = append(PostingJournal.TYPE_TRANSFER, fromAccount, toAccount, leg.getAmount());
+                if (appended < 0) {
+                    leg.setStatus(PayoutLeg.Status.FAILED);
+                    continue;
+                }
+                sequence = appended;
+                senderBalance -= leg.getAmount();
+                balances.put(fromAccount, senderBalance);
+                balances.put(toAccount, receiverBalance + leg.getAmount());
+                leg.setStatus(PayoutLeg.Status.PAID);
+                paid++;
+            }
+        }
+        if (paid > 0) {
+            awaitDurable(sequence);
+        }
+        return paid;
+    }
+
+    /**
+     * Gets the sequence of the last record applied to SQLite
+     * @return The last projected sequence
+     */
+    public long getProjectedSequence() {
+        return projector.getLastAppliedSequence();
+    }
+
+    /**
+     * Gets the sequence of the last posting in the journal
+     * @return The last journal sequence
+     */
+    public long getJournalSequence() {
+        return journal.getLastSequence();
+    }
+
+    /**
+     * Gets how long the last startup recovery took
+     * @return Recovery time in milliseconds
+     */
+    public long getRecoveryMillis() {
+        return recoveryMillis;
+    }
+
+    /**
+     * Gets the journal sequence of the snapshot used by the last recovery
+     * @return The snapshot sequence, or 0 if recovery started from SQLite
+     */
+    public long getRecoverySnapshotSequence() {
+        return recoverySnapshotSequence;
+    }
+
+    /**
+     * Gets how many journal records the last recovery replayed
+     * @return The replayed record count
+     */
+    public long getRecoveryReplayedRecords() {
+        return recoveryReplayedRecords;
+    }
+
+    /**
+     * Stops the projector after it has caught up and closes the journal
+     */
+    public void shutdown() {
+        snapshotScheduler.shutdownNow();
+        projector.stop();
+        journal.close();
+    }
+
+    private long append(int type, int account, int counterAccount, double amount) {
+        try {
+            return journal.append(type, account, counterAccount, amount);
+        } catch (IOException e) {
+            EventLog.error("Error appending to journal: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    private boolean awaitDurable(long sequence) {
+        if (!syncCommit) {
+            return true;
+        }
+        try {
+            journal.awaitDurable(sequence);
+        } catch (InterruptedException e) {
+            // The record is already in the journal; the next group flush persists it
+            Thread.currentThread().interrupt();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,204 @@
+package com.khorshed.mybank.mybankapp.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * JournalProjector - Applies journal records to the accounts and transactions tables
+ *
+ * Runs on its own connection and thread. Records are applied in batches, each
+ * batch in one SQLite transaction together with the journal_state row that
+ * remembers the last applied sequence, so a crash never applies a record twice.
+ */
+class JournalProjector {
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int BATCH_SIZE = 2000;
+
+    private final Connection connection;
+    private final PostingJournal journal;
+    private volatile long lastAppliedSequence;
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * Constructor
+     * @param connection Connection used only by the projector
+     * @param journal The journal to project
+     * @throws SQLException if the projection state cannot be read
+     */
+    JournalProjector(Connection connection, PostingJournal journal) throws SQLException {
+        this.connection = connection;
+        this.journal = journal;
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS journal_state (" +
+                    "id INTEGER PRIMARY KEY CHECK (id = 1), " +
+                    "lastAppliedSequence INTEGER NOT NULL)");
+            stmt.execute("INSERT OR IGNORE INTO journal_state (id, lastAppliedSequence) VALUES (1, 0)");
+
+            ResultSet rs = stmt.executeQuery("SELECT lastAppliedSequence FROM journal_state WHERE id = 1");
+            lastAppliedSequence = rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Applies every record currently in the journal
+     * Used at startup before postings are accepted
+     * @throws SQLException if a batch cannot be applied
+     */
+    void catchUp() throws SQLException {
+        while (lastAppliedSequence < journal.getLastSequence()) {
+            applyBatch();
+        }
+    }
+
+    /**
+     * Starts applying new records in the background
+     */
+    void start() {
+        running = true;
+        thread = new Thread(this::run, "journal-projector");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the background thread after it has applied everything appended so far
+     */
+    void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join();
+                catchUp();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (SQLException e) {
+                EventLog.error("Error applying journal on shutdown: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Gets the sequence of the last record written to SQLite
+     * @return The last applied sequence
+     */
+    long getLastAppliedSequence() {
+        return lastAppliedSequence;
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                if (lastAppliedSequence < journal.getLastSequence()) {
+                    applyBatch();
+                } else {
+                    journal.awaitAppend(lastAppliedSequence, 50);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (SQLException e) {
+                EventLog.error("Error applying journal: " + e.getMessage());
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies up to BATCH_SIZE records in one transaction
+     */
+    private void applyBatch() throws SQLException {
+        long from = lastAppliedSequence + 1;
+        long to = Math.min(journal.getLastSequence(), lastAppliedSequence + BATCH_SIZE);
+
+        String creditSql = "UPDATE accounts SET balance = balance + ?, version = version + 1 WHERE accountNumber = ?";
+        String debitSql = "UPDATE accounts SET balance = balance - ?, version = version + 1 WHERE accountNumber = ?";
+        String transactionSql = "INSERT INTO transactions (accountNumber, type, amount, date) VALUES (?, ?, ?, ?)";
+        String stateSql = "UPDATE journal_state SET lastAppliedSequence = ? WHERE id = 1";
+
+        connection.setAutoCommit(false);
+        try (PreparedStatement credit = connection.prepareStatement(creditSql);
+             PreparedStatement debit = connection.prepareStatement(debitSql);
+             PreparedStatement insert = connection.prepareStatement(transactionSql);
+             PreparedStatement state = connection.prepareStatement(stateSql)) {
+
+            SQLException[] failure = new SQLException[1];
+            journal.read(from, to, (sequence, timestamp, type, account, counterAccount, amount) -> {
+                if (failure[0] != null) {
+                    return;
+                }
+                try {
+                    String date = LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault())
+                            .format(DATE_FORMATTER);
+                    switch (type) {
+                        case PostingJournal.TYPE_DEPOSIT:
+                            addUpdate(credit, account, amount);
+                            addInsert(insert, account, "Deposit", amount, date);
+                            break;
+                        case PostingJournal.TYPE_WITHDRAW:
+                            addUpdate(debit, account, amount);
+                            addInsert(insert, account, "Withdraw", amount, date);
+                            break;
+                        case PostingJournal.TYPE_TRANSFER:
+                            addUpdate(debit, account, amount);
+                            addUpdate(credit, counterAccount, amount);
+                            addInsert(insert, account, "Transfer Out to " + counterAccount, amount, date);
+                            addInsert(insert, counterAccount, "Transfer In from " + account, amount, date);
+                            break;
+                        case PostingJournal.TYPE_OPEN:
+                            break; // The account row was inserted when it was opened
+                        default:
+                            EventLog.warn("Unknown journal record type " + type + " at " + sequence);
+                    }
+                } catch (SQLException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+
+            credit.executeBatch();
+            debit.executeBatch();
+            insert.executeBatch();
+            state.setLong(1, to);
+            state.executeUpdate();
+
+            connection.commit();
+            lastAppliedSequence = to;
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private static void addUpdate(PreparedStatement pstmt, int account, double amount) throws SQLException {
+        pstmt.setDouble(1, amount);
+        pstmt.setInt(2, account);
+        pstmt.addBatch();
+    }
+
+    private static void addInsert(PreparedStatement pstmt, int account, String type, double amount, String date)
+            throws SQLException {
+        pstmt.setInt(1, account);
+        pstmt.setString(2, type);
+        pstmt.setDouble(3, amount);
+        pstmt.setString(4, date);
+        pstmt.addBatch();
+    }
+}
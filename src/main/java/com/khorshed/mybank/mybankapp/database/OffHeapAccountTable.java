@@ -0,0 +1,437 @@
+package com.khorshed.mybank.mybankapp.database;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * OffHeapAccountTable - Account balances in direct memory, keyed by account number
+ *
+ * An open-addressing hash table with linear probing whose slots live in
+ * direct ByteBuffer pages, so millions of accounts add almost nothing to the
+ * Java heap and nothing for the garbage collector to trace. Owner names are
+ * packed as UTF-8 into a separate append-only area and found by offset.
+ *
+ * Writers are serialized on the table. Readers take no lock: every slot has
+ * a version that is odd while the slot is being written, and a read is
+ * retried until it sees the same even version before and after.
+ *
+ * Slot layout (native byte order, 32 bytes):
+ * account number (4), name length (4), version (8), balance bits (8),
+ * name offset (8)
+ */
+public class OffHeapAccountTable {
+
+    private static final int SLOT_SIZE = 32;
+    private static final int OFFSET_KEY = 0;
+    private static final int OFFSET_NAME_LENGTH = 4;
+    private static final int OFFSET_VERSION = 8;
+    private static final int OFFSET_BALANCE = 16;
+    private static final int OFFSET_NAME = 24;
+
+    private static final int PAGE_SLOT_BITS = 20; // 32 MB per page
+    private static final int PAGE_SLOT_MASK = (1 << PAGE_SLOT_BITS) - 1;
+    private static final int NAME_CHUNK_BITS = 24; // 16 MB per name chunk
+    private static final int NAME_CHUNK_SIZE = 1 << NAME_CHUNK_BITS;
+    private static final int MAX_NAME_BYTES = 1024;
+    private static final double MAX_LOAD = 0.7;
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    /**
+     * One generation of the slot array; replaced as a whole when the table grows
+     */
+    private static class Slots {
+        final ByteBuffer[] pages;
+        final int capacity;
+        final int mask;
+
+        Slots(int capacity) {
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            int slotsPerPage = Math.min(capacity, 1 << PAGE_SLOT_BITS);
+            pages = new ByteBuffer[capacity / slotsPerPage];
+            for (int i = 0; i < pages.length; i++) {
+                pages[i] = ByteBuffer.allocateDirect(slotsPerPage * SLOT_SIZE).order(ByteOrder.nativeOrder());
+            }
+        }
+
+        ByteBuffer page(int slot) {
+            return pages[slot >>> PAGE_SLOT_BITS];
+        }
+
+        static int offset(int slot) {
+            return (slot & PAGE_SLOT_MASK) * SLOT_SIZE;
+        }
+    }
+
+    /**
+     * Walks the table one account at a time without allocating
+     * Each entry's balance and version are read together under the slot's
+     * version check, so no entry is ever half-written. The walk as a whole is
+     * weakly consistent: it covers the slot array current when the cursor was
+     * made, and entries changed during the walk may show either value. Callers
+     * wanting a point-in-time image hold off writers for the walk.
+     */
+    public class Cursor {
+        private final Slots slots;
+        private int next;
+        private int accountNumber;
+        private double balance;
+        private long version;
+
+        private Cursor(Slots slots) {
+            this.slots = slots;
+        }
+
+        /**
+         * Moves to the next account
+         * @return false when every slot has been visited
+         */
+        public boolean next() {
+            while (next < slots.capacity) {
+                int slot = next++;
+                ByteBuffer page = slots.page(slot);
+                int offset = Slots.offset(slot);
+                int key = (int) INT.getVolatile(page, offset + OFFSET_KEY);
+                if (key != 0) {
+                    long before;
+                    long bits;
+                    do {
+                        before = stableVersion(page, offset);
+                        bits = (long) LONG.getVolatile(page, offset + OFFSET_BALANCE);
+                    } while ((long) LONG.getVolatile(page, offset + OFFSET_VERSION) != before);
+                    accountNumber = key;
+                    balance = Double.longBitsToDouble(bits);
+                    version = before >>> 1;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public int getAccountNumber() {
+            return accountNumber;
+        }
+
+        public double getBalance() {
+            return balance;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+    }
+
+    private volatile Slots slots;
+    private volatile ByteBuffer[] nameChunks = new ByteBuffer[0];
+    private long nameWritePosition;
+    private int size;
+
+    /**
+     * Constructor
+     * @param expectedAccounts Number of accounts to size the table for
+     */
+    public OffHeapAccountTable(int expectedAccounts) {
+        slots = new Slots(capacityFor(expectedAccounts));
+    }
+
+    /**
+     * Adds an account unless it is already present
+     * @param accountNumber The account number (positive)
+     * @param ownerName The owner's name, or null if not known here
+     * @param balance The opening balance
+     * @return true if added, false if the account was already present
+     */
+    public synchronized boolean putIfAbsent(int accountNumber, String ownerName, double balance) {
+        if (find(slots, accountNumber) >= 0) {
+            return false;
+        }
+        insert(accountNumber, ownerName, balance);
+        return true;
+    }
+
+    /**
+     * Sets an account's balance, adding the account if it is missing
+     * @param accountNumber The account number
+     * @param balance The new balance
+     */
+    public synchronized void put(int accountNumber, double balance) {
+        int slot = find(slots, accountNumber);
+        if (slot < 0) {
+            insert(accountNumber, null, balance);
+        } else {
+            writeBalance(slot, balance);
+        }
+    }
+
+    /**
+     * Adds to an account's balance, adding the account with the amount if it is missing
+     * @param accountNumber The account number
+     * @param delta The amount to add (negative to subtract)
+     * @return The new balance
+     */
+    public synchronized double add(int accountNumber, double delta) {
+        int slot = find(slots, accountNumber);
+        if (slot < 0) {
+            insert(accountNumber, null, delta);
+            return delta;
+        }
+        ByteBuffer page = slots.page(slot);
+        double balance = Double.longBitsToDouble((long) LONG.getVolatile(page, Slots.offset(slot) + OFFSET_BALANCE));
+        writeBalance(slot, balance + delta);
+        return balance + delta;
+    }
+
+    /**
+     * Gets an account's balance without locking
+     * @param accountNumber The account number
+     * @return The balance, or NaN if the account is not in the table
+     */
+    public double getBalance(int accountNumber) {
+        while (true) {
+            Slots current = slots;
+            int slot = find(current, accountNumber);
+            if (slot < 0) {
+                if (current == slots) {
+                    return Double.NaN;
+                }
+                continue; // Table grew during the probe
+            }
+            long bits = readBalanceBits(current.page(slot), Slots.offset(slot));
+            if (current == slots) {
+                return Double.longBitsToDouble(bits);
+            }
+        }
+    }
+
+    /**
+     * Gets how many times an account's balance has been changed
+     * @param accountNumber The account number
+     * @return The version, or -1 if the account is not in the table
+     */
+    public long getVersion(int accountNumber) {
+        while (true) {
+            Slots current = slots;
+            int slot = find(current, accountNumber);
+            if (slot < 0) {
+                if (current == slots) {
+                    return -1;
+                }
+                continue;
+            }
+            long version = stableVersion(current.page(slot), Slots.offset(slot));
+            if (current == slots) {
+                return version >>> 1;
+            }
+        }
+    }
+
+    /**
+     * Gets an account's owner name from the packed name area
+     * @param accountNumber The account number
+     * @return The name, or null if the account or its name is not in the table
+     */
+    public String getOwnerName(int accountNumber) {
+        Slots current = slots;
+        int slot = find(current, accountNumber);
+        if (slot < 0) {
+            return null;
+        }
+
+        // Name fields are written before the key is published and never change
+        ByteBuffer page = current.page(slot);
+        int offset = Slots.offset(slot);
+        int length = (int) INT.get(page, offset + OFFSET_NAME_LENGTH);
+        if (length < 0) {
+            return null;
+        }
+        long nameOffset = (long) LONG.get(page, offset + OFFSET_NAME);
+
+        ByteBuffer chunk = nameChunks[(int) (nameOffset >>> NAME_CHUNK_BITS)];
+        byte[] bytes = new byte[length];
+        int position = (int) (nameOffset & (NAME_CHUNK_SIZE - 1));
+        for (int i = 0; i < length; i++) {
+            bytes[i] = chunk.get(position + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the number of accounts in the table
+     * @return The account count
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Starts a walk over every account
+     * @return A cursor positioned before the first account, see Cursor for its consistency
+     */
+    public Cursor cursor() {
+        return new Cursor(slots);
+    }
+
+    /**
+     * Finds the slot holding an account
+     * @return The slot index, or -1 if absent
+     */
+    private static int find(Slots table, int accountNumber) {
+        int slot = hash(accountNumber) & table.mask;
+        while (true) {
+            int key = (int) INT.getVolatile(table.page(slot), Slots.offset(slot) + OFFSET_KEY);
+            if (key == accountNumber) {
+                return slot;
+            }
+            if (key == 0) {
+                return -1;
+            }
+            slot = (slot + 1) & table.mask;
+        }
+    }
+
+    /**
+     * Reads a balance with the seqlock protocol
+     * @return The balance bits as of one even version
+     */
+    private static long readBalanceBits(ByteBuffer page, int offset) {
+        while (true) {
+            long before = stableVersion(page, offset);
+            long bits = (long) LONG.getVolatile(page, offset + OFFSET_BALANCE);
+            if ((long) LONG.getVolatile(page, offset + OFFSET_VERSION) == before) {
+                return bits;
+            }
+        }
+    }
+
+    /**
+     * Waits out a writer that is in the middle of updating a slot
+     * @return The slot's current even version
+     */
+    private static long stableVersion(ByteBuffer page, int offset) {
+        while (true) {
+            long version = (long) LONG.getVolatile(page, offset + OFFSET_VERSION);
+            if ((version & 1) == 0) {
+                return version;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private void writeBalance(int slot, double balance) {
+        ByteBuffer page = slots.page(slot);
+        int offset = Slots.offset(slot);
+        long version = (long) LONG.getVolatile(page, offset + OFFSET_VERSION);
+        LONG.setVolatile(page, offset + OFFSET_VERSION, version + 1);
+        LONG.setVolatile(page, offset + OFFSET_BALANCE, Double.doubleToRawLongBits(balance));
+        LONG.setVolatile(page, offset + OFFSET_VERSION, version + 2);
+    }
+
+    private void insert(int accountNumber, String ownerName, double balance) {
+        if (accountNumber <= 0) {
+            throw new IllegalArgumentException("Account number must be positive: " + accountNumber);
+        }
+        if (size + 1 > slots.capacity * MAX_LOAD) {
+            grow();
+        }
+
+        int nameLength = -1;
+        long nameOffset = 0;
+        if (ownerName != null) {
+            byte[] bytes = ownerName.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length <= MAX_NAME_BYTES) {
+                nameOffset = appendName(bytes);
+                nameLength = bytes.length;
+            }
+        }
+
+        Slots table = slots;
+        int slot = hash(accountNumber) & table.mask;
+        while ((int) INT.getVolatile(table.page(slot), Slots.offset(slot) + OFFSET_KEY) != 0) {
+            slot = (slot + 1) & table.mask;
+        }
+        writeSlot(table, slot, accountNumber, nameLength, 0, Double.doubleToRawLongBits(balance), nameOffset);
+        size++;
+    }
+
+    /**
+     * Fills a slot and publishes it by writing the key last
+     */
+    private static void writeSlot(Slots table, int slot, int accountNumber, int nameLength, long version,
+                                  long balanceBits, long nameOffset) {
+        ByteBuffer page = table.page(slot);
+        int offset = Slots.offset(slot);
+        INT.set(page, offset + OFFSET_NAME_LENGTH, nameLength);
+        LONG.set(page, offset + OFFSET_VERSION, version);
+        LONG.set(page, offset + OFFSET_BALANCE, balanceBits);
+        LONG.set(page, offset + OFFSET_NAME, nameOffset);
+        INT.setVolatile(page, offset + OFFSET_KEY, accountNumber);
+    }
+
+    /**
+     * Doubles the slot array; readers keep using the old one until it is swapped in
+     */
+    private void grow() {
+        Slots old = slots;
+        Slots bigger = new Slots(old.capacity * 2);
+        for (int slot = 0; slot < old.capacity; slot++) {
+            ByteBuffer page = old.page(slot);
+            int offset = Slots.offset(slot);
+            int key = (int) INT.get(page, offset + OFFSET_KEY);
+            if (key == 0) {
+                continue;
+            }
+            int target = hash(key) & bigger.mask;
+            while ((int) INT.get(bigger.page(target), Slots.offset(target) + OFFSET_KEY) != 0) {
+                target = (target + 1) & bigger.mask;
+            }
+            writeSlot(bigger, target, key,
+                    (int) INT.get(page, offset + OFFSET_NAME_LENGTH),
+                    (long) LONG.get(page, offset + OFFSET_VERSION),
+                    (long) LONG.get(page, offset + OFFSET_BALANCE),
+                    (long) LONG.get(page, offset + OFFSET_NAME));
+        }
+        slots = bigger;
+    }
+
+    private long appendName(byte[] bytes) {
+        int chunkIndex = (int) (nameWritePosition >>> NAME_CHUNK_BITS);
+        int position = (int) (nameWritePosition & (NAME_CHUNK_SIZE - 1));
+        if (position + bytes.length > NAME_CHUNK_SIZE) {
+            // Names never straddle chunks
+            chunkIndex++;
+            position = 0;
+        }
+        if (chunkIndex == nameChunks.length) {
+            ByteBuffer[] chunks = Arrays.copyOf(nameChunks, chunkIndex + 1);
+            chunks[chunkIndex] = ByteBuffer.allocateDirect(NAME_CHUNK_SIZE);
+            nameChunks = chunks;
+        }
+
+        ByteBuffer chunk = nameChunks[chunkIndex];
+        for (int i = 0; i < bytes.length; i++) {
+            chunk.put(position + i, bytes[i]);
+        }
+        long offset = ((long) chunkIndex << NAME_CHUNK_BITS) | position;
+        nameWritePosition = offset + bytes.length;
+        return offset;
+    }
+
+    private static int capacityFor(int expectedAccounts) {
+        int capacity = 1024;
+        while (capacity * MAX_LOAD < expectedAccounts) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int hash(int accountNumber) {
+        int h = accountNumber * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,129 @@
+package com.khorshed.mybank.mybankapp.database;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * OptimisticRetry - Retries postings whose optimistic version check failed
+ *
+ * A debit reads the balance and version without holding any lock and then
+ * updates the row only if the version is still the one it read. If another
+ * writer got there first, or SQLite reports the database busy, the attempt
+ * is rolled back and run again after a randomized, exponentially growing
+ * pause. Attempts are capped by -Dmybank.optimistic.maxAttempts (10 by
+ * default) and the pause by -Dmybank.optimistic.maxBackoffMillis (50).
+ * Conflicts, busy errors, retries and postings given up on are counted for
+ * the whole process.
+ */
+public class OptimisticRetry {
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 10;
+    private static final long DEFAULT_MAX_BACKOFF_MILLIS = 50;
+    private static final long FIRST_BACKOFF_NANOS = 500_000;
+
+    // SQLITE_BUSY and SQLITE_LOCKED; extended codes such as BUSY_SNAPSHOT share the low byte
+    private static final int SQLITE_BUSY = 5;
+    private static final int SQLITE_LOCKED = 6;
+
+    private static final int maxAttempts = Math.max(1,
+            Integer.getInteger("mybank.optimistic.maxAttempts", DEFAULT_MAX_ATTEMPTS));
+    private static final long maxBackoffNanos =
+            Long.getLong("mybank.optimistic.maxBackoffMillis", DEFAULT_MAX_BACKOFF_MILLIS) * 1_000_000L;
+
+    private static final AtomicLong conflicts = new AtomicLong();
+    private static final AtomicLong busy = new AtomicLong();
+    private static final AtomicLong retries = new AtomicLong();
+    private static final AtomicLong exhausted = new AtomicLong();
+
+    /**
+     * Thrown by an attempt whose conditional update matched no row
+     * Carries no stack trace; it is part of the normal retry path.
+     */
+    static class Conflict extends Exception {
+        Conflict() {
+            super("Account changed since it was read", null, false, false);
+        }
+    }
+
+    /**
+     * One try at a posting; it must leave no transaction open when it throws
+     */
+    @FunctionalInterface
+    interface Attempt<T> {
+        T run() throws SQLException, Conflict;
+    }
+
+    private OptimisticRetry() {
+    }
+
+    /**
+     * Runs an attempt until it completes without a conflict
+     * @param attempt The posting to try
+     * @return What the successful attempt returned
+     * @throws SQLException if an attempt fails for another reason, or every attempt conflicted
+     */
+    static <T> T run(Attempt<T> attempt) throws SQLException {
+        for (int n = 1; ; n++) {
+            try {
+                return attempt.run();
+            } catch (Conflict e) {
+                conflicts.incrementAndGet();
+            } catch (SQLException e) {
+                if (!isBusy(e)) {
+                    throw e;
+                }
+                busy.incrementAndGet();
+            }
+
+            if (n >= maxAttempts) {
+                exhausted.incrementAndGet();
+                throw new SQLException("Gave up after " + n + " conflicting attempt(s)");
+            }
+            retries.incrementAndGet();
+            backoff(n);
+        }
+    }
+
+    /**
+     * Pauses for a random time up to a limit that doubles with every attempt
+     * The randomness keeps writers that collided once from colliding again.
+     */
+    private static void backoff(int attempt) {
+        long limit = Math.min(maxBackoffNanos, FIRST_BACKOFF_NANOS << Math.min(attempt - 1, 20));
+        if (limit > 0) {
+            LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(limit / 2, limit + 1));
+        }
+    }
+
+    private static boolean isBusy(SQLException e) {
+        int code = e.getErrorCode() & 0xff;
+        return code == SQLITE_BUSY || code == SQLITE_LOCKED;
+    }
+
+    /**
+     * Gets how many attempts found the account changed since it was read
+     */
+    public static long getConflicts() {
+        return conflicts.get();
+    }
+
+    /**
+     * Gets how many attempts found the database locked by another writer
+     */
+    public static long getBusy() {
+        return busy.get();
+    }
+
+    public static long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * Gets how many postings failed because every attempt conflicted
+     */
+    public static long getExhausted() {
+        return exhausted.get();
+    }
+}
@@ -0,0 +1,429 @@
+package com.khorshed.mybank.mybankapp.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * OwnerNameIndex - In-memory n-gram index over account owner names
+ *
+ * Every word of a name is split into trigrams, plus two word-start grams
+ * padded with a marker character so that one- and two-letter prefixes can be
+ * looked up too. Each gram maps to a posting list of entry ids in insertion
+ * order. A query intersects the posting lists of its grams, walking the
+ * shortest and skipping ahead in the others, and checks each candidate name
+ * directly, so the cost depends on the rarest gram rather than on the number
+ * of accounts. Whole names are also kept in sorted order, so names starting
+ * with a query are found without walking any posting list.
+ *
+ * Names are lowercased with Locale.ROOT and their whitespace collapsed once,
+ * when they are added; grams and matching both work on that form.
+ */
+public class OwnerNameIndex {
+
+    private static final char WORD_START = '\u0000';
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Match tiers, best first
+    private static final int TIER_EXACT = 0;
+    private static final int TIER_PREFIX = 1;
+    private static final int TIER_WORD_PREFIX = 2;
+    private static final int TIER_CONTAINS = 3;
+    private static final int TIER_COUNT = 4;
+
+    /**
+     * One search result
+     */
+    public static class Match {
+        private final int accountNumber;
+        private final String ownerName;
+
+        Match(int accountNumber, String ownerName) {
+            this.accountNumber = accountNumber;
+            this.ownerName = ownerName;
+        }
+
+        public int getAccountNumber() {
+            return accountNumber;
+        }
+
+        public String getOwnerName() {
+            return ownerName;
+        }
+
+        @Override
+        public String toString() {
+            return accountNumber + " - " + ownerName;
+        }
+    }
+
+    /**
+     * Growable list of entry ids, always in ascending order
+     */
+    private static class Postings {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] == id) {
+                return; // Gram repeated within the same name
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Postings> grams = new HashMap<>();
+    private final NavigableMap<String, Postings> byName = new TreeMap<>();
+    private int[] accountNumbers = new int[INITIAL_CAPACITY];
+    private String[] ownerNames = new String[INITIAL_CAPACITY];
+    private String[] normalizedNames = new String[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Adds an account to the index
+     * @param accountNumber The account number
+     * @param ownerName The account owner's name
+     */
+    public void add(int accountNumber, String ownerName) {
+        if (ownerName == null) {
+            return;
+        }
+        String normalized = normalize(ownerName);
+
+        lock.writeLock().lock();
+        try {
+            if (size == accountNumbers.length) {
+                accountNumbers = Arrays.copyOf(accountNumbers, size * 2);
+                ownerNames = Arrays.copyOf(ownerNames, size * 2);
+                normalizedNames = Arrays.copyOf(normalizedNames, size * 2);
+            }
+            int id = size;
+            accountNumbers[id] = accountNumber;
+            ownerNames[id] = ownerName;
+            normalizedNames[id] = normalized;
+            size++;
+            byName.computeIfAbsent(normalized, name -> new Postings()).add(id);
+
+            // Words are separated by exactly one space once normalized
+            int wordStart = 0;
+            for (int i = 0; i <= normalized.length(); i++) {
+                if (i == normalized.length() || normalized.charAt(i) == ' ') {
+                    if (i > wordStart) {
+                        indexWord(normalized, wordStart, i, id);
+                    }
+                    wordStart = i + 1;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void indexWord(String name, int start, int end, int id) {
+        char first = name.charAt(start);
+        postings(pack(WORD_START, WORD_START, first)).add(id);
+        if (end - start >= 2) {
+            postings(pack(WORD_START, first, name.charAt(start + 1))).add(id);
+        }
+        for (int i = start; i + 3 <= end; i++) {
+            postings(pack(name.charAt(i), name.charAt(i + 1), name.charAt(i + 2))).add(id);
+        }
+    }
+
+    private Postings postings(long gram) {
+        Postings list = grams.get(gram);
+        if (list == null) {
+            list = new Postings();
+            grams.put(gram, list);
+        }
+        return list;
+    }
+
+    /**
+     * Finds accounts whose owner name contains every word of a query
+     * Words shorter than three letters match the start of a name word;
+     * longer words match anywhere in the name. Case is ignored.
+     *
+     * Matches come back in tiers: the exact name, names starting with the
+     * query, names with a word starting with each query word, then the rest.
+     * Exact and prefix matches come from the sorted names; the other tiers
+     * are each collected by a walk over the grams their names must have, and
+     * only until the better tiers hold limit matches. Within a tier the name
+     * closest to the query by edit distance comes first, among the first
+     * limit found there.
+     * @param query Text typed by the user
+     * @param limit Maximum number of matches to return
+     * @return Matches best first
+     */
+    public List<Match> search(String query, int limit) {
+        List<Match> matches = new ArrayList<>();
+        String phrase = normalize(query);
+        if (phrase.isEmpty() || limit <= 0) {
+            return matches;
+        }
+        String[] words = phrase.split(" ");
+
+        lock.readLock().lock();
+        try {
+            // Every match has all of these
+            List<Postings> required = new ArrayList<>();
+            for (String word : words) {
+                for (long gram : queryGrams(word)) {
+                    Postings list = grams.get(gram);
+                    if (list == null) {
+                        return matches;
+                    }
+                    required.add(list);
+                }
+            }
+
+            int[][] tiers = new int[TIER_COUNT][limit];
+            int[] counts = new int[TIER_COUNT];
+
+            // Names sorting from the query up to the last one starting with it
+            prefixes:
+            for (Map.Entry<String, Postings> entry
+                    : byName.subMap(phrase, true, phrase + Character.MAX_VALUE, false).entrySet()) {
+                int tier = entry.getKey().length() == phrase.length() ? TIER_EXACT : TIER_PREFIX;
+                Postings ids = entry.getValue();
+                for (int i = 0; i < ids.size; i++) {
+                    if (counts[TIER_EXACT] + counts[TIER_PREFIX] == limit) {
+                        break prefixes;
+                    }
+                    tiers[tier][counts[tier]++] = ids.ids[i];
+                }
+            }
+
+            // Word-prefix matches have a word starting with each query word
+            List<Postings> wordStarts = new ArrayList<>(required);
+            for (String word : words) {
+                if (word.length() >= 3) {
+                    wordStarts.add(grams.get(pack(WORD_START, word.charAt(0), word.charAt(1))));
+                }
+            }
+            if (found(counts) < limit && !wordStarts.contains(null)) {
+                walk(wordStarts, id -> {
+                    if (tier(normalizedNames[id], phrase, words) == TIER_WORD_PREFIX) {
+                        tiers[TIER_WORD_PREFIX][counts[TIER_WORD_PREFIX]++] = id;
+                    }
+                    return found(counts) < limit;
+                });
+            }
+
+            if (found(counts) < limit) {
+                walk(required, id -> {
+                    if (tier(normalizedNames[id], phrase, words) == TIER_CONTAINS) {
+                        tiers[TIER_CONTAINS][counts[TIER_CONTAINS]++] = id;
+                    }
+                    return found(counts) < limit;
+                });
+            }
+
+            for (int tier = 0; tier < TIER_COUNT && matches.size() < limit; tier++) {
+                int[] ids = rankByDistance(tiers[tier], counts[tier], phrase);
+                for (int i = 0; i < ids.length && matches.size() < limit; i++) {
+                    matches.add(new Match(accountNumbers[ids[i]], ownerNames[ids[i]]));
+                }
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the number of indexed accounts
+     * @return The number of accounts
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Lowercases a name and collapses its whitespace to single spaces
+     */
+    private static String normalize(String text) {
+        String lower = text.trim().toLowerCase(Locale.ROOT);
+        StringBuilder normalized = new StringBuilder(lower.length());
+        boolean space = false;
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+            if (space) {
+                normalized.append(' ');
+                space = false;
+            }
+            normalized.append(c);
+        }
+        return normalized.toString();
+    }
+
+    private static int found(int[] counts) {
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Visits, in ascending order, every id present in all the lists
+     * Walks the shortest list and gallops forward in the others.
+     * @param visitor Returns false to stop the walk
+     */
+    private static void walk(List<Postings> lists, IntPredicate visitor) {
+        Postings[] sorted = lists.toArray(new Postings[0]);
+        Arrays.sort(sorted, (a, b) -> Integer.compare(a.size, b.size));
+        int[] positions = new int[sorted.length];
+
+        Postings driver = sorted[0];
+        candidates:
+        for (int i = 0; i < driver.size; i++) {
+            int id = driver.ids[i];
+            for (int j = 1; j < sorted.length; j++) {
+                int position = advance(sorted[j], positions[j], id);
+                positions[j] = position;
+                if (position == sorted[j].size) {
+                    return;
+                }
+                if (sorted[j].ids[position] != id) {
+                    continue candidates;
+                }
+            }
+            if (!visitor.test(id)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Finds the first position at or after from whose id is not below target
+     */
+    private static int advance(Postings list, int from, int target) {
+        int step = 1;
+        int low = from;
+        int high = from;
+        while (high < list.size && list.ids[high] < target) {
+            low = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        high = Math.min(high, list.size);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (list.ids[middle] < target) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static long[] queryGrams(String word) {
+        if (word.length() == 1) {
+            return new long[] {pack(WORD_START, WORD_START, word.charAt(0))};
+        }
+        if (word.length() == 2) {
+            return new long[] {pack(WORD_START, word.charAt(0), word.charAt(1))};
+        }
+        long[] result = new long[word.length() - 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = pack(word.charAt(i), word.charAt(i + 1), word.charAt(i + 2));
+        }
+        return result;
+    }
+
+    /**
+     * Gets how well a normalized name matches the query
+     * @return The tier, or -1 if some query word is missing
+     */
+    private static int tier(String name, String phrase, String[] words) {
+        // A prefix of the name holds every query word at a word start
+        if (name.startsWith(phrase)) {
+            return name.length() == phrase.length() ? TIER_EXACT : TIER_PREFIX;
+        }
+        int tier = TIER_WORD_PREFIX;
+        for (String word : words) {
+            if (startsWord(name, word)) {
+                continue;
+            }
+            if (word.length() < 3 || !name.contains(word)) {
+                return -1;
+            }
+            tier = TIER_CONTAINS;
+        }
+        return tier;
+    }
+
+    private static boolean startsWord(String name, String word) {
+        for (int i = name.indexOf(word); i >= 0; i = name.indexOf(word, i + 1)) {
+            if (i == 0 || name.charAt(i - 1) == ' ') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Orders one tier's ids by edit distance to the query, keeping insertion order on ties
+     */
+    private int[] rankByDistance(int[] ids, int count, String phrase) {
+        long[] keyed = new long[count];
+        for (int i = 0; i < count; i++) {
+            keyed[i] = ((long) editDistance(normalizedNames[ids[i]], phrase) << 32) | ids[i];
+        }
+        Arrays.sort(keyed);
+        int[] ranked = new int[count];
+        for (int i = 0; i < count; i++) {
+            ranked[i] = (int) keyed[i];
+        }
+        return ranked;
+    }
+
+    /**
+     * Levenshtein distance between two strings
+     */
+    private static int editDistance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    private static long pack(char a, char b, char c) {
+        return ((long) a << 32) | ((long) b << 16) | c;
+    }
+}
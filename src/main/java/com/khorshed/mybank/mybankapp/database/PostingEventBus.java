@@ -0,0 +1,58 @@
+package com.khorshed.mybank.mybankapp.database;
+
+import com.khorshed.mybank.mybankapp.models.PostingEvent;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * PostingEventBus - In-process publisher of committed postings
+ * Subscribers are called on the thread that made the posting, right after it
+ * is committed, so they must only hand the event off and return.
+ */
+public class PostingEventBus {
+
+    private static final List<Consumer<PostingEvent>> subscribers = new CopyOnWriteArrayList<>();
+
+    private PostingEventBus() {
+    }
+
+    /**
+     * Registers a subscriber
+     * @param subscriber Called with every posting committed from now on
+     */
+    public static void subscribe(Consumer<PostingEvent> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    /**
+     * Removes a subscriber
+     * @param subscriber The subscriber passed to subscribe
+     */
+    public static void unsubscribe(Consumer<PostingEvent> subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    /**
+     * Publishes a committed posting to every subscriber
+     * @param event The posting
+     */
+    static void publish(PostingEvent event) {
+        for (Consumer<PostingEvent> subscriber : subscribers) {
+            try {
+                subscriber.accept(event);
+            } catch (RuntimeException e) {
+                EventLog.error("Error in posting subscriber: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Checks if anyone is listening, so callers can skip building events
+     * @return true if there is at least one subscriber
+     */
+    static boolean hasSubscribers() {
+        return !subscribers.isEmpty();
+    }
+}
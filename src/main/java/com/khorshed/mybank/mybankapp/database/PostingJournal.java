@@ -0,0 +1,358 @@
+package com.khorshed.mybank.mybankapp.database;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * PostingJournal - Append-only log of postings in memory-mapped segment files
+ *
+ * Every posting is a fixed-size binary record with a consecutive sequence
+ * number, so a record is found by arithmetic instead of a search. Segment
+ * files are named after the first sequence they hold. Appends only copy bytes
+ * into the mapped buffer; a background flusher forces dirty pages to disk in
+ * groups, and callers that need durability wait for their sequence with
+ * awaitDurable.
+ *
+ * Record layout (little-endian, 40 bytes):
+ * sequence (8), timestamp millis (8), type (4), account (4),
+ * counter account (4), CRC32 (4), amount (8)
+ */
+public class PostingJournal implements AutoCloseable {
+
+    public static final int TYPE_DEPOSIT = 1;
+    public static final int TYPE_WITHDRAW = 2;
+    public static final int TYPE_TRANSFER = 3;
+    public static final int TYPE_OPEN = 4;
+
+    static final int RECORD_SIZE = 40;
+    private static final int OFFSET_SEQUENCE = 0;
+    private static final int OFFSET_TIMESTAMP = 8;
+    private static final int OFFSET_TYPE = 16;
+    private static final int OFFSET_ACCOUNT = 20;
+    private static final int OFFSET_COUNTER_ACCOUNT = 24;
+    private static final int OFFSET_CHECKSUM = 28;
+    private static final int OFFSET_AMOUNT = 32;
+
+    private static final int DEFAULT_RECORDS_PER_SEGMENT = 1 << 20;
+
+    /**
+     * Receives records read back from the journal
+     */
+    public interface RecordHandler {
+        void onRecord(long sequence, long timestamp, int type, int account, int counterAccount, double amount);
+    }
+
+    private final Path directory;
+    private final int recordsPerSegment;
+    private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+    private final CRC32 writeChecksum = new CRC32();
+    private final Thread flusher;
+
+    private MappedByteBuffer currentSegment;
+    private long currentFirstSequence;
+    private volatile long lastSequence;
+    private volatile long durableSequence;
+    private volatile boolean closed;
+
+    /**
+     * Opens (or creates) the journal in a directory
+     * @param directory Directory holding the segment files
+     * @throws IOException if the segments cannot be opened
+     */
+    public PostingJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_RECORDS_PER_SEGMENT);
+    }
+
+    /**
+     * Opens (or creates) the journal in a directory
+     * @param directory Directory holding the segment files
+     * @param recordsPerSegment Capacity of each segment file in records
+     * @throws IOException if the segments cannot be opened
+     */
+    public PostingJournal(Path directory, int recordsPerSegment) throws IOException {
+        this.directory = directory;
+        this.recordsPerSegment = recordsPerSegment;
+
+        Files.createDirectories(directory);
+        openExistingSegments();
+
+        flusher = new Thread(this::flushLoop, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Maps every segment on disk and finds the end of the last one
+     */
+    private void openExistingSegments() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "segment-*.log")) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                long firstSequence = Long.parseLong(name.substring(8, name.length() - 4));
+                segments.put(firstSequence, map(file));
+            }
+        }
+
+        if (segments.isEmpty()) {
+            currentFirstSequence = 1;
+            currentSegment = createSegment(1);
+            lastSequence = 0;
+        } else {
+            Map.Entry<Long, MappedByteBuffer> last = segments.lastEntry();
+            currentFirstSequence = last.getKey();
+            currentSegment = last.getValue();
+
+            // Records are consecutive; stop at the first empty or torn slot
+            long sequence = currentFirstSequence - 1;
+            CRC32 checksum = new CRC32();
+            for (int slot = 0; slot < recordsPerSegment; slot++) {
+                int offset = slot * RECORD_SIZE;
+                if (currentSegment.getLong(offset + OFFSET_SEQUENCE) != sequence + 1
+                        || !checksumMatches(currentSegment, offset, checksum)) {
+                    break;
+                }
+                sequence++;
+            }
+            lastSequence = sequence;
+
+            // Clear a torn tail so that it is not mistaken for data later
+            long clearFrom = (lastSequence - currentFirstSequence + 1) * RECORD_SIZE;
+            for (long offset = clearFrom; offset < (long) recordsPerSegment * RECORD_SIZE; offset += RECORD_SIZE) {
+                if (currentSegment.getLong((int) offset + OFFSET_SEQUENCE) == 0) {
+                    break;
+                }
+                currentSegment.putLong((int) offset + OFFSET_SEQUENCE, 0);
+            }
+        }
+        durableSequence = lastSequence;
+    }
+
+    /**
+     * Appends a posting to the journal
+     * @return The sequence number assigned to the record
+     * @throws IOException if a new segment cannot be created
+     */
+    public synchronized long append(int type, int account, int counterAccount, double amount) throws IOException {
+        if (closed) {
+            throw new IOException("Journal is closed");
+        }
+
+        long sequence = lastSequence + 1;
+        if (sequence - currentFirstSequence >= recordsPerSegment) {
+            currentSegment.force();
+            currentFirstSequence = sequence;
+            currentSegment = createSegment(sequence);
+        }
+
+        int offset = (int) ((sequence - currentFirstSequence) * RECORD_SIZE);
+        currentSegment.putLong(offset + OFFSET_TIMESTAMP, System.currentTimeMillis());
+        currentSegment.putInt(offset + OFFSET_TYPE, type);
+        currentSegment.putInt(offset + OFFSET_ACCOUNT, account);
+        currentSegment.putInt(offset + OFFSET_COUNTER_ACCOUNT, counterAccount);
+        currentSegment.putDouble(offset + OFFSET_AMOUNT, amount);
+        currentSegment.putLong(offset + OFFSET_SEQUENCE, sequence);
+        currentSegment.putInt(offset + OFFSET_CHECKSUM, checksum(currentSegment, offset, writeChecksum));
+
+        lastSequence = sequence;
+        notifyAll();
+        return sequence;
+    }
+
+    /**
+     * Blocks until a sequence has been forced to disk by the flusher
+     * @param sequence The sequence to wait for
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void awaitDurable(long sequence) throws InterruptedException {
+        while (durableSequence < sequence && !closed) {
+            wait();
+        }
+    }
+
+    /**
+     * Blocks until a record after the given sequence has been appended
+     * @param sequence The last sequence the caller has seen
+     * @param timeoutMillis Maximum time to wait
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void awaitAppend(long sequence, long timeoutMillis) throws InterruptedException {
+        if (lastSequence <= sequence && !closed) {
+            wait(timeoutMillis);
+        }
+    }
+
+    /**
+     * Reads a range of records in sequence order
+     * @param fromSequence First sequence to read
+     * @param toSequence Last sequence to read (inclusive)
+     * @param handler Receives each record
+     */
+    public void read(long fromSequence, long toSequence, RecordHandler handler) {
+        long end = Math.min(toSequence, lastSequence);
+        long sequence = fromSequence;
+
+        while (sequence <= end) {
+            MappedByteBuffer segment;
+            long firstSequence;
+            synchronized (this) {
+                Map.Entry<Long, MappedByteBuffer> entry = segments.floorEntry(sequence);
+                if (entry == null) {
+                    throw new IllegalStateException("Journal record " + sequence + " is no longer available");
+                }
+                firstSequence = entry.getKey();
+                segment = entry.getValue();
+            }
+
+            long segmentEnd = Math.min(end, firstSequence + recordsPerSegment - 1);
+            for (; sequence <= segmentEnd; sequence++) {
+                int offset = (int) ((sequence - firstSequence) * RECORD_SIZE);
+                handler.onRecord(
+                        segment.getLong(offset + OFFSET_SEQUENCE),
+                        segment.getLong(offset + OFFSET_TIMESTAMP),
+                        segment.getInt(offset + OFFSET_TYPE),
+                        segment.getInt(offset + OFFSET_ACCOUNT),
+                        segment.getInt(offset + OFFSET_COUNTER_ACCOUNT),
+                        segment.getDouble(offset + OFFSET_AMOUNT));
+            }
+        }
+    }
+
+    /**
+     * Deletes segment files whose records are all at or below a sequence
+     * The segment currently being written is always kept
+     * @param sequence Highest sequence that is no longer needed
+     */
+    public synchronized void deleteSegmentsThrough(long sequence) {
+        while (segments.size() > 1) {
+            Map.Entry<Long, MappedByteBuffer> first = segments.firstEntry();
+            long lastInSegment = segments.higherKey(first.getKey()) - 1;
+            if (lastInSegment > sequence) {
+                break;
+            }
+
+            segments.remove(first.getKey());
+            try {
+                Files.deleteIfExists(segmentPath(first.getKey()));
+            } catch (IOException e) {
+                EventLog.error("Error deleting journal segment: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Gets the first sequence still held in a segment file
+     * @return The first available sequence
+     */
+    public synchronized long getFirstAvailableSequence() {
+        return segments.firstKey();
+    }
+
+    /**
+     * Gets the sequence of the last appended record
+     * @return The last sequence, or 0 if the journal is empty
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Gets the sequence of the last record forced to disk
+     * @return The durable sequence
+     */
+    public long getDurableSequence() {
+        return durableSequence;
+    }
+
+    /**
+     * Forces pending records to disk as soon as there are any
+     * Records appended while a force runs are covered together by the next one,
+     * so the group size follows the load instead of a fixed interval
+     */
+    private void flushLoop() {
+        while (!closed) {
+            try {
+                long target;
+                MappedByteBuffer segment;
+                synchronized (this) {
+                    while (lastSequence == durableSequence && !closed) {
+                        wait();
+                    }
+                    target = lastSequence;
+                    segment = currentSegment;
+                }
+
+                segment.force();
+
+                synchronized (this) {
+                    durableSequence = Math.max(durableSequence, target);
+                    notifyAll();
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Flushes outstanding records and stops the flusher
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            currentSegment.force();
+            durableSequence = lastSequence;
+            notifyAll();
+        }
+        flusher.interrupt();
+    }
+
+    private MappedByteBuffer createSegment(long firstSequence) throws IOException {
+        MappedByteBuffer segment = map(segmentPath(firstSequence));
+        segments.put(firstSequence, segment);
+        return segment;
+    }
+
+    private MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    (long) recordsPerSegment * RECORD_SIZE);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        }
+    }
+
+    private Path segmentPath(long firstSequence) {
+        return directory.resolve(String.format("segment-%020d.log", firstSequence));
+    }
+
+    private static boolean checksumMatches(MappedByteBuffer segment, int offset, CRC32 checksum) {
+        return segment.getInt(offset + OFFSET_CHECKSUM) == checksum(segment, offset, checksum);
+    }
+
+    /**
+     * CRC32 over every field except the checksum itself
+     */
+    private static int checksum(MappedByteBuffer segment, int offset, CRC32 checksum) {
+        checksum.reset();
+        for (int i = 0; i < RECORD_SIZE; i++) {
+            if (i < OFFSET_CHECKSUM || i >= OFFSET_CHECKSUM + 4) {
+                checksum.update(segment.get(offset + i));
+            }
+        }
+        return (int) checksum.getValue();
+    }
+}
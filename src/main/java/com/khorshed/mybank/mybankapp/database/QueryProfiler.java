@@ -0,0 +1,424 @@
+package com.khorshed.mybank.mybankapp.database;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * QueryProfiler - Times every statement run through a wrapped connection
+ *
+ * A wrapped connection hands out statement proxies that record bound
+ * parameters and time each execution. For queries the time spent stepping
+ * through the result set is included, together with the row count. Per-SQL
+ * statistics are kept in memory for a top-N view, and any statement slower
+ * than -Dmybank.slowQueryMillis (default 100, negative turns profiling off)
+ * is written with its redacted parameters and EXPLAIN QUERY PLAN output to
+ * logs/slow-queries.log, which is rotated by size.
+ */
+public class QueryProfiler {
+
+    private static final long THRESHOLD_MILLIS = Long.getLong("mybank.slowQueryMillis", 100);
+    private static final Path LOG_FILE = Paths.get("logs", "slow-queries.log");
+    private static final long MAX_LOG_BYTES = 5L * 1024 * 1024;
+    private static final int LOG_FILES_KEPT = 3;
+    private static final int MAX_TRACKED_STATEMENTS = 1000;
+
+    private static final Map<String, QueryStats> statistics = new ConcurrentHashMap<>();
+    private static final ExecutorService logWriter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "slow-query-log");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Running totals for one SQL text
+     */
+    public static class QueryStats {
+        private final String sql;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong slowCount = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private volatile String lastPlan = "";
+
+        QueryStats(String sql) {
+            this.sql = sql;
+        }
+
+        void record(long nanos) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getSlowCount() {
+            return slowCount.get();
+        }
+
+        public double getAverageMillis() {
+            long n = count.get();
+            return n == 0 ? 0 : totalNanos.get() / 1e6 / n;
+        }
+
+        public double getMaxMillis() {
+            return maxNanos.get() / 1e6;
+        }
+
+        public String getLastPlan() {
+            return lastPlan;
+        }
+    }
+
+    private QueryProfiler() {
+    }
+
+    /**
+     * Wraps a connection so that its statements are profiled
+     * @param connection The connection to wrap
+     * @return The profiled connection, or the same connection if profiling is off
+     */
+    public static Connection wrap(Connection connection) {
+        if (THRESHOLD_MILLIS < 0 || connection == null) {
+            return connection;
+        }
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, new ConnectionHandler(connection));
+    }
+
+    /**
+     * Gets the statements with the highest maximum time
+     * @param limit Maximum number of entries
+     * @return Statistics, slowest first
+     */
+    public static List<QueryStats> getSlowest(int limit) {
+        List<QueryStats> all = new ArrayList<>(statistics.values());
+        all.sort((a, b) -> Long.compare(b.maxNanos.get(), a.maxNanos.get()));
+        return all.subList(0, Math.min(limit, all.size()));
+    }
+
+    /**
+     * Gets the slow-query threshold
+     * @return Threshold in milliseconds, negative if profiling is off
+     */
+    public static long getThresholdMillis() {
+        return THRESHOLD_MILLIS;
+    }
+
+    /**
+     * Records one finished execution
+     */
+    private static void record(Connection raw, String sql, Object[] params, long nanos, long rows) {
+        QueryStats stats = statistics.get(sql);
+        if (stats == null && statistics.size() < MAX_TRACKED_STATEMENTS) {
+            stats = statistics.computeIfAbsent(sql, QueryStats::new);
+        }
+        if (stats != null) {
+            stats.record(nanos);
+        }
+
+        if (nanos < THRESHOLD_MILLIS * 1_000_000) {
+            return;
+        }
+
+        // The plan has to be taken now, on the statement's own connection
+        String plan = explain(raw, sql, params);
+        if (stats != null) {
+            stats.slowCount.incrementAndGet();
+            stats.lastPlan = plan;
+        }
+
+        String entry = LocalDateTime.now().format(DatabaseHelper.DATE_FORMATTER) +
+                " | " + String.format("%.1f ms", nanos / 1e6) +
+                " | rows=" + rows +
+                " | " + sql.replaceAll("\\s+", " ") +
+                " | params=" + redact(params) +
+                " | plan=" + plan;
+        logWriter.execute(() -> appendToLog(entry));
+    }
+
+    private static String explain(Connection raw, String sql, Object[] params) {
+        String verb = sql.trim().split("\\s+", 2)[0].toUpperCase();
+        if (!verb.equals("SELECT") && !verb.equals("UPDATE") && !verb.equals("INSERT")
+                && !verb.equals("DELETE") && !verb.equals("WITH")) {
+            return "(no plan for " + verb + ")";
+        }
+
+        try (PreparedStatement pstmt = raw.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+            for (int i = 1; i < params.length; i++) {
+                if (params[i] != null) {
+                    pstmt.setObject(i, params[i]);
+                }
+            }
+            StringBuilder plan = new StringBuilder();
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    if (plan.length() > 0) {
+                        plan.append(" ; ");
+                    }
+                    plan.append(rs.getString("detail"));
+                }
+            }
+            return plan.length() > 0 ? plan.toString() : "(no plan steps)";
+        } catch (SQLException e) {
+            return "(plan unavailable: " + e.getMessage() + ")";
+        }
+    }
+
+    /**
+     * Shows only the type and size of each parameter, never its value
+     */
+    private static String redact(Object[] params) {
+        StringBuilder text = new StringBuilder("[");
+        for (int i = 1; i < params.length; i++) {
+            Object value = params[i];
+            if (value == null) {
+                continue;
+            }
+            if (text.length() > 1) {
+                text.append(", ");
+            }
+            text.append('?').append(i).append('=');
+            if (value instanceof String) {
+                text.append("TEXT(").append(((String) value).length()).append(')');
+            } else if (value instanceof Double || value instanceof Float) {
+                text.append("REAL");
+            } else if (value instanceof Number) {
+                text.append("INTEGER");
+            } else {
+                text.append(value.getClass().getSimpleName());
+            }
+        }
+        return text.append(']').toString();
+    }
+
+    private static void appendToLog(String entry) {
+        try {
+            Files.createDirectories(LOG_FILE.getParent());
+            if (Files.exists(LOG_FILE) && Files.size(LOG_FILE) > MAX_LOG_BYTES) {
+                rotate();
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(LOG_FILE, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(entry);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            EventLog.error("Error writing slow query log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * slow-queries.log becomes .1, .1 becomes .2, and so on; the oldest is dropped
+     */
+    private static void rotate() throws IOException {
+        for (int i = LOG_FILES_KEPT - 1; i >= 1; i--) {
+            Path older = Paths.get(LOG_FILE + "." + i);
+            if (Files.exists(older)) {
+                Files.move(older, Paths.get(LOG_FILE + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(LOG_FILE, Paths.get(LOG_FILE + ".1"), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Hands out profiled statements; everything else goes straight through
+     */
+    private static class ConnectionHandler implements InvocationHandler {
+        private final Connection raw;
+
+        ConnectionHandler(Connection raw) {
+            this.raw = raw;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = QueryProfiler.invoke(raw, method, args);
+            String name = method.getName();
+            if (result instanceof PreparedStatement && name.equals("prepareStatement")) {
+                return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                        new Class<?>[] {PreparedStatement.class},
+                        new StatementHandler(raw, (Statement) result, (String) args[0]));
+            }
+            if (result instanceof Statement && name.equals("createStatement")) {
+                return Proxy.newProxyInstance(Statement.class.getClassLoader(),
+                        new Class<?>[] {Statement.class},
+                        new StatementHandler(raw, (Statement) result, null));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Records parameters and times executions of one statement
+     */
+    private static class StatementHandler implements InvocationHandler {
+        private final Connection raw;
+        private final Statement target;
+        private final String preparedSql;
+        private Object[] params = new Object[8];
+        private ResultSetHandler openResult;
+
+        StatementHandler(Connection raw, Statement target, String preparedSql) {
+            this.raw = raw;
+            this.target = target;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer
+                    && method.getDeclaringClass() == PreparedStatement.class) {
+                int index = (Integer) args[0];
+                if (index >= params.length) {
+                    params = Arrays.copyOf(params, index * 2);
+                }
+                params[index] = args[1];
+                return QueryProfiler.invoke(target, method, args);
+            }
+
+            if (name.equals("clearParameters")) {
+                Arrays.fill(params, null);
+                return QueryProfiler.invoke(target, method, args);
+            }
+
+            if (name.equals("close")) {
+                finishOpenResult();
+                return QueryProfiler.invoke(target, method, args);
+            }
+
+            if (!name.startsWith("execute")) {
+                return QueryProfiler.invoke(target, method, args);
+            }
+
+            finishOpenResult();
+            String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql;
+            long start = System.nanoTime();
+            Object result = QueryProfiler.invoke(target, method, args);
+            long elapsed = System.nanoTime() - start;
+
+            if (result instanceof ResultSet) {
+                openResult = new ResultSetHandler(this, (ResultSet) result, sql, params.clone(), elapsed);
+                return Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                        new Class<?>[] {ResultSet.class}, openResult);
+            }
+
+            long rows = -1;
+            if (result instanceof Integer) {
+                rows = (Integer) result;
+            } else if (result instanceof Long) {
+                rows = (Long) result;
+            } else if (result instanceof int[]) {
+                rows = 0;
+                for (int count : (int[]) result) {
+                    rows += Math.max(0, count);
+                }
+            }
+            if (sql != null) {
+                record(raw, sql, params, elapsed, rows);
+            }
+            return result;
+        }
+
+        private void finishOpenResult() {
+            if (openResult != null) {
+                openResult.finish();
+                openResult = null;
+            }
+        }
+    }
+
+    /**
+     * Adds the time spent stepping through rows to the execution time
+     */
+    private static class ResultSetHandler implements InvocationHandler {
+        private final StatementHandler owner;
+        private final ResultSet target;
+        private final String sql;
+        private final Object[] params;
+        private long nanos;
+        private long rows;
+        private boolean finished;
+
+        ResultSetHandler(StatementHandler owner, ResultSet target, String sql, Object[] params, long executeNanos) {
+            this.owner = owner;
+            this.target = target;
+            this.sql = sql;
+            this.params = params;
+            this.nanos = executeNanos;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("next")) {
+                long start = System.nanoTime();
+                Object result = QueryProfiler.invoke(target, method, args);
+                nanos += System.nanoTime() - start;
+                if (Boolean.TRUE.equals(result)) {
+                    rows++;
+                } else {
+                    finish();
+                }
+                return result;
+            }
+            if (name.equals("close")) {
+                finish();
+            }
+            return QueryProfiler.invoke(target, method, args);
+        }
+
+        void finish() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (owner.openResult == this) {
+                owner.openResult = null;
+            }
+            if (sql != null) {
+                record(owner.raw, sql, params, nanos, rows);
+            }
+        }
+    }
+}
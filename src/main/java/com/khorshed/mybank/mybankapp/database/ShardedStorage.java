@@ -0,0 +1,1191 @@
+package com.khorshed.mybank.mybankapp.database;
+
+import com.khorshed.mybank.mybankapp.models.Account;
+import com.khorshed.mybank.mybankapp.models.PayoutLeg;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * ShardedStorage - Spreads accounts over several SQLite files
+ *
+ * Enabled with -Dmybank.shards=N (N > 1). Each account lives in
+ * database/shard-K.db, where K is a hash of the account number, and every
+ * shard has one writer thread that owns its connection, so shards commit in
+ * parallel instead of queueing on one database lock.
+ *
+ * A transfer between two shards uses two-phase commit. Phase one debits the
+ * sender and records PREPARED intents on both shards. The decision is then
+ * forced to a recovery log. Phase two credits the receiver, writes both
+ * journal rows and marks the intents DONE. At startup, PREPARED intents with
+ * a logged decision are finished and the rest are rolled back.
+ *
+ * Hot accounts (-Dmybank.hotAccounts=account:slots,...) take credits on
+ * several shards so that they do not all queue on one writer. Each shard
+ * other than the home one keeps a slot row with the running total credited
+ * there; the home shard records how much of each slot it has folded in. A
+ * transfer from a sender on a slot shard is a single local transaction, and
+ * deposits land on a random slot. A background compactor (and every debit
+ * or history read of the account) moves slot totals and their transaction
+ * rows to the home shard. Slot totals only grow, so a fold is one local
+ * transaction on the home shard and can never apply the same credit twice.
+ */
+public class ShardedStorage {
+
+    private static final Path SHARD_DIR = Paths.get("database");
+    private static final Path DECISION_LOG = SHARD_DIR.resolve("shard-decisions.log");
+    private static final long DEFAULT_COMPACT_MILLIS = 2000;
+
+    private static ShardedStorage instance;
+
+    private final Shard[] shards;
+    private final FileChannel decisionLog;
+    private final String transferIdPrefix = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong transferCounter = new AtomicLong();
+
+    // Accounts whose credits may sit in slot rows, and how many shards take them (1 = no longer spread)
+    private final Map<Integer, Integer> hotAccounts = new ConcurrentHashMap<>();
+    private final Object compactionLock = new Object();
+    private final ScheduledExecutorService compactor;
+
+    /**
+     * Checks if sharded storage is switched on
+     * The journal posting mode takes precedence, as it projects into one file
+     * @return true if accounts are spread over several files
+     */
+    public static boolean isEnabled() {
+        return getShardCount() > 1 && !JournalEngine.isEnabled();
+    }
+
+    /**
+     * Gets the configured number of shards
+     * @return The shard count
+     */
+    public static int getShardCount() {
+        return Integer.getInteger("mybank.shards", 1);
+    }
+
+    /**
+     * Gets the process-wide storage, recovering unfinished transfers on first use
+     * @return The sharded storage
+     * @throws IllegalStateException if a shard cannot be opened
+     */
+    public static synchronized ShardedStorage getInstance() {
+        if (instance == null) {
+            try {
+                instance = new ShardedStorage(getShardCount());
+            } catch (IOException | SQLException e) {
+                throw new IllegalStateException("Cannot open shards: " + e.getMessage(), e);
+            }
+        }
+        return instance;
+    }
+
+    private ShardedStorage(int shardCount) throws IOException, SQLException {
+        Files.createDirectories(SHARD_DIR);
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i, DriverManager.getConnection(shardUrl(i)));
+            createTables(shards[i].connection);
+        }
+
+        decisionLog = FileChannel.open(DECISION_LOG,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        recoverTransfers();
+        loadHotAccounts();
+
+        long compactMillis = Long.getLong("mybank.hotAccounts.compactMillis", DEFAULT_COMPACT_MILLIS);
+        compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hot-account-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(this::compactAll, compactMillis, compactMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static String shardUrl(int shard) {
+        return "jdbc:sqlite:" + SHARD_DIR.resolve("shard-" + shard + ".db");
+    }
+
+    private static void createTables(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA journal_mode=WAL");
+            stmt.execute("CREATE TABLE IF NOT EXISTS accounts (" +
+                    "accountNumber INTEGER PRIMARY KEY, " +
+                    "ownerName TEXT NOT NULL, " +
+                    "balance REAL NOT NULL DEFAULT 0, " +
+                    "version INTEGER NOT NULL DEFAULT 0)");
+            DatabaseHelper.addVersionColumn(connection);
+            stmt.execute("CREATE TABLE IF NOT EXISTS transactions (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "accountNumber INTEGER NOT NULL, " +
+                    "type TEXT NOT NULL, " +
+                    "amount REAL NOT NULL, " +
+                    "date TEXT NOT NULL, " +
+                    "FOREIGN KEY (accountNumber) REFERENCES accounts(accountNumber))");
+            stmt.execute("CREATE TABLE IF NOT EXISTS transfer_intents (" +
+                    "transferId TEXT NOT NULL, " +
+                    "role TEXT NOT NULL, " +
+                    "accountNumber INTEGER NOT NULL, " +
+                    "counterAccount INTEGER NOT NULL, " +
+                    "amount REAL NOT NULL, " +
+                    "state TEXT NOT NULL, " +
+                    "PRIMARY KEY (transferId, role))");
+            // Credits a hot account homed on another shard has received on this one
+            stmt.execute("CREATE TABLE IF NOT EXISTS hot_slots (" +
+                    "accountNumber INTEGER PRIMARY KEY, " +
+                    "credited REAL NOT NULL DEFAULT 0)");
+            // How much of each slot a hot account homed here has folded in, and up to which row
+            stmt.execute("CREATE TABLE IF NOT EXISTS hot_folds (" +
+                    "accountNumber INTEGER NOT NULL, " +
+                    "shard INTEGER NOT NULL, " +
+                    "folded REAL NOT NULL DEFAULT 0, " +
+                    "lastFoldedId INTEGER NOT NULL DEFAULT 0, " +
+                    "PRIMARY KEY (accountNumber, shard))");
+        }
+    }
+
+    /**
+     * Reads the configured hot accounts and finds slot rows left by earlier runs
+     * Accounts no longer configured keep being compacted until their slots are empty
+     */
+    private void loadHotAccounts() throws SQLException {
+        String config = System.getProperty("mybank.hotAccounts", "").trim();
+        if (!config.isEmpty()) {
+            for (String entry : config.split(",")) {
+                String[] parts = entry.trim().split(":");
+                try {
+                    int accountNumber = Integer.parseInt(parts[0].trim());
+                    int slots = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : shards.length;
+                    setHotAccount(accountNumber, slots);
+                } catch (NumberFormatException e) {
+                    EventLog.warn("Ignoring hot account entry '" + entry + "': " + e.getMessage());
+                }
+            }
+        }
+
+        for (Shard shard : shards) {
+            List<Integer> leftover = shard.call(connection -> {
+                List<Integer> found = new ArrayList<>();
+                try (Statement stmt = connection.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT accountNumber FROM hot_slots")) {
+                    while (rs.next()) {
+                        found.add(rs.getInt(1));
+                    }
+                }
+                return found;
+            });
+            for (int accountNumber : leftover) {
+                hotAccounts.putIfAbsent(accountNumber, 1);
+            }
+        }
+    }
+
+    /**
+     * Gets the shard that holds an account
+     * @param accountNumber The account number
+     * @return The shard index
+     */
+    public int shardOf(int accountNumber) {
+        int hash = accountNumber * 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+    }
+
+    /**
+     * Opens a separate read connection to a shard
+     * @param shard The shard index
+     * @return A new connection owned by the caller
+     * @throws SQLException if the connection cannot be opened
+     */
+    public Connection openReadConnection(int shard) throws SQLException {
+        return DriverManager.getConnection(shardUrl(shard));
+    }
+
+    /**
+     * Spreads an account's incoming credits over several shards
+     * @param accountNumber The account number
+     * @param slots Number of shards that take its credits, its own included; 1 stops spreading
+     */
+    public void setHotAccount(int accountNumber, int slots) {
+        hotAccounts.put(accountNumber, Math.max(1, Math.min(slots, shards.length)));
+    }
+
+    /**
+     * Gets how many shards take an account's credits
+     * @param accountNumber The account number
+     * @return The slot count, 1 for an ordinary account
+     */
+    public int getHotSlots(int accountNumber) {
+        return hotAccounts.getOrDefault(accountNumber, 1);
+    }
+
+    /**
+     * Checks if an account may have credits waiting in slot rows
+     * @param accountNumber The account number
+     * @return true if its balance and history need its slots folded in
+     */
+    public boolean hasSlots(int accountNumber) {
+        return hotAccounts.containsKey(accountNumber);
+    }
+
+    /**
+     * Checks if a shard takes credits for a hot account
+     * Slots are the home shard and the next slots - 1 shards after it
+     */
+    private boolean isSlotShard(int accountNumber, int shard) {
+        int home = shardOf(accountNumber);
+        return Math.floorMod(shard - home, shards.length) < getHotSlots(accountNumber);
+    }
+
+    /**
+     * Adds a credit to a hot account's slot row on this shard
+     */
+    private static void creditSlot(Connection connection, int accountNumber, double amount) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "INSERT INTO hot_slots (accountNumber, credited) VALUES (?, ?) " +
+                        "ON CONFLICT(accountNumber) DO UPDATE SET credited = credited + excluded.credited")) {
+            pstmt.setInt(1, accountNumber);
+            pstmt.setDouble(2, amount);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Moves a hot account's slot credits and their transaction rows to its home shard
+     * Each slot is read on its own writer thread, so its total and rows match,
+     * and then applied in one home transaction together with the new folded
+     * total. Rows already copied are deleted from the slot shard afterwards;
+     * if that step is lost, the recorded last row id keeps them from being
+     * copied again.
+     * @param accountNumber The account number
+     * @return The amount folded into the home balance
+     * @throws SQLException if a shard cannot be read or written
+     */
+    public double compact(int accountNumber) throws SQLException {
+        int homeIndex = shardOf(accountNumber);
+        Shard home = shards[homeIndex];
+        double total = 0;
+
+        synchronized (compactionLock) {
+            double[] folded = new double[shards.length];
+            long[] lastFoldedIds = new long[shards.length];
+            home.call(connection -> {
+                try (PreparedStatement pstmt = connection.prepareStatement(
+                        "SELECT shard, folded, lastFoldedId FROM hot_folds WHERE accountNumber = ?")) {
+                    pstmt.setInt(1, accountNumber);
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) {
+                        folded[rs.getInt(1)] = rs.getDouble(2);
+                        lastFoldedIds[rs.getInt(1)] = rs.getLong(3);
+                    }
+                }
+                return null;
+            });
+
+            for (int s = 0; s < shards.length; s++) {
+                if (s == homeIndex) {
+                    continue;
+                }
+                int slotShard = s;
+                long lastFoldedId = lastFoldedIds[s];
+                List<Object[]> rows = new ArrayList<>();
+                double credited = shards[s].call(connection -> {
+                    try (PreparedStatement pstmt = connection.prepareStatement(
+                            "SELECT id, type, amount, date FROM transactions WHERE accountNumber = ? AND id > ? " +
+                                    "ORDER BY id")) {
+                        pstmt.setInt(1, accountNumber);
+                        pstmt.setLong(2, lastFoldedId);
+                        ResultSet rs = pstmt.executeQuery();
+                        while (rs.next()) {
+                            rows.add(new Object[]{rs.getLong(1), rs.getString(2), rs.getDouble(3), rs.getString(4)});
+                        }
+                    }
+                    try (PreparedStatement pstmt = connection.prepareStatement(
+                            "SELECT credited FROM hot_slots WHERE accountNumber = ?")) {
+                        pstmt.setInt(1, accountNumber);
+                        ResultSet rs = pstmt.executeQuery();
+                        return rs.next() ? rs.getDouble(1) : 0.0;
+                    }
+                });
+
+                double delta = credited - folded[s];
+                if (rows.isEmpty() && delta == 0) {
+                    continue;
+                }
+                long maxId = rows.isEmpty() ? lastFoldedId : (Long) rows.get(rows.size() - 1)[0];
+
+                home.call(connection -> inTransaction(connection, () -> {
+                    updateBalance(connection, accountNumber, delta);
+                    for (Object[] row : rows) {
+                        insertTransaction(connection, accountNumber, (String) row[1], (Double) row[2], (String) row[3]);
+                    }
+                    try (PreparedStatement pstmt = connection.prepareStatement(
+                            "INSERT INTO hot_folds (accountNumber, shard, folded, lastFoldedId) VALUES (?, ?, ?, ?) " +
+                                    "ON CONFLICT(accountNumber, shard) DO UPDATE SET " +
+                                    "folded = excluded.folded, lastFoldedId = excluded.lastFoldedId")) {
+                        pstmt.setInt(1, accountNumber);
+                        pstmt.setInt(2, slotShard);
+                        pstmt.setDouble(3, credited);
+                        pstmt.setLong(4, maxId);
+                        pstmt.executeUpdate();
+                    }
+                    return null;
+                }));
+                total += delta;
+
+                shards[s].call(connection -> {
+                    try (PreparedStatement pstmt = connection.prepareStatement(
+                            "DELETE FROM transactions WHERE accountNumber = ? AND id <= ?")) {
+                        pstmt.setInt(1, accountNumber);
+                        pstmt.setLong(2, maxId);
+                        pstmt.executeUpdate();
+                    }
+                    return null;
+                });
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Compacts every hot account; runs on the compactor thread
+     */
+    private void compactAll() {
+        for (int accountNumber : hotAccounts.keySet()) {
+            try {
+                compact(accountNumber);
+            } catch (SQLException e) {
+                EventLog.error("Error compacting hot account " + accountNumber + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Folds a hot account's slots in before it is debited
+     */
+    private void compactBeforeDebit(int accountNumber) throws SQLException {
+        if (hasSlots(accountNumber)) {
+            compact(accountNumber);
+        }
+    }
+
+    /**
+     * Calls a consumer with every account in every shard
+     * @param consumer Receives each owner name and account number
+     * @throws SQLException if a shard cannot be read
+     */
+    public void forEachAccount(ObjIntConsumer<String> consumer) throws SQLException {
+        for (Shard shard : shards) {
+            shard.call(connection -> {
+                try (Statement stmt = connection.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT accountNumber, ownerName FROM accounts")) {
+                    while (rs.next()) {
+                        consumer.accept(rs.getString(2), rs.getInt(1));
+                    }
+                }
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Counts the accounts in every shard
+     * @return The total account count
+     * @throws SQLException if a shard cannot be read
+     */
+    public long countAccounts() throws SQLException {
+        long count = 0;
+        for (Shard shard : shards) {
+            count += shard.call(connection -> {
+                try (Statement stmt = connection.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM accounts")) {
+                    return rs.next() ? rs.getLong(1) : 0L;
+                }
+            });
+        }
+        return count;
+    }
+
+    /**
+     * Creates an account in its shard
+     * @return true if successful, false otherwise
+     */
+    public boolean createAccount(int accountNumber, String ownerName, double initialDeposit) {
+        try {
+            return shards[shardOf(accountNumber)].call(connection -> inTransaction(connection, () -> {
+                try (PreparedStatement pstmt = connection.prepareStatement(
+                        "INSERT INTO accounts (accountNumber, ownerName, balance) VALUES (?, ?, ?)")) {
+                    pstmt.setInt(1, accountNumber);
+                    pstmt.setString(2, ownerName);
+                    pstmt.setDouble(3, initialDeposit);
+                    pstmt.executeUpdate();
+                }
+                if (initialDeposit > 0) {
+                    insertTransaction(connection, accountNumber, "Initial Deposit", initialDeposit);
+                }
+                return true;
+            }));
+        } catch (SQLException e) {
+            EventLog.error("Error creating account: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Creates many accounts, one transaction per shard
+     * An account is only reported as inserted once its shard's transaction
+     * has committed; the accounts of a shard that failed are reported as not
+     * inserted.
+     * @param accounts The accounts to create; numbers must already be assigned
+     * @return One flag per account, true if it was inserted
+     */
+    public boolean[] createAccounts(List<Account> accounts) {
+        boolean[] inserted = new boolean[accounts.size()];
+        List<List<Integer>> byShard = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (int i = 0; i < accounts.size(); i++) {
+            byShard.get(shardOf(accounts.get(i).getAccountNumber())).add(i);
+        }
+
+        List<List<Integer>> submitted = new ArrayList<>();
+        List<Future<boolean[]>> pending = new ArrayList<>();
+        for (int s = 0; s < shards.length; s++) {
+            List<Integer> indexes = byShard.get(s);
+            if (indexes.isEmpty()) {
+                continue;
+            }
+            submitted.add(indexes);
+            pending.add(shards[s].submit(connection -> inTransaction(connection, () -> {
+                // Flags for this shard only, in the order of indexes
+                boolean[] shardInserted = new boolean[indexes.size()];
+                try (PreparedStatement pstmt = connection.prepareStatement(
+                        "INSERT OR IGNORE INTO accounts (accountNumber, ownerName, balance) VALUES (?, ?, ?)")) {
+                    for (int index : indexes) {
+                        Account account = accounts.get(index);
+                        pstmt.setInt(1, account.getAccountNumber());
+                        pstmt.setString(2, account.getOwnerName());
+                        pstmt.setDouble(3, account.getBalance());
+                        pstmt.addBatch();
+                    }
+                    int[] counts = pstmt.executeBatch();
+                    for (int i = 0; i < counts.length; i++) {
+                        shardInserted[i] = counts[i] > 0;
+                    }
+                }
+                for (int i = 0; i < indexes.size(); i++) {
+                    Account account = accounts.get(indexes.get(i));
+                    if (shardInserted[i] && account.getBalance() > 0) {
+                        insertTransaction(connection, account.getAccountNumber(), "Initial Deposit", account.getBalance());
+                    }
+                }
+                return shardInserted;
+            })));
+        }
+
+        for (int p = 0; p < pending.size(); p++) {
+            try {
+                boolean[] shardInserted = pending.get(p).get();
+                List<Integer> indexes = submitted.get(p);
+                for (int i = 0; i < indexes.size(); i++) {
+                    inserted[indexes.get(i)] = shardInserted[i];
+                }
+            } catch (InterruptedException e) {
+                // The shard's outcome is unknown, so its accounts stay reported as not inserted
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                EventLog.error("Error creating accounts: " + e.getCause().getMessage());
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * Gets the current balance of an account
+     * @return The balance, or -1 if account doesn't exist
+     */
+    public double getBalance(int accountNumber) {
+        try {
+            int homeIndex = shardOf(accountNumber);
+            if (!hasSlots(accountNumber)) {
+                return shards[homeIndex].call(connection -> readBalance(connection, accountNumber));
+            }
+
+            // Home balance plus whatever each slot holds beyond what the home shard has folded in
+            double[] folded = new double[shards.length];
+            double balance = shards[homeIndex].call(connection -> {
+                try (PreparedStatement pstmt = connection.prepareStatement(
+                        "SELECT shard, folded FROM hot_folds WHERE accountNumber = ?")) {
+                    pstmt.setInt(1, accountNumber);
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) {
+                        folded[rs.getInt(1)] = rs.getDouble(2);
+                    }
+                }
+                return readBalance(connection, accountNumber);
+            });
+            if (balance < 0) {
+                return balance;
+            }
+            for (int s = 0; s < shards.length; s++) {
+                if (s == homeIndex) {
+                    continue;
+                }
+                double credited = shards[s].call(connection -> {
+                    try (PreparedStatement pstmt = connection.prepareStatement(
+                            "SELECT credited FROM hot_slots WHERE accountNumber = ?")) {
+                        pstmt.setInt(1, accountNumber);
+                        ResultSet rs = pstmt.executeQuery();
+                        return rs.next() ? rs.getDouble(1) : 0.0;
+                    }
+                });
+                balance += credited - folded[s];
+            }
+            return balance;
+        } catch (SQLException e) {
+            EventLog.error("Error getting balance: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Gets the owner name of an account
+     * @return The owner name, or null if not found
+     */
+    public String getOwnerName(int accountNumber) {
+        try {
+            return shards[shardOf(accountNumber)].call(connection -> {
+                try (PreparedStatement pstmt = connection.prepareStatement(
+                        "SELECT ownerName FROM accounts WHERE accountNumber = ?")) {
+                    pstmt.setInt(1, accountNumber);
+                    ResultSet rs = pstmt.executeQuery();
+                    return rs.next() ? rs.getString(1) : null;
+                }
+            });
+        } catch (SQLException e) {
+            EventLog.error("Error getting owner name: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Deposits money into an account
+     * @return true if successful, false otherwise
+     */
+    public boolean deposit(int accountNumber, double amount) {
+        try {
+            int slots = getHotSlots(accountNumber);
+            if (slots > 1) {
+                int slot = ThreadLocalRandom.current().nextInt(slots);
+                if (slot > 0) {
+                    int shard = (shardOf(accountNumber) + slot) % shards.length;
+                    return shards[shard].call(connection -> inTransaction(connection, () -> {
+                        creditSlot(connection, accountNumber, amount);
+                        insertTransaction(connection, accountNumber, "Deposit", amount);
+                        return true;
+                    }));
+                }
+            }
+
+            return shards[shardOf(accountNumber)].call(connection -> inTransaction(connection, () -> {
+                if (updateBalance(connection, accountNumber, amount) == 0) {
+                    return false;
+                }
+                insertTransaction(connection, accountNumber, "Deposit", amount);
+                return true;
+            }));
+        } catch (SQLException e) {
+            EventLog.error("Error depositing money: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Withdraws money from an account
+     * @return true if successful, false otherwise
+     */
+    public boolean withdraw(int accountNumber, double amount) {
+        try {
+            compactBeforeDebit(accountNumber);
+            return shards[shardOf(accountNumber)].call(connection -> inTransaction(connection, () -> {
+                if (readBalance(connection, accountNumber) < amount) {
+                    return false; // Insufficient balance
+                }
+                updateBalance(connection, accountNumber, -amount);
+                insertTransaction(connection, accountNumber, "Withdraw", amount);
+                return true;
+            }));
+        } catch (SQLException e) {
+            EventLog.error("Error withdrawing money: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Transfers money between two accounts, with two-phase commit across shards
+     * @return true if successful, false otherwise
+     */
+    public boolean transfer(int fromAccount, int toAccount, double amount) {
+        int sourceIndex = shardOf(fromAccount);
+        Shard source = shards[sourceIndex];
+        Shard target = shards[shardOf(toAccount)];
+
+        try {
+            compactBeforeDebit(fromAccount);
+
+            // A hot receiver with a slot on the sender's shard is credited there, in one local transaction
+            if (source != target && getHotSlots(toAccount) > 1 && isSlotShard(toAccount, sourceIndex)) {
+                return source.call(connection -> inTransaction(connection, () -> {
+                    if (readBalance(connection, fromAccount) < amount) {
+                        return false; // Insufficient balance
+                    }
+                    updateBalance(connection, fromAccount, -amount);
+                    creditSlot(connection, toAccount, amount);
+                    insertTransaction(connection, fromAccount, "Transfer Out to " + toAccount, amount);
+                    insertTransaction(connection, toAccount, "Transfer In from " + fromAccount, amount);
+                    return true;
+                }));
+            }
+
+            if (source == target) {
+                return source.call(connection -> inTransaction(connection, () -> {
+                    if (readBalance(connection, fromAccount) < amount) {
+                        return false; // Insufficient balance
+                    }
+                    updateBalance(connection, fromAccount, -amount);
+                    updateBalance(connection, toAccount, amount);
+                    insertTransaction(connection, fromAccount, "Transfer Out to " + toAccount, amount);
+                    insertTransaction(connection, toAccount, "Transfer In from " + fromAccount, amount);
+                    return true;
+                }));
+            }
+
+            String transferId = transferIdPrefix + "-" + transferCounter.incrementAndGet();
+
+            // Phase one: reserve the funds, then make sure the receiver can accept them
+            boolean debited = source.call(connection -> inTransaction(connection, () -> {
+                if (readBalance(connection, fromAccount) < amount) {
+                    return false;
+                }
+                updateBalance(connection, fromAccount, -amount);
+                insertIntent(connection, transferId, "DEBIT", fromAccount, toAccount, amount);
+                return true;
+            }));
+            if (!debited) {
+                return false;
+            }
+
+            boolean prepared;
+            try {
+                prepared = target.call(connection -> inTransaction(connection, () -> {
+                    if (readBalance(connection, toAccount) < 0) {
+                        return false;
+                    }
+                    insertIntent(connection, transferId, "CREDIT", toAccount, fromAccount, amount);
+                    return true;
+                }));
+            } catch (SQLException e) {
+                prepared = false;
+            }
+            if (!prepared) {
+                source.call(connection -> inTransaction(connection, () -> abortIntent(connection, transferId, "DEBIT")));
+                return false;
+            }
+
+            // Decision point: once logged, the transfer will complete even after a crash
+            logDecision(transferId);
+
+            try {
+                target.call(connection -> inTransaction(connection, () -> completeIntent(connection, transferId, "CREDIT")));
+                source.call(connection -> inTransaction(connection, () -> completeIntent(connection, transferId, "DEBIT")));
+            } catch (SQLException e) {
+                EventLog.warn("Transfer " + transferId + " will be completed on restart: " + e.getMessage());
+            }
+            return true;
+        } catch (SQLException | IOException e) {
+            EventLog.error("Error transferring money: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Pays every pending leg from one account
+     * The payer's balance is checked once against the total. Legs to accounts
+     * on the payer's shard are applied in that same transaction with batched
+     * statements. Legs to other shards go through two-phase commit in groups:
+     * their debits are reserved in the same transaction, each target shard
+     * prepares all of its credits in one transaction, one forced log write
+     * records every decision, and each shard then completes its legs at once.
+     * @param fromAccount The paying account
+     * @param legs The legs; pending legs are marked with their outcome
+     * @param total Sum of the pending legs' amounts
+     * @return Number of legs paid, or -1 on error
+     */
+    public int payout(int fromAccount, List<PayoutLeg> legs, double total) {
+        Shard source = shards[shardOf(fromAccount)];
+        List<PayoutLeg> local = new ArrayList<>();
+        List<List<PayoutLeg>> remote = new ArrayList<>();
+        List<List<String>> remoteIds = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            remote.add(new ArrayList<>());
+            remoteIds.add(new ArrayList<>());
+        }
+        for (PayoutLeg leg : legs) {
+            if (leg.getStatus() != PayoutLeg.Status.PENDING) {
+                continue;
+            }
+            int shard = shardOf(leg.getDestinationAccount());
+            if (shards[shard] == source) {
+                local.add(leg);
+            } else {
+                remote.get(shard).add(leg);
+                remoteIds.get(shard).add(transferIdPrefix + "-" + transferCounter.incrementAndGet());
+            }
+        }
+
+        try {
+            compactBeforeDebit(fromAccount);
+
+            // Phase one on the payer's shard: pay local legs, reserve the rest
+            boolean funded = source.call(connection -> inTransaction(connection, () -> {
+                if (readBalance(connection, fromAccount) < total) {
+                    return false; // Insufficient balance
+                }
+                DatabaseHelper.applyPayoutLegs(connection, fromAccount, local);
+                for (int shard = 0; shard < shards.length; shard++) {
+                    List<PayoutLeg> group = remote.get(shard);
+                    for (int i = 0; i < group.size(); i++) {
+                        PayoutLeg leg = group.get(i);
+                        updateBalance(connection, fromAccount, -leg.getAmount());
+                        insertIntent(connection, remoteIds.get(shard).get(i), "DEBIT", fromAccount,
+                                leg.getDestinationAccount(), leg.getAmount());
+                    }
+                }
+                return true;
+            }));
+
+            if (!funded) {
+                for (PayoutLeg leg : legs) {
+                    if (leg.getStatus() == PayoutLeg.Status.PENDING) {
+                        leg.setStatus(PayoutLeg.Status.INSUFFICIENT_FUNDS);
+                    }
+                }
+                return 0;
+            }
+            for (PayoutLeg leg : local) {
+                leg.setStatus(PayoutLeg.Status.PAID);
+            }
+
+            // Phase one on each target shard: prepare all of its credits together
+            List<String> decided = new ArrayList<>();
+            List<String> abandoned = new ArrayList<>();
+            boolean[] prepared = new boolean[shards.length];
+            for (int shard = 0; shard < shards.length; shard++) {
+                List<PayoutLeg> group = remote.get(shard);
+                if (group.isEmpty()) {
+                    continue;
+                }
+                List<String> ids = remoteIds.get(shard);
+                try {
+                    prepared[shard] = shards[shard].call(connection -> inTransaction(connection, () -> {
+                        for (int i = 0; i < group.size(); i++) {
+                            PayoutLeg leg = group.get(i);
+                            if (readBalance(connection, leg.getDestinationAccount()) < 0) {
+                                throw new SQLException("Account " + leg.getDestinationAccount() + " not found");
+                            }
+                            insertIntent(connection, ids.get(i), "CREDIT", leg.getDestinationAccount(),
+                                    fromAccount, leg.getAmount());
+                        }
+                        return true;
+                    }));
+                } catch (SQLException e) {
+                    prepared[shard] = false;
+                }
+                (prepared[shard] ? decided : abandoned).addAll(ids);
+            }
+
+            if (!abandoned.isEmpty()) {
+                try {
+                    source.call(connection -> inTransaction(connection, () -> {
+                        for (String transferId : abandoned) {
+                            abortIntent(connection, transferId, "DEBIT");
+                        }
+                        return null;
+                    }));
+                } catch (SQLException e) {
+                    // Never decided, so recovery refunds them
+                    EventLog.warn("Failed payout legs will be refunded on restart: " + e.getMessage());
+                }
+            }
+
+            // Decision point for every prepared leg at once
+            if (!decided.isEmpty()) {
+                try {
+                    logDecisions(decided);
+                } catch (IOException e) {
+                    // The local legs are already paid; the remote ones go back without a decision
+                    EventLog.error("Error logging payout decision: " + e.getMessage());
+                    abortPrepared(source, remoteIds, prepared);
+                    for (List<PayoutLeg> group : remote) {
+                        for (PayoutLeg leg : group) {
+                            leg.setStatus(PayoutLeg.Status.FAILED);
+                        }
+                    }
+                    return local.size();
+                }
+            }
+
+            int paid = local.size();
+            for (int shard = 0; shard < shards.length; shard++) {
+                for (PayoutLeg leg : remote.get(shard)) {
+                    leg.setStatus(prepared[shard] ? PayoutLeg.Status.PAID : PayoutLeg.Status.FAILED);
+                    paid += prepared[shard] ? 1 : 0;
+                }
+            }
+
+            try {
+                for (int shard = 0; shard < shards.length; shard++) {
+                    if (!prepared[shard]) {
+                        continue;
+                    }
+                    List<String> ids = remoteIds.get(shard);
+                    shards[shard].call(connection -> inTransaction(connection, () -> {
+                        for (String transferId : ids) {
+                            completeIntent(connection, transferId, "CREDIT");
+                        }
+                        return null;
+                    }));
+                }
+                source.call(connection -> inTransaction(connection, () -> {
+                    for (String transferId : decided) {
+                        completeIntent(connection, transferId, "DEBIT");
+                    }
+                    return null;
+                }));
+            } catch (SQLException e) {
+                EventLog.warn("Payout legs will be completed on restart: " + e.getMessage());
+            }
+            return paid;
+        } catch (SQLException e) {
+            EventLog.error("Error paying out: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Rolls back the prepared remote legs of a payout whose decision could not be logged
+     * Each target shard's credits are aborted before the matching debits on
+     * the payer's shard, so no leg is refunded while its credit could still
+     * be committed. Legs whose abort fails stay prepared and are settled at
+     * restart from the decision log.
+     */
+    private void abortPrepared(Shard source, List<List<String>> remoteIds, boolean[] prepared) {
+        List<String> withdrawn = new ArrayList<>();
+        for (int shard = 0; shard < shards.length; shard++) {
+            if (!prepared[shard]) {
+                continue;
+            }
+            List<String> ids = remoteIds.get(shard);
+            try {
+                shards[shard].call(connection -> inTransaction(connection, () -> {
+                    for (String transferId : ids) {
+                        abortIntent(connection, transferId, "CREDIT");
+                    }
+                    return null;
+                }));
+                withdrawn.addAll(ids);
+            } catch (SQLException e) {
+                EventLog.warn("Payout legs will be settled on restart: " + e.getMessage());
+            }
+        }
+
+        if (withdrawn.isEmpty()) {
+            return;
+        }
+        try {
+            source.call(connection -> inTransaction(connection, () -> {
+                for (String transferId : withdrawn) {
+                    abortIntent(connection, transferId, "DEBIT");
+                }
+                return null;
+            }));
+        } catch (SQLException e) {
+            EventLog.error("Payout legs " + withdrawn + " could not be refunded: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Finishes or rolls back transfers left PREPARED by a crash
+     */
+    private void recoverTransfers() throws IOException, SQLException {
+        Set<String> committed = new HashSet<>();
+        try (BufferedReader reader = Files.newBufferedReader(DECISION_LOG, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("COMMIT ")) {
+                    committed.add(line.substring(7).trim());
+                }
+            }
+        }
+
+        int resolved = 0;
+        for (Shard shard : shards) {
+            List<String[]> intents = shard.call(connection -> {
+                List<String[]> found = new ArrayList<>();
+                try (Statement stmt = connection.createStatement();
+                     ResultSet rs = stmt.executeQuery(
+                             "SELECT transferId, role FROM transfer_intents WHERE state = 'PREPARED'")) {
+                    while (rs.next()) {
+                        found.add(new String[]{rs.getString(1), rs.getString(2)});
+                    }
+                }
+                return found;
+            });
+
+            for (String[] intent : intents) {
+                String transferId = intent[0];
+                String role = intent[1];
+                boolean commit = committed.contains(transferId);
+                shard.call(connection -> inTransaction(connection, () -> commit
+                        ? completeIntent(connection, transferId, role)
+                        : abortIntent(connection, transferId, role)));
+                resolved++;
+            }
+        }
+
+        if (resolved > 0) {
+            EventLog.info("Recovered " + resolved + " unfinished transfer leg(s)");
+        }
+
+        // Every decision has been applied, so the log can start over
+        decisionLog.truncate(0);
+    }
+
+    private void logDecision(String transferId) throws IOException {
+        ByteBuffer line = ByteBuffer.wrap(("COMMIT " + transferId + "\n").getBytes(StandardCharsets.UTF_8));
+        synchronized (decisionLog) {
+            while (line.hasRemaining()) {
+                decisionLog.write(line);
+            }
+            decisionLog.force(false);
+        }
+    }
+
+    /**
+     * Logs several decisions with a single forced write
+     */
+    private void logDecisions(List<String> transferIds) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (String transferId : transferIds) {
+            lines.append("COMMIT ").append(transferId).append('\n');
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        synchronized (decisionLog) {
+            while (buffer.hasRemaining()) {
+                decisionLog.write(buffer);
+            }
+            decisionLog.force(false);
+        }
+    }
+
+    private static void insertIntent(Connection connection, String transferId, String role, int account,
+                                     int counterAccount, double amount) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "INSERT INTO transfer_intents (transferId, role, accountNumber, counterAccount, amount, state) " +
+                        "VALUES (?, ?, ?, ?, ?, 'PREPARED')")) {
+            pstmt.setString(1, transferId);
+            pstmt.setString(2, role);
+            pstmt.setInt(3, account);
+            pstmt.setInt(4, counterAccount);
+            pstmt.setDouble(5, amount);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Phase two for one leg: credit the receiver and write the journal row
+     */
+    private static boolean completeIntent(Connection connection, String transferId, String role) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT accountNumber, counterAccount, amount FROM transfer_intents " +
+                        "WHERE transferId = ? AND role = ? AND state = 'PREPARED'")) {
+            select.setString(1, transferId);
+            select.setString(2, role);
+            ResultSet rs = select.executeQuery();
+            if (!rs.next()) {
+                return false;
+            }
+
+            int account = rs.getInt(1);
+            int counterAccount = rs.getInt(2);
+            double amount = rs.getDouble(3);
+
+            if ("CREDIT".equals(role)) {
+                updateBalance(connection, account, amount);
+                insertTransaction(connection, account, "Transfer In from " + counterAccount, amount);
+            } else {
+                insertTransaction(connection, account, "Transfer Out to " + counterAccount, amount);
+            }
+        }
+
+        setIntentState(connection, transferId, role, "DONE");
+        return true;
+    }
+
+    /**
+     * Rolls back one leg: the sender gets the reserved funds back
+     */
+    private static boolean abortIntent(Connection connection, String transferId, String role) throws SQLException {
+        if ("DEBIT".equals(role)) {
+            try (PreparedStatement select = connection.prepareStatement(
+                    "SELECT accountNumber, amount FROM transfer_intents " +
+                            "WHERE transferId = ? AND role = ? AND state = 'PREPARED'")) {
+                select.setString(1, transferId);
+                select.setString(2, role);
+                ResultSet rs = select.executeQuery();
+                if (rs.next()) {
+                    updateBalance(connection, rs.getInt(1), rs.getDouble(2));
+                }
+            }
+        }
+
+        setIntentState(connection, transferId, role, "ABORTED");
+        return true;
+    }
+
+    private static void setIntentState(Connection connection, String transferId, String role, String state)
+            throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "UPDATE transfer_intents SET state = ? WHERE transferId = ? AND role = ?")) {
+            pstmt.setString(1, state);
+            pstmt.setString(2, transferId);
+            pstmt.setString(3, role);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static double readBalance(Connection connection, int accountNumber) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT balance FROM accounts WHERE accountNumber = ?")) {
+            pstmt.setInt(1, accountNumber);
+            ResultSet rs = pstmt.executeQuery();
+            return rs.next() ? rs.getDouble(1) : -1;
+        }
+    }
+
+    private static int updateBalance(Connection connection, int accountNumber, double delta) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "UPDATE accounts SET balance = balance + ?, version = version + 1 WHERE accountNumber = ?")) {
+            pstmt.setDouble(1, delta);
+            pstmt.setInt(2, accountNumber);
+            return pstmt.executeUpdate();
+        }
+    }
+
+    private static void insertTransaction(Connection connection, int accountNumber, String type, double amount)
+            throws SQLException {
+        insertTransaction(connection, accountNumber, type, amount, LocalDateTime.now().format(DatabaseHelper.DATE_FORMATTER));
+    }
+
+    private static void insertTransaction(Connection connection, int accountNumber, String type, double amount,
+                                          String date) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "INSERT INTO transactions (accountNumber, type, amount, date) VALUES (?, ?, ?, ?)")) {
+            pstmt.setInt(1, accountNumber);
+            pstmt.setString(2, type);
+            pstmt.setDouble(3, amount);
+            pstmt.setString(4, date);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Runs work in a local transaction on the calling (writer) thread
+     */
+    private static <T> T inTransaction(Connection connection, SqlWork<T> work) throws SQLException {
+        connection.setAutoCommit(false);
+        try {
+            T result = work.run();
+            connection.commit();
+            return result;
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private interface SqlWork<T> {
+        T run() throws SQLException;
+    }
+
+    private interface ShardTask<T> {
+        T run(Connection connection) throws SQLException;
+    }
+
+    /**
+     * One SQLite file and the single thread that writes to it
+     */
+    private static final class Shard {
+        private final Connection connection;
+        private final ExecutorService writer;
+
+        private Shard(int index, Connection connection) {
+            this.connection = connection;
+            this.writer = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "shard-writer-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        private <T> Future<T> submit(ShardTask<T> task) {
+            return writer.submit(() -> task.run(connection));
+        }
+
+        private <T> T call(ShardTask<T> task) throws SQLException {
+            try {
+                return submit(task).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for shard", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof SQLException) {
+                    throw (SQLException) e.getCause();
+                }
+                throw new SQLException(e.getCause());
+            }
+        }
+    }
+}
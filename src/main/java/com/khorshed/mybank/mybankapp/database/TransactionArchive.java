@@ -0,0 +1,675 @@
+package com.khorshed.mybank.mybankapp.database;
+
+import com.khorshed.mybank.mybankapp.models.Transaction;
+import com.khorshed.mybank.mybankapp.models.TransactionColumns;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * TransactionArchive - Cold tier for old transactions
+ *
+ * Transactions dated before a cutoff are moved out of the hot transactions
+ * table (or each shard's) into database/archive.db. An account's rows for
+ * one calendar month form a segment stored as a single compact blob (varint
+ * deltas and type codes, deflated when that helps), so the archive is
+ * partitioned by month and read an account at a time. archive_summary holds
+ * the net amount of each account's archived rows as its carried-forward
+ * balance.
+ *
+ * A run can stop at any point and be started again with the same cutoff:
+ * segments are keyed by their first row id, the summary is recomputed from
+ * the segments, and hot rows are deleted only after their segments commit.
+ */
+public class TransactionArchive {
+
+    /**
+     * Receives progress from a running archival
+     */
+    public interface Listener {
+        void onProgress(String month, long rowsArchived, long segmentsWritten);
+    }
+
+    /**
+     * Archived totals of one account
+     */
+    public static class Summary {
+        private final double carriedBalance;
+        private final long rowCount;
+        private final long lastArchivedId;
+
+        private Summary(double carriedBalance, long rowCount, long lastArchivedId) {
+            this.carriedBalance = carriedBalance;
+            this.rowCount = rowCount;
+            this.lastArchivedId = lastArchivedId;
+        }
+
+        public double getCarriedBalance() {
+            return carriedBalance;
+        }
+
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        public long getLastArchivedId() {
+            return lastArchivedId;
+        }
+    }
+
+    private static final Path ARCHIVE_FILE = Paths.get("database", "archive.db");
+    private static final String ARCHIVE_URL = "jdbc:sqlite:" + ARCHIVE_FILE;
+    private static final int SEGMENTS_PER_COMMIT = 5_000;
+
+    // First byte of a segment payload
+    private static final int FORMAT_RAW = 0;
+    private static final int FORMAT_DEFLATED = 1;
+
+    // Type codes; the two transfer codes are followed by the counter account
+    private static final int TYPE_OTHER = 0;
+    private static final int TYPE_TRANSFER_IN = 1;
+    private static final int TYPE_TRANSFER_OUT = 2;
+    private static final String[] TYPE_NAMES = {null, "Transfer In from ", "Transfer Out to ",
+            "Deposit", "Withdraw", "Initial Deposit", "Interest", "Monthly Fee"};
+    private static final int AMOUNT_RAW_FLAG = 0x80;
+
+    private static TransactionArchive instance;
+
+    // Read connection for history lookups; archival runs write on their own
+    private final Connection connection;
+
+    // Rows dated before this (stored local time read as UTC epoch millis) may be archived
+    private volatile long archivedBeforeMillis = Long.MIN_VALUE;
+
+    /**
+     * Gets the process-wide archive, creating the archive file if needed
+     * @return The archive
+     * @throws IllegalStateException if the archive file cannot be opened
+     */
+    public static synchronized TransactionArchive getInstance() {
+        if (instance == null) {
+            try {
+                instance = new TransactionArchive();
+            } catch (IOException | SQLException e) {
+                throw new IllegalStateException("Cannot open archive: " + e.getMessage(), e);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the archive only if anything was ever archived
+     * @return The archive, or null if there is no archive file
+     */
+    public static TransactionArchive getIfPresent() {
+        synchronized (TransactionArchive.class) {
+            if (instance != null) {
+                return instance;
+            }
+        }
+        return Files.exists(ARCHIVE_FILE) ? getInstance() : null;
+    }
+
+    private TransactionArchive() throws IOException, SQLException {
+        Files.createDirectories(ARCHIVE_FILE.getParent());
+        try (Connection writer = DriverManager.getConnection(ARCHIVE_URL);
+             Statement stmt = writer.createStatement()) {
+            // Lets history reads run while an archival writes
+            stmt.execute("PRAGMA journal_mode=WAL");
+            stmt.execute("CREATE TABLE IF NOT EXISTS archive_segments (" +
+                    "accountNumber INTEGER NOT NULL, " +
+                    "month TEXT NOT NULL, " +
+                    "firstId INTEGER NOT NULL, " +
+                    "lastId INTEGER NOT NULL, " +
+                    "rowCount INTEGER NOT NULL, " +
+                    "netAmount REAL NOT NULL, " +
+                    "payload BLOB NOT NULL, " +
+                    "PRIMARY KEY (accountNumber, month, firstId)) WITHOUT ROWID");
+            stmt.execute("CREATE TABLE IF NOT EXISTS archive_months (month TEXT PRIMARY KEY)");
+            stmt.execute("CREATE TABLE IF NOT EXISTS archive_summary (" +
+                    "accountNumber INTEGER PRIMARY KEY, " +
+                    "carriedBalance REAL NOT NULL, " +
+                    "rowCount INTEGER NOT NULL, " +
+                    "lastArchivedId INTEGER NOT NULL)");
+            stmt.execute("CREATE TABLE IF NOT EXISTS archive_runs (" +
+                    "cutoff TEXT PRIMARY KEY, " +
+                    "startedAt TEXT NOT NULL, " +
+                    "completedAt TEXT, " +
+                    "rowsArchived INTEGER NOT NULL DEFAULT 0)");
+
+            ResultSet rs = stmt.executeQuery("SELECT MAX(cutoff) FROM archive_runs");
+            if (rs.next() && rs.getString(1) != null) {
+                archivedBeforeMillis = toMillis(rs.getString(1));
+            }
+        }
+        connection = QueryProfiler.wrap(DriverManager.getConnection(ARCHIVE_URL));
+    }
+
+    /**
+     * Gets the newest cutoff of any archival run
+     * History that starts at or after it never needs the archive
+     * @return Epoch milliseconds of the cutoff, or Long.MIN_VALUE if nothing was archived
+     */
+    public long getArchivedBeforeMillis() {
+        return archivedBeforeMillis;
+    }
+
+    /**
+     * Gets the newest cutoff as stored date text, for comparing with transactions.date
+     * @return The cutoff, or an empty string (before every date) if nothing was archived
+     */
+    public String getArchivedBeforeText() {
+        long millis = archivedBeforeMillis;
+        return millis == Long.MIN_VALUE ? "" : toText(millis);
+    }
+
+    /**
+     * Moves every transaction dated before the cutoff into the archive
+     * @param cutoff First day that stays in the hot table; must not be after today
+     * @param listener Receives progress after each month, or null
+     * @return Number of rows archived
+     * @throws SQLException if a store cannot be read or written
+     */
+    public long archive(LocalDate cutoff, Listener listener) throws SQLException {
+        if (cutoff.isAfter(LocalDate.now())) {
+            throw new IllegalArgumentException("Cutoff cannot be in the future");
+        }
+        String cutoffText = cutoff.atStartOfDay().format(DatabaseHelper.DATE_FORMATTER);
+
+        try (Connection writer = DriverManager.getConnection(ARCHIVE_URL)) {
+            // Readers must consult the archive before any hot row disappears
+            try (PreparedStatement pstmt = writer.prepareStatement(
+                    "INSERT OR IGNORE INTO archive_runs (cutoff, startedAt) VALUES (?, ?)")) {
+                pstmt.setString(1, cutoffText);
+                pstmt.setString(2, LocalDateTime.now().format(DatabaseHelper.DATE_FORMATTER));
+                pstmt.executeUpdate();
+            }
+            archivedBeforeMillis = Math.max(archivedBeforeMillis, toMillis(cutoffText));
+
+            long[] progress = new long[2];
+            for (Connection hot : openHotConnections()) {
+                try (Connection store = hot) {
+                    archiveStore(store, writer, cutoffText, progress, listener);
+                }
+            }
+
+            try (PreparedStatement pstmt = writer.prepareStatement(
+                    "UPDATE archive_runs SET completedAt = ?, rowsArchived = rowsArchived + ? WHERE cutoff = ?")) {
+                pstmt.setString(1, LocalDateTime.now().format(DatabaseHelper.DATE_FORMATTER));
+                pstmt.setLong(2, progress[0]);
+                pstmt.setString(3, cutoffText);
+                pstmt.executeUpdate();
+            }
+            return progress[0];
+        }
+    }
+
+    private static List<Connection> openHotConnections() throws SQLException {
+        List<Connection> stores = new ArrayList<>();
+        if (ShardedStorage.isEnabled()) {
+            ShardedStorage storage = ShardedStorage.getInstance();
+            for (int shard = 0; shard < ShardedStorage.getShardCount(); shard++) {
+                stores.add(storage.openReadConnection(shard));
+            }
+        } else {
+            Connection connection = DatabaseHelper.openConnection();
+            try (Statement stmt = connection.createStatement()) {
+                // The month scans must not hold off postings
+                stmt.execute("PRAGMA journal_mode=WAL");
+            }
+            stores.add(connection);
+        }
+        return stores;
+    }
+
+    /**
+     * Archives one hot store month by month
+     * @param progress Rows and segments written so far, updated in place
+     */
+    private void archiveStore(Connection hot, Connection writer, String cutoffText, long[] progress,
+                              Listener listener) throws SQLException {
+        List<String> months = new ArrayList<>();
+        try (PreparedStatement pstmt = hot.prepareStatement(
+                "SELECT DISTINCT substr(date, 1, 7) FROM transactions WHERE date < ? ORDER BY 1")) {
+            pstmt.setString(1, cutoffText);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                months.add(rs.getString(1));
+            }
+        }
+
+        for (String month : months) {
+            String from = month + "-01 00:00:00";
+            String nextMonth = LocalDate.parse(month + "-01").plusMonths(1).atStartOfDay()
+                    .format(DatabaseHelper.DATE_FORMATTER);
+            String to = nextMonth.compareTo(cutoffText) < 0 ? nextMonth : cutoffText;
+
+            long maxId = archiveMonth(hot, writer, month, from, to, progress);
+
+            // Only rows the scan saw; anything projected since stays hot for the next run
+            try (PreparedStatement pstmt = hot.prepareStatement(
+                    "DELETE FROM transactions WHERE date >= ? AND date < ? AND id <= ?")) {
+                pstmt.setString(1, from);
+                pstmt.setString(2, to);
+                pstmt.setLong(3, maxId);
+                pstmt.executeUpdate();
+            }
+
+            if (listener != null) {
+                listener.onProgress(month, progress[0], progress[1]);
+            }
+        }
+    }
+
+    /**
+     * Writes one month of a hot store as per-account segments
+     * @return Highest row id read
+     */
+    private long archiveMonth(Connection hot, Connection writer, String month, String from, String to,
+                              long[] progress) throws SQLException {
+        String selectSql = "SELECT id, accountNumber, type, amount, " +
+                "CAST(strftime('%s', date) AS INTEGER) * 1000 " +
+                "FROM transactions WHERE date >= ? AND date < ? ORDER BY accountNumber, id";
+        String insertSql = "INSERT OR IGNORE INTO archive_segments " +
+                "(accountNumber, month, firstId, lastId, rowCount, netAmount, payload) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        String existingSql = "SELECT lastId FROM archive_segments WHERE accountNumber = ? AND month = ? AND firstId = ?";
+        // Carried-forward balances are derived from the segments, so a rerun recomputes the same values
+        String summarySql = "INSERT OR REPLACE INTO archive_summary (accountNumber, carriedBalance, rowCount, lastArchivedId) " +
+                "SELECT accountNumber, SUM(netAmount), SUM(rowCount), MAX(lastId) FROM archive_segments " +
+                "WHERE accountNumber = ? GROUP BY accountNumber";
+
+        SegmentBuffer segment = new SegmentBuffer();
+        long maxId = 0;
+        int pending = 0;
+
+        // Segments left by an earlier run only need checking in months it reached
+        boolean monthStarted;
+        try (PreparedStatement pstmt = writer.prepareStatement("INSERT OR IGNORE INTO archive_months (month) VALUES (?)")) {
+            pstmt.setString(1, month);
+            monthStarted = pstmt.executeUpdate() == 0;
+        }
+
+        writer.setAutoCommit(false);
+        try (PreparedStatement select = hot.prepareStatement(selectSql);
+             PreparedStatement insert = writer.prepareStatement(insertSql);
+             PreparedStatement summary = writer.prepareStatement(summarySql);
+             PreparedStatement existing = monthStarted ? writer.prepareStatement(existingSql) : null) {
+            select.setString(1, from);
+            select.setString(2, to);
+            ResultSet rs = select.executeQuery();
+
+            int account = 0;
+            while (rs.next()) {
+                long id = rs.getLong(1);
+                int rowAccount = rs.getInt(2);
+                if (rowAccount != account && segment.size > 0) {
+                    pending += writeSegment(insert, summary, existing, account, month, segment, progress);
+                    segment.clear();
+                    if (pending >= SEGMENTS_PER_COMMIT) {
+                        writer.commit();
+                        pending = 0;
+                    }
+                }
+                account = rowAccount;
+                segment.add(id, rs.getLong(5), rs.getDouble(4), rs.getString(3));
+                maxId = Math.max(maxId, id);
+            }
+            if (segment.size > 0) {
+                writeSegment(insert, summary, existing, account, month, segment, progress);
+            }
+            writer.commit();
+        } catch (SQLException e) {
+            writer.rollback();
+            throw e;
+        } finally {
+            writer.setAutoCommit(true);
+        }
+        return maxId;
+    }
+
+    /**
+     * Inserts one segment, or only its rows past an equal-keyed segment left by an earlier run
+     * @param existing Lookup of earlier segments, or null if the month has none
+     * @return Number of segments written
+     */
+    private static int writeSegment(PreparedStatement insert, PreparedStatement summary, PreparedStatement existing,
+                                    int accountNumber, String month, SegmentBuffer segment, long[] progress)
+            throws SQLException {
+        int from = 0;
+        if (existing != null) {
+            existing.setInt(1, accountNumber);
+            existing.setString(2, month);
+            existing.setLong(3, segment.ids[0]);
+            ResultSet rs = existing.executeQuery();
+            if (rs.next()) {
+                long lastId = rs.getLong(1);
+                while (from < segment.size && segment.ids[from] <= lastId) {
+                    from++;
+                }
+                if (from == segment.size) {
+                    return 0;
+                }
+            }
+        }
+
+        insert.setInt(1, accountNumber);
+        insert.setString(2, month);
+        insert.setLong(3, segment.ids[from]);
+        insert.setLong(4, segment.ids[segment.size - 1]);
+        insert.setInt(5, segment.size - from);
+        insert.setDouble(6, segment.netAmount(from));
+        insert.setBytes(7, segment.encode(from));
+        insert.executeUpdate();
+
+        summary.setInt(1, accountNumber);
+        summary.executeUpdate();
+
+        progress[0] += segment.size - from;
+        progress[1]++;
+        return 1;
+    }
+
+    /**
+     * Gets the archived totals of an account
+     * @param accountNumber The account number
+     * @return The summary, or null if nothing of the account is archived
+     * @throws SQLException if the archive cannot be read
+     */
+    public synchronized Summary getSummary(int accountNumber) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT carriedBalance, rowCount, lastArchivedId FROM archive_summary WHERE accountNumber = ?")) {
+            pstmt.setInt(1, accountNumber);
+            ResultSet rs = pstmt.executeQuery();
+            return rs.next() ? new Summary(rs.getDouble(1), rs.getLong(2), rs.getLong(3)) : null;
+        }
+    }
+
+    /**
+     * Gets the archived totals of a range of accounts
+     * @param fromAccount First account number, inclusive
+     * @param toAccount Last account number, exclusive
+     * @return Summaries by account number, without accounts that have nothing archived
+     * @throws SQLException if the archive cannot be read
+     */
+    public synchronized Map<Integer, Summary> getSummaries(long fromAccount, long toAccount) throws SQLException {
+        Map<Integer, Summary> summaries = new HashMap<>();
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT accountNumber, carriedBalance, rowCount, lastArchivedId FROM archive_summary " +
+                        "WHERE accountNumber >= ? AND accountNumber < ?")) {
+            pstmt.setLong(1, fromAccount);
+            pstmt.setLong(2, toAccount);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                summaries.put(rs.getInt(1), new Summary(rs.getDouble(2), rs.getLong(3), rs.getLong(4)));
+            }
+        }
+        return summaries;
+    }
+
+    /**
+     * Appends an account's archived transactions to a columnar model, newest first
+     * Only the monthly segments that reach back to sinceMillis are decompressed
+     * @param accountNumber The account number
+     * @param sinceMillis Oldest date wanted, or Long.MIN_VALUE for all
+     * @param columns Model to append rows to
+     * @return Number of rows appended
+     * @throws SQLException if the archive cannot be read
+     */
+    public synchronized int loadHistory(int accountNumber, long sinceMillis, TransactionColumns columns)
+            throws SQLException {
+        String sinceMonth = sinceMillis == Long.MIN_VALUE ? "" : toText(sinceMillis).substring(0, 7);
+        SegmentBuffer segment = new SegmentBuffer();
+        int count = 0;
+
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT payload FROM archive_segments WHERE accountNumber = ? AND month >= ? " +
+                        "ORDER BY month DESC, firstId DESC")) {
+            pstmt.setInt(1, accountNumber);
+            pstmt.setString(2, sinceMonth);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                segment.decode(rs.getBytes(1));
+                for (int i = segment.size - 1; i >= 0; i--) {
+                    if (segment.timestamps[i] >= sinceMillis) {
+                        columns.add(segment.ids[i], accountNumber, segment.types[i],
+                                Math.round(segment.amounts[i] * 100), segment.timestamps[i]);
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Converts stored date text to epoch milliseconds, reading it as UTC like the history queries do
+     */
+    static long toMillis(String dateText) {
+        return LocalDateTime.parse(dateText, DatabaseHelper.DATE_FORMATTER).toEpochSecond(ZoneOffset.UTC) * 1000;
+    }
+
+    /**
+     * Converts epoch milliseconds back to stored date text
+     */
+    static String toText(long millis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000), 0, ZoneOffset.UTC)
+                .format(DatabaseHelper.DATE_FORMATTER);
+    }
+
+    private static int typeCode(String type) {
+        for (int code = 3; code < TYPE_NAMES.length; code++) {
+            if (TYPE_NAMES[code].equals(type)) {
+                return code;
+            }
+        }
+        for (int code = TYPE_TRANSFER_IN; code <= TYPE_TRANSFER_OUT; code++) {
+            String prefix = TYPE_NAMES[code];
+            if (type.startsWith(prefix) && type.length() > prefix.length() && type.length() - prefix.length() < 19
+                    && type.substring(prefix.length()).chars().allMatch(Character::isDigit)
+                    && type.charAt(prefix.length()) != '0') {
+                return code;
+            }
+        }
+        return TYPE_OTHER;
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte(in);
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Rows of one segment, reused from segment to segment
+     */
+    private static final class SegmentBuffer {
+        private long[] ids = new long[64];
+        private long[] timestamps = new long[64];
+        private double[] amounts = new double[64];
+        private String[] types = new String[64];
+        private int size;
+        private final Deflater deflater = new Deflater();
+
+        private void add(long id, long timestamp, double amount, String type) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                amounts = Arrays.copyOf(amounts, capacity);
+                types = Arrays.copyOf(types, capacity);
+            }
+            ids[size] = id;
+            timestamps[size] = timestamp;
+            amounts[size] = amount;
+            types[size] = type;
+            size++;
+        }
+
+        private void clear() {
+            Arrays.fill(types, 0, size, null);
+            size = 0;
+        }
+
+        private double netAmount(int from) {
+            double net = 0;
+            for (int i = from; i < size; i++) {
+                int sign = Transaction.signOf(types[i]);
+                if (sign == 0) {
+                    EventLog.warn("Archiving transaction " + ids[i] + " of unknown type: " + types[i]);
+                }
+                net += sign * amounts[i];
+            }
+            return net;
+        }
+
+        /**
+         * Encodes rows from index from onward
+         * Ids and dates are stored as varint deltas, amounts as varint cents
+         * when that is exact, and common types as one code byte plus the
+         * counter account. The result is deflated when that makes it smaller.
+         */
+        private byte[] encode(int from) {
+            ByteArrayOutputStream raw = new ByteArrayOutputStream(12 * (size - from) + 8);
+            raw.write(FORMAT_RAW);
+            writeVarLong(raw, size - from);
+            long previousId = 0;
+            long previousSeconds = 0;
+            for (int i = from; i < size; i++) {
+                writeVarLong(raw, ids[i] - previousId);
+                long seconds = Math.floorDiv(timestamps[i], 1000);
+                writeVarLong(raw, zigZag(seconds - previousSeconds));
+                previousId = ids[i];
+                previousSeconds = seconds;
+
+                long cents = Math.round(amounts[i] * 100);
+                boolean exactCents = cents / 100.0 == amounts[i];
+                int code = typeCode(types[i]);
+                raw.write(code | (exactCents ? 0 : AMOUNT_RAW_FLAG));
+                if (code == TYPE_TRANSFER_IN || code == TYPE_TRANSFER_OUT) {
+                    writeVarLong(raw, Long.parseLong(types[i].substring(types[i].lastIndexOf(' ') + 1)));
+                } else if (code == TYPE_OTHER) {
+                    byte[] text = types[i].getBytes(StandardCharsets.UTF_8);
+                    writeVarLong(raw, text.length);
+                    raw.write(text, 0, text.length);
+                }
+                if (exactCents) {
+                    writeVarLong(raw, zigZag(cents));
+                } else {
+                    long bits = Double.doubleToRawLongBits(amounts[i]);
+                    for (int shift = 56; shift >= 0; shift -= 8) {
+                        raw.write((int) (bits >>> shift));
+                    }
+                }
+            }
+
+            byte[] plain = raw.toByteArray();
+            ByteArrayOutputStream packed = new ByteArrayOutputStream(plain.length);
+            packed.write(FORMAT_DEFLATED);
+            deflater.reset();
+            try (DeflaterOutputStream out = new DeflaterOutputStream(packed, deflater)) {
+                out.write(plain, 1, plain.length - 1);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot encode segment", e);
+            }
+            return packed.size() < plain.length ? packed.toByteArray() : plain;
+        }
+
+        private void decode(byte[] payload) throws SQLException {
+            clear();
+            try (InputStream in = payload[0] == FORMAT_DEFLATED
+                    ? new InflaterInputStream(new ByteArrayInputStream(payload, 1, payload.length - 1))
+                    : new ByteArrayInputStream(payload, 1, payload.length - 1)) {
+                long count = readVarLong(in);
+                long id = 0;
+                long seconds = 0;
+                for (long i = 0; i < count; i++) {
+                    id += readVarLong(in);
+                    seconds += unZigZag(readVarLong(in));
+                    int header = readByte(in);
+                    int code = header & ~AMOUNT_RAW_FLAG;
+
+                    String type;
+                    if (code == TYPE_TRANSFER_IN || code == TYPE_TRANSFER_OUT) {
+                        type = TYPE_NAMES[code] + readVarLong(in);
+                    } else if (code == TYPE_OTHER) {
+                        byte[] text = new byte[(int) readVarLong(in)];
+                        for (int b = 0; b < text.length; b++) {
+                            text[b] = (byte) readByte(in);
+                        }
+                        type = new String(text, StandardCharsets.UTF_8);
+                    } else {
+                        type = TYPE_NAMES[code];
+                    }
+
+                    double amount;
+                    if ((header & AMOUNT_RAW_FLAG) == 0) {
+                        amount = unZigZag(readVarLong(in)) / 100.0;
+                    } else {
+                        long bits = 0;
+                        for (int b = 0; b < 8; b++) {
+                            bits = (bits << 8) | readByte(in);
+                        }
+                        amount = Double.longBitsToDouble(bits);
+                    }
+                    add(id, seconds * 1000, amount, type);
+                }
+            } catch (IOException | RuntimeException e) {
+                throw new SQLException("Corrupt archive segment: " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,474 @@
+package com.khorshed.mybank.mybankapp.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * VelocityLimiter - Per-account sliding-window limits checked before a debit posts
+ *
+ * Rules come from -Dmybank.limits as a comma-separated list of
+ * posting:measure:windowMinutes:limit, where posting is withdraw, transfer
+ * (transfers out) or debit (both), and measure is amount or count. For
+ * example withdraw:amount:1440:500,transfer:count:60:20 allows 500.00 of
+ * withdrawals per day and 20 outgoing transfers per hour. With no rules the
+ * limiter is off and costs nothing.
+ *
+ * Every account keeps one ring buffer of recent debits per rule, with the
+ * running total of what is still inside the window. Checking a debit drops
+ * the entries that have slid out and compares the total, so no query runs
+ * on the posting path. An allowed debit is recorded at once, which keeps two
+ * concurrent debits from both squeezing under the limit; if the posting
+ * then fails, the entry is cancelled. At first use the windows are rebuilt
+ * from the debits still inside them in the transactions table.
+ *
+ * Every path that writes a Withdraw or Transfer Out row checks the limiter:
+ * single withdrawals and transfers, each leg of a bulk payout, and each debit
+ * of an ingested posting file. Otherwise the windows rebuilt after a restart
+ * would count debits that were never limited before it.
+ */
+public class VelocityLimiter {
+
+    /**
+     * Kinds of debit a rule can apply to
+     */
+    public enum Posting {
+        WITHDRAW,
+        TRANSFER
+    }
+
+    /**
+     * One limit on one kind of debit over a sliding window
+     */
+    public static class Rule {
+        private final String name;
+        private final boolean withdrawals;
+        private final boolean transfers;
+        private final boolean countOnly;
+        private final long windowMillis;
+        private final long limit;
+
+        private Rule(String name, boolean withdrawals, boolean transfers, boolean countOnly, long windowMillis,
+                     long limit) {
+            this.name = name;
+            this.withdrawals = withdrawals;
+            this.transfers = transfers;
+            this.countOnly = countOnly;
+            this.windowMillis = windowMillis;
+            this.limit = limit;
+        }
+
+        private boolean appliesTo(Posting posting) {
+            return posting == Posting.WITHDRAW ? withdrawals : transfers;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Describes the limit for a customer-facing message
+         */
+        public String describe() {
+            String what = withdrawals && transfers ? "debits" : withdrawals ? "withdrawals" : "transfers";
+            String window = windowMillis % TimeUnit.DAYS.toMillis(1) == 0
+                    ? windowMillis / TimeUnit.DAYS.toMillis(1) + " day(s)"
+                    : windowMillis / TimeUnit.MINUTES.toMillis(1) + " minute(s)";
+            return countOnly
+                    ? "at most " + limit + " " + what + " per " + window
+                    : "at most $" + String.format("%.2f", limit / 100.0) + " of " + what + " per " + window;
+        }
+    }
+
+    /**
+     * Entries recorded by an allowed debit, for cancelling it if the posting fails
+     */
+    public static class Reservation {
+        private final AccountWindows windows;
+        private final long[] sequences;
+
+        private Reservation(AccountWindows windows, long[] sequences) {
+            this.windows = windows;
+            this.sequences = sequences;
+        }
+    }
+
+    /**
+     * Debits of one account inside one rule's window, oldest first
+     */
+    private static class Window {
+        private static final long CANCELLED = -1;
+
+        private long[] times = new long[8];
+        private long[] cents = new long[8];
+        // Sequence number of the oldest entry still held, and of the next one
+        private long first;
+        private long end;
+        // Entries in the window that were not cancelled, and their amount
+        private long count;
+        private long total;
+
+        private void evict(long cutoff) {
+            while (first < end && times[index(first)] <= cutoff) {
+                long amount = cents[index(first)];
+                if (amount != CANCELLED) {
+                    total -= amount;
+                    count--;
+                }
+                first++;
+            }
+        }
+
+        private long used(boolean countOnly) {
+            return countOnly ? count : total;
+        }
+
+        private long add(long time, long amount) {
+            if (end - first == times.length) {
+                long[] grownTimes = new long[times.length * 2];
+                long[] grownCents = new long[times.length * 2];
+                for (long seq = first; seq < end; seq++) {
+                    grownTimes[(int) (seq & (grownTimes.length - 1))] = times[index(seq)];
+                    grownCents[(int) (seq & (grownCents.length - 1))] = cents[index(seq)];
+                }
+                times = grownTimes;
+                cents = grownCents;
+            }
+            times[index(end)] = time;
+            cents[index(end)] = amount;
+            total += amount;
+            count++;
+            return end++;
+        }
+
+        private void cancel(long seq) {
+            // Entries already slid out no longer count towards the total
+            if (seq >= first && seq < end && cents[index(seq)] != CANCELLED) {
+                total -= cents[index(seq)];
+                count--;
+                cents[index(seq)] = CANCELLED;
+            }
+        }
+
+        private int index(long seq) {
+            return (int) (seq & (times.length - 1));
+        }
+    }
+
+    /**
+     * All windows of one account; guarded by its own monitor
+     */
+    private static class AccountWindows {
+        private final Window[] windows;
+
+        private AccountWindows(int rules) {
+            windows = new Window[rules];
+            for (int i = 0; i < rules; i++) {
+                windows[i] = new Window();
+            }
+        }
+    }
+
+    private static final int LATENCY_SAMPLES = 1024;
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static volatile VelocityLimiter instance;
+
+    private final Rule[] rules;
+    private final long maxWindowMillis;
+    private final ConcurrentHashMap<Integer, AccountWindows> accounts = new ConcurrentHashMap<>();
+
+    private final AtomicLong evaluations = new AtomicLong();
+    private final AtomicLong denials = new AtomicLong();
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+
+    /**
+     * Gets the process-wide limiter, rebuilding its windows on first use
+     * @return The limiter; one without rules allows everything
+     */
+    public static VelocityLimiter getInstance() {
+        // Every debit asks, so only the first callers take the lock
+        VelocityLimiter limiter = instance;
+        if (limiter != null) {
+            return limiter;
+        }
+        synchronized (VelocityLimiter.class) {
+            if (instance == null) {
+                limiter = new VelocityLimiter(parseRules(System.getProperty("mybank.limits", "")));
+                if (limiter.isEnabled()) {
+                    limiter.rebuild();
+                }
+                instance = limiter;
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param rules The rules to enforce
+     */
+    public VelocityLimiter(List<Rule> rules) {
+        this.rules = rules.toArray(new Rule[0]);
+        long widest = 0;
+        for (Rule rule : this.rules) {
+            widest = Math.max(widest, rule.windowMillis);
+        }
+        this.maxWindowMillis = widest;
+    }
+
+    /**
+     * Parses rules written as posting:measure:windowMinutes:limit
+     * @param spec Comma-separated rules
+     * @return The rules that parsed; bad entries are reported and skipped
+     */
+    public static List<Rule> parseRules(String spec) {
+        List<Rule> parsed = new ArrayList<>();
+        for (String entry : spec.split(",")) {
+            String text = entry.trim();
+            if (text.isEmpty()) {
+                continue;
+            }
+            String[] parts = text.split(":");
+            try {
+                if (parts.length != 4) {
+                    throw new IllegalArgumentException("expected posting:measure:windowMinutes:limit");
+                }
+                String posting = parts[0].trim().toLowerCase();
+                boolean withdrawals = posting.equals("withdraw") || posting.equals("debit");
+                boolean transfers = posting.equals("transfer") || posting.equals("debit");
+                if (!withdrawals && !transfers) {
+                    throw new IllegalArgumentException("posting must be withdraw, transfer or debit");
+                }
+                String measure = parts[1].trim().toLowerCase();
+                if (!measure.equals("amount") && !measure.equals("count")) {
+                    throw new IllegalArgumentException("measure must be amount or count");
+                }
+                boolean countOnly = measure.equals("count");
+                long windowMillis = TimeUnit.MINUTES.toMillis(Long.parseLong(parts[2].trim()));
+                double limit = Double.parseDouble(parts[3].trim());
+                if (windowMillis <= 0 || limit < 0) {
+                    throw new IllegalArgumentException("window and limit must be positive");
+                }
+                parsed.add(new Rule(text, withdrawals, transfers, countOnly, windowMillis,
+                        countOnly ? (long) limit : Math.round(limit * 100)));
+            } catch (IllegalArgumentException e) {
+                EventLog.warn("Ignoring limit rule '" + text + "': " + e.getMessage());
+            }
+        }
+        return parsed;
+    }
+
+    public boolean isEnabled() {
+        return rules.length > 0;
+    }
+
+    /**
+     * Checks a debit against every rule for its account and records it if allowed
+     * @param accountNumber The debited account
+     * @param posting The kind of debit
+     * @param amount The amount
+     * @return A reservation to cancel if the posting fails, or null if a rule denies it
+     */
+    public Reservation tryAcquire(int accountNumber, Posting posting, double amount) {
+        return tryAcquire(accountNumber, posting, amount, nowMillis());
+    }
+
+    Reservation tryAcquire(int accountNumber, Posting posting, double amount, long nowMillis) {
+        long start = System.nanoTime();
+        long cents = Math.round(amount * 100);
+        AccountWindows account = accounts.computeIfAbsent(accountNumber, number -> new AccountWindows(rules.length));
+        Reservation reservation;
+
+        synchronized (account) {
+            reservation = null;
+            boolean allowed = true;
+            for (int i = 0; i < rules.length && allowed; i++) {
+                Rule rule = rules[i];
+                if (!rule.appliesTo(posting)) {
+                    continue;
+                }
+                Window window = account.windows[i];
+                window.evict(nowMillis - rule.windowMillis);
+                long used = window.used(rule.countOnly);
+                allowed = used + (rule.countOnly ? 1 : cents) <= rule.limit;
+            }
+
+            if (allowed) {
+                long[] sequences = new long[rules.length];
+                Arrays.fill(sequences, -1);
+                for (int i = 0; i < rules.length; i++) {
+                    if (rules[i].appliesTo(posting)) {
+                        sequences[i] = account.windows[i].add(nowMillis, cents);
+                    }
+                }
+                reservation = new Reservation(account, sequences);
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        long n = evaluations.getAndIncrement();
+        latencies[(int) (n % LATENCY_SAMPLES)] = elapsed;
+        if (reservation == null) {
+            denials.incrementAndGet();
+        }
+        return reservation;
+    }
+
+    /**
+     * Removes a reservation's entries after its posting failed
+     * @param reservation What tryAcquire returned; null is ignored
+     */
+    public void cancel(Reservation reservation) {
+        if (reservation == null) {
+            return;
+        }
+        synchronized (reservation.windows) {
+            for (int i = 0; i < rules.length; i++) {
+                if (reservation.sequences[i] >= 0) {
+                    reservation.windows.windows[i].cancel(reservation.sequences[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the first rule a debit would break, for telling the customer why it was refused
+     * @param accountNumber The debited account
+     * @param posting The kind of debit
+     * @param amount The amount
+     * @return The rule, or null if the debit would now be allowed
+     */
+    public Rule findBrokenRule(int accountNumber, Posting posting, double amount) {
+        long now = nowMillis();
+        long cents = Math.round(amount * 100);
+        AccountWindows account = accounts.get(accountNumber);
+        for (int i = 0; i < rules.length; i++) {
+            Rule rule = rules[i];
+            if (!rule.appliesTo(posting)) {
+                continue;
+            }
+            if (account == null) {
+                if ((rule.countOnly ? 1 : cents) > rule.limit) {
+                    return rule;
+                }
+                continue;
+            }
+            synchronized (account) {
+                Window window = account.windows[i];
+                window.evict(now - rule.windowMillis);
+                long used = window.used(rule.countOnly);
+                if (used + (rule.countOnly ? 1 : cents) > rule.limit) {
+                    return rule;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Loads the debits still inside the widest window from the transactions table
+     * In sharded mode every shard is read.
+     */
+    private void rebuild() {
+        long start = System.nanoTime();
+        long now = nowMillis();
+        String cutoff = LocalDateTime.ofEpochSecond((now - maxWindowMillis) / 1000, 0, ZoneOffset.UTC)
+                .format(DATE_FORMATTER);
+        long rows = 0;
+        try {
+            if (ShardedStorage.isEnabled()) {
+                ShardedStorage storage = ShardedStorage.getInstance();
+                for (int shard = 0; shard < ShardedStorage.getShardCount(); shard++) {
+                    try (Connection connection = storage.openReadConnection(shard)) {
+                        rows += rebuildFrom(connection, cutoff, now);
+                    }
+                }
+            } else {
+                try (Connection connection = DatabaseHelper.openConnection()) {
+                    rows += rebuildFrom(connection, cutoff, now);
+                }
+            }
+        } catch (SQLException e) {
+            EventLog.error("Error rebuilding velocity limits: " + e.getMessage());
+        }
+        EventLog.info("Velocity limits: " + rules.length + " rule(s), " + rows + " recent debit(s) across " +
+                accounts.size() + " account(s) loaded in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    private long rebuildFrom(Connection connection, String cutoff, long now) throws SQLException {
+        // Oldest first, so each window's ring stays in time order
+        String sql = "SELECT accountNumber, type, CAST(ROUND(amount * 100) AS INTEGER), " +
+                "CAST(strftime('%s', date) AS INTEGER) * 1000 FROM transactions " +
+                "WHERE date > ? AND (type = 'Withdraw' OR type LIKE 'Transfer Out%') ORDER BY date, id";
+        long rows = 0;
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, cutoff);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                int accountNumber = rs.getInt(1);
+                Posting posting = "Withdraw".equals(rs.getString(2)) ? Posting.WITHDRAW : Posting.TRANSFER;
+                long cents = rs.getLong(3);
+                long time = rs.getLong(4);
+                AccountWindows account = null;
+                for (int i = 0; i < rules.length; i++) {
+                    if (rules[i].appliesTo(posting) && time > now - rules[i].windowMillis) {
+                        if (account == null) {
+                            account = accounts.computeIfAbsent(accountNumber,
+                                    number -> new AccountWindows(rules.length));
+                        }
+                        account.windows[i].add(time, cents);
+                    }
+                }
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Gets the current time on the same scale as the stored dates
+     * Dates are local time text read as if UTC, as the history does
+     */
+    private static long nowMillis() {
+        LocalDateTime now = LocalDateTime.now();
+        return now.toEpochSecond(ZoneOffset.UTC) * 1000 + now.getNano() / 1_000_000;
+    }
+
+    public List<Rule> getRules() {
+        return Arrays.asList(rules);
+    }
+
+    public long getEvaluations() {
+        return evaluations.get();
+    }
+
+    public long getDenials() {
+        return denials.get();
+    }
+
+    /**
+     * Gets a percentile of the time taken by recent checks
+     * @param fraction The percentile as a fraction, e.g. 0.99
+     * @return Microseconds over the last 1024 checks, or 0 if none
+     */
+    public double getLatencyMicros(double fraction) {
+        int count = (int) Math.min(evaluations.get(), LATENCY_SAMPLES);
+        if (count == 0) {
+            return 0;
+        }
+        long[] samples = Arrays.copyOf(latencies, count);
+        Arrays.sort(samples);
+        return samples[Math.max(0, (int) Math.ceil(count * fraction) - 1)] / 1000.0;
+    }
+}
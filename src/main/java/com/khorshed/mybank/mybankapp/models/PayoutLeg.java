@@ -0,0 +1,62 @@
+package com.khorshed.mybank.mybankapp.models;
+
+/**
+ * PayoutLeg model class
+ * One credit of a bulk payout and what happened to it
+ */
+public class PayoutLeg {
+
+    /**
+     * Outcome of a leg
+     */
+    public enum Status {
+        PENDING,
+        PAID,
+        UNKNOWN_ACCOUNT,
+        INVALID_AMOUNT,
+        SAME_ACCOUNT,
+        INSUFFICIENT_FUNDS,
+        LIMIT_REACHED,
+        FAILED
+    }
+
+    private final int destinationAccount;
+    private final double amount;
+    private Status status = Status.PENDING;
+
+    /**
+     * Constructor
+     * @param destinationAccount The account to credit
+     * @param amount The amount to pay
+     */
+    public PayoutLeg(int destinationAccount, double amount) {
+        this.destinationAccount = destinationAccount;
+        this.amount = amount;
+    }
+
+    // Getters and Setters
+    public int getDestinationAccount() {
+        return destinationAccount;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    @Override
+    public String toString() {
+        return "PayoutLeg{" +
+                "destinationAccount=" + destinationAccount +
+                ", amount=" + amount +
+                ", status=" + status +
+                '}';
+    }
+}
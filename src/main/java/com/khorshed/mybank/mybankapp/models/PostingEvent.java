@@ -0,0 +1,50 @@
+package com.khorshed.mybank.mybankapp.models;
+
+/**
+ * PostingEvent model class
+ * Describes one committed posting as published to live subscribers
+ */
+public class PostingEvent {
+    private final long timestamp;
+    private final String type;
+    private final int accountNumber;
+    private final int counterAccount;
+    private final double amount;
+
+    /**
+     * Constructor
+     * @param timestamp Commit time in epoch milliseconds
+     * @param type Posting type ("Deposit", "Withdraw" or "Transfer")
+     * @param accountNumber Account the posting was made on (sender for transfers)
+     * @param counterAccount Receiver for transfers, 0 otherwise
+     * @param amount Posting amount
+     */
+    public PostingEvent(long timestamp, String type, int accountNumber, int counterAccount, double amount) {
+        this.timestamp = timestamp;
+        this.type = type;
+        this.accountNumber = accountNumber;
+        this.counterAccount = counterAccount;
+        this.amount = amount;
+    }
+
+    // Getters
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public int getAccountNumber() {
+        return accountNumber;
+    }
+
+    public int getCounterAccount() {
+        return counterAccount;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+}
@@ -0,0 +1,132 @@
+package com.khorshed.mybank.mybankapp.models;
+
+import java.time.LocalDateTime;
+
+/**
+ * StandingOrder model class
+ * A transfer repeated on a fixed schedule
+ */
+public class StandingOrder {
+
+    /**
+     * How often an order runs
+     * Occurrences are counted from the start date rather than from the last
+     * run, so a monthly order started on the 31st runs on the last day of
+     * shorter months and goes back to the 31st afterwards.
+     */
+    public enum Frequency {
+        DAILY,
+        WEEKLY,
+        MONTHLY;
+
+        /**
+         * Gets the time of an occurrence
+         * @param startAt Time of the first occurrence
+         * @param occurrence Number of the occurrence, 0 for the first
+         * @return When it is due
+         */
+        public LocalDateTime occurrence(LocalDateTime startAt, long occurrence) {
+            switch (this) {
+                case DAILY:
+                    return startAt.plusDays(occurrence);
+                case WEEKLY:
+                    return startAt.plusWeeks(occurrence);
+                default:
+                    return startAt.plusMonths(occurrence);
+            }
+        }
+    }
+
+    private final long id;
+    private final int fromAccount;
+    private final int toAccount;
+    private final double amount;
+    private final Frequency frequency;
+    private final LocalDateTime startAt;
+    private final long runsDone;
+    private final String lastStatus;
+    private final boolean active;
+
+    /**
+     * Constructor
+     * @param id The order id
+     * @param fromAccount The paying account
+     * @param toAccount The receiving account
+     * @param amount The amount of every transfer
+     * @param frequency How often it runs
+     * @param startAt Time of the first occurrence
+     * @param runsDone Occurrences already run or skipped
+     * @param lastStatus Outcome of the last occurrence, or null
+     * @param active false once cancelled
+     */
+    public StandingOrder(long id, int fromAccount, int toAccount, double amount, Frequency frequency,
+                         LocalDateTime startAt, long runsDone, String lastStatus, boolean active) {
+        this.id = id;
+        this.fromAccount = fromAccount;
+        this.toAccount = toAccount;
+        this.amount = amount;
+        this.frequency = frequency;
+        this.startAt = startAt;
+        this.runsDone = runsDone;
+        this.lastStatus = lastStatus;
+        this.active = active;
+    }
+
+    // Getters
+    public long getId() {
+        return id;
+    }
+
+    public int getFromAccount() {
+        return fromAccount;
+    }
+
+    public int getToAccount() {
+        return toAccount;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public Frequency getFrequency() {
+        return frequency;
+    }
+
+    public LocalDateTime getStartAt() {
+        return startAt;
+    }
+
+    public long getRunsDone() {
+        return runsDone;
+    }
+
+    /**
+     * Gets when the next occurrence is due
+     * @return The time of the next occurrence
+     */
+    public LocalDateTime getNextRunAt() {
+        return frequency.occurrence(startAt, runsDone);
+    }
+
+    public String getLastStatus() {
+        return lastStatus;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public String toString() {
+        return "StandingOrder{" +
+                "id=" + id +
+                ", fromAccount=" + fromAccount +
+                ", toAccount=" + toAccount +
+                ", amount=" + amount +
+                ", frequency=" + frequency +
+                ", runsDone=" + runsDone +
+                ", active=" + active +
+                '}';
+    }
+}
@@ -68,6 +68,31 @@ public class Transaction {
         this.date = date;
     }
 
+    /**
+     * Gets the direction in which a transaction type moves the balance
+     * @param type Transaction type as stored, e.g. "Transfer Out to 1002"
+     * @return 1 for credits, -1 for debits, 0 for unknown types
+     */
+    public static int signOf(String type) {
+        switch (type) {
+            case "Deposit":
+            case "Initial Deposit":
+            case "Interest":
+                return 1;
+            case "Withdraw":
+            case "Monthly Fee":
+                return -1;
+            default:
+                if (type.startsWith("Transfer In")) {
+                    return 1;
+                }
+                if (type.startsWith("Transfer Out")) {
+                    return -1;
+                }
+                return 0;
+        }
+    }
+
     @Override
     public String toString() {
         return "Transaction{" +
@@ -0,0 +1,205 @@
+package com.khorshed.mybank.mybankapp.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * TransactionColumns model class
+ * Holds many transactions column by column in primitive arrays
+ *
+ * Amounts are kept in cents and dates as epoch milliseconds. The type text
+ * is split into a label shared through a small dictionary ("Deposit",
+ * "Transfer Out to", ...) and an optional counter account number, so a
+ * million rows cost a few dozen bytes each and no objects per row.
+ */
+public class TransactionColumns {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private int[] accountNumbers = new int[INITIAL_CAPACITY];
+    private long[] amountCents = new long[INITIAL_CAPACITY];
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private short[] typeCodes = new short[INITIAL_CAPACITY];
+    private int[] counterAccounts = new int[INITIAL_CAPACITY];
+    private int size;
+
+    private final List<String> typeLabels = new ArrayList<>();
+    private final Map<String, Short> typeCodesByLabel = new HashMap<>();
+
+    /**
+     * Appends a transaction
+     * @param id Transaction ID
+     * @param accountNumber Account number
+     * @param type Transaction type as stored, e.g. "Transfer In from 1001"
+     * @param cents Amount in cents
+     * @param timestamp Date as epoch milliseconds
+     */
+    public void add(long id, int accountNumber, String type, long cents, long timestamp) {
+        if (size == ids.length) {
+            grow(size * 2);
+        }
+
+        ids[size] = id;
+        accountNumbers[size] = accountNumber;
+        amountCents[size] = cents;
+        timestamps[size] = timestamp;
+
+        Short code = typeCodesByLabel.get(type);
+        if (code != null) {
+            typeCodes[size] = code;
+            counterAccounts[size] = 0;
+        } else {
+            // Split "Transfer Out to 1002" into its label and counter account
+            int space = type.lastIndexOf(' ');
+            int counter = space > 0 ? parseAccount(type, space + 1) : -1;
+            if (counter > 0) {
+                typeCodes[size] = typeCode(type.substring(0, space));
+                counterAccounts[size] = counter;
+            } else {
+                typeCodes[size] = typeCode(type);
+                counterAccounts[size] = 0;
+            }
+        }
+        size++;
+    }
+
+    /**
+     * Appends the rows of another model dated at or after a point in time
+     * Each type label is translated once, so rows are copied without parsing
+     * @param source Model to copy from
+     * @param sinceMillis Oldest date wanted, or Long.MIN_VALUE for all
+     * @return Number of rows appended
+     */
+    public int addAll(TransactionColumns source, long sinceMillis) {
+        short[] codes = new short[source.typeLabels.size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = typeCode(source.typeLabels.get(i));
+        }
+        if (size + source.size > ids.length) {
+            grow(Math.max(size + source.size, ids.length * 2));
+        }
+
+        int added = 0;
+        for (int row = 0; row < source.size; row++) {
+            if (source.timestamps[row] < sinceMillis) {
+                continue;
+            }
+            ids[size] = source.ids[row];
+            accountNumbers[size] = source.accountNumbers[row];
+            amountCents[size] = source.amountCents[row];
+            timestamps[size] = source.timestamps[row];
+            typeCodes[size] = codes[source.typeCodes[row]];
+            counterAccounts[size] = source.counterAccounts[row];
+            size++;
+            added++;
+        }
+        return added;
+    }
+
+    private void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        accountNumbers = Arrays.copyOf(accountNumbers, capacity);
+        amountCents = Arrays.copyOf(amountCents, capacity);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        typeCodes = Arrays.copyOf(typeCodes, capacity);
+        counterAccounts = Arrays.copyOf(counterAccounts, capacity);
+    }
+
+    private short typeCode(String label) {
+        Short code = typeCodesByLabel.get(label);
+        if (code == null) {
+            code = (short) typeLabels.size();
+            typeLabels.add(label);
+            typeCodesByLabel.put(label, code);
+        }
+        return code;
+    }
+
+    private static int parseAccount(String text, int from) {
+        if (from >= text.length() || text.length() - from > 9) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = from; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Removes all rows but keeps the allocated arrays
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getId(int row) {
+        return ids[row];
+    }
+
+    public int getAccountNumber(int row) {
+        return accountNumbers[row];
+    }
+
+    public long getAmountCents(int row) {
+        return amountCents[row];
+    }
+
+    public long getTimestamp(int row) {
+        return timestamps[row];
+    }
+
+    public int getTypeCode(int row) {
+        return typeCodes[row];
+    }
+
+    public String getTypeLabel(int row) {
+        return typeLabels.get(typeCodes[row]);
+    }
+
+    public int getCounterAccount(int row) {
+        return counterAccounts[row];
+    }
+
+    /**
+     * Appends the full type text of a row, e.g. "Transfer Out to 1002"
+     * @param row Row index
+     * @param out Buffer to append to
+     */
+    public void appendType(int row, StringBuilder out) {
+        out.append(typeLabels.get(typeCodes[row]));
+        if (counterAccounts[row] != 0) {
+            out.append(' ').append(counterAccounts[row]);
+        }
+    }
+
+    /**
+     * Appends an amount in cents as dollars, e.g. "$1234.05"
+     * @param cents Amount in cents
+     * @param out Buffer to append to
+     */
+    public static void appendAmount(long cents, StringBuilder out) {
+        if (cents < 0) {
+            out.append('-');
+            cents = -cents;
+        }
+        long fraction = cents % 100;
+        out.append('$').append(cents / 100).append('.');
+        if (fraction < 10) {
+            out.append('0');
+        }
+        out.append(fraction);
+    }
+}
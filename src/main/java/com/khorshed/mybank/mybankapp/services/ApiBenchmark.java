@@ -0,0 +1,200 @@
+package com.khorshed.mybank.mybankapp.services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ApiBenchmark - Measures BankApiServer throughput and latency
+ *
+ * Usage: ApiBenchmark [clients] [seconds] [accounts]
+ * Starts an in-process server on a free port (or targets -Dmybank.bench.url),
+ * creates the accounts through the API, and then has every client loop over
+ * a mix of 50% balance reads, 25% deposits, 15% transfers and 10% history
+ * pages on its own keep-alive connection. Prints requests per second and
+ * latency percentiles per operation.
+ */
+public class ApiBenchmark {
+
+    private static final String[] OPERATIONS = {"balance", "deposit", "transfer", "history"};
+    private static final Pattern ACCOUNT_NUMBER = Pattern.compile("\"accountNumber\":(\\d+)");
+
+    /**
+     * Latencies of one client, grown as needed
+     */
+    private static class Samples {
+        private final long[][] micros = new long[OPERATIONS.length][1024];
+        private final int[] counts = new int[OPERATIONS.length];
+
+        private void add(int operation, long latencyMicros) {
+            if (counts[operation] == micros[operation].length) {
+                micros[operation] = Arrays.copyOf(micros[operation], counts[operation] * 2);
+            }
+            micros[operation][counts[operation]++] = latencyMicros;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int accountCount = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        // HttpURLConnection keeps this many idle connections per host for reuse
+        System.setProperty("http.maxConnections", String.valueOf(clients));
+
+        BankApiServer server = null;
+        String baseUrl = System.getProperty("mybank.bench.url");
+        if (baseUrl == null) {
+            server = new BankApiServer(0, Integer.getInteger("mybank.api.connections",
+                    Runtime.getRuntime().availableProcessors() * 2));
+            server.start();
+            baseUrl = "http://127.0.0.1:" + server.getPort();
+        }
+
+        try {
+            int[] accounts = new int[accountCount];
+            for (int i = 0; i < accountCount; i++) {
+                String response = request(baseUrl + "/accounts", "POST",
+                        "{\"ownerName\":\"Bench " + i + "\",\"initialDeposit\":100000}", null);
+                Matcher matcher = ACCOUNT_NUMBER.matcher(response);
+                if (!matcher.find()) {
+                    throw new IllegalStateException("Unexpected response: " + response);
+                }
+                accounts[i] = Integer.parseInt(matcher.group(1));
+            }
+            System.out.println("Created " + accountCount + " account(s); running " + clients +
+                    " client(s) for " + seconds + " s");
+
+            String url = baseUrl;
+            long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+            AtomicLong errors = new AtomicLong();
+            Samples[] samples = new Samples[clients];
+            Thread[] threads = new Thread[clients];
+            for (int c = 0; c < clients; c++) {
+                Samples own = new Samples();
+                samples[c] = own;
+                threads[c] = new Thread(() -> runClient(url, accounts, deadline, own, errors), "bench-client-" + c);
+                threads[c].start();
+            }
+            long start = System.nanoTime();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            double elapsed = (System.nanoTime() - start) / 1e9;
+
+            long total = 0;
+            for (int op = 0; op < OPERATIONS.length; op++) {
+                int count = 0;
+                for (Samples sample : samples) {
+                    count += sample.counts[op];
+                }
+                long[] all = new long[count];
+                int offset = 0;
+                for (Samples sample : samples) {
+                    System.arraycopy(sample.micros[op], 0, all, offset, sample.counts[op]);
+                    offset += sample.counts[op];
+                }
+                Arrays.sort(all);
+                total += count;
+                System.out.printf("%-9s %8d req  %8.0f req/s  p50 %6.2f ms  p99 %7.2f ms  max %7.2f ms%n",
+                        OPERATIONS[op], count, count / elapsed, percentile(all, 0.50), percentile(all, 0.99),
+                        count == 0 ? 0 : all[count - 1] / 1000.0);
+            }
+            System.out.printf("total     %8d req  %8.0f req/s  errors %d%n", total, total / elapsed, errors.get());
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+
+    private static void runClient(String baseUrl, int[] accounts, long deadline, Samples samples, AtomicLong errors) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int[] status = new int[1];
+        while (System.nanoTime() < deadline) {
+            int roll = random.nextInt(100);
+            int operation = roll < 50 ? 0 : roll < 75 ? 1 : roll < 90 ? 2 : 3;
+            int account = accounts[random.nextInt(accounts.length)];
+
+            long start = System.nanoTime();
+            try {
+                switch (operation) {
+                    case 0:
+                        request(baseUrl + "/accounts/" + account + "/balance", "GET", null, status);
+                        break;
+                    case 1:
+                        request(baseUrl + "/accounts/" + account + "/deposit", "POST", "{\"amount\":1.25}", status);
+                        break;
+                    case 2:
+                        int other = accounts[random.nextInt(accounts.length)];
+                        if (other == account) {
+                            continue;
+                        }
+                        request(baseUrl + "/transfers", "POST", "{\"fromAccount\":" + account +
+                                ",\"toAccount\":" + other + ",\"amount\":0.75}", status);
+                        break;
+                    default:
+                        request(baseUrl + "/accounts/" + account + "/transactions?limit=20", "GET", null, status);
+                        break;
+                }
+                if (status[0] >= 400) {
+                    errors.incrementAndGet();
+                }
+            } catch (IOException e) {
+                errors.incrementAndGet();
+            }
+            samples.add(operation, (System.nanoTime() - start) / 1000);
+        }
+    }
+
+    /**
+     * Sends one request and reads the whole response, so the connection goes back for reuse
+     */
+    private static String request(String url, String method, String body, int[] status) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setFixedLengthStreamingMode(bytes.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(bytes);
+            }
+        }
+
+        int code = connection.getResponseCode();
+        if (status != null) {
+            status[0] = code;
+        }
+        InputStream in = code >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        if (in == null) {
+            return "";
+        }
+        try (InputStream response = in) {
+            ByteArrayOutputStream text = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = response.read(buffer)) != -1) {
+                text.write(buffer, 0, read);
+            }
+            return text.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))] / 1000.0;
+    }
+}
@@ -0,0 +1,149 @@
+package com.khorshed.mybank.mybankapp.services;
+
+import com.khorshed.mybank.mybankapp.database.DatabaseHelper;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * BackupBenchmark - Measures how a running online backup affects posting latency
+ *
+ * Usage: BackupBenchmark [posters] [seconds] [pagesPerStep] [pauseMillis]
+ * Creates a few accounts, then has every poster thread make deposits on its
+ * own DatabaseHelper. Deposits are timed for a baseline period, then again
+ * while backups run back to back for the same length of time (pagesPerStep
+ * and pauseMillis of 0 give a flat-out copy). Prints latency percentiles for
+ * both periods and the backup copy rate.
+ */
+public class BackupBenchmark {
+
+    private static final int ACCOUNTS = 100;
+    private static final int BASELINE = 0;
+    private static final int DURING_BACKUP = 1;
+    private static final int STOPPED = 2;
+
+    private static volatile int phase = BASELINE;
+
+    /**
+     * Deposit latencies of one poster, per phase
+     */
+    private static class Samples {
+        private final long[][] micros = {new long[1024], new long[1024]};
+        private final int[] counts = new int[2];
+
+        private void add(int phase, long latencyMicros) {
+            if (counts[phase] == micros[phase].length) {
+                micros[phase] = Arrays.copyOf(micros[phase], counts[phase] * 2);
+            }
+            micros[phase][counts[phase]++] = latencyMicros;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int posters = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int pagesPerStep = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+        long pauseMillis = args.length > 3 ? Long.parseLong(args[3]) : 20;
+
+        // Postings and the backup's reads only run side by side in WAL mode
+        try (Connection connection = DatabaseHelper.openConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA journal_mode=WAL");
+        }
+
+        DatabaseHelper setup = new DatabaseHelper();
+        int[] accounts = new int[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts[i] = setup.createAccountWithNextNumber("Backup Bench " + i, 100);
+            if (accounts[i] < 0) {
+                throw new IllegalStateException("Could not create benchmark accounts");
+            }
+        }
+        setup.closeConnection();
+
+        Samples[] samples = new Samples[posters];
+        Thread[] threads = new Thread[posters];
+        for (int p = 0; p < posters; p++) {
+            Samples own = new Samples();
+            samples[p] = own;
+            threads[p] = new Thread(() -> runPoster(accounts, own), "backup-bench-poster-" + p);
+            threads[p].start();
+        }
+
+        Thread.sleep(seconds * 1000L);
+
+        phase = DURING_BACKUP;
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        int backups = 0;
+        long pages = 0;
+        double pagesPerSecond = 0;
+        long backupNanos = 0;
+        try {
+            while (System.nanoTime() < deadline) {
+                OnlineBackup backup = new OnlineBackup(pagesPerStep, pauseMillis);
+                long start = System.nanoTime();
+                Path set = backup.run(null);
+                backupNanos += System.nanoTime() - start;
+                pages += backup.getPagesCopied();
+                pagesPerSecond = pages / (backupNanos / 1e9);
+                backups++;
+                OnlineBackup.pruneBackups(1);
+                System.out.println("Backup " + backups + " -> " + set.getFileName());
+            }
+        } finally {
+            phase = STOPPED;
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+
+        System.out.printf("%d poster(s), %d s per period, %d page(s) per step, %d ms pause%n",
+                posters, seconds, pagesPerStep, pauseMillis);
+        String[] names = {"baseline", "backup"};
+        for (int ph = 0; ph < 2; ph++) {
+            int count = 0;
+            for (Samples sample : samples) {
+                count += sample.counts[ph];
+            }
+            long[] all = new long[count];
+            int offset = 0;
+            for (Samples sample : samples) {
+                System.arraycopy(sample.micros[ph], 0, all, offset, sample.counts[ph]);
+                offset += sample.counts[ph];
+            }
+            Arrays.sort(all);
+            System.out.printf("%-9s %8d deposits  %7.0f/s  p50 %6.2f ms  p99 %7.2f ms  max %7.2f ms%n",
+                    names[ph], count, count / (double) seconds, percentile(all, 0.50), percentile(all, 0.99),
+                    count == 0 ? 0 : all[count - 1] / 1000.0);
+        }
+        System.out.printf("%d backup(s), %d page(s), %.0f pages/s while copying%n", backups, pages, pagesPerSecond);
+    }
+
+    private static void runPoster(int[] accounts, Samples samples) {
+        DatabaseHelper helper = new DatabaseHelper();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+            int current;
+            while ((current = phase) != STOPPED) {
+                int account = accounts[random.nextInt(accounts.length)];
+                long start = System.nanoTime();
+                helper.deposit(account, 1.25);
+                long latency = (System.nanoTime() - start) / 1000;
+                // A deposit that straddles the phase change is counted in the phase it started in
+                samples.add(current, latency);
+            }
+        } finally {
+            helper.closeConnection();
+        }
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))] / 1000.0;
+    }
+}
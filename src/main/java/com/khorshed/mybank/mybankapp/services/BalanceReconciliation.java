@@ -0,0 +1,460 @@
+package com.khorshed.mybank.mybankapp.services;
+
+import com.khorshed.mybank.mybankapp.database.DatabaseHelper;
+import com.khorshed.mybank.mybankapp.database.EventLog;
+import com.khorshed.mybank.mybankapp.database.ShardedStorage;
+import com.khorshed.mybank.mybankapp.database.TransactionArchive;
+import com.khorshed.mybank.mybankapp.models.Transaction;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BalanceReconciliation - Checks every balance against its transaction journal
+ *
+ * An account's expected balance is the signed sum of its transactions, plus
+ * the carried-forward balance of anything archived. Each account keeps a
+ * checkpoint (last verified transaction id and the running sum up to it), so
+ * a run only reads the rows posted since the previous run. An account whose
+ * archive has grown since its checkpoint is summed again from its carried
+ * balance, since archival removes rows from the hot table. Ranges of
+ * accounts are checked in parallel on a fork/join pool, each inside one read
+ * transaction so that balances and rows come from the same snapshot.
+ *
+ * In journal mode the projection tables are checked, which is what reports
+ * and history read.
+ */
+public class BalanceReconciliation {
+
+    /**
+     * Receives progress and findings from a running reconciliation
+     * Called from pool threads, not the JavaFX thread
+     */
+    public interface Listener {
+        void onProgress(long accountsChecked, long rowsRead, double accountsPerSecond);
+
+        void onDiscrepancy(Discrepancy discrepancy);
+    }
+
+    /**
+     * An account whose balance does not match its transactions
+     */
+    public static class Discrepancy {
+        private final int accountNumber;
+        private final double balance;
+        private final double expectedBalance;
+
+        private Discrepancy(int accountNumber, double balance, double expectedBalance) {
+            this.accountNumber = accountNumber;
+            this.balance = balance;
+            this.expectedBalance = expectedBalance;
+        }
+
+        public int getAccountNumber() {
+            return accountNumber;
+        }
+
+        public double getBalance() {
+            return balance;
+        }
+
+        public double getExpectedBalance() {
+            return expectedBalance;
+        }
+
+        public double getDifference() {
+            return balance - expectedBalance;
+        }
+
+        @Override
+        public String toString() {
+            return "A/C " + accountNumber + ": balance $" + String.format("%.2f", balance) +
+                    ", transactions $" + String.format("%.2f", expectedBalance) +
+                    " (off by $" + String.format("%.2f", getDifference()) + ")";
+        }
+    }
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int DEFAULT_RANGE_WIDTH = 10_000;
+    private static final int LEAF_RANGES = 1;
+    // Half a cent absorbs floating-point drift in long running sums
+    private static final double TOLERANCE = 0.005;
+
+    private final int rangeWidth;
+
+    private final AtomicLong accountsChecked = new AtomicLong();
+    private final AtomicLong rowsRead = new AtomicLong();
+    private final List<Discrepancy> discrepancies = Collections.synchronizedList(new ArrayList<>());
+    private final List<Long> failedRanges = Collections.synchronizedList(new ArrayList<>());
+    private final Map<Thread, Connection> readers = new ConcurrentHashMap<>();
+    private TransactionArchive archive;
+    private Connection writer;
+    private Listener listener;
+    private long startNanos;
+
+    /**
+     * Constructor
+     */
+    public BalanceReconciliation() {
+        this(DEFAULT_RANGE_WIDTH);
+    }
+
+    /**
+     * Constructor
+     * @param rangeWidth Number of account numbers per chunk
+     */
+    public BalanceReconciliation(int rangeWidth) {
+        this.rangeWidth = rangeWidth;
+    }
+
+    /**
+     * Checks every account and blocks until every range is done
+     * @param listener Receives progress and discrepancies, or null
+     * @return Number of accounts checked
+     * @throws SQLException if the reconciliation cannot be started, or if any range could
+     *         not be checked; discrepancies found in the other ranges are still reported
+     * @throws IllegalStateException in sharded mode, where no single database holds every account
+     */
+    public long run(Listener listener) throws SQLException {
+        if (ShardedStorage.isEnabled()) {
+            throw new IllegalStateException("Reconciliation needs single-file or journal storage mode");
+        }
+
+        this.listener = listener;
+        accountsChecked.set(0);
+        rowsRead.set(0);
+        discrepancies.clear();
+        failedRanges.clear();
+        archive = TransactionArchive.getIfPresent();
+        startNanos = System.nanoTime();
+
+        writer = DatabaseHelper.openConnection();
+        try {
+            long minAccount;
+            long maxAccount;
+            try (Statement stmt = writer.createStatement()) {
+                stmt.execute("PRAGMA journal_mode=WAL");
+                stmt.execute("CREATE TABLE IF NOT EXISTS reconciliation_checkpoints (" +
+                        "accountNumber INTEGER PRIMARY KEY, " +
+                        "lastVerifiedId INTEGER NOT NULL, " +
+                        "runningSum REAL NOT NULL, " +
+                        "archivedRows INTEGER NOT NULL DEFAULT 0, " +
+                        "verifiedAt TEXT NOT NULL)");
+
+                ResultSet rs = stmt.executeQuery("SELECT MIN(accountNumber), MAX(accountNumber) FROM accounts");
+                if (!rs.next() || rs.getObject(1) == null) {
+                    return 0;
+                }
+                minAccount = rs.getLong(1);
+                maxAccount = rs.getLong(2);
+            }
+
+            long firstRange = minAccount / rangeWidth;
+            long lastRange = maxAccount / rangeWidth;
+
+            ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+            try {
+                pool.invoke(new RangeTask(firstRange, lastRange + 1));
+            } finally {
+                pool.shutdown();
+            }
+
+            reportProgress();
+            if (!failedRanges.isEmpty()) {
+                // Accounts in these ranges were never compared, so the run cannot vouch for them
+                throw new SQLException(describeFailures(failedRanges, rangeWidth) + " could not be checked");
+            }
+            return accountsChecked.get();
+        } finally {
+            for (Connection connection : readers.values()) {
+                connection.close();
+            }
+            readers.clear();
+            writer.close();
+        }
+    }
+
+    /**
+     * Gets the discrepancies found by the last run
+     * @return Discrepancies in no particular order
+     */
+    public List<Discrepancy> getDiscrepancies() {
+        synchronized (discrepancies) {
+            return new ArrayList<>(discrepancies);
+        }
+    }
+
+    /**
+     * Gets the ranges the last run could not check
+     * @return First account number of each failed range, in no particular order
+     */
+    public List<Long> getFailedRanges() {
+        synchronized (failedRanges) {
+            return new ArrayList<>(failedRanges);
+        }
+    }
+
+    /**
+     * Describes failed ranges for an error message, listing the first few
+     */
+    static String describeFailures(List<Long> rangeStarts, int rangeWidth) {
+        List<Long> sorted;
+        synchronized (rangeStarts) {
+            sorted = new ArrayList<>(rangeStarts);
+        }
+        Collections.sort(sorted);
+        StringBuilder description = new StringBuilder(sorted.size() + " account range(s) (");
+        for (int i = 0; i < Math.min(sorted.size(), 5); i++) {
+            description.append(i > 0 ? ", " : "").append(sorted.get(i)).append('-')
+                    .append(sorted.get(i) + rangeWidth - 1);
+        }
+        return description.append(sorted.size() > 5 ? ", ...)" : ")").toString();
+    }
+
+    /**
+     * Gets the number of transaction rows the last run had to read
+     * @return Rows read; only rows newer than each account's checkpoint are read
+     */
+    public long getRowsRead() {
+        return rowsRead.get();
+    }
+
+    /**
+     * Splits the range list in half until a task holds a single range
+     */
+    private class RangeTask extends RecursiveAction {
+        private final long from;
+        private final long to;
+
+        private RangeTask(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_RANGES) {
+                for (long range = from; range < to; range++) {
+                    try {
+                        processRange(range * rangeWidth);
+                    } catch (SQLException e) {
+                        EventLog.error("Error reconciling range " + range * rangeWidth + ": " + e.getMessage());
+                        failedRanges.add(range * rangeWidth);
+                    }
+                }
+                return;
+            }
+
+            long middle = (from + to) >>> 1;
+            invokeAll(new RangeTask(from, middle), new RangeTask(middle, to));
+        }
+    }
+
+    /**
+     * Checks one key range and advances its checkpoints
+     */
+    private void processRange(long rangeStart) throws SQLException {
+        Connection connection = readerConnection();
+        long rangeEnd = rangeStart + rangeWidth;
+
+        int count = 0;
+        int[] accounts = new int[64];
+        double[] balances = new double[64];
+        long[] lastIds = new long[64];
+        double[] sums = new double[64];
+        long[] archivedRows = new long[64];
+        boolean[] recompute = new boolean[64];
+        boolean[] changed = new boolean[64];
+        long rows = 0;
+
+        // One read transaction, so no posting lands between the balances and the rows
+        connection.setAutoCommit(false);
+        try {
+            try (PreparedStatement select = connection.prepareStatement(
+                    "SELECT a.accountNumber, a.balance, c.lastVerifiedId, c.runningSum, c.archivedRows " +
+                            "FROM accounts a LEFT JOIN reconciliation_checkpoints c ON c.accountNumber = a.accountNumber " +
+                            "WHERE a.accountNumber >= ? AND a.accountNumber < ? ORDER BY a.accountNumber")) {
+                select.setLong(1, rangeStart);
+                select.setLong(2, rangeEnd);
+                ResultSet rs = select.executeQuery();
+                while (rs.next()) {
+                    if (count == accounts.length) {
+                        accounts = Arrays.copyOf(accounts, count * 2);
+                        balances = Arrays.copyOf(balances, count * 2);
+                        lastIds = Arrays.copyOf(lastIds, count * 2);
+                        sums = Arrays.copyOf(sums, count * 2);
+                        archivedRows = Arrays.copyOf(archivedRows, count * 2);
+                        recompute = Arrays.copyOf(recompute, count * 2);
+                        changed = Arrays.copyOf(changed, count * 2);
+                    }
+
+                    accounts[count] = rs.getInt(1);
+                    balances[count] = rs.getDouble(2);
+                    lastIds[count] = rs.getLong(3);
+                    recompute[count] = rs.wasNull();
+                    sums[count] = rs.getDouble(4);
+                    archivedRows[count] = rs.getLong(5);
+                    count++;
+                }
+            }
+
+            // An archival since the checkpoint moved rows out of the hot table, so those
+            // accounts start again from the archive's carried balance
+            Map<Integer, TransactionArchive.Summary> summaries = archive == null
+                    ? Collections.emptyMap() : archive.getSummaries(rangeStart, rangeEnd);
+            long[] lastArchivedIds = new long[count];
+            boolean anyRecompute = false;
+            for (int i = 0; i < count; i++) {
+                TransactionArchive.Summary summary = summaries.get(accounts[i]);
+                long archived = summary == null ? 0 : summary.getRowCount();
+                if (recompute[i] || archived != archivedRows[i]) {
+                    recompute[i] = true;
+                    changed[i] = true;
+                    anyRecompute = true;
+                    sums[i] = summary == null ? 0 : summary.getCarriedBalance();
+                    lastArchivedIds[i] = summary == null ? 0 : summary.getLastArchivedId();
+                    lastIds[i] = lastArchivedIds[i];
+                    archivedRows[i] = archived;
+                }
+            }
+
+            String sql = anyRecompute
+                    ? "SELECT accountNumber, id, type, amount, date < ? FROM transactions " +
+                            "WHERE accountNumber >= ? AND accountNumber < ?"
+                    : "SELECT t.accountNumber, t.id, t.type, t.amount, t.date < ? FROM transactions t " +
+                            "JOIN reconciliation_checkpoints c ON c.accountNumber = t.accountNumber " +
+                            "WHERE t.accountNumber >= ? AND t.accountNumber < ? AND t.id > c.lastVerifiedId";
+            try (PreparedStatement select = connection.prepareStatement(sql)) {
+                select.setString(1, archive == null ? "" : archive.getArchivedBeforeText());
+                select.setLong(2, rangeStart);
+                select.setLong(3, rangeEnd);
+                ResultSet rs = select.executeQuery();
+                while (rs.next()) {
+                    rows++;
+                    int index = Arrays.binarySearch(accounts, 0, count, rs.getInt(1));
+                    if (index < 0) {
+                        continue; // Rows of a closed account
+                    }
+
+                    long id = rs.getLong(2);
+                    if (recompute[index]) {
+                        // Still in the hot table after its segment was written by an interrupted archival
+                        boolean archivedCopy = rs.getBoolean(5) && id <= lastArchivedIds[index];
+                        lastIds[index] = Math.max(lastIds[index], id);
+                        if (archivedCopy) {
+                            continue;
+                        }
+                    } else if (id > lastIds[index]) {
+                        lastIds[index] = id;
+                    } else {
+                        continue;
+                    }
+
+                    String type = rs.getString(3);
+                    int sign = Transaction.signOf(type);
+                    if (sign == 0) {
+                        EventLog.error("Error reconciling transaction " + id + ": unknown type " + type);
+                    }
+                    sums[index] += sign * rs.getDouble(4);
+                    changed[index] = true;
+                }
+            }
+        } finally {
+            connection.rollback();
+            connection.setAutoCommit(true);
+        }
+
+        for (int i = 0; i < count; i++) {
+            // Round away the float drift a long running sum collects
+            sums[i] = Math.round(sums[i] * 100.0) / 100.0;
+            if (Math.abs(balances[i] - sums[i]) > TOLERANCE) {
+                Discrepancy discrepancy = new Discrepancy(accounts[i], balances[i], sums[i]);
+                discrepancies.add(discrepancy);
+                if (listener != null) {
+                    listener.onDiscrepancy(discrepancy);
+                }
+            }
+        }
+
+        writeCheckpoints(count, accounts, lastIds, sums, archivedRows, changed);
+
+        rowsRead.addAndGet(rows);
+        accountsChecked.addAndGet(count);
+        if (count > 0) {
+            reportProgress();
+        }
+    }
+
+    /**
+     * Saves the checkpoints of one range's changed accounts in a single transaction
+     * A checkpoint is advanced even when the account is off, since the rows it
+     * covers were read correctly; the discrepancy is in the balance
+     */
+    private void writeCheckpoints(int count, int[] accounts, long[] lastIds, double[] sums, long[] archivedRows,
+                                  boolean[] changed) throws SQLException {
+        String now = LocalDateTime.now().format(DATE_FORMATTER);
+
+        // SQLite has one writer; ranges queue here while other ranges are read
+        synchronized (writer) {
+            writer.setAutoCommit(false);
+            try (PreparedStatement upsert = writer.prepareStatement(
+                    "INSERT INTO reconciliation_checkpoints " +
+                            "(accountNumber, lastVerifiedId, runningSum, archivedRows, verifiedAt) " +
+                            "VALUES (?, ?, ?, ?, ?) ON CONFLICT(accountNumber) DO UPDATE SET " +
+                            "lastVerifiedId = excluded.lastVerifiedId, runningSum = excluded.runningSum, " +
+                            "archivedRows = excluded.archivedRows, verifiedAt = excluded.verifiedAt")) {
+                for (int i = 0; i < count; i++) {
+                    if (!changed[i]) {
+                        continue;
+                    }
+                    upsert.setInt(1, accounts[i]);
+                    upsert.setLong(2, lastIds[i]);
+                    upsert.setDouble(3, sums[i]);
+                    upsert.setLong(4, archivedRows[i]);
+                    upsert.setString(5, now);
+                    upsert.addBatch();
+                }
+                upsert.executeBatch();
+                writer.commit();
+            } catch (SQLException e) {
+                writer.rollback();
+                throw e;
+            } finally {
+                writer.setAutoCommit(true);
+            }
+        }
+    }
+
+    private Connection readerConnection() throws SQLException {
+        // One read connection per pool thread
+        Connection connection = readers.get(Thread.currentThread());
+        if (connection == null) {
+            connection = DatabaseHelper.openConnection();
+            readers.put(Thread.currentThread(), connection);
+        }
+        return connection;
+    }
+
+    private void reportProgress() {
+        if (listener == null) {
+            return;
+        }
+        double seconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+        long checked = accountsChecked.get();
+        listener.onProgress(checked, rowsRead.get(), checked / seconds);
+    }
+}
@@ -0,0 +1,659 @@
+package com.khorshed.mybank.mybankapp.services;
+
+import com.khorshed.mybank.mybankapp.database.DatabaseHelper;
+import com.khorshed.mybank.mybankapp.database.EventLog;
+import com.khorshed.mybank.mybankapp.models.TransactionColumns;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BankApiServer - Loopback HTTP/JSON API over the data layer
+ *
+ * Enabled in the desktop app with -Dmybank.api=true, or run headless through
+ * main(). Binds to the loopback address only (-Dmybank.api.port, default
+ * 8085). Every request runs on its own thread: a virtual thread when the
+ * runtime has them, otherwise a thread from a cached pool. DatabaseHelper is
+ * not thread-safe, so requests borrow one from a fixed pool
+ * (-Dmybank.api.connections, default twice the processor count), which also
+ * bounds how many requests touch SQLite at once. Responses always carry a
+ * Content-Length, so HTTP/1.1 clients keep their connections open, and
+ * TCP_NODELAY is on so small responses are not held back.
+ *
+ *   POST /accounts                          {"ownerName": "...", "initialDeposit": 100}
+ *   GET  /accounts/{n}/balance
+ *   POST /accounts/{n}/deposit              {"amount": 25.5}
+ *   POST /accounts/{n}/withdraw             {"amount": 25.5}
+ *   GET  /accounts/{n}/transactions?limit=50&before={id}
+ *   POST /transfers                         {"fromAccount": 1001, "toAccount": 1002, "amount": 10}
+ */
+public class BankApiServer {
+
+    private static final int DEFAULT_PORT = 8085;
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int MAX_BODY_BYTES = 16 * 1024;
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * A request that cannot be served, with the status to answer it with
+     */
+    private static class ApiException extends Exception {
+        private final int status;
+
+        private ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    static {
+        // Responses go out as headers then body; with Nagle on, the body waits for a delayed ACK (~40 ms)
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final BlockingQueue<DatabaseHelper> helpers;
+    private final boolean virtualThreads;
+    private final AtomicLong requestsServed = new AtomicLong();
+
+    /**
+     * Constructor - Binds the server but does not start it
+     * @param port Loopback port, or 0 for any free port
+     * @param connections Number of pooled database helpers
+     * @throws IOException if the port cannot be bound
+     */
+    public BankApiServer(int port, int connections) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+
+        // Lets balance and history reads run while postings commit
+        try (Connection connection = DatabaseHelper.openConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA journal_mode=WAL");
+        } catch (SQLException e) {
+            EventLog.error("Error enabling WAL for API server: " + e.getMessage());
+        }
+
+        ExecutorService virtual = newVirtualThreadExecutor();
+        virtualThreads = virtual != null;
+        executor = virtual != null ? virtual : newPlatformThreadExecutor();
+        server.setExecutor(executor);
+
+        helpers = new ArrayBlockingQueue<>(connections);
+        for (int i = 0; i < connections; i++) {
+            helpers.add(new DatabaseHelper());
+        }
+
+        server.createContext("/accounts", this::handle);
+        server.createContext("/transfers", this::handle);
+    }
+
+    /**
+     * Starts the server from system properties if -Dmybank.api=true
+     * @return The running server, or null if the API is switched off or cannot start
+     */
+    public static BankApiServer startIfEnabled() {
+        if (!Boolean.getBoolean("mybank.api")) {
+            return null;
+        }
+        try {
+            BankApiServer apiServer = fromProperties();
+            apiServer.start();
+            return apiServer;
+        } catch (IOException e) {
+            EventLog.error("Error starting API server: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static BankApiServer fromProperties() throws IOException {
+        int port = Integer.getInteger("mybank.api.port", DEFAULT_PORT);
+        int connections = Integer.getInteger("mybank.api.connections",
+                Runtime.getRuntime().availableProcessors() * 2);
+        return new BankApiServer(port, Math.max(1, connections));
+    }
+
+    /**
+     * Starts accepting requests
+     */
+    public void start() {
+        server.start();
+        EventLog.info("API server listening on http://127.0.0.1:" + getPort() +
+                (virtualThreads ? " (virtual threads)" : " (platform threads)"));
+    }
+
+    /**
+     * Stops accepting requests, waits briefly for running ones and closes the pool
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        DatabaseHelper helper;
+        while ((helper = helpers.poll()) != null) {
+            helper.closeConnection();
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public long getRequestsServed() {
+        return requestsServed.get();
+    }
+
+    /**
+     * Uses Executors.newVirtualThreadPerTaskExecutor() when the runtime has it
+     * Looked up reflectively so the code still builds and runs on older JDKs
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newPlatformThreadExecutor() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "api-request-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Routes one request and always answers it
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        int status;
+        String body;
+        try {
+            String[] path = splitPath(exchange.getRequestURI());
+            String method = exchange.getRequestMethod();
+            Map<String, String> request = "POST".equals(method) ? parseObject(readBody(exchange)) : null;
+
+            DatabaseHelper helper = borrowHelper();
+            try {
+                body = route(method, path, request, exchange.getRequestURI(), helper);
+            } finally {
+                helpers.add(helper);
+            }
+            status = "POST".equals(method) && path.length == 1 && "accounts".equals(path[0]) ? 201 : 200;
+        } catch (ApiException e) {
+            status = e.status;
+            body = "{\"error\":" + quote(e.getMessage()) + "}";
+        } catch (RuntimeException e) {
+            EventLog.error("Error handling API request: " + e.getMessage());
+            status = 500;
+            body = "{\"error\":\"Internal error\"}";
+        }
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+        requestsServed.incrementAndGet();
+    }
+
+    private String route(String method, String[] path, Map<String, String> request, URI uri, DatabaseHelper helper)
+            throws ApiException {
+        if ("transfers".equals(path[0]) && path.length == 1) {
+            requireMethod(method, "POST");
+            return transfer(helper, request);
+        }
+        if (!"accounts".equals(path[0])) {
+            throw new ApiException(404, "Not found");
+        }
+        if (path.length == 1) {
+            requireMethod(method, "POST");
+            return createAccount(helper, request);
+        }
+        if (path.length == 3) {
+            int accountNumber = parseAccount(path[1]);
+            switch (path[2]) {
+                case "balance":
+                    requireMethod(method, "GET");
+                    return balance(helper, accountNumber);
+                case "deposit":
+                    requireMethod(method, "POST");
+                    return deposit(helper, accountNumber, request);
+                case "withdraw":
+                    requireMethod(method, "POST");
+                    return withdraw(helper, accountNumber, request);
+                case "transactions":
+                    requireMethod(method, "GET");
+                    return history(helper, accountNumber, parseQuery(uri.getRawQuery()));
+                default:
+                    break;
+            }
+        }
+        throw new ApiException(404, "Not found");
+    }
+
+    private String createAccount(DatabaseHelper helper, Map<String, String> request) throws ApiException {
+        String ownerName = request.get("ownerName");
+        if (ownerName == null || ownerName.trim().isEmpty()) {
+            throw new ApiException(400, "ownerName is required");
+        }
+        String deposit = request.get("initialDeposit");
+        double initialDeposit = deposit == null ? 0 : parseAmount(deposit, "initialDeposit");
+        if (initialDeposit < 0) {
+            throw new ApiException(400, "initialDeposit cannot be negative");
+        }
+
+        int accountNumber = helper.createAccountWithNextNumber(ownerName.trim(), initialDeposit);
+        if (accountNumber < 0) {
+            throw new ApiException(503, "Account could not be created");
+        }
+        return accountJson(accountNumber, ownerName.trim(), initialDeposit);
+    }
+
+    private String balance(DatabaseHelper helper, int accountNumber) throws ApiException {
+        requireAccount(helper, accountNumber);
+        return accountJson(accountNumber, helper.getOwnerName(accountNumber), helper.getBalance(accountNumber));
+    }
+
+    private String deposit(DatabaseHelper helper, int accountNumber, Map<String, String> request) throws ApiException {
+        double amount = requireAmount(request);
+        requireAccount(helper, accountNumber);
+        if (!helper.deposit(accountNumber, amount)) {
+            throw new ApiException(503, "Deposit failed or server busy");
+        }
+        return balanceJson(accountNumber, helper.getBalance(accountNumber));
+    }
+
+    private String withdraw(DatabaseHelper helper, int accountNumber, Map<String, String> request) throws ApiException {
+        double amount = requireAmount(request);
+        requireAccount(helper, accountNumber);
+        if (!helper.withdraw(accountNumber, amount)) {
+            throw postingFailed(helper, accountNumber, amount, "Withdrawal");
+        }
+        return balanceJson(accountNumber, helper.getBalance(accountNumber));
+    }
+
+    private String transfer(DatabaseHelper helper, Map<String, String> request) throws ApiException {
+        int fromAccount = parseAccount(request.get("fromAccount"));
+        int toAccount = parseAccount(request.get("toAccount"));
+        double amount = requireAmount(request);
+        if (fromAccount == toAccount) {
+            throw new ApiException(400, "Cannot transfer to the same account");
+        }
+        requireAccount(helper, fromAccount);
+        requireAccount(helper, toAccount);
+
+        if (!helper.transfer(fromAccount, toAccount, amount)) {
+            throw postingFailed(helper, fromAccount, amount, "Transfer");
+        }
+        return "{\"fromAccount\":" + fromAccount + ",\"toAccount\":" + toAccount +
+                ",\"amount\":" + money(amount) + ",\"fromBalance\":" + money(helper.getBalance(fromAccount)) + "}";
+    }
+
+    private String history(DatabaseHelper helper, int accountNumber, Map<String, String> query) throws ApiException {
+        requireAccount(helper, accountNumber);
+        int limit = DEFAULT_PAGE_SIZE;
+        long before = Long.MAX_VALUE;
+        try {
+            if (query.containsKey("limit")) {
+                limit = Integer.parseInt(query.get("limit"));
+            }
+            if (query.containsKey("before")) {
+                before = Long.parseLong(query.get("before"));
+            }
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "limit and before must be numbers");
+        }
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ApiException(400, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        TransactionColumns columns = new TransactionColumns();
+        int count = helper.loadTransactionPage(accountNumber, before, limit, columns);
+        if (count < 0) {
+            throw new ApiException(503, "History could not be read");
+        }
+
+        StringBuilder json = new StringBuilder(64 + count * 96);
+        StringBuilder type = new StringBuilder();
+        json.append("{\"accountNumber\":").append(accountNumber).append(",\"transactions\":[");
+        for (int row = 0; row < count; row++) {
+            if (row > 0) {
+                json.append(',');
+            }
+            type.setLength(0);
+            columns.appendType(row, type);
+            json.append("{\"id\":").append(columns.getId(row))
+                    .append(",\"type\":").append(quote(type.toString()))
+                    .append(",\"amount\":");
+            appendCents(columns.getAmountCents(row), json);
+            // History timestamps are stored local time read as UTC
+            json.append(",\"date\":\"").append(LocalDateTime.ofEpochSecond(
+                    Math.floorDiv(columns.getTimestamp(row), 1000), 0, ZoneOffset.UTC).format(DATE_FORMATTER))
+                    .append("\"}");
+        }
+        json.append("],\"nextBefore\":");
+        json.append(count == limit ? String.valueOf(columns.getId(count - 1)) : "null").append('}');
+        return json.toString();
+    }
+
+    /**
+     * Tells a velocity limit or an overdraft apart from a posting that was refused for other reasons
+     */
+    private static ApiException postingFailed(DatabaseHelper helper, int accountNumber, double amount, String what) {
+        if (helper.getLimitDenial() != null) {
+            return new ApiException(429, helper.getLimitDenial());
+        }
+        double balance = helper.getBalance(accountNumber);
+        if (balance < amount) {
+            return new ApiException(409, "Insufficient balance: " + String.format("%.2f", balance));
+        }
+        return new ApiException(503, what + " failed or server busy");
+    }
+
+    private DatabaseHelper borrowHelper() throws ApiException {
+        try {
+            return helpers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiException(503, "Server shutting down");
+        }
+    }
+
+    private static void requireMethod(String method, String expected) throws ApiException {
+        if (!expected.equals(method)) {
+            throw new ApiException(405, "Use " + expected);
+        }
+    }
+
+    private static void requireAccount(DatabaseHelper helper, int accountNumber) throws ApiException {
+        if (!helper.accountExists(accountNumber)) {
+            throw new ApiException(404, "Account " + accountNumber + " not found");
+        }
+    }
+
+    private static double requireAmount(Map<String, String> request) throws ApiException {
+        String text = request.get("amount");
+        if (text == null) {
+            throw new ApiException(400, "amount is required");
+        }
+        double amount = parseAmount(text, "amount");
+        if (amount <= 0) {
+            throw new ApiException(400, "amount must be greater than zero");
+        }
+        return amount;
+    }
+
+    private static double parseAmount(String text, String name) throws ApiException {
+        try {
+            double amount = Double.parseDouble(text);
+            if (!Double.isFinite(amount)) {
+                throw new NumberFormatException();
+            }
+            return amount;
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, name + " must be a number");
+        }
+    }
+
+    private static int parseAccount(String text) throws ApiException {
+        try {
+            int accountNumber = Integer.parseInt(text == null ? "" : text);
+            if (accountNumber <= 0) {
+                throw new NumberFormatException();
+            }
+            return accountNumber;
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "Invalid account number: " + text);
+        }
+    }
+
+    private static String[] splitPath(URI uri) throws ApiException {
+        String path = uri.getPath();
+        while (path.endsWith("/") && path.length() > 1) {
+            path = path.substring(0, path.length() - 1);
+        }
+        if (path.length() <= 1) {
+            throw new ApiException(404, "Not found");
+        }
+        return path.substring(1).split("/");
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> values = new HashMap<>();
+        if (query == null) {
+            return values;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                values.put(pair.substring(0, equals), pair.substring(equals + 1));
+            }
+        }
+        return values;
+    }
+
+    private static String readBody(HttpExchange exchange) throws ApiException {
+        try (InputStream in = exchange.getRequestBody()) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (body.size() + read > MAX_BODY_BYTES) {
+                    throw new ApiException(413, "Request body too large");
+                }
+                body.write(buffer, 0, read);
+            }
+            return body.toString(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new ApiException(400, "Cannot read request body");
+        }
+    }
+
+    /**
+     * Parses a flat JSON object of strings, numbers, booleans and nulls
+     * Values are returned as text; nested objects and arrays are rejected
+     */
+    static Map<String, String> parseObject(String json) throws ApiException {
+        Map<String, String> values = new HashMap<>();
+        int[] pos = {skipSpace(json, 0)};
+        expect(json, pos, '{');
+        if (peek(json, pos) == '}') {
+            pos[0]++;
+            return values;
+        }
+        while (true) {
+            String key = readString(json, pos);
+            expect(json, pos, ':');
+            pos[0] = skipSpace(json, pos[0]);
+            String value;
+            if (peek(json, pos) == '"') {
+                value = readString(json, pos);
+            } else {
+                int start = pos[0];
+                while (pos[0] < json.length() && ",} \t\r\n".indexOf(json.charAt(pos[0])) < 0) {
+                    pos[0]++;
+                }
+                value = json.substring(start, pos[0]);
+                if (value.isEmpty() || value.charAt(0) == '{' || value.charAt(0) == '[') {
+                    throw new ApiException(400, "Expected a flat JSON object");
+                }
+                if ("null".equals(value)) {
+                    value = null;
+                }
+            }
+            values.put(key, value);
+
+            pos[0] = skipSpace(json, pos[0]);
+            char next = peek(json, pos);
+            pos[0]++;
+            if (next == '}') {
+                return values;
+            }
+            if (next != ',') {
+                throw new ApiException(400, "Malformed JSON");
+            }
+        }
+    }
+
+    private static String readString(String json, int[] pos) throws ApiException {
+        expect(json, pos, '"');
+        StringBuilder text = new StringBuilder();
+        while (pos[0] < json.length()) {
+            char c = json.charAt(pos[0]++);
+            if (c == '"') {
+                return text.toString();
+            }
+            if (c != '\\') {
+                text.append(c);
+                continue;
+            }
+            if (pos[0] >= json.length()) {
+                break;
+            }
+            char escaped = json.charAt(pos[0]++);
+            switch (escaped) {
+                case 'n': text.append('\n'); break;
+                case 't': text.append('\t'); break;
+                case 'r': text.append('\r'); break;
+                case 'b': text.append('\b'); break;
+                case 'f': text.append('\f'); break;
+                case 'u':
+                    if (pos[0] + 4 > json.length()) {
+                        throw new ApiException(400, "Malformed JSON");
+                    }
+                    try {
+                        text.append((char) Integer.parseInt(json.substring(pos[0], pos[0] + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw new ApiException(400, "Malformed JSON");
+                    }
+                    pos[0] += 4;
+                    break;
+                default: text.append(escaped); break;
+            }
+        }
+        throw new ApiException(400, "Unterminated string in JSON");
+    }
+
+    private static void expect(String json, int[] pos, char expected) throws ApiException {
+        pos[0] = skipSpace(json, pos[0]);
+        if (peek(json, pos) != expected) {
+            throw new ApiException(400, "Malformed JSON: expected '" + expected + "'");
+        }
+        pos[0]++;
+    }
+
+    private static char peek(String json, int[] pos) {
+        return pos[0] < json.length() ? json.charAt(pos[0]) : 0;
+    }
+
+    private static int skipSpace(String json, int pos) {
+        while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static String accountJson(int accountNumber, String ownerName, double balance) {
+        return "{\"accountNumber\":" + accountNumber + ",\"ownerName\":" + quote(ownerName) +
+                ",\"balance\":" + money(balance) + "}";
+    }
+
+    private static String balanceJson(int accountNumber, double balance) {
+        return "{\"accountNumber\":" + accountNumber + ",\"balance\":" + money(balance) + "}";
+    }
+
+    /**
+     * Formats an amount as a JSON number with two decimals
+     */
+    private static String money(double amount) {
+        StringBuilder out = new StringBuilder(16);
+        appendCents(Math.round(amount * 100), out);
+        return out.toString();
+    }
+
+    private static void appendCents(long cents, StringBuilder out) {
+        if (cents < 0) {
+            out.append('-');
+            cents = -cents;
+        }
+        long fraction = cents % 100;
+        out.append(cents / 100).append('.');
+        if (fraction < 10) {
+            out.append('0');
+        }
+        out.append(fraction);
+    }
+
+    static String quote(String text) {
+        if (text == null) {
+            return "null";
+        }
+        StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"': quoted.append("\\\""); break;
+                case '\\': quoted.append("\\\\"); break;
+                case '\n': quoted.append("\\n"); break;
+                case '\r': quoted.append("\\r"); break;
+                case '\t': quoted.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Runs the API without the desktop screens
+     * @param args Optional port; otherwise -Dmybank.api.port or 8085
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0) {
+            System.setProperty("mybank.api.port", args[0]);
+        }
+        BankApiServer apiServer = fromProperties();
+        Runtime.getRuntime().addShutdownHook(new Thread(apiServer::stop, "api-shutdown"));
+        apiServer.start();
+    }
+}
@@ -0,0 +1,362 @@
+package com.khorshed.mybank.mybankapp.services;
+
+import com.khorshed.mybank.mybankapp.database.AdmissionController;
+import com.khorshed.mybank.mybankapp.database.DatabaseHelper;
+import com.khorshed.mybank.mybankapp.database.EventLog;
+import com.khorshed.mybank.mybankapp.models.Account;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * BulkAccountImporter - Streams a CSV file of new accounts into the database
+ *
+ * Each line is "ownerName,openingBalance[,accountNumber]"; a blank account
+ * number is assigned automatically. Lines are read in chunks, validated on a
+ * worker pool, and written in file order by a single committer, one database
+ * transaction per chunk. At most a fixed number of chunks are in flight, so
+ * memory use does not depend on the file size. Each chunk's transaction
+ * holds a bulk admission permit, so teller postings go ahead of the import.
+ */
+public class BulkAccountImporter {
+
+    /**
+     * Receives progress and reject notifications from a running import
+     * Called from the import thread, not the JavaFX thread
+     */
+    public interface Listener {
+        void onProgress(long bytesRead, long linesRead, long imported, long rejected);
+
+        void onReject(long lineNumber, String line, String reason);
+    }
+
+    private static final int DEFAULT_CHUNK_SIZE = 5000;
+
+    private final DatabaseHelper dbHelper;
+    private final int chunkSize;
+    private final int workerCount;
+
+    private long bytesRead;
+    private long linesRead;
+    private long imported;
+    private long rejected;
+
+    /**
+     * Constructor
+     * @param dbHelper Helper used by the committer; must not be shared with other threads
+     */
+    public BulkAccountImporter(DatabaseHelper dbHelper) {
+        this(dbHelper, DEFAULT_CHUNK_SIZE, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Constructor
+     * @param dbHelper Helper used by the committer; must not be shared with other threads
+     * @param chunkSize Rows per validation task and per database transaction
+     * @param workerCount Number of validation threads
+     */
+    public BulkAccountImporter(DatabaseHelper dbHelper, int chunkSize, int workerCount) {
+        this.dbHelper = dbHelper;
+        this.chunkSize = chunkSize;
+        this.workerCount = workerCount;
+    }
+
+    /**
+     * Imports every account in a CSV file
+     * Blocks until the whole file has been processed
+     * @param file The CSV file
+     * @param listener Receives progress and rejected rows
+     * @return Number of accounts created
+     * @throws IOException if the file cannot be read
+     */
+    public long importFile(Path file, Listener listener) throws IOException {
+        bytesRead = 0;
+        linesRead = 0;
+        imported = 0;
+        rejected = 0;
+
+        ExecutorService workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "account-import-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Bounded, in file order: the reader blocks here when the committer falls behind
+        BlockingQueue<PendingChunk> pending = new ArrayBlockingQueue<>(workerCount * 2);
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            long lineNumber = 0;
+            List<String> lines = new ArrayList<>(chunkSize);
+            long firstLine = 1;
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber == 1 && isHeader(line)) {
+                    firstLine = 2;
+                    continue;
+                }
+
+                lines.add(line);
+                if (lines.size() == chunkSize) {
+                    submit(workers, pending, firstLine, lines, listener);
+                    lines = new ArrayList<>(chunkSize);
+                    firstLine = lineNumber + 1;
+                }
+            }
+
+            if (!lines.isEmpty()) {
+                submit(workers, pending, firstLine, lines, listener);
+            }
+
+            while (!pending.isEmpty()) {
+                commit(pending.take(), listener);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            workers.shutdownNow();
+        }
+
+        return imported;
+    }
+
+    /**
+     * Queues a chunk for validation, committing older chunks if the queue is full
+     */
+    private void submit(ExecutorService workers, BlockingQueue<PendingChunk> pending,
+                        long firstLine, List<String> lines, Listener listener) throws InterruptedException {
+        if (pending.remainingCapacity() == 0) {
+            commit(pending.take(), listener);
+        }
+        pending.put(new PendingChunk(firstLine, lines, workers.submit(() -> validate(firstLine, lines))));
+    }
+
+    /**
+     * Writes one validated chunk and reports its outcome
+     */
+    private void commit(PendingChunk pendingChunk, Listener listener) throws InterruptedException {
+        Chunk chunk;
+        try {
+            chunk = pendingChunk.future.get();
+        } catch (ExecutionException e) {
+            // None of the chunk's rows were written, so each one is reported
+            EventLog.error("Error validating import chunk: " + e.getCause().getMessage());
+            chunk = new Chunk(pendingChunk.lines.size());
+            for (int i = 0; i < pendingChunk.lines.size(); i++) {
+                String line = pendingChunk.lines.get(i);
+                chunk.byteCount += utf8Length(line) + 1;
+                if (!line.trim().isEmpty()) {
+                    chunk.reject(pendingChunk.firstLine + i, line, "Validation error");
+                }
+            }
+        }
+
+        bytesRead += chunk.byteCount;
+        linesRead += chunk.lineCount;
+
+        for (int i = 0; i < chunk.rejectLines.size(); i++) {
+            rejected++;
+            listener.onReject(chunk.rejectLineNumbers.get(i), chunk.rejectLines.get(i), chunk.rejectReasons.get(i));
+        }
+
+        if (!chunk.accounts.isEmpty()) {
+            AdmissionController admission = AdmissionController.getInstance();
+            AdmissionController.Permit permit = admission.awaitPermit(AdmissionController.Priority.BULK);
+            boolean[] inserted;
+            try {
+                inserted = dbHelper.createAccountsBatch(chunk.accounts);
+            } finally {
+                admission.release(permit);
+            }
+
+            for (int i = 0; i < chunk.accounts.size(); i++) {
+                if (inserted != null && inserted[i]) {
+                    imported++;
+                } else {
+                    rejected++;
+                    listener.onReject(chunk.accountLineNumbers.get(i), chunk.accountLines.get(i),
+                            inserted == null ? "Database error" : "Account number already exists or database error");
+                }
+            }
+        }
+
+        listener.onProgress(bytesRead, linesRead, imported, rejected);
+    }
+
+    /**
+     * Parses and validates a chunk of lines; runs on a worker thread
+     */
+    private Chunk validate(long firstLine, List<String> lines) {
+        Chunk chunk = new Chunk(lines.size());
+
+        for (int i = 0; i < lines.size(); i++) {
+            long lineNumber = firstLine + i;
+            String line = lines.get(i);
+            chunk.byteCount += utf8Length(line) + 1;
+
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+
+            String[] fields = splitCsv(line);
+            if (fields.length < 2 || fields.length > 3) {
+                chunk.reject(lineNumber, line, "Expected ownerName,openingBalance[,accountNumber]");
+                continue;
+            }
+
+            String ownerName = fields[0].trim();
+            if (ownerName.isEmpty()) {
+                chunk.reject(lineNumber, line, "Owner name is empty");
+                continue;
+            }
+
+            double balance;
+            int accountNumber = 0;
+            try {
+                balance = Double.parseDouble(fields[1].trim());
+                if (fields.length == 3 && !fields[2].trim().isEmpty()) {
+                    accountNumber = Integer.parseInt(fields[2].trim());
+                }
+            } catch (NumberFormatException e) {
+                chunk.reject(lineNumber, line, "Invalid number");
+                continue;
+            }
+
+            if (Double.isNaN(balance) || Double.isInfinite(balance)) {
+                chunk.reject(lineNumber, line, "Opening balance must be a finite number");
+                continue;
+            }
+
+            if (balance < 0) {
+                chunk.reject(lineNumber, line, "Opening balance cannot be negative");
+                continue;
+            }
+
+            if (accountNumber < 0) {
+                chunk.reject(lineNumber, line, "Account number must be positive");
+                continue;
+            }
+
+            // Only the shared index is consulted here, since the helper's connection belongs to
+            // the committer; an account it misses is still refused by the insert
+            if (accountNumber > 0 && DatabaseHelper.isIndexedAccount(accountNumber)) {
+                chunk.reject(lineNumber, line, "Account number already exists");
+                continue;
+            }
+
+            chunk.accept(lineNumber, line, new Account(accountNumber, ownerName, balance));
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Counts the bytes a line takes in the UTF-8 file, so progress matches the file size
+     */
+    private static int utf8Length(String line) {
+        int bytes = line.length();
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c >= 0x800 && !Character.isSurrogate(c)) {
+                bytes += 2;
+            } else if (c >= 0x80) {
+                // Two bytes below U+0800; a surrogate pair is four bytes, two per char
+                bytes++;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Checks if the first line is a column header rather than data
+     */
+    private static boolean isHeader(String line) {
+        return line.trim().toLowerCase().startsWith("owner");
+    }
+
+    /**
+     * Splits a CSV line, honouring double-quoted fields
+     */
+    private static String[] splitCsv(String line) {
+        List<String> fields = new ArrayList<>(3);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+
+        return fields.toArray(new String[0]);
+    }
+
+    /**
+     * A chunk queued for validation, kept with its lines in case validation fails
+     */
+    private static final class PendingChunk {
+        private final long firstLine;
+        private final List<String> lines;
+        private final Future<Chunk> future;
+
+        private PendingChunk(long firstLine, List<String> lines, Future<Chunk> future) {
+            this.firstLine = firstLine;
+            this.lines = lines;
+            this.future = future;
+        }
+    }
+
+    /**
+     * Validation output for one chunk of lines
+     */
+    private static final class Chunk {
+        private final int lineCount;
+        private long byteCount;
+        private final List<Account> accounts = new ArrayList<>();
+        private final List<Long> accountLineNumbers = new ArrayList<>();
+        private final List<String> accountLines = new ArrayList<>();
+        private final List<Long> rejectLineNumbers = new ArrayList<>();
+        private final List<String> rejectLines = new ArrayList<>();
+        private final List<String> rejectReasons = new ArrayList<>();
+
+        private Chunk(int lineCount) {
+            this.lineCount = lineCount;
+        }
+
+        private void accept(long lineNumber, String line, Account account) {
+            accounts.add(account);
+            accountLineNumbers.add(lineNumber);
+            accountLines.add(line);
+        }
+
+        private void reject(long lineNumber, String line, String reason) {
+            rejectLineNumbers.add(lineNumber);
+            rejectLines.add(line);
+            rejectReasons.add(reason);
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package com.khorshed.mybank.mybankapp.services;
+
+import com.khorshed.mybank.mybankapp.database.AdmissionController;
+import com.khorshed.mybank.mybankapp.database.DatabaseHelper;
+import com.khorshed.mybank.mybankapp.database.EventLog;
+import com.khorshed.mybank.mybankapp.database.JournalEngine;
+import com.khorshed.mybank.mybankapp.database.ShardedStorage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * EndOfDayBatch - Posts interest and monthly fees to every account
+ *
+ * The account key space is cut into fixed-width ranges that are processed on
+ * a fork/join pool. Each range is read on the worker's own connection, its
+ * postings are computed in memory, and then the balance updates, the journal
+ * rows and a checkpoint row go to the database in one transaction. A run
+ * that is interrupted can be started again with the same run id and will
+ * skip every range that already has a checkpoint. Each range's write holds
+ * a bulk admission permit, so teller postings go ahead of the batch.
+ *
+ * Interest accrues on every run. The monthly fee is only charged by the run
+ * for the last day of a month, and only where it does not take the balance
+ * below zero at the moment it is written.
+ */
+public class EndOfDayBatch {
+
+    /**
+     * Receives progress from a running batch
+     * Called from pool threads, not the JavaFX thread
+     */
+    public interface Listener {
+        void onProgress(long accountsProcessed, long postingsWritten, double accountsPerSecond);
+    }
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int DEFAULT_RANGE_WIDTH = 10_000;
+    private static final int LEAF_RANGES = 1;
+
+    private final String runId;
+    private final double annualInterestRate;
+    private final double monthlyFee;
+    private final boolean monthEnd;
+    private final int rangeWidth;
+
+    private final AtomicLong accountsProcessed = new AtomicLong();
+    private final AtomicLong postingsWritten = new AtomicLong();
+    private final Map<Thread, Connection> readers = new ConcurrentHashMap<>();
+    private final List<Long> failedRanges = Collections.synchronizedList(new ArrayList<>());
+    private Connection writer;
+    private Listener listener;
+    private long startNanos;
+
+    /**
+     * Constructor
+     * @param runId Identifies the run for checkpoints, e.g. the business date
+     * @param annualInterestRate Yearly interest rate (0.05 = 5%), accrued for one day
+     * @param monthlyFee Fee charged at month end to each account with enough balance, or 0 for none
+     */
+    public EndOfDayBatch(String runId, double annualInterestRate, double monthlyFee) {
+        this(runId, annualInterestRate, monthlyFee, DEFAULT_RANGE_WIDTH);
+    }
+
+    /**
+     * Constructor
+     * @param runId Identifies the run for checkpoints; a yyyy-MM-dd business date, or else today is assumed
+     * @param annualInterestRate Yearly interest rate (0.05 = 5%), accrued for one day
+     * @param monthlyFee Fee charged at month end to each account with enough balance, or 0 for none
+     * @param rangeWidth Number of account numbers per chunk
+     */
+    public EndOfDayBatch(String runId, double annualInterestRate, double monthlyFee, int rangeWidth) {
+        this.runId = runId;
+        this.annualInterestRate = annualInterestRate;
+        this.monthlyFee = monthlyFee;
+        this.rangeWidth = rangeWidth;
+
+        LocalDate businessDate = businessDate(runId);
+        this.monthEnd = businessDate.getDayOfMonth() == businessDate.lengthOfMonth();
+    }
+
+    /**
+     * Checks whether this run charges the monthly fee
+     * @return true if the run's business date is the last day of its month
+     */
+    public boolean isMonthEnd() {
+        return monthEnd;
+    }
+
+    /**
+     * Runs (or resumes) the batch and blocks until every range is done
+     * @param listener Receives progress
+     * @return Number of accounts processed in this invocation
+     * @throws SQLException if the batch cannot be started, or if any range failed; the other
+     *         ranges stay posted, and running again with the same run id finishes the failed ones
+     * @throws IllegalStateException in journal or sharded mode, which this batch does not write to
+     */
+    public long run(Listener listener) throws SQLException {
+        if (JournalEngine.isEnabled() || ShardedStorage.isEnabled()) {
+            throw new IllegalStateException("End-of-day batch needs single-file storage mode");
+        }
+
+        this.listener = listener;
+        accountsProcessed.set(0);
+        postingsWritten.set(0);
+        failedRanges.clear();
+        startNanos = System.nanoTime();
+
+        writer = DatabaseHelper.openConnection();
+        try {
+            long minAccount;
+            long maxAccount;
+            try (Statement stmt = writer.createStatement()) {
+                stmt.execute("PRAGMA journal_mode=WAL");
+                stmt.execute("CREATE TABLE IF NOT EXISTS batch_checkpoints (" +
+                        "runId TEXT NOT NULL, " +
+                        "rangeStart INTEGER NOT NULL, " +
+                        "accounts INTEGER NOT NULL, " +
+                        "completedAt TEXT NOT NULL, " +
+                        "PRIMARY KEY (runId, rangeStart))");
+
+                ResultSet rs = stmt.executeQuery("SELECT MIN(accountNumber), MAX(accountNumber) FROM accounts");
+                if (!rs.next() || rs.getObject(1) == null) {
+                    return 0;
+                }
+                minAccount = rs.getLong(1);
+                maxAccount = rs.getLong(2);
+            }
+
+            long firstRange = minAccount / rangeWidth;
+            long lastRange = maxAccount / rangeWidth;
+
+            ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+            try {
+                pool.invoke(new RangeTask(firstRange, lastRange + 1));
+            } finally {
+                pool.shutdown();
+            }
+
+            reportProgress();
+            if (!failedRanges.isEmpty()) {
+                throw new SQLException(BalanceReconciliation.describeFailures(failedRanges, rangeWidth) +
+                        " failed after " + accountsProcessed.get() + " account(s) were processed;" +
+                        " run " + runId + " again to finish them");
+            }
+            return accountsProcessed.get();
+        } finally {
+            for (Connection connection : readers.values()) {
+                connection.close();
+            }
+            readers.clear();
+            writer.close();
+        }
+    }
+
+    /**
+     * Splits the range list in half until a task holds a single range
+     */
+    private class RangeTask extends RecursiveAction {
+        private final long from;
+        private final long to;
+
+        private RangeTask(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_RANGES) {
+                for (long range = from; range < to; range++) {
+                    try {
+                        processRange(range * rangeWidth);
+                    } catch (SQLException e) {
+                        EventLog.error("Error in end-of-day range " + range * rangeWidth + ": " + e.getMessage());
+                        failedRanges.add(range * rangeWidth);
+                    }
+                }
+                return;
+            }
+
+            long middle = (from + to) >>> 1;
+            invokeAll(new RangeTask(from, middle), new RangeTask(middle, to));
+        }
+    }
+
+    /**
+     * Computes and writes the postings for one key range
+     */
+    private void processRange(long rangeStart) throws SQLException {
+        Connection connection = readerConnection();
+        long rangeEnd = rangeStart + rangeWidth;
+
+        try (PreparedStatement check = connection.prepareStatement(
+                "SELECT 1 FROM batch_checkpoints WHERE runId = ? AND rangeStart = ?")) {
+            check.setString(1, runId);
+            check.setLong(2, rangeStart);
+            if (check.executeQuery().next()) {
+                return; // Done by an earlier, interrupted run
+            }
+        }
+
+        // Compute every posting in memory first
+        int count = 0;
+        int[] accounts = new int[64];
+        double[] interest = new double[64];
+        double[] fees = new double[64];
+
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT accountNumber, balance FROM accounts WHERE accountNumber >= ? AND accountNumber < ?")) {
+            select.setLong(1, rangeStart);
+            select.setLong(2, rangeEnd);
+            ResultSet rs = select.executeQuery();
+            while (rs.next()) {
+                if (count == accounts.length) {
+                    accounts = Arrays.copyOf(accounts, count * 2);
+                    interest = Arrays.copyOf(interest, count * 2);
+                    fees = Arrays.copyOf(fees, count * 2);
+                }
+
+                double balance = rs.getDouble(2);
+                double accrued = balance > 0 ? roundCents(balance * annualInterestRate / 365.0) : 0;
+                double fee = monthEnd && monthlyFee > 0 && balance + accrued >= monthlyFee ? monthlyFee : 0;
+
+                accounts[count] = rs.getInt(1);
+                interest[count] = accrued;
+                fees[count] = fee;
+                count++;
+            }
+        }
+
+        writeRange(rangeStart, count, accounts, interest, fees);
+
+        accountsProcessed.addAndGet(count);
+        if (count > 0) {
+            reportProgress();
+        }
+    }
+
+    /**
+     * Writes one range's postings and checkpoint in a single transaction
+     * The balances were read outside this transaction, so a fee is only
+     * charged if the balance still covers it when the update runs; where it
+     * does not, the account gets its interest alone.
+     */
+    private void writeRange(long rangeStart, int count, int[] accounts, double[] interest, double[] fees)
+            throws SQLException {
+        String now = LocalDateTime.now().format(DATE_FORMATTER);
+        long postings = 0;
+
+        // SQLite has one writer; ranges queue here while other ranges are read and computed
+        synchronized (writer) {
+            AdmissionController admission = AdmissionController.getInstance();
+            AdmissionController.Permit permit;
+            try {
+                permit = admission.awaitPermit(AdmissionController.Priority.BULK);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting to write range " + rangeStart);
+            }
+
+            writer.setAutoCommit(false);
+            try (PreparedStatement update = writer.prepareStatement(
+                    "UPDATE accounts SET balance = balance + ?, version = version + 1 WHERE accountNumber = ?");
+                 PreparedStatement feeUpdate = writer.prepareStatement(
+                         "UPDATE accounts SET balance = balance + ?, version = version + 1 " +
+                                 "WHERE accountNumber = ? AND balance + ? >= 0");
+                 PreparedStatement insert = writer.prepareStatement(
+                         "INSERT INTO transactions (accountNumber, type, amount, date) VALUES (?, ?, ?, ?)");
+                 PreparedStatement checkpoint = writer.prepareStatement(
+                         "INSERT INTO batch_checkpoints (runId, rangeStart, accounts, completedAt) VALUES (?, ?, ?, ?)")) {
+
+                int feeCount = 0;
+                int[] feeRows = new int[count];
+                for (int i = 0; i < count; i++) {
+                    double delta = interest[i] - fees[i];
+                    if (fees[i] > 0) {
+                        feeUpdate.setDouble(1, delta);
+                        feeUpdate.setInt(2, accounts[i]);
+                        feeUpdate.setDouble(3, delta);
+                        feeUpdate.addBatch();
+                        feeRows[feeCount++] = i;
+                    } else if (delta != 0) {
+                        update.setDouble(1, delta);
+                        update.setInt(2, accounts[i]);
+                        update.addBatch();
+                    }
+                }
+
+                if (feeCount > 0) {
+                    int[] charged = feeUpdate.executeBatch();
+                    for (int j = 0; j < feeCount; j++) {
+                        if (charged[j] > 0) {
+                            continue;
+                        }
+                        // Debited since it was read: skip the fee, still pay the interest
+                        int i = feeRows[j];
+                        fees[i] = 0;
+                        if (interest[i] > 0) {
+                            update.setDouble(1, interest[i]);
+                            update.setInt(2, accounts[i]);
+                            update.addBatch();
+                        }
+                    }
+                }
+
+                for (int i = 0; i < count; i++) {
+                    if (interest[i] > 0) {
+                        addTransaction(insert, accounts[i], "Interest", interest[i], now);
+                        postings++;
+                    }
+                    if (fees[i] > 0) {
+                        addTransaction(insert, accounts[i], "Monthly Fee", fees[i], now);
+                        postings++;
+                    }
+                }
+
+                update.executeBatch();
+                insert.executeBatch();
+
+                checkpoint.setString(1, runId);
+                checkpoint.setLong(2, rangeStart);
+                checkpoint.setInt(3, count);
+                checkpoint.setString(4, now);
+                checkpoint.executeUpdate();
+
+                writer.commit();
+            } catch (SQLException e) {
+                writer.rollback();
+                throw e;
+            } finally {
+                writer.setAutoCommit(true);
+                admission.release(permit);
+            }
+        }
+
+        postingsWritten.addAndGet(postings);
+    }
+
+    private Connection readerConnection() throws SQLException {
+        // One read connection per pool thread
+        Connection connection = readers.get(Thread.currentThread());
+        if (connection == null) {
+            connection = DatabaseHelper.openConnection();
+            readers.put(Thread.currentThread(), connection);
+        }
+        return connection;
+    }
+
+    private void reportProgress() {
+        if (listener == null) {
+            return;
+        }
+        double seconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+        long processed = accountsProcessed.get();
+        listener.onProgress(processed, postingsWritten.get(), processed / seconds);
+    }
+
+    private static void addTransaction(PreparedStatement pstmt, int account, String type, double amount, String date)
+            throws SQLException {
+        pstmt.setInt(1, account);
+        pstmt.setString(2, type);
+        pstmt.setDouble(3, amount);
+        pstmt.setString(4, date);
+        pstmt.addBatch();
+    }
+
+    private static LocalDate businessDate(String runId) {
+        try {
+            return LocalDate.parse(runId.trim());
+        } catch (DateTimeParseException e) {
+            return LocalDate.now();
+        }
+    }
+
+    private static double roundCents(double amount) {
+        return Math.round(amount * 100.0) / 100.0;
+    }
+}
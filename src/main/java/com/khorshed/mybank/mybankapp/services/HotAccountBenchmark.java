@@ -0,0 +1,124 @@
+package com.khorshed.mybank.mybankapp.services;
+
+import com.khorshed.mybank.mybankapp.database.DatabaseHelper;
+import com.khorshed.mybank.mybankapp.database.ShardedStorage;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HotAccountBenchmark - Measures transfers into one hot account with and without slots
+ *
+ * Usage: HotAccountBenchmark [threads] [seconds] [senders]
+ * Needs sharded mode with more than one shard (-Dmybank.shards=N). Creates a
+ * hot account and funded senders, then has every thread transfer from random
+ * senders to the hot account, first with its credits all on its home shard
+ * and then spread over every shard. Prints throughput and latency for both
+ * runs and checks the hot account's balance against the transfers made,
+ * before and after its slots are compacted.
+ */
+public class HotAccountBenchmark {
+
+    private static final double AMOUNT = 1.00;
+    private static final double SENDER_FUNDS = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int senderCount = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        if (!ShardedStorage.isEnabled() || ShardedStorage.getShardCount() < 2) {
+            throw new IllegalStateException("Run with -Dmybank.shards=N and N > 1");
+        }
+        ShardedStorage storage = ShardedStorage.getInstance();
+
+        DatabaseHelper setup = new DatabaseHelper();
+        int hot = setup.createAccountWithNextNumber("Hot Bench Merchant", 0);
+        int[] senders = new int[senderCount];
+        for (int i = 0; i < senderCount; i++) {
+            senders[i] = setup.createAccountWithNextNumber("Hot Bench Sender " + i, SENDER_FUNDS);
+            if (senders[i] < 0) {
+                throw new IllegalStateException("Could not create benchmark accounts");
+            }
+        }
+        if (hot < 0) {
+            throw new IllegalStateException("Could not create benchmark accounts");
+        }
+        setup.closeConnection();
+
+        AtomicLong transferred = new AtomicLong();
+        int[] slotCounts = {1, ShardedStorage.getShardCount()};
+        for (int slots : slotCounts) {
+            storage.setHotAccount(hot, slots);
+            long[][] latencies = new long[threads][];
+            int[] counts = new int[threads];
+            Thread[] workers = new Thread[threads];
+            long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+            for (int t = 0; t < threads; t++) {
+                int index = t;
+                workers[t] = new Thread(() -> {
+                    DatabaseHelper helper = new DatabaseHelper();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long[] own = new long[1024];
+                    int count = 0;
+                    try {
+                        while (System.nanoTime() < deadline) {
+                            int from = senders[random.nextInt(senders.length)];
+                            long start = System.nanoTime();
+                            boolean done = helper.transfer(from, hot, AMOUNT);
+                            long latency = (System.nanoTime() - start) / 1000;
+                            if (!done) {
+                                continue;
+                            }
+                            transferred.incrementAndGet();
+                            if (count == own.length) {
+                                own = Arrays.copyOf(own, count * 2);
+                            }
+                            own[count++] = latency;
+                        }
+                    } finally {
+                        helper.closeConnection();
+                    }
+                    latencies[index] = own;
+                    counts[index] = count;
+                }, "hot-bench-" + t);
+                workers[t].start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+
+            int total = 0;
+            for (int count : counts) {
+                total += count;
+            }
+            long[] all = new long[total];
+            int offset = 0;
+            for (int t = 0; t < threads; t++) {
+                System.arraycopy(latencies[t], 0, all, offset, counts[t]);
+                offset += counts[t];
+            }
+            Arrays.sort(all);
+            System.out.printf("%d slot(s): %8d transfers  %7.0f/s  p50 %6.2f ms  p99 %7.2f ms%n",
+                    slots, total, total / (double) seconds, percentile(all, 0.50), percentile(all, 0.99));
+        }
+
+        double expected = transferred.get() * AMOUNT;
+        double before = storage.getBalance(hot);
+        double folded = storage.compact(hot);
+        double after = storage.getBalance(hot);
+        System.out.printf("Expected %.2f, balance %.2f before compaction, %.2f after (%.2f folded)%n",
+                expected, before, after, folded);
+        if (Math.abs(before - expected) > 0.005 || Math.abs(after - expected) > 0.005) {
+            throw new IllegalStateException("Hot account balance does not match the transfers made");
+        }
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))] / 1000.0;
+    }
+}
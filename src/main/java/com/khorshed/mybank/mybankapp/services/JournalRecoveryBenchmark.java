@@ -0,0 +1,200 @@
+package com.khorshed.mybank.mybankapp.services;
+
+import com.khorshed.mybank.mybankapp.database.BalanceSnapshot;
+import com.khorshed.mybank.mybankapp.database.DatabaseHelper;
+import com.khorshed.mybank.mybankapp.database.JournalEngine;
+import com.khorshed.mybank.mybankapp.database.PostingJournal;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * JournalRecoveryBenchmark - Measures journal-mode startup on a large ledger
+ *
+ * Usage: JournalRecoveryBenchmark [records] [accounts] [tailRecords]
+ * Must run in a working directory without a database. Builds a journal of
+ * records deposits and transfers (10 million by default) over the given
+ * accounts, brings the accounts table and journal_state up to all but the
+ * last tailRecords of them and writes a BalanceSnapshot there, as the
+ * projector and snapshot thread would have. The history rows the projector
+ * would have written are left out, since recovery never reads them. Then
+ * starts JournalEngine, reports its recovery time next to the time a plain
+ * read of the whole journal takes, and checks every recovered balance.
+ */
+public class JournalRecoveryBenchmark {
+
+    private static final Path JOURNAL_DIR = Paths.get("database", "journal");
+    private static final Path SNAPSHOT_DIR = Paths.get("database", "snapshots");
+    private static final int FIRST_ACCOUNT = 1_000_000;
+    private static final long OPENING_CENTS = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        long records = args.length > 0 ? Long.parseLong(args[0]) : 10_000_000L;
+        int accounts = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        long tail = args.length > 2 ? Long.parseLong(args[2]) : 100_000L;
+        if (tail > records) {
+            throw new IllegalArgumentException("tailRecords cannot exceed records");
+        }
+
+        long[] expected = createAccounts(accounts);
+        long[] atSnapshot = buildJournal(records, tail, expected);
+        writeProjection(atSnapshot, records - tail);
+
+        // Just reading every record is the least a recovery without the snapshot would cost
+        long start = System.nanoTime();
+        long[] replayed = new long[1];
+        try (PostingJournal journal = new PostingJournal(JOURNAL_DIR)) {
+            journal.read(1, journal.getLastSequence(), (sequence, timestamp, type, account, counterAccount, amount) ->
+                    replayed[0]++);
+        }
+        double fullReplaySeconds = (System.nanoTime() - start) / 1e9;
+
+        System.setProperty("mybank.journal", "true");
+        start = System.nanoTime();
+        JournalEngine engine = JournalEngine.getInstance();
+        double startupSeconds = (System.nanoTime() - start) / 1e9;
+
+        int mismatched = 0;
+        for (int i = 0; i < accounts; i++) {
+            if (Math.abs(engine.getBalance(FIRST_ACCOUNT + i) - expected[i] / 100.0) > 0.005) {
+                mismatched++;
+            }
+        }
+
+        System.out.printf("Ledger: %d journal record(s) over %d account(s), snapshot at sequence %d%n",
+                records, accounts, engine.getRecoverySnapshotSequence());
+        System.out.printf("Recovery: %d ms (%d record(s) replayed), engine ready in %.2f s%n",
+                engine.getRecoveryMillis(), engine.getRecoveryReplayedRecords(), startupSeconds);
+        System.out.printf("Reading the whole journal: %d record(s) in %.2f s%n",
+                replayed[0], fullReplaySeconds);
+        System.out.printf("Balances checked: %d, mismatched: %d%n", accounts, mismatched);
+        engine.shutdown();
+        if (mismatched != 0) {
+            throw new IllegalStateException("Recovered balances do not match the journal");
+        }
+    }
+
+    /**
+     * Inserts the benchmark accounts straight into an empty database
+     * @return Opening balance of each account in cents
+     */
+    private static long[] createAccounts(int accounts) throws Exception {
+        // Creates the tables
+        new DatabaseHelper().closeConnection();
+
+        try (Connection connection = DatabaseHelper.openConnection()) {
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM accounts")) {
+                if (rs.next() && rs.getLong(1) > 0) {
+                    throw new IllegalStateException("Run in a working directory without a database");
+                }
+            }
+
+            connection.setAutoCommit(false);
+            try (PreparedStatement pstmt = connection.prepareStatement(
+                    "INSERT INTO accounts (accountNumber, ownerName, balance) VALUES (?, ?, ?)")) {
+                for (int i = 0; i < accounts; i++) {
+                    pstmt.setInt(1, FIRST_ACCOUNT + i);
+                    pstmt.setString(2, "Recovery Bench " + i);
+                    pstmt.setDouble(3, OPENING_CENTS / 100.0);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            connection.commit();
+        }
+
+        long[] balances = new long[accounts];
+        Arrays.fill(balances, OPENING_CENTS);
+        return balances;
+    }
+
+    /**
+     * Appends the postings, tracking every balance in cents
+     * @return The balances as of the snapshot sequence
+     */
+    private static long[] buildJournal(long records, long tail, long[] balances) throws Exception {
+        SplittableRandom random = new SplittableRandom(42);
+        long[] atSnapshot = null;
+        long start = System.nanoTime();
+
+        try (PostingJournal journal = new PostingJournal(JOURNAL_DIR)) {
+            if (journal.getLastSequence() != 0) {
+                throw new IllegalStateException("Run in a working directory without a journal");
+            }
+            for (long sequence = 1; sequence <= records; sequence++) {
+                if (sequence == records - tail + 1) {
+                    atSnapshot = balances.clone();
+                }
+                int from = random.nextInt(balances.length);
+                long cents = 1 + random.nextInt(5_000);
+                if (random.nextInt(4) == 0) {
+                    journal.append(PostingJournal.TYPE_DEPOSIT, FIRST_ACCOUNT + from, 0, cents / 100.0);
+                    balances[from] += cents;
+                } else {
+                    // Transfers go out only when covered, as JournalEngine would insist
+                    int to = random.nextInt(balances.length);
+                    if (to == from || balances[from] < cents) {
+                        journal.append(PostingJournal.TYPE_DEPOSIT, FIRST_ACCOUNT + from, 0, cents / 100.0);
+                        balances[from] += cents;
+                    } else {
+                        journal.append(PostingJournal.TYPE_TRANSFER, FIRST_ACCOUNT + from, FIRST_ACCOUNT + to,
+                                cents / 100.0);
+                        balances[from] -= cents;
+                        balances[to] += cents;
+                    }
+                }
+            }
+            journal.awaitDurable(journal.getLastSequence());
+        }
+
+        System.out.printf("Journal: %d record(s) appended in %.1f s%n", records, (System.nanoTime() - start) / 1e9);
+        return atSnapshot != null ? atSnapshot : balances.clone();
+    }
+
+    /**
+     * Stores the balances as projected up to a sequence and snapshots them
+     */
+    private static void writeProjection(long[] balances, long sequence) throws Exception {
+        long start = System.nanoTime();
+        try (Connection connection = DatabaseHelper.openConnection()) {
+            try (Statement stmt = connection.createStatement()) {
+                // Same table the projector keeps its position in
+                stmt.execute("CREATE TABLE IF NOT EXISTS journal_state (" +
+                        "id INTEGER PRIMARY KEY CHECK (id = 1), " +
+                        "lastAppliedSequence INTEGER NOT NULL)");
+                stmt.execute("INSERT OR REPLACE INTO journal_state (id, lastAppliedSequence) VALUES (1, " +
+                        sequence + ")");
+            }
+
+            connection.setAutoCommit(false);
+            try (PreparedStatement pstmt = connection.prepareStatement(
+                    "UPDATE accounts SET balance = ? WHERE accountNumber = ?")) {
+                for (int i = 0; i < balances.length; i++) {
+                    pstmt.setDouble(1, balances[i] / 100.0);
+                    pstmt.setInt(2, FIRST_ACCOUNT + i);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            connection.commit();
+        }
+
+        // The snapshot thread copies the in-memory balances at a sequence
+        int[] accountNumbers = new int[balances.length];
+        double[] amounts = new double[balances.length];
+        for (int i = 0; i < balances.length; i++) {
+            accountNumbers[i] = FIRST_ACCOUNT + i;
+            amounts[i] = balances[i] / 100.0;
+        }
+        BalanceSnapshot.write(SNAPSHOT_DIR, sequence, accountNumbers, amounts);
+        System.out.printf("Projection and snapshot at sequence %d written in %.1f s%n", sequence,
+                (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,321 @@
+package com.khorshed.mybank.mybankapp.services;
+
+import com.khorshed.mybank.mybankapp.database.EventLog;
+import com.khorshed.mybank.mybankapp.database.JournalEngine;
+import com.khorshed.mybank.mybankapp.database.ShardedStorage;
+import org.sqlite.SQLiteConnection;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * OnlineBackup - Copies the live database to a backup set while postings continue
+ *
+ * Uses SQLite's online backup API a batch of pages at a time, pausing
+ * between batches so the copy never saturates the disk. The source
+ * connection holds one read transaction for the whole copy; in WAL mode that
+ * pins a snapshot, so the backup is consistent, postings committed meanwhile
+ * do not restart it, and writers are never blocked (only checkpoints wait
+ * until the copy ends). The main database and, if present, the transaction
+ * archive are copied into database/backups/mybank-<time>, which is written
+ * under a .part name and renamed once every file is complete.
+ *
+ * Scheduled runs are enabled with -Dmybank.backup.intervalMinutes; the
+ * newest -Dmybank.backup.keep sets (7 by default) are kept.
+ */
+public class OnlineBackup {
+
+    /**
+     * Receives progress from a running backup
+     * Called from the backup thread, not the JavaFX thread
+     */
+    public interface Listener {
+        void onProgress(String file, int pagesCopied, int pageCount, double pagesPerSecond);
+    }
+
+    public static final Path BACKUP_DIR = Paths.get("database", "backups");
+
+    private static final Path[] SOURCE_FILES = {
+            Paths.get("database", "mybank.db"),
+            Paths.get("database", "archive.db")
+    };
+    private static final String SET_PREFIX = "mybank-";
+    private static final String PART_SUFFIX = ".part";
+    private static final DateTimeFormatter SET_NAME_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+    private static final int DEFAULT_PAGES_PER_STEP = 256;
+    private static final long DEFAULT_PAUSE_MILLIS = 20;
+    private static final int DEFAULT_KEEP = 7;
+    // Retries of a busy step before the backup gives up
+    private static final int BUSY_RETRIES = 50;
+    private static final int BUSY_SLEEP_MILLIS = 100;
+
+    // A manual run and a scheduled one must not copy at the same time
+    private static final AtomicBoolean running = new AtomicBoolean();
+    private static ScheduledExecutorService scheduler;
+
+    private final int pagesPerStep;
+    private final long pauseMillis;
+
+    private long pagesCopied;
+    private long elapsedNanos;
+
+    /**
+     * Constructor
+     * Batch size and pause come from -Dmybank.backup.pagesPerStep and -Dmybank.backup.pauseMillis
+     */
+    public OnlineBackup() {
+        this(Integer.getInteger("mybank.backup.pagesPerStep", DEFAULT_PAGES_PER_STEP),
+                Long.getLong("mybank.backup.pauseMillis", DEFAULT_PAUSE_MILLIS));
+    }
+
+    /**
+     * Constructor
+     * @param pagesPerStep Pages copied per batch, or 0 to copy every page in one step
+     * @param pauseMillis Pause after each batch, or 0 for none
+     */
+    public OnlineBackup(int pagesPerStep, long pauseMillis) {
+        this.pagesPerStep = pagesPerStep > 0 ? pagesPerStep : -1;
+        this.pauseMillis = Math.max(0, pauseMillis);
+    }
+
+    /**
+     * Copies every database file into a new backup set and blocks until done
+     * @param listener Receives progress after every batch, or null
+     * @return The backup set directory
+     * @throws SQLException if a database cannot be read or a copy fails
+     * @throws IOException if the backup directory cannot be written
+     * @throws IllegalStateException if another backup is running, or in journal or sharded mode
+     */
+    public Path run(Listener listener) throws SQLException, IOException {
+        if (ShardedStorage.isEnabled() || JournalEngine.isEnabled()) {
+            throw new IllegalStateException("Online backup needs single-file storage mode");
+        }
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A backup is already running");
+        }
+
+        try {
+            pagesCopied = 0;
+            long start = System.nanoTime();
+
+            Path finalDir = BACKUP_DIR.resolve(SET_PREFIX + LocalDateTime.now().format(SET_NAME_FORMATTER));
+            Path partDir = finalDir.resolveSibling(finalDir.getFileName() + PART_SUFFIX);
+            Files.createDirectories(partDir);
+
+            try {
+                for (Path source : SOURCE_FILES) {
+                    if (Files.exists(source)) {
+                        copy(source, partDir.resolve(source.getFileName()), listener);
+                    }
+                }
+                Files.move(partDir, finalDir, StandardCopyOption.ATOMIC_MOVE);
+            } catch (SQLException | IOException e) {
+                deleteSet(partDir);
+                throw e;
+            }
+
+            elapsedNanos = System.nanoTime() - start;
+            EventLog.info("Backup written to " + finalDir + ": " + pagesCopied + " page(s) in " +
+                    String.format("%.1f", elapsedNanos / 1e9) + " s");
+            return finalDir;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Copies one database file page batch by page batch from a pinned snapshot
+     */
+    private void copy(Path source, Path target, Listener listener) throws SQLException {
+        String file = source.getFileName().toString();
+        long start = System.nanoTime();
+        int[] lastPageCount = new int[1];
+        boolean interrupted = false;
+
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + source)) {
+            try (Statement stmt = connection.createStatement()) {
+                // Readers never block writers in WAL mode; the setting is stored in the file
+                stmt.execute("PRAGMA journal_mode=WAL");
+            }
+
+            // Reading inside an open transaction pins the snapshot the backup copies from
+            connection.setAutoCommit(false);
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM sqlite_master")) {
+                rs.next();
+            }
+
+            try {
+                boolean[] pauseInterrupted = new boolean[1];
+                int rc = connection.unwrap(SQLiteConnection.class).getDatabase().backup("main",
+                        target.toString(), (remaining, pageCount) -> {
+                            lastPageCount[0] = pageCount;
+                            if (listener != null) {
+                                int copied = pageCount - remaining;
+                                double seconds = (System.nanoTime() - start) / 1e9;
+                                listener.onProgress(file, copied, pageCount, seconds > 0 ? copied / seconds : 0);
+                            }
+                            if (remaining > 0 && pauseMillis > 0 && !pauseInterrupted[0]) {
+                                try {
+                                    Thread.sleep(pauseMillis);
+                                } catch (InterruptedException e) {
+                                    // Finish the copy without pausing; the flag is restored afterwards
+                                    pauseInterrupted[0] = true;
+                                }
+                            }
+                        }, BUSY_SLEEP_MILLIS, BUSY_RETRIES, pagesPerStep);
+                interrupted = pauseInterrupted[0];
+                if (rc != 0) {
+                    throw new SQLException("Backup of " + file + " failed with SQLite code " + rc);
+                }
+            } finally {
+                connection.rollback();
+            }
+        }
+
+        // The copy inherits WAL mode; a backup is easier to move around as one self-contained file
+        try (Connection backup = DriverManager.getConnection("jdbc:sqlite:" + target);
+             Statement stmt = backup.createStatement()) {
+            stmt.execute("PRAGMA journal_mode=DELETE");
+        }
+
+        pagesCopied += lastPageCount[0];
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getPagesCopied() {
+        return pagesCopied;
+    }
+
+    /**
+     * Gets the overall copy rate of the last run, pauses included
+     * @return Pages per second
+     */
+    public double getPagesPerSecond() {
+        return elapsedNanos > 0 ? pagesCopied / (elapsedNanos / 1e9) : 0;
+    }
+
+    /**
+     * Lists completed backup sets, newest first
+     * @return Backup set directories
+     */
+    public static List<Path> listBackups() {
+        List<Path> sets = new ArrayList<>();
+        if (!Files.isDirectory(BACKUP_DIR)) {
+            return sets;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(BACKUP_DIR, SET_PREFIX + "*")) {
+            for (Path set : stream) {
+                if (Files.isDirectory(set) && !set.getFileName().toString().endsWith(PART_SUFFIX)) {
+                    sets.add(set);
+                }
+            }
+        } catch (IOException e) {
+            EventLog.error("Error listing backups: " + e.getMessage());
+        }
+        // Set names are timestamps, so name order is age order
+        sets.sort(Comparator.comparing((Path set) -> set.getFileName().toString()).reversed());
+        return sets;
+    }
+
+    /**
+     * Deletes all but the newest backup sets, plus any left unfinished by a crash
+     * @param keep Number of completed sets to keep
+     */
+    public static void pruneBackups(int keep) {
+        List<Path> sets = listBackups();
+        for (int i = keep; i < sets.size(); i++) {
+            deleteSet(sets.get(i));
+        }
+
+        // Holding the flag keeps a backup from starting while its .part directory could be swept
+        if (!Files.isDirectory(BACKUP_DIR) || !running.compareAndSet(false, true)) {
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(BACKUP_DIR, "*" + PART_SUFFIX)) {
+            for (Path part : stream) {
+                deleteSet(part);
+            }
+        } catch (IOException e) {
+            EventLog.error("Error pruning backups: " + e.getMessage());
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private static void deleteSet(Path set) {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(set)) {
+            for (Path file : stream) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(set);
+        } catch (IOException e) {
+            EventLog.error("Error deleting backup " + set + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts scheduled backups if -Dmybank.backup.intervalMinutes is set
+     * The first run happens one interval after startup.
+     */
+    public static synchronized void startScheduleIfEnabled() {
+        long interval = Long.getLong("mybank.backup.intervalMinutes", 0);
+        if (interval <= 0 || scheduler != null) {
+            return;
+        }
+
+        int keep = Integer.getInteger("mybank.backup.keep", DEFAULT_KEEP);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "scheduled-backup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                new OnlineBackup().run(null);
+                pruneBackups(keep);
+            } catch (SQLException | IOException | IllegalStateException e) {
+                EventLog.error("Scheduled backup failed: " + e.getMessage());
+            }
+        }, interval, interval, TimeUnit.MINUTES);
+        EventLog.info("Scheduled backups every " + interval + " minute(s), keeping " + keep);
+    }
+
+    /**
+     * Stops scheduled backups; a run in progress finishes
+     */
+    public static synchronized void stopSchedule() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Gets the schedule interval, or 0 if backups are not scheduled
+     * @return Minutes between scheduled runs
+     */
+    public static synchronized long getScheduleMinutes() {
+        return scheduler == null ? 0 : Long.getLong("mybank.backup.intervalMinutes", 0);
+    }
+}
@@ -0,0 +1,74 @@
+package com.khorshed.mybank.mybankapp.services;
+
+import com.khorshed.mybank.mybankapp.database.OwnerNameIndex;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * OwnerNameSearchBenchmark - Times typeahead searches over a large owner name index
+ *
+ * Usage: OwnerNameSearchBenchmark [names] [runs] [limitMicros]
+ * Fills an OwnerNameIndex with generated two- and three-word names (one
+ * million by default), then runs each sample query repeatedly and prints
+ * its median and worst time for the top 10 matches. Fails if any query's
+ * median is over limitMicros (1000 by default), the typeahead's budget.
+ */
+public class OwnerNameSearchBenchmark {
+
+    private static final int SUGGESTIONS = 10;
+    private static final String[] FIRST_NAMES = {
+            "Mary", "Mohammad", "Karim", "Kamal", "Maria", "Marcus", "Fatima", "Rahim", "Nusrat", "John",
+            "Ayesha", "Khorshed", "Sadia", "Tanvir", "Michael", "Anika", "Rafiq", "Sarah", "David", "Farhana"};
+    private static final String[] LAST_NAMES = {
+            "Rahman", "Smith", "Hossain", "Islam", "Khan", "Ahmed", "Chowdhury", "Uddin", "Johnson", "Akter",
+            "Begum", "Miah", "Sarkar", "Brown", "Alam", "Karim", "Haque", "Martin", "Das", "Roy"};
+    private static final String[] QUERIES = {
+            "m", "k", "ma", "mar", "mary", "rahman", "mary smith", "kh", "son", "mohammad karim rahman", "zzz"};
+
+    public static void main(String[] args) {
+        int names = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        long limitMicros = args.length > 2 ? Long.parseLong(args[2]) : 1000;
+
+        OwnerNameIndex index = new OwnerNameIndex();
+        SplittableRandom random = new SplittableRandom(42);
+        long start = System.nanoTime();
+        for (int i = 0; i < names; i++) {
+            String name = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+            if (random.nextInt(3) == 0) {
+                name += " " + FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+            }
+            name += " " + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            index.add(1_000_000 + i, name);
+        }
+        System.out.printf("Index: %d name(s) added in %.1f s%n", names, (System.nanoTime() - start) / 1e9);
+
+        // Warm up so the timings are not of the interpreter
+        for (int i = 0; i < runs; i++) {
+            for (String query : QUERIES) {
+                index.search(query, SUGGESTIONS);
+            }
+        }
+
+        boolean tooSlow = false;
+        for (String query : QUERIES) {
+            long[] micros = new long[runs];
+            int found = 0;
+            for (int i = 0; i < runs; i++) {
+                long begin = System.nanoTime();
+                found = index.search(query, SUGGESTIONS).size();
+                micros[i] = (System.nanoTime() - begin) / 1000;
+            }
+            Arrays.sort(micros);
+            long median = micros[runs / 2];
+            System.out.printf("%-24s %2d match(es)  median %5d us  max %6d us%n",
+                    "\"" + query + "\"", found, median, micros[runs - 1]);
+            tooSlow |= median > limitMicros;
+        }
+
+        if (tooSlow) {
+            throw new IllegalStateException("A search took longer than " + limitMicros + " us");
+        }
+    }
+}
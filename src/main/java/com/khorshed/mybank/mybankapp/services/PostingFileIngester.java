@@ -0,0 +1,826 @@
+package com.khorshed.mybank.mybankapp.services;
+
+import com.khorshed.mybank.mybankapp.database.AdmissionController;
+import com.khorshed.mybank.mybankapp.database.DatabaseHelper;
+import com.khorshed.mybank.mybankapp.database.JournalEngine;
+import com.khorshed.mybank.mybankapp.database.ShardedStorage;
+import com.khorshed.mybank.mybankapp.database.VelocityLimiter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * PostingFileIngester - Posts a clearing file of credits and debits
+ *
+ * Three stages joined by bounded queues:
+ *   parser     - one thread reads the file through a FileChannel, frames lines
+ *                and decodes CSV or fixed-width fields into primitive batches
+ *   validators - a pool checks that accounts exist and amounts are sane
+ *   committer  - the calling thread puts batches back in file order, applies
+ *                the no-overdraft rule with running balances and writes each
+ *                batch, with its checkpoint, in one SQLite transaction
+ *
+ * Lines are either "accountNumber,type,amount" (type C/CREDIT or D/DEBIT,
+ * amount in dollars) or fixed width: account in columns 1-10, C or D in
+ * column 11 and the amount in cents in columns 12-24. A first line that does
+ * not start with a digit is taken as a header.
+ *
+ * The checkpoint holds the byte offset after the last committed batch, so a
+ * file whose run failed restarts from there instead of from the top. Files
+ * are told apart by a SHA-256 digest of their whole content.
+ *
+ * Each batch's transaction holds a bulk admission permit, so teller postings
+ * go ahead of the file.
+ */
+public class PostingFileIngester {
+
+    /**
+     * Receives progress and reject notifications from a running ingestion
+     * Called from the ingesting thread, not the JavaFX thread
+     */
+    public interface Listener {
+        void onProgress(StageMetrics parser, StageMetrics validator, StageMetrics committer,
+                        long posted, long rejected);
+
+        void onReject(long lineNumber, String line, String reason);
+    }
+
+    /**
+     * Throughput counters of one pipeline stage
+     */
+    public static class StageMetrics {
+        private final String name;
+        private final AtomicLong lines = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+        private final BlockingQueue<?> inputQueue;
+        private final long startNanos = System.nanoTime();
+
+        private StageMetrics(String name, BlockingQueue<?> inputQueue) {
+            this.name = name;
+            this.inputQueue = inputQueue;
+        }
+
+        private void record(long lineCount, long nanos) {
+            lines.addAndGet(lineCount);
+            busyNanos.addAndGet(nanos);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getLines() {
+            return lines.get();
+        }
+
+        /**
+         * Gets the stage's throughput since the run started
+         * @return Lines per second of wall-clock time
+         */
+        public double getLinesPerSecond() {
+            return lines.get() / Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+        }
+
+        /**
+         * Gets the throughput while working, i.e. without time spent waiting on queues
+         * Summed over all threads of the stage
+         * @return Lines per busy second
+         */
+        public double getBusyLinesPerSecond() {
+            return lines.get() / Math.max(1e-9, busyNanos.get() / 1e9);
+        }
+
+        /**
+         * Gets the number of batches waiting for this stage
+         * @return Queue depth, or 0 for the first stage
+         */
+        public int getQueuedBatches() {
+            return inputQueue == null ? 0 : inputQueue.size();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d lines | %.0f lines/s | %.0f lines/busy-s | queued %d",
+                    name, getLines(), getLinesPerSecond(), getBusyLinesPerSecond(), getQueuedBatches());
+        }
+    }
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int DEFAULT_BATCH_LINES = 10_000;
+    private static final int READ_BUFFER_BYTES = 1 << 20;
+    private static final long DEFAULT_MAX_AMOUNT_CENTS = 100_000_000L; // $1,000,000.00
+
+    // Fixed-width layout, 0-based
+    private static final int FIXED_ACCOUNT_END = 10;
+    private static final int FIXED_TYPE = 10;
+    private static final int FIXED_AMOUNT_END = 24;
+
+    private static final byte VALID = 0;
+    private static final byte REJECTED = 1;
+    private static final byte SKIPPED = 2;
+
+    // Marks the end of the input on the queues
+    private static final Batch END = new Batch(-1, 0, 0, new byte[0], new int[1]);
+
+    private final DatabaseHelper dbHelper;
+    private final int batchLines;
+    private final int validatorCount;
+    private final long maxAmountCents;
+
+    private long posted;
+    private long rejected;
+
+    /**
+     * Constructor
+     * @param dbHelper Helper whose account index the validators read
+     */
+    public PostingFileIngester(DatabaseHelper dbHelper) {
+        this(dbHelper, DEFAULT_BATCH_LINES, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Constructor
+     * @param dbHelper Helper whose account index the validators read
+     * @param batchLines Lines per batch and per database transaction
+     * @param validatorCount Number of validation threads
+     */
+    public PostingFileIngester(DatabaseHelper dbHelper, int batchLines, int validatorCount) {
+        this.dbHelper = dbHelper;
+        this.batchLines = batchLines;
+        this.validatorCount = validatorCount;
+        String maxAmount = System.getProperty("mybank.ingest.maxAmount");
+        this.maxAmountCents = maxAmount == null ? DEFAULT_MAX_AMOUNT_CENTS
+                : Math.round(Double.parseDouble(maxAmount) * 100);
+    }
+
+    /**
+     * Posts every line of a file, resuming after the last committed batch of an earlier run
+     * Blocks until the whole file has been processed
+     * @param file The posting file
+     * @param listener Receives progress and rejected lines
+     * @return Number of postings made by this invocation
+     * @throws IOException if the file cannot be read
+     * @throws SQLException if a batch cannot be committed; earlier batches stay committed
+     * @throws IllegalStateException in journal or sharded mode, or if the file was already ingested
+     */
+    public long ingest(Path file, Listener listener) throws IOException, SQLException {
+        if (JournalEngine.isEnabled() || ShardedStorage.isEnabled()) {
+            throw new IllegalStateException("Posting file ingestion needs single-file storage mode");
+        }
+
+        posted = 0;
+        rejected = 0;
+        String fileKey = fileKey(file);
+
+        try (Connection writer = DatabaseHelper.openConnection()) {
+            long startOffset = 0;
+            long startLine = 1;
+            try (Statement stmt = writer.createStatement()) {
+                stmt.execute("PRAGMA journal_mode=WAL");
+                stmt.execute("CREATE TABLE IF NOT EXISTS ingest_checkpoints (" +
+                        "fileKey TEXT PRIMARY KEY, " +
+                        "byteOffset INTEGER NOT NULL, " +
+                        "nextLine INTEGER NOT NULL, " +
+                        "posted INTEGER NOT NULL, " +
+                        "rejected INTEGER NOT NULL, " +
+                        "updatedAt TEXT NOT NULL, " +
+                        "completedAt TEXT)");
+            }
+            try (PreparedStatement select = writer.prepareStatement(
+                    "SELECT byteOffset, nextLine, completedAt FROM ingest_checkpoints WHERE fileKey = ?")) {
+                select.setString(1, fileKey);
+                ResultSet rs = select.executeQuery();
+                if (rs.next()) {
+                    if (rs.getString(3) != null) {
+                        throw new IllegalStateException("File was already ingested on " + rs.getString(3));
+                    }
+                    startOffset = rs.getLong(1);
+                    startLine = rs.getLong(2);
+                }
+            }
+
+            BlockingQueue<Batch> parsed = new ArrayBlockingQueue<>(validatorCount * 2);
+            BlockingQueue<Batch> validated = new ArrayBlockingQueue<>(validatorCount * 2);
+            StageMetrics parserMetrics = new StageMetrics("Parse", null);
+            StageMetrics validatorMetrics = new StageMetrics("Validate", parsed);
+            StageMetrics committerMetrics = new StageMetrics("Commit", validated);
+
+            ExecutorService stages = Executors.newFixedThreadPool(validatorCount + 1, runnable -> {
+                Thread thread = new Thread(runnable, "posting-ingest-stage");
+                thread.setDaemon(true);
+                return thread;
+            });
+            AtomicReference<IOException> readError = new AtomicReference<>();
+
+            long offset = startOffset;
+            long line = startLine;
+            stages.execute(() -> {
+                try {
+                    parse(file, offset, line, parsed, parserMetrics);
+                } catch (IOException e) {
+                    readError.set(e);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    for (int i = 0; i < validatorCount; i++) {
+                        parsed.put(END);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            for (int i = 0; i < validatorCount; i++) {
+                stages.execute(() -> validateBatches(parsed, validated, validatorMetrics));
+            }
+
+            try {
+                commitInOrder(writer, fileKey, validated, listener, parserMetrics, validatorMetrics,
+                        committerMetrics);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return posted;
+            } finally {
+                stages.shutdownNow();
+                try {
+                    stages.awaitTermination(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            if (readError.get() != null) {
+                throw readError.get();
+            }
+            markCompleted(writer, fileKey);
+            return posted;
+        }
+    }
+
+    /**
+     * Parser stage: frames lines from the channel and decodes their fields
+     */
+    private void parse(Path file, long startOffset, long startLine, BlockingQueue<Batch> parsed,
+                       StageMetrics metrics) throws IOException, InterruptedException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.position(startOffset);
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+            byte[] bytes = buffer.array();
+            long sequence = 0;
+            long lineNumber = startLine;
+            long batchOffset = startOffset;   // File offset of buffer position 0
+            boolean eof = false;
+
+            while (!eof) {
+                long start = System.nanoTime();
+                long waited = 0;
+                eof = channel.read(buffer) < 0;
+                int limit = buffer.position();
+
+                // Frame whole lines; the partial last line stays for the next read
+                int[] lineStarts = new int[batchLines + 1];
+                int lines = 0;
+                int lineStart = 0;
+                int batchStart = 0;
+                for (int i = 0; i <= limit; i++) {
+                    boolean atEnd = i == limit;
+                    if (!atEnd && bytes[i] != '\n') {
+                        continue;
+                    }
+                    if (atEnd && (!eof || i == lineStart)) {
+                        break;
+                    }
+
+                    lineStarts[lines++] = lineStart;
+                    lineStart = atEnd ? limit : i + 1;
+                    if (lines == batchLines) {
+                        lineStarts[lines] = lineStart;
+                        waited += put(parsed, decode(sequence++, lineNumber, batchOffset + batchStart, bytes,
+                                batchStart, lineStarts, lines));
+                        metrics.record(lines, 0);
+                        lineNumber += lines;
+                        batchStart = lineStart;
+                        lines = 0;
+                    }
+                }
+                if (lines > 0) {
+                    lineStarts[lines] = lineStart;
+                    waited += put(parsed, decode(sequence++, lineNumber, batchOffset + batchStart, bytes,
+                            batchStart, lineStarts, lines));
+                    metrics.record(lines, 0);
+                    lineNumber += lines;
+                }
+
+                // Keep the unfinished line at the front of the buffer
+                System.arraycopy(bytes, lineStart, bytes, 0, limit - lineStart);
+                buffer.position(limit - lineStart);
+                batchOffset += lineStart;
+                if (buffer.position() == buffer.capacity()) {
+                    throw new IOException("Line " + lineNumber + " is longer than " + READ_BUFFER_BYTES + " bytes");
+                }
+                metrics.record(0, System.nanoTime() - start - waited);
+            }
+        }
+    }
+
+    /**
+     * Hands a batch to the next stage
+     * @return Nanoseconds spent waiting for room in the queue
+     */
+    private static long put(BlockingQueue<Batch> queue, Batch batch) throws InterruptedException {
+        long start = System.nanoTime();
+        queue.put(batch);
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Copies a run of lines out of the read buffer and decodes their fields
+     */
+    private Batch decode(long sequence, long firstLine, long startOffset, byte[] bytes, int from,
+                         int[] lineStarts, int lines) {
+        int end = lineStarts[lines];
+        byte[] raw = new byte[end - from];
+        System.arraycopy(bytes, from, raw, 0, raw.length);
+        int[] starts = new int[lines + 1];
+        for (int i = 0; i <= lines; i++) {
+            starts[i] = lineStarts[i] - from;
+        }
+
+        Batch batch = new Batch(sequence, firstLine, startOffset + raw.length, raw, starts);
+        for (int i = 0; i < lines; i++) {
+            int lineFrom = starts[i];
+            int lineTo = starts[i + 1];
+            while (lineTo > lineFrom && (raw[lineTo - 1] == '\n' || raw[lineTo - 1] == '\r')) {
+                lineTo--;
+            }
+
+            if (lineTo == lineFrom) {
+                batch.status[i] = SKIPPED;
+            } else if (startOffset == 0 && firstLine == 1 && i == 0 && !isDigit(raw[lineFrom])
+                    && raw[lineFrom] != ' ') {
+                batch.status[i] = SKIPPED; // Header
+            } else {
+                String problem = indexOf(raw, lineFrom, lineTo, (byte) ',') >= 0
+                        ? decodeCsv(batch, i, raw, lineFrom, lineTo)
+                        : decodeFixedWidth(batch, i, raw, lineFrom, lineTo);
+                if (problem != null) {
+                    batch.reject(i, problem);
+                }
+            }
+        }
+        return batch;
+    }
+
+    private static String decodeCsv(Batch batch, int row, byte[] raw, int from, int to) {
+        int first = indexOf(raw, from, to, (byte) ',');
+        int second = indexOf(raw, first + 1, to, (byte) ',');
+        if (second < 0 || indexOf(raw, second + 1, to, (byte) ',') >= 0) {
+            return "Expected accountNumber,type,amount";
+        }
+
+        long account = parseDigits(raw, from, first);
+        if (account <= 0 || account > Integer.MAX_VALUE) {
+            return "Invalid account number";
+        }
+
+        int typeFrom = skipSpaces(raw, first + 1, second);
+        int typeTo = trimSpaces(raw, typeFrom, second);
+        int typeLength = typeTo - typeFrom;
+        if (typeLength == 0) {
+            return "Type must be C/CREDIT or D/DEBIT";
+        }
+        byte type = upper(raw[typeFrom]);
+        boolean credit;
+        if (type == 'C' && (typeLength == 1 || matches(raw, typeFrom, typeTo, "CREDIT"))) {
+            credit = true;
+        } else if (type == 'D' && (typeLength == 1 || matches(raw, typeFrom, typeTo, "DEBIT"))) {
+            credit = false;
+        } else {
+            return "Type must be C/CREDIT or D/DEBIT";
+        }
+
+        long cents = parseDollars(raw, second + 1, to);
+        if (cents < 0) {
+            return "Invalid amount";
+        }
+
+        batch.accounts[row] = (int) account;
+        batch.credits[row] = credit;
+        batch.cents[row] = cents;
+        return null;
+    }
+
+    private static String decodeFixedWidth(Batch batch, int row, byte[] raw, int from, int to) {
+        if (trimSpaces(raw, from, to) - from != FIXED_AMOUNT_END) {
+            return "Expected a " + FIXED_AMOUNT_END + "-character fixed-width line";
+        }
+
+        long account = parseDigits(raw, from, from + FIXED_ACCOUNT_END);
+        if (account <= 0 || account > Integer.MAX_VALUE) {
+            return "Invalid account number";
+        }
+
+        byte type = upper(raw[from + FIXED_TYPE]);
+        if (type != 'C' && type != 'D') {
+            return "Type must be C or D";
+        }
+
+        long cents = parseDigits(raw, from + FIXED_TYPE + 1, from + FIXED_AMOUNT_END);
+        if (cents < 0) {
+            return "Invalid amount";
+        }
+
+        batch.accounts[row] = (int) account;
+        batch.credits[row] = type == 'C';
+        batch.cents[row] = cents;
+        return null;
+    }
+
+    /**
+     * Validator stage: checks the static rules of each decoded line
+     * Balance rules depend on file order and are applied by the committer
+     */
+    private void validateBatches(BlockingQueue<Batch> parsed, BlockingQueue<Batch> validated, StageMetrics metrics) {
+        try {
+            while (true) {
+                Batch batch = parsed.take();
+                if (batch == END) {
+                    validated.put(END);
+                    return;
+                }
+
+                long start = System.nanoTime();
+                for (int i = 0; i < batch.size; i++) {
+                    if (batch.status[i] != VALID) {
+                        continue;
+                    }
+                    if (batch.cents[i] <= 0) {
+                        batch.reject(i, "Amount must be greater than zero");
+                    } else if (batch.cents[i] > maxAmountCents) {
+                        batch.reject(i, "Amount is above the posting limit");
+                    } else if (!dbHelper.accountExists(batch.accounts[i])) {
+                        batch.reject(i, "Account not found");
+                    }
+                }
+                metrics.record(batch.size, System.nanoTime() - start);
+                validated.put(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Committer stage: writes batches in file order, each with its checkpoint
+     */
+    private void commitInOrder(Connection writer, String fileKey, BlockingQueue<Batch> validated, Listener listener,
+                               StageMetrics parserMetrics, StageMetrics validatorMetrics,
+                               StageMetrics committerMetrics) throws InterruptedException, SQLException {
+        // Validators finish out of order; batches wait here until their turn
+        Map<Long, Batch> waiting = new HashMap<>();
+        long nextSequence = 0;
+        int ended = 0;
+
+        while (ended < validatorCount) {
+            Batch batch = validated.take();
+            if (batch == END) {
+                ended++;
+                continue;
+            }
+            waiting.put(batch.sequence, batch);
+
+            Batch ready;
+            while ((ready = waiting.remove(nextSequence)) != null) {
+                AdmissionController admission = AdmissionController.getInstance();
+                AdmissionController.Permit permit = admission.awaitPermit(AdmissionController.Priority.BULK);
+                long start = System.nanoTime();
+                try {
+                    commitBatch(writer, fileKey, ready);
+                } finally {
+                    admission.release(permit);
+                }
+                committerMetrics.record(ready.size, System.nanoTime() - start);
+                nextSequence++;
+
+                for (int i = 0; i < ready.size; i++) {
+                    if (ready.status[i] == REJECTED) {
+                        listener.onReject(ready.firstLine + i, ready.lineText(i), ready.reasons[i]);
+                    }
+                }
+                listener.onProgress(parserMetrics, validatorMetrics, committerMetrics, posted, rejected);
+            }
+        }
+    }
+
+    /**
+     * Applies one batch in a single transaction
+     * Debits that would overdraw the account at that point in the file, or
+     * break one of its velocity limits, are rejected. The limit windows take
+     * each debit at once and give it back if the batch rolls back.
+     */
+    private void commitBatch(Connection writer, String fileKey, Batch batch) throws SQLException {
+        String now = LocalDateTime.now().format(DATE_FORMATTER);
+        Map<Integer, long[]> balances = new HashMap<>();
+        long batchPosted = 0;
+        VelocityLimiter limiter = VelocityLimiter.getInstance();
+        List<VelocityLimiter.Reservation> reservations = new ArrayList<>();
+        boolean committed = false;
+
+        writer.setAutoCommit(false);
+        try (PreparedStatement balance = writer.prepareStatement(
+                "SELECT balance FROM accounts WHERE accountNumber = ?");
+             PreparedStatement update = writer.prepareStatement(
+                     "UPDATE accounts SET balance = balance + ?, version = version + 1 WHERE accountNumber = ?");
+             PreparedStatement insert = writer.prepareStatement(
+                     "INSERT INTO transactions (accountNumber, type, amount, date) VALUES (?, ?, ?, ?)");
+             PreparedStatement checkpoint = writer.prepareStatement(
+                     "INSERT INTO ingest_checkpoints (fileKey, byteOffset, nextLine, posted, rejected, updatedAt) " +
+                             "VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT(fileKey) DO UPDATE SET " +
+                             "byteOffset = excluded.byteOffset, nextLine = excluded.nextLine, " +
+                             "posted = posted + excluded.posted, rejected = rejected + excluded.rejected, " +
+                             "updatedAt = excluded.updatedAt")) {
+
+            // Running balance and net change per account, in cents
+            long batchRejected = 0;
+            for (int i = 0; i < batch.size; i++) {
+                if (batch.status[i] == REJECTED) {
+                    batchRejected++;
+                }
+                if (batch.status[i] != VALID) {
+                    continue;
+                }
+
+                int account = batch.accounts[i];
+                long[] running = balances.get(account);
+                if (running == null) {
+                    balance.setInt(1, account);
+                    ResultSet rs = balance.executeQuery();
+                    if (!rs.next()) {
+                        batch.reject(i, "Account not found");
+                        batchRejected++;
+                        continue;
+                    }
+                    running = new long[]{Math.round(rs.getDouble(1) * 100), 0};
+                    balances.put(account, running);
+                }
+
+                long cents = batch.cents[i];
+                if (!batch.credits[i] && running[0] < cents) {
+                    batch.reject(i, "Insufficient balance");
+                    batchRejected++;
+                    continue;
+                }
+                if (!batch.credits[i] && limiter.isEnabled()) {
+                    VelocityLimiter.Reservation reservation = limiter.tryAcquire(account,
+                            VelocityLimiter.Posting.WITHDRAW, cents / 100.0);
+                    if (reservation == null) {
+                        VelocityLimiter.Rule rule = limiter.findBrokenRule(account,
+                                VelocityLimiter.Posting.WITHDRAW, cents / 100.0);
+                        batch.reject(i, "Limit reached: " + (rule != null ? rule.describe() : "try again later"));
+                        batchRejected++;
+                        continue;
+                    }
+                    reservations.add(reservation);
+                }
+                long delta = batch.credits[i] ? cents : -cents;
+                running[0] += delta;
+                running[1] += delta;
+
+                insert.setInt(1, account);
+                insert.setString(2, batch.credits[i] ? "Deposit" : "Withdraw");
+                insert.setDouble(3, cents / 100.0);
+                insert.setString(4, now);
+                insert.addBatch();
+                batchPosted++;
+            }
+
+            for (Map.Entry<Integer, long[]> entry : balances.entrySet()) {
+                if (entry.getValue()[1] != 0) {
+                    update.setDouble(1, entry.getValue()[1] / 100.0);
+                    update.setInt(2, entry.getKey());
+                    update.addBatch();
+                }
+            }
+            update.executeBatch();
+            insert.executeBatch();
+
+            checkpoint.setString(1, fileKey);
+            checkpoint.setLong(2, batch.endOffset);
+            checkpoint.setLong(3, batch.firstLine + batch.size);
+            checkpoint.setLong(4, batchPosted);
+            checkpoint.setLong(5, batchRejected);
+            checkpoint.setString(6, now);
+            checkpoint.executeUpdate();
+
+            writer.commit();
+            committed = true;
+            posted += batchPosted;
+            rejected += batchRejected;
+        } catch (SQLException e) {
+            writer.rollback();
+            throw e;
+        } finally {
+            writer.setAutoCommit(true);
+            if (!committed) {
+                for (VelocityLimiter.Reservation reservation : reservations) {
+                    limiter.cancel(reservation);
+                }
+            }
+        }
+    }
+
+    private static void markCompleted(Connection writer, String fileKey) throws SQLException {
+        String now = LocalDateTime.now().format(DATE_FORMATTER);
+        try (PreparedStatement pstmt = writer.prepareStatement(
+                "INSERT INTO ingest_checkpoints (fileKey, byteOffset, nextLine, posted, rejected, updatedAt, completedAt) " +
+                        "VALUES (?, 0, 1, 0, 0, ?, ?) ON CONFLICT(fileKey) DO UPDATE SET " +
+                        "updatedAt = excluded.updatedAt, completedAt = excluded.completedAt")) {
+            pstmt.setString(1, fileKey);
+            pstmt.setString(2, now);
+            pstmt.setString(3, now);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Identifies a file by name, size and a digest of its whole content
+     * A resubmitted copy of the same file resumes; a file that differs
+     * anywhere, such as the next night's file under the same name, starts over
+     */
+    private static String fileKey(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+
+            StringBuilder key = new StringBuilder(file.getFileName() + ":" + channel.size() + ":");
+            for (byte b : digest.digest()) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        }
+    }
+
+    private static long parseDigits(byte[] raw, int from, int to) {
+        from = skipSpaces(raw, from, to);
+        to = trimSpaces(raw, from, to);
+        if (from == to || to - from > 18) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            if (!isDigit(raw[i])) {
+                return -1;
+            }
+            value = value * 10 + (raw[i] - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Parses "123", "123.4" or "123.45" into cents without going through double
+     */
+    private static long parseDollars(byte[] raw, int from, int to) {
+        from = skipSpaces(raw, from, to);
+        to = trimSpaces(raw, from, to);
+        int dot = indexOf(raw, from, to, (byte) '.');
+        if (dot < 0) {
+            long dollars = parseDigits(raw, from, to);
+            return dollars < 0 || dollars > Long.MAX_VALUE / 100 ? -1 : dollars * 100;
+        }
+
+        int decimals = to - dot - 1;
+        if (decimals < 1 || decimals > 2 || dot == from) {
+            return -1;
+        }
+        long dollars = parseDigits(raw, from, dot);
+        long fraction = parseDigits(raw, dot + 1, to);
+        if (dollars < 0 || fraction < 0 || dollars > Long.MAX_VALUE / 100 - 1) {
+            return -1;
+        }
+        return dollars * 100 + (decimals == 1 ? fraction * 10 : fraction);
+    }
+
+    private static int indexOf(byte[] raw, int from, int to, byte value) {
+        for (int i = from; i < to; i++) {
+            if (raw[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(byte[] raw, int from, int to, String word) {
+        if (to - from != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (upper(raw[from + i]) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipSpaces(byte[] raw, int from, int to) {
+        while (from < to && (raw[from] == ' ' || raw[from] == '\t')) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimSpaces(byte[] raw, int from, int to) {
+        while (to > from && (raw[to - 1] == ' ' || raw[to - 1] == '\t')) {
+            to--;
+        }
+        return to;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static byte upper(byte b) {
+        return b >= 'a' && b <= 'z' ? (byte) (b - 32) : b;
+    }
+
+    /**
+     * A run of consecutive lines moving through the pipeline
+     * Each stage owns the batch while it holds it, so no locking is needed
+     */
+    private static final class Batch {
+        private final long sequence;
+        private final long firstLine;
+        private final long endOffset;
+        private final byte[] raw;
+        private final int[] lineStarts;
+        private final int size;
+        private final int[] accounts;
+        private final boolean[] credits;
+        private final long[] cents;
+        private final byte[] status;
+        private final String[] reasons;
+
+        private Batch(long sequence, long firstLine, long endOffset, byte[] raw, int[] lineStarts) {
+            this.sequence = sequence;
+            this.firstLine = firstLine;
+            this.endOffset = endOffset;
+            this.raw = raw;
+            this.lineStarts = lineStarts;
+            this.size = lineStarts.length - 1;
+            this.accounts = new int[size];
+            this.credits = new boolean[size];
+            this.cents = new long[size];
+            this.status = new byte[size];
+            this.reasons = new String[size];
+        }
+
+        private void reject(int row, String reason) {
+            status[row] = REJECTED;
+            reasons[row] = reason;
+        }
+
+        private String lineText(int row) {
+            int from = lineStarts[row];
+            int to = lineStarts[row + 1];
+            while (to > from && (raw[to - 1] == '\n' || raw[to - 1] == '\r')) {
+                to--;
+            }
+            return new String(raw, from, to - from, StandardCharsets.UTF_8);
+        }
+    }
+}
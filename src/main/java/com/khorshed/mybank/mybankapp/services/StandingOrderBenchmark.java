@@ -0,0 +1,109 @@
+package com.khorshed.mybank.mybankapp.services;
+
+import com.khorshed.mybank.mybankapp.database.DatabaseHelper;
+import com.khorshed.mybank.mybankapp.models.StandingOrder;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * StandingOrderBenchmark - Measures the timing wheel and standing order catch-up
+ *
+ * Usage: StandingOrderBenchmark [wheelEntries] [orders] [daysMissed]
+ * First fills a TimingWheel with entries due at random seconds over the
+ * next year, then advances it through the whole year, checking that every
+ * entry expires exactly on its tick. Then creates daily standing orders
+ * that started daysMissed days ago, as if the application had been closed
+ * since, and times the scheduler catching all of them up.
+ */
+public class StandingOrderBenchmark {
+
+    private static final int SECONDS_PER_YEAR = 366 * 24 * 3600;
+    private static final int ACCOUNTS = 200;
+
+    public static void main(String[] args) throws Exception {
+        int wheelEntries = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int orders = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        int daysMissed = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        benchmarkWheel(wheelEntries);
+        benchmarkCatchUp(orders, daysMissed);
+    }
+
+    private static void benchmarkWheel(int entries) {
+        long startTick = 1_700_000_000L;
+        TimingWheel wheel = new TimingWheel(startTick);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < entries; i++) {
+            // The id is the deadline itself, so expiry can be checked against the tick
+            long deadline = startTick + 1 + random.nextInt(SECONDS_PER_YEAR);
+            wheel.schedule(deadline, deadline);
+        }
+        long insertNanos = System.nanoTime() - start;
+
+        long[] expired = new long[1];
+        long[] late = new long[1];
+        start = System.nanoTime();
+        wheel.advanceTo(startTick + SECONDS_PER_YEAR, id -> {
+            expired[0]++;
+            if (id != wheel.getCurrentTick()) {
+                late[0]++;
+            }
+        });
+        long advanceNanos = System.nanoTime() - start;
+
+        System.out.printf("Wheel: %d entries, insert %.0f ns each, %d ticks advanced in %.0f ms " +
+                        "(%.0f ns per expiry), %d expired, %d off their tick%n",
+                entries, insertNanos / (double) entries, SECONDS_PER_YEAR, advanceNanos / 1e6,
+                advanceNanos / (double) Math.max(1, expired[0]), expired[0], late[0]);
+        if (expired[0] != entries || late[0] != 0) {
+            throw new IllegalStateException("Timing wheel lost or misplaced entries");
+        }
+    }
+
+    private static void benchmarkCatchUp(int orders, int daysMissed) throws Exception {
+        try (Connection connection = DatabaseHelper.openConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA journal_mode=WAL");
+        }
+
+        DatabaseHelper setup = new DatabaseHelper();
+        int[] accounts = new int[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts[i] = setup.createAccountWithNextNumber("Standing Order Bench " + i, 1_000_000);
+            if (accounts[i] < 0) {
+                throw new IllegalStateException("Could not create benchmark accounts");
+            }
+        }
+        setup.closeConnection();
+
+        StandingOrderScheduler scheduler = StandingOrderScheduler.getInstance();
+        long before = scheduler.getExecuted() + scheduler.getFailed();
+        LocalDateTime startAt = LocalDateTime.now().minusDays(daysMissed);
+        for (int i = 0; i < orders; i++) {
+            int from = accounts[i % ACCOUNTS];
+            int to = accounts[(i + 1) % ACCOUNTS];
+            if (scheduler.create(from, to, 1.00, StandingOrder.Frequency.DAILY, startAt) < 0) {
+                throw new IllegalStateException("Could not create standing orders");
+            }
+        }
+
+        // Every order is due today and on each missed day
+        long expected = (long) orders * (daysMissed + 1);
+        long start = System.nanoTime();
+        long done;
+        while ((done = scheduler.getExecuted() + scheduler.getFailed() - before) < expected) {
+            Thread.sleep(50);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Catch-up: %d order(s) x %d occurrence(s) = %d transfers in %.1f s (%.0f/s), " +
+                        "%d failed, %d pending%n",
+                orders, daysMissed + 1, done, seconds, done / seconds, scheduler.getFailed(),
+                scheduler.getPendingCount());
+        StandingOrderScheduler.shutdown();
+    }
+}
@@ -0,0 +1,526 @@
+package com.khorshed.mybank.mybankapp.services;
+
+import com.khorshed.mybank.mybankapp.database.AdmissionController;
+import com.khorshed.mybank.mybankapp.database.DatabaseHelper;
+import com.khorshed.mybank.mybankapp.database.EventLog;
+import com.khorshed.mybank.mybankapp.models.StandingOrder;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * StandingOrderScheduler - Runs recurring transfers when they fall due
+ *
+ * Orders are kept in the standing_orders table and, while active, have one
+ * entry in a TimingWheel keyed by the second their next occurrence is due.
+ * A single scheduler thread advances the wheel every second and runs the
+ * orders that came due in batches of -Dmybank.standingOrders.batchSize (500
+ * by default): one transaction claims the whole batch by moving each order
+ * to its next occurrence, every transfer then goes through
+ * DatabaseHelper.transfer at bulk priority, and a second transaction
+ * records the outcomes. An order that cannot be paid is marked FAILED and
+ * waits for its next occurrence.
+ *
+ * Occurrences missed while the application was down are all due at startup
+ * and are caught up one per batch, oldest first, up to
+ * -Dmybank.standingOrders.maxCatchUp per order (31 by default); older ones
+ * are skipped. Claiming before paying means a crash mid-batch can never pay
+ * an occurrence twice; orders left RUNNING are marked INTERRUPTED at the
+ * next startup for someone to check.
+ *
+ * Times are local date-time text; wheel ticks are those times in seconds,
+ * read as if UTC, the same way history dates are encoded.
+ */
+public class StandingOrderScheduler {
+
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_DONE = "DONE";
+    public static final String STATUS_FAILED = "FAILED";
+    public static final String STATUS_INTERRUPTED = "INTERRUPTED";
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final long TICK_MILLIS = 1000;
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final int DEFAULT_MAX_CATCH_UP = 31;
+
+    private static final String SELECT_COLUMNS =
+            "SELECT id, fromAccount, toAccount, amount, frequency, startAt, runsDone, lastStatus, active " +
+                    "FROM standing_orders ";
+
+    private static StandingOrderScheduler instance;
+
+    private final Connection connection;
+    private final DatabaseHelper helper;
+    private final TimingWheel wheel;
+    private final ScheduledExecutorService executor;
+    private final int batchSize;
+    private final int maxCatchUp;
+
+    // Ids that came due and wait for a batch; only touched on the scheduler thread
+    private long[] due = new long[1024];
+    private int dueHead;
+    private int dueCount;
+
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+
+    /**
+     * Gets the scheduler, loading every active order and starting it on first use
+     * @return The running scheduler
+     * @throws IllegalStateException if the orders cannot be loaded
+     */
+    public static synchronized StandingOrderScheduler getInstance() {
+        if (instance == null) {
+            try {
+                instance = new StandingOrderScheduler();
+            } catch (SQLException e) {
+                throw new IllegalStateException("Cannot start standing orders: " + e.getMessage(), e);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Stops the scheduler thread if it was started; a batch in progress finishes
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.executor.shutdown();
+            try {
+                instance.executor.awaitTermination(30, TimeUnit.SECONDS);
+                instance.connection.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (SQLException e) {
+                EventLog.error("Error closing standing orders: " + e.getMessage());
+            }
+            instance.helper.closeConnection();
+            instance = null;
+        }
+    }
+
+    private StandingOrderScheduler() throws SQLException {
+        batchSize = Math.max(1, Integer.getInteger("mybank.standingOrders.batchSize", DEFAULT_BATCH_SIZE));
+        maxCatchUp = Math.max(1, Integer.getInteger("mybank.standingOrders.maxCatchUp", DEFAULT_MAX_CATCH_UP));
+
+        connection = DatabaseHelper.openConnection();
+        createTable(connection);
+
+        helper = new DatabaseHelper();
+        helper.setPriority(AdmissionController.Priority.BULK);
+        // An occurrence is claimed before it is paid, so its transfer must not be turned away
+        helper.setWaitForAdmission(true);
+
+        wheel = new TimingWheel(nowTick());
+        long start = System.nanoTime();
+        int loaded = loadOrders();
+        EventLog.info("Standing orders: " + loaded + " active order(s) scheduled in " +
+                (System.nanoTime() - start) / 1_000_000 + " ms");
+
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "standing-orders");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(this::tick, 0, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private static void createTable(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS standing_orders (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "fromAccount INTEGER NOT NULL, " +
+                    "toAccount INTEGER NOT NULL, " +
+                    "amount REAL NOT NULL, " +
+                    "frequency TEXT NOT NULL, " +
+                    "startAt TEXT NOT NULL, " +
+                    "runsDone INTEGER NOT NULL DEFAULT 0, " +
+                    "nextRunAt TEXT NOT NULL, " +
+                    "lastRunAt TEXT, " +
+                    "lastStatus TEXT, " +
+                    "active INTEGER NOT NULL DEFAULT 1)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_standing_orders_from ON standing_orders (fromAccount)");
+        }
+    }
+
+    /**
+     * Marks interrupted runs and puts every active order in the wheel
+     */
+    private int loadOrders() throws SQLException {
+        synchronized (connection) {
+            try (Statement stmt = connection.createStatement()) {
+                int interrupted = stmt.executeUpdate("UPDATE standing_orders SET lastStatus = '" +
+                        STATUS_INTERRUPTED + "' WHERE lastStatus = '" + STATUS_RUNNING + "'");
+                if (interrupted > 0) {
+                    EventLog.warn("Standing orders: " + interrupted +
+                            " occurrence(s) were interrupted by a shutdown; check their transfers");
+                }
+
+                int count = 0;
+                try (ResultSet rs = stmt.executeQuery("SELECT id, CAST(strftime('%s', nextRunAt) AS INTEGER) " +
+                        "FROM standing_orders WHERE active = 1")) {
+                    while (rs.next()) {
+                        wheel.schedule(rs.getLong(1), rs.getLong(2));
+                        count++;
+                    }
+                }
+                return count;
+            }
+        }
+    }
+
+    /**
+     * Creates a standing order
+     * @param fromAccount The paying account
+     * @param toAccount The receiving account
+     * @param amount The amount of every transfer
+     * @param frequency How often it runs
+     * @param startAt When the first transfer is due
+     * @return The new order's id, or -1 if the order is invalid or cannot be saved
+     */
+    public long create(int fromAccount, int toAccount, double amount, StandingOrder.Frequency frequency,
+                       LocalDateTime startAt) {
+        if (fromAccount == toAccount || !(amount > 0) || frequency == null
+                || !helper.accountExists(fromAccount) || !helper.accountExists(toAccount)) {
+            return -1;
+        }
+
+        String sql = "INSERT INTO standing_orders (fromAccount, toAccount, amount, frequency, startAt, nextRunAt) " +
+                "VALUES (?, ?, ?, ?, ?, ?)";
+        String start = startAt.withNano(0).format(DATE_FORMATTER);
+        long id;
+        synchronized (connection) {
+            try (PreparedStatement pstmt = connection.prepareStatement(sql);
+                 Statement stmt = connection.createStatement()) {
+                pstmt.setInt(1, fromAccount);
+                pstmt.setInt(2, toAccount);
+                pstmt.setDouble(3, amount);
+                pstmt.setString(4, frequency.name());
+                pstmt.setString(5, start);
+                pstmt.setString(6, start);
+                pstmt.executeUpdate();
+                // The connection is held, so this is the row just inserted
+                ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()");
+                if (!rs.next()) {
+                    return -1;
+                }
+                id = rs.getLong(1);
+            } catch (SQLException e) {
+                EventLog.error("Error creating standing order: " + e.getMessage());
+                return -1;
+            }
+        }
+
+        long deadline = toTick(startAt.withNano(0));
+        executor.execute(() -> wheel.schedule(id, deadline));
+        return id;
+    }
+
+    /**
+     * Cancels a standing order; an occurrence already claimed still runs
+     * @param id The order id
+     * @return true if an active order was cancelled
+     */
+    public boolean cancel(long id) {
+        synchronized (connection) {
+            try (PreparedStatement pstmt = connection.prepareStatement(
+                    "UPDATE standing_orders SET active = 0 WHERE id = ? AND active = 1")) {
+                pstmt.setLong(1, id);
+                // The wheel entry stays and is dropped when it comes due
+                return pstmt.executeUpdate() > 0;
+            } catch (SQLException e) {
+                EventLog.error("Error cancelling standing order: " + e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Gets the active standing orders paid from an account
+     * @param accountNumber The paying account
+     * @return The orders, oldest first
+     */
+    public List<StandingOrder> getOrders(int accountNumber) {
+        List<StandingOrder> orders = new ArrayList<>();
+        synchronized (connection) {
+            try (PreparedStatement pstmt = connection.prepareStatement(
+                    SELECT_COLUMNS + "WHERE fromAccount = ? AND active = 1 ORDER BY id")) {
+                pstmt.setInt(1, accountNumber);
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    orders.add(readOrder(rs));
+                }
+            } catch (SQLException e) {
+                EventLog.error("Error loading standing orders: " + e.getMessage());
+            }
+        }
+        return orders;
+    }
+
+    /**
+     * Advances the wheel to the current second and runs everything due
+     */
+    private void tick() {
+        try {
+            long now = nowTick();
+            wheel.advanceTo(now, this::addDue);
+            while (dueCount > 0) {
+                runBatch(now);
+            }
+        } catch (RuntimeException e) {
+            // An exception would cancel the schedule; the failed batch is retried from the table at restart
+            EventLog.error("Error running standing orders: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Claims, pays and records one batch of due orders
+     */
+    private void runBatch(long now) {
+        int count = Math.min(batchSize, dueCount);
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = due[(dueHead + i) % due.length];
+        }
+        dueHead = (dueHead + count) % due.length;
+        dueCount -= count;
+
+        List<StandingOrder> batch = new ArrayList<>(count);
+        long[] nextTicks = new long[count];
+        // Ids already back on the wheel, which must not be placed twice
+        boolean[] rescheduled = new boolean[count];
+        long[] skips = new long[count];
+        long skippedInBatch = 0;
+        String runAt = LocalDateTime.now().withNano(0).format(DATE_FORMATTER);
+
+        synchronized (connection) {
+            try {
+                connection.setAutoCommit(false);
+                try (PreparedStatement select = connection.prepareStatement(SELECT_COLUMNS + "WHERE id = ?");
+                     PreparedStatement claim = connection.prepareStatement(
+                             "UPDATE standing_orders SET runsDone = ?, nextRunAt = ?, lastRunAt = ?, lastStatus = ? " +
+                                     "WHERE id = ? AND runsDone = ?")) {
+                    for (int i = 0; i < count; i++) {
+                        long id = ids[i];
+                        select.setLong(1, id);
+                        StandingOrder order;
+                        try (ResultSet rs = select.executeQuery()) {
+                            if (!rs.next()) {
+                                continue;
+                            }
+                            order = readOrder(rs);
+                        }
+                        if (!order.isActive()) {
+                            continue; // Cancelled; its wheel entry ends here
+                        }
+
+                        long runsDone = order.getRunsDone();
+                        long dueTick = toTick(order.getNextRunAt());
+                        if (dueTick > now) {
+                            // Not due after all, e.g. the clock went back; wait for it
+                            wheel.schedule(id, dueTick);
+                            rescheduled[i] = true;
+                            continue;
+                        }
+
+                        // Skip occurrences beyond the catch-up limit, keeping the newest ones
+                        long missed = countDue(order, now);
+                        if (missed > maxCatchUp) {
+                            skips[batch.size()] = missed - maxCatchUp;
+                            runsDone += missed - maxCatchUp;
+                        }
+
+                        LocalDateTime nextRunAt = order.getFrequency().occurrence(order.getStartAt(), runsDone + 1);
+                        claim.setLong(1, runsDone + 1);
+                        claim.setString(2, nextRunAt.format(DATE_FORMATTER));
+                        claim.setString(3, runAt);
+                        claim.setString(4, STATUS_RUNNING);
+                        claim.setLong(5, id);
+                        claim.setLong(6, order.getRunsDone());
+                        claim.addBatch();
+                        nextTicks[batch.size()] = toTick(nextRunAt);
+                        batch.add(order);
+                    }
+
+                    // An order whose row changed since it was read was claimed by someone else
+                    int[] updated = claim.executeBatch();
+                    List<StandingOrder> won = new ArrayList<>(batch.size());
+                    List<Long> lost = new ArrayList<>();
+                    for (int i = 0; i < batch.size(); i++) {
+                        if (updated[i] > 0) {
+                            nextTicks[won.size()] = nextTicks[i];
+                            skippedInBatch += skips[i];
+                            won.add(batch.get(i));
+                        } else {
+                            lost.add(batch.get(i).getId());
+                        }
+                    }
+
+                    // The other claimant moved them on; they stay on this wheel at their new time
+                    List<Long> lostTicks = new ArrayList<>(lost.size());
+                    for (long id : lost) {
+                        select.setLong(1, id);
+                        try (ResultSet rs = select.executeQuery()) {
+                            if (rs.next()) {
+                                StandingOrder order = readOrder(rs);
+                                lostTicks.add(order.isActive() ? toTick(order.getNextRunAt()) : -1);
+                            } else {
+                                lostTicks.add(-1L);
+                            }
+                        }
+                    }
+                    connection.commit();
+                    for (int i = 0; i < lost.size(); i++) {
+                        if (lostTicks.get(i) >= 0) {
+                            wheel.schedule(lost.get(i), Math.max(lostTicks.get(i), now + 1));
+                        }
+                    }
+                    batch = won;
+                    skipped.addAndGet(skippedInBatch);
+                }
+            } catch (SQLException | RuntimeException e) {
+                rollback();
+                EventLog.error("Error claiming standing orders: " + e.getMessage());
+                // Nothing was claimed; every id not already back on the wheel is tried again next tick
+                for (int i = 0; i < count; i++) {
+                    if (!rescheduled[i]) {
+                        wheel.schedule(ids[i], now + 1);
+                    }
+                }
+                return;
+            } finally {
+                resetAutoCommit();
+            }
+        }
+
+        boolean[] paid = new boolean[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            StandingOrder order = batch.get(i);
+            paid[i] = helper.transfer(order.getFromAccount(), order.getToAccount(), order.getAmount());
+            (paid[i] ? executed : failed).incrementAndGet();
+        }
+
+        synchronized (connection) {
+            try {
+                connection.setAutoCommit(false);
+                try (PreparedStatement record = connection.prepareStatement(
+                        "UPDATE standing_orders SET lastStatus = ? WHERE id = ?")) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        record.setString(1, paid[i] ? STATUS_DONE : STATUS_FAILED);
+                        record.setLong(2, batch.get(i).getId());
+                        record.addBatch();
+                    }
+                    record.executeBatch();
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                rollback();
+                // The transfers stand; the orders show RUNNING and are marked INTERRUPTED at restart
+                EventLog.error("Error recording standing order results: " + e.getMessage());
+            } finally {
+                resetAutoCommit();
+            }
+        }
+
+        // Occurrences still due go round again, so each order catches up one step per batch
+        for (int i = 0; i < batch.size(); i++) {
+            long id = batch.get(i).getId();
+            if (nextTicks[i] <= now) {
+                addDue(id);
+            } else {
+                wheel.schedule(id, nextTicks[i]);
+            }
+        }
+    }
+
+    /**
+     * Counts an order's occurrences due up to a tick, from its next one on
+     */
+    private static long countDue(StandingOrder order, long now) {
+        long missed = 0;
+        while (toTick(order.getFrequency().occurrence(order.getStartAt(), order.getRunsDone() + missed)) <= now) {
+            missed++;
+        }
+        return missed;
+    }
+
+    private void addDue(long id) {
+        if (dueCount == due.length) {
+            long[] grown = new long[due.length * 2];
+            for (int i = 0; i < dueCount; i++) {
+                grown[i] = due[(dueHead + i) % due.length];
+            }
+            due = grown;
+            dueHead = 0;
+        }
+        due[(dueHead + dueCount) % due.length] = id;
+        dueCount++;
+    }
+
+    private void rollback() {
+        try {
+            connection.rollback();
+        } catch (SQLException ex) {
+            EventLog.error("Rollback error: " + ex.getMessage());
+        }
+    }
+
+    private void resetAutoCommit() {
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException ex) {
+            EventLog.error("Error ending transaction: " + ex.getMessage());
+        }
+    }
+
+    private static StandingOrder readOrder(ResultSet rs) throws SQLException {
+        return new StandingOrder(rs.getLong("id"), rs.getInt("fromAccount"), rs.getInt("toAccount"),
+                rs.getDouble("amount"), StandingOrder.Frequency.valueOf(rs.getString("frequency")),
+                LocalDateTime.parse(rs.getString("startAt"), DATE_FORMATTER), rs.getLong("runsDone"),
+                rs.getString("lastStatus"), rs.getInt("active") != 0);
+    }
+
+    private static long nowTick() {
+        return toTick(LocalDateTime.now());
+    }
+
+    private static long toTick(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    public long getExecuted() {
+        return executed.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Gets how many missed occurrences were skipped for being past the catch-up limit
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * Gets how many occurrences are waiting in the wheel
+     * Read from the scheduler thread, so it may be a moment out of date
+     */
+    public int getPendingCount() {
+        return wheel.size() + dueCount;
+    }
+}
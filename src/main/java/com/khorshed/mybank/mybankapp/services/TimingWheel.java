@@ -0,0 +1,179 @@
+package com.khorshed.mybank.mybankapp.services;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * TimingWheel - Hierarchical timing wheel of pending ids
+ *
+ * Four levels of 256 slots each cover 256, 256^2, 256^3 and 256^4 ticks
+ * ahead. An entry goes into the lowest level whose range reaches its
+ * deadline, in the slot picked by that level's bits of the deadline, so
+ * scheduling is O(1). Each tick expires one level-0 slot; whenever the low
+ * bits of the current tick wrap, the matching slot of the next level is
+ * emptied and its entries placed again, which moves each entry down at most
+ * three times before it expires. Entries live in parallel primitive arrays
+ * linked into per-slot lists, so millions of them cost about 20 bytes each
+ * and no object per entry.
+ *
+ * Not thread safe; the owner calls it from one thread.
+ */
+public class TimingWheel {
+
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int MASK = SLOTS - 1;
+    // Deadlines further out are parked in the top level and placed again when it comes round
+    private static final long MAX_DELTA = (1L << (SLOT_BITS * LEVELS)) - 1;
+    private static final int NONE = -1;
+
+    private final int[] heads = new int[LEVELS * SLOTS];
+    // Entries whose deadline had already passed when they were placed
+    private int overdueHead = NONE;
+
+    private long[] ids;
+    private long[] deadlines;
+    private int[] next;
+    private int used;
+    private int freeHead = NONE;
+    private int size;
+
+    private long currentTick;
+
+    /**
+     * @param startTick The tick the wheel starts at; deadlines up to it are already due
+     */
+    public TimingWheel(long startTick) {
+        this.currentTick = startTick;
+        Arrays.fill(heads, NONE);
+        ids = new long[1024];
+        deadlines = new long[1024];
+        next = new int[1024];
+    }
+
+    /**
+     * Adds an id to expire at a tick
+     * @param id The id to hand back on expiry
+     * @param deadlineTick The tick it is due; a past tick makes it due on the next advance
+     */
+    public void schedule(long id, long deadlineTick) {
+        int entry = allocate();
+        ids[entry] = id;
+        deadlines[entry] = deadlineTick;
+        place(entry);
+        size++;
+    }
+
+    /**
+     * Moves the wheel forward and hands every id that came due to a consumer
+     * The consumer may schedule new entries.
+     * @param tick The tick to advance to; earlier ticks are ignored
+     * @param expired Receives each due id
+     */
+    public void advanceTo(long tick, LongConsumer expired) {
+        drainOverdue(expired);
+        if (size == 0 && tick > currentTick) {
+            currentTick = tick;
+            return;
+        }
+
+        while (currentTick < tick) {
+            currentTick++;
+            for (int level = 1; level < LEVELS; level++) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                    break;
+                }
+                cascade(level, (int) ((currentTick >>> (SLOT_BITS * level)) & MASK));
+            }
+            expireSlot((int) (currentTick & MASK), expired);
+            drainOverdue(expired);
+            if (size == 0) {
+                currentTick = tick;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getCurrentTick() {
+        return currentTick;
+    }
+
+    private void place(int entry) {
+        long delta = deadlines[entry] - currentTick;
+        if (delta <= 0) {
+            next[entry] = overdueHead;
+            overdueHead = entry;
+            return;
+        }
+
+        long deadline = delta > MAX_DELTA ? currentTick + MAX_DELTA : deadlines[entry];
+        delta = deadline - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        int slot = level * SLOTS + (int) ((deadline >>> (SLOT_BITS * level)) & MASK);
+        next[entry] = heads[slot];
+        heads[slot] = entry;
+    }
+
+    private void cascade(int level, int index) {
+        int slot = level * SLOTS + index;
+        int entry = heads[slot];
+        heads[slot] = NONE;
+        while (entry != NONE) {
+            int following = next[entry];
+            place(entry);
+            entry = following;
+        }
+    }
+
+    private void expireSlot(int index, LongConsumer expired) {
+        int entry = heads[index];
+        heads[index] = NONE;
+        expire(entry, expired);
+    }
+
+    private void drainOverdue(LongConsumer expired) {
+        while (overdueHead != NONE) {
+            int entry = overdueHead;
+            overdueHead = NONE;
+            expire(entry, expired);
+        }
+    }
+
+    private void expire(int entry, LongConsumer expired) {
+        while (entry != NONE) {
+            int following = next[entry];
+            long id = ids[entry];
+            release(entry);
+            expired.accept(id);
+            entry = following;
+        }
+    }
+
+    private int allocate() {
+        if (freeHead != NONE) {
+            int entry = freeHead;
+            freeHead = next[entry];
+            return entry;
+        }
+        if (used == ids.length) {
+            int capacity = used * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            deadlines = Arrays.copyOf(deadlines, capacity);
+            next = Arrays.copyOf(next, capacity);
+        }
+        return used++;
+    }
+
+    private void release(int entry) {
+        next[entry] = freeHead;
+        freeHead = entry;
+        size--;
+    }
+}
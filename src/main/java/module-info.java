@@ -39,6 +39,9 @@ module com.khorshed.mybank.mybankapp {
     // SQLite JDBC
     requires org.xerial.sqlitejdbc;
 
+    // Loopback HTTP API
+    requires jdk.httpserver;
+
     // Allow JavaFX to access packages via reflection (FXML loading)
     opens com.khorshed.mybank. mybankapp to javafx.fxml, javafx.graphics;
     opens com. khorshed.mybank.mybankapp.controllers to javafx.fxml;